@@ -0,0 +1,153 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * A TokenSink that analyzes tokens morphologically in batches and hands them on in text order:
+ * <pre>
+ * tokenizer.tokenize(text, new AnalyzingTokenSink(api, "fin", listener));
+ * </pre>
+ * Tokens and sentence ends are kept in preallocated arrays until batchSize of them have arrived, then every
+ * distinct token of the batch is analyzed once and the batch is passed to the listener. The first results
+ * come after the first batch, not after the whole text. A sink is used by one thread at a time.
+ * @author mikahama
+ */
+public class AnalyzingTokenSink implements TokenSink {
+
+    /**
+     * Receives the analyzed tokens in text order
+     */
+    public interface Listener {
+
+        /**
+         * Called for every token
+         * @param token the token
+         * @param sentence number of the sentence, from 0
+         * @param index position of the token in the sentence, from 0
+         * @param analyses readings and their weights, shared by the tokens of a batch that are the same
+         * @return true to go on, false to stop the tokenization
+         * @throws IOException if the token cannot be processed
+         */
+        boolean analyzed(String token, int sentence, int index, HashMap<String, Float> analyses) throws IOException;
+
+        /**
+         * Called after the last token of every sentence
+         * @param sentence number of the sentence, from 0
+         * @param tokens number of tokens in the sentence
+         * @return true to go on, false to stop the tokenization
+         * @throws IOException if the sentence cannot be processed
+         */
+        default boolean sentenceEnd(int sentence, int tokens) throws IOException {
+            return true;
+        }
+    }
+
+    private final UralicApi api;
+    private final String language;
+    private final Listener listener;
+    private final boolean descriptive;
+    private final boolean dictionaryForms;
+    //one entry per token or sentence end, a null token marks a sentence end whose token count is in indexes
+    private final String[] tokens;
+    private final int[] sentences;
+    private final int[] indexes;
+    private int size = 0;
+    private final HashMap<String, HashMap<String, Float>> batchAnalyses = new HashMap<String, HashMap<String, Float>>();
+
+    /**
+     * Initializes a sink that analyzes batches of 256 tokens
+     * @param api UralicApi used for the morphology
+     * @param language ISO code of the language
+     * @param listener receives the analyzed tokens
+     */
+    public AnalyzingTokenSink(UralicApi api, String language, Listener listener) {
+        this(api, language, 256, true, false, listener);
+    }
+
+    /**
+     * Initializes a sink
+     * @param api UralicApi used for the morphology
+     * @param language ISO code of the language
+     * @param batchSize number of tokens and sentence ends collected before analyzing them
+     * @param descriptive use the descriptive analyzer
+     * @param dictionaryForms use the dictionary form analyzer
+     * @param listener receives the analyzed tokens
+     */
+    public AnalyzingTokenSink(UralicApi api, String language, int batchSize, boolean descriptive, boolean dictionaryForms, Listener listener) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be at least 1");
+        }
+        this.api = api;
+        this.language = language;
+        this.listener = listener;
+        this.descriptive = descriptive;
+        this.dictionaryForms = dictionaryForms;
+        tokens = new String[batchSize];
+        sentences = new int[batchSize];
+        indexes = new int[batchSize];
+    }
+
+    @Override
+    public boolean token(String token, int sentence, int index) throws IOException {
+        return add(token, sentence, index);
+    }
+
+    @Override
+    public boolean sentenceEnd(int sentence, int tokenCount) throws IOException {
+        return add(null, sentence, tokenCount);
+    }
+
+    private boolean add(String token, int sentence, int index) throws IOException {
+        tokens[size] = token;
+        sentences[size] = sentence;
+        indexes[size] = index;
+        size++;
+        return size < tokens.length || flush();
+    }
+
+    /**
+     * Analyzes and hands on what is left in the batch
+     */
+    @Override
+    public void end() throws IOException {
+        flush();
+    }
+
+    private boolean flush() throws IOException {
+        //the batch is emptied even if analyzing or the listener fails, so the sink can be used again
+        try {
+            long start = Metrics.start();
+            int analyzedTokens = 0;
+            for (int i = 0; i < size; i++) {
+                if (tokens[i] != null && !batchAnalyses.containsKey(tokens[i])) {
+                    batchAnalyses.put(tokens[i], api.analyze(tokens[i], language, descriptive, dictionaryForms));
+                    analyzedTokens++;
+                }
+            }
+            if (Metrics.isEnabled()) {
+                Metrics.stop(Metrics.TOKEN_SINK_BATCH, start, "language", language);
+                Metrics.getRecorder().count(Metrics.TOKEN_SINK_TOKENS, analyzedTokens, "language", language);
+            }
+            boolean go = true;
+            for (int i = 0; i < size && go; i++) {
+                if (tokens[i] == null) {
+                    go = listener.sentenceEnd(sentences[i], indexes[i]);
+                } else {
+                    go = listener.analyzed(tokens[i], sentences[i], indexes[i], batchAnalyses.get(tokens[i]));
+                }
+            }
+            return go;
+        } finally {
+            for (int i = 0; i < size; i++) {
+                tokens[i] = null;
+            }
+            size = 0;
+            batchAnalyses.clear();
+        }
+    }
+}
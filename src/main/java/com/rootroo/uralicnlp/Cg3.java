@@ -4,10 +4,12 @@
  */
 package com.rootroo.uralicnlp;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -27,16 +29,17 @@ public class Cg3 {
     private String cgPath;
     private String language;
     private UralicApi api;
+    private DisambiguationCache cache;
 
     //public Cg3(String language, String morphologyLanguages) {
     //    init(language, morphologyLanguages);
     //}
 
-    private void init(String language, String morphologyLanguages) {
-        this.api = new UralicApi();
+    private void init(String language, String morphologyLanguages, UralicApi api) {
+        this.api = api;
         this.morphologyLanguages = morphologyLanguages;
 
-        cgPath = Paths.get(System.getProperty("user.home"), ".uralicnlp",language, "cg").toString();
+        cgPath = Paths.get(api.getModelPath(), language, "cg").toString();
 
         this.language = language;
     }
@@ -47,7 +50,40 @@ public class Cg3 {
      */
     public Cg3(String language) {
 
-        init(language, language);
+        init(language, language, new UralicApi());
+    }
+
+    /**
+     * Initializes a CG3 disambiguator that analyzes with the given UralicApi and reads the grammar from its model path
+     * @param language A language ISO code
+     * @param api UralicApi used for the morphology
+     */
+    public Cg3(String language, UralicApi api) {
+        init(language, language, api);
+    }
+
+    /**
+     * Caches disambiguation results of repeated sentences in memory.
+     * Results computed with existing morphologies are never cached.
+     * @param maxEntries maximum number of sentences to keep
+     */
+    public void enableCache(int maxEntries) {
+        cache = new DisambiguationCache(maxEntries);
+    }
+
+    /**
+     * Turns the disambiguation cache off and drops its contents
+     */
+    public void disableCache() {
+        cache = null;
+    }
+
+    /**
+     * Gets the disambiguation cache for reading its hit rate
+     * @return the cache or null if caching is not enabled
+     */
+    public DisambiguationCache getCache() {
+        return cache;
     }
     
     /**
@@ -73,52 +109,92 @@ public class Cg3 {
      * @throws IOException Fails if there's an issue with the transducers or the models have not been downloaded
      */
     public ArrayList<ArrayList<Cg3Word>> disambiguate(List<String>  words, String morphology_ignore_after, boolean descriptive, boolean remove_symbols, String temp_file, boolean language_flags, List<HashMap<String, Float>> morphologies) throws IOException {
-        
-        words.add("");
-        String hfst_output = parseSentence(words, morphologyLanguages, morphology_ignore_after, descriptive, remove_symbols, language_flags, morphologies);
-        ProcessBuilder pb;
-        
-        if (temp_file == null) {
-            List<String> commands = new ArrayList<String>();
-            commands.add("echo");
-            commands.add(hfst_output);
-            pb = new ProcessBuilder(commands);
+        DisambiguationCache cache = this.cache;
+        DisambiguationCache.Key key = null;
+        if (cache != null && morphologies == null) {
+            long grammarModified = new File(cgPath).lastModified();
+            key = new DisambiguationCache.Key(morphologyLanguages, descriptive, morphology_ignore_after, remove_symbols, language_flags, grammarModified, words);
+            ArrayList<ArrayList<Cg3Word>> cached = cache.get(key);
+            if (cached != null) {
+                Metrics.getRecorder().count(Metrics.CG3_CACHE_HIT, 1, "language", language);
+                return cached;
+            }
+            Metrics.getRecorder().count(Metrics.CG3_CACHE_MISS, 1, "language", language);
+        }
+        ArrayList<ArrayList<Cg3Word>> results = runDisambiguation(words, morphology_ignore_after, descriptive, remove_symbols, temp_file, language_flags, morphologies);
+        if (key != null) {
+            cache.put(key, results);
+        }
+        return results;
+    }
 
-        } else {
+    private ArrayList<ArrayList<Cg3Word>> runDisambiguation(List<String>  words, String morphology_ignore_after, boolean descriptive, boolean remove_symbols, String temp_file, boolean language_flags, List<HashMap<String, Float>> morphologies) throws IOException {
+        List<String> sentence = new ArrayList<String>(words);
+        sentence.add("");
+        long start = Metrics.start();
+        final String hfst_output = parseSentence(sentence, morphologyLanguages, morphology_ignore_after, descriptive, remove_symbols, language_flags, morphologies);
+
+        ProcessBuilder cg_conv = new ProcessBuilder("cg-conv", "-f");
+        cg_conv.redirectError(ProcessBuilder.Redirect.DISCARD);
+        if (temp_file != null) {
             try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(temp_file), StandardCharsets.UTF_8)) {
                 writer.write(hfst_output);
             }
-            List<String> commands = new ArrayList<String>();
-            commands.add("cat");
-            commands.add(temp_file);
-            pb = new ProcessBuilder(commands);
+            cg_conv.redirectInput(new File(temp_file));
+        }
+        ProcessBuilder vislcg3 = new ProcessBuilder("vislcg3", "--grammar", cgPath);
+        vislcg3.redirectError(ProcessBuilder.Redirect.DISCARD);
+        Metrics.stop(Metrics.CG3_STAGE, start, "stage", "analyze", "language", language);
+        start = Metrics.start();
+        List<Process> processes = ProcessBuilder.startPipeline(Arrays.asList(cg_conv, vislcg3));
+        Metrics.stop(Metrics.CG3_STAGE, start, "stage", "spawn", "language", language);
+        start = Metrics.start();
 
+        //The input is written from a helper thread while this thread reads the output, so neither pipe can fill up
+        Thread writer = null;
+        final IOException[] writeError = new IOException[1];
+        if (temp_file == null) {
+            final OutputStream stdin = processes.get(0).getOutputStream();
+            writer = UralicExecutors.startThread(new Runnable() {
+                @Override
+                public void run() {
+                    try (OutputStream out = stdin) {
+                        out.write((hfst_output + "\n").getBytes(StandardCharsets.UTF_8));
+                    } catch (IOException ex) {
+                        writeError[0] = ex;
+                    }
+                }
+            });
         }
-        Map<String, String> envs = pb.environment();
-        List<String> commands = new ArrayList<String>();
-        commands.add("cg-conv");
-        commands.add("-f");
-        ProcessBuilder cg_conv = new ProcessBuilder(commands);
-
-        List<String> vcommands = new ArrayList<String>();
-        vcommands.add("vislcg3");
-        vcommands.add("--grammar");
-        vcommands.add(cgPath);
-        ProcessBuilder vislcg3 = new ProcessBuilder(vcommands);
-        List builders = Arrays.asList(pb, cg_conv, vislcg3);
-        List<Process> processes = ProcessBuilder.startPipeline(builders);
-        
-        Process last = processes.get(processes.size() - 1);
 
-        int BUFFER_SIZE = 1024;
-        String cg_results = "";
-        BufferedReader br = new BufferedReader(new InputStreamReader(last.getInputStream()), BUFFER_SIZE);
-        String str;
-        while ((str = br.readLine()) != null) {
-            cg_results += str + "\n";
-            
+        Process last = processes.get(processes.size() - 1);
+        String cg_results;
+        try (InputStream stdout = last.getInputStream()) {
+            cg_results = new String(stdout.readAllBytes(), StandardCharsets.UTF_8);
         }
-        return parseCgResults(cg_results);
+        try {
+            if (writer != null) {
+                writer.join();
+            }
+            int exitCode = last.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("vislcg3 exited with code " + exitCode);
+            }
+        } catch (InterruptedException ex) {
+            for (Process p : processes) {
+                p.destroy();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for vislcg3");
+        }
+        if (writeError[0] != null) {
+            throw writeError[0];
+        }
+        Metrics.stop(Metrics.CG3_STAGE, start, "stage", "process", "language", language);
+        start = Metrics.start();
+        ArrayList<ArrayList<Cg3Word>> results = parseCgResults(cg_results, api.getTagTable(morphologyLanguages));
+        Metrics.stop(Metrics.CG3_STAGE, start, "stage", "parse", "language", language);
+        return results;
     }
 
     private String parseSentence(List<String> words, String language, String morphology_ignore_after, boolean descriptive, boolean remove_symbols, boolean language_flags, List<HashMap<String, Float>> words_analysis) throws IOException {
@@ -163,7 +239,7 @@ public class Cg3 {
         return hfsts;
     }   
 
-    private ArrayList<ArrayList<Cg3Word>> parseCgResults(String cg_results) {
+    ArrayList<ArrayList<Cg3Word>> parseCgResults(String cg_results, TagSymbolTable tags) {
         String[] lines = cg_results.split("\n");
         ArrayList<ArrayList<Cg3Word>> results = new ArrayList<ArrayList<Cg3Word>>();
         String current_word = null;
@@ -184,7 +260,28 @@ public class Cg3 {
                 if (parts.length < 2) {
                     continue;
                 }
-                Cg3Word w = new Cg3Word(current_word, parts[0], parts[1].split(" "));
+                //Tags of the analyser are shared per language and spelled like the analyser: N -> +N.
+                //Other tokens, e.g. syntactic tags and #1->2, stay in the reading and out of the table
+                String[] morphology = parts[1].split(" ");
+                int[] ids = new int[morphology.length];
+                List<String> literals = null;
+                for (int m = 0; m < morphology.length; m++) {
+                    int id = tags.analyserId(morphology[m]);
+                    if (id >= 0) {
+                        morphology[m] = tags.bareTag(id);
+                        ids[m] = id;
+                    } else {
+                        if (literals == null) {
+                            literals = new ArrayList<String>();
+                        }
+                        literals.add("+" + morphology[m]);
+                        ids[m] = -literals.size();
+                    }
+                }
+                String lemma = parts[0];
+                Reading reading = new Reading(tags, lemma, ids,
+                        literals == null ? TagSymbolTable.NO_LITERALS : literals.toArray(new String[literals.size()]), 0f);
+                Cg3Word w = new Cg3Word(current_word, lemma, morphology, reading);
                 current_list.add(w);
             }
 
@@ -13,6 +13,7 @@ public class Cg3Word {
     public String form;
     public String lemma;
     public String[] morphology;
+    public Reading reading;
     
     /**
      * Initializes Cg3Word
@@ -25,6 +26,29 @@ public class Cg3Word {
         this.lemma = lemma;
         this.morphology = morphology;
     }
+
+    /**
+     * Initializes Cg3Word with a structured reading
+     * @param form form in the text
+     * @param lemma lemma
+     * @param morphology morphological reading
+     * @param reading the lemma and morphology with tags of the TagSymbolTable of the language
+     */
+    public Cg3Word(String form, String lemma, String[] morphology, Reading reading){
+        this(form, lemma, morphology);
+        this.reading = reading;
+    }
+
+    /**
+     * Initializes Cg3Word as a copy of another Cg3Word
+     * @param other the word to copy
+     */
+    public Cg3Word(Cg3Word other){
+        this.form = other.form;
+        this.lemma = other.lemma;
+        this.morphology = other.morphology.clone();
+        this.reading = other.reading;
+    }
     
     @Override
     public String toString(){
@@ -4,14 +4,13 @@
  */
 package com.rootroo.uralicnlp;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import me.tongfei.progressbar.ProgressBar;
 
 /**
@@ -20,6 +19,8 @@ import me.tongfei.progressbar.ProgressBar;
  */
 public class CommonTools {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
     /**
      * Deletes a directory and its contents
      * @param dirFile Directory to be deleted
@@ -42,19 +43,9 @@ public class CommonTools {
      */
     public static String readToString(String targetURL) throws IOException {
         URL url = new URL(targetURL);
-        BufferedReader bufferedReader = new BufferedReader(
-                new InputStreamReader(url.openStream()));
-
-        StringBuilder stringBuilder = new StringBuilder();
-
-        String inputLine;
-        while ((inputLine = bufferedReader.readLine()) != null) {
-            stringBuilder.append(inputLine);
-            stringBuilder.append(System.lineSeparator());
+        try (InputStream in = url.openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
         }
-
-        bufferedReader.close();
-        return stringBuilder.toString().trim();
     }
 
     /**
@@ -66,11 +57,11 @@ public class CommonTools {
      */
     public static void downloadToFile(String url, String filePath, boolean showProgress) throws Exception {
         ProgressBar pb = null;
-        BufferedInputStream in = null;
+        InputStream in = null;
         FileOutputStream fileOutputStream = null;
         try {
-            URL urlObject = new URL(url);
-            int contentLength = urlObject.openConnection().getContentLength();
+            URLConnection connection = new URL(url).openConnection();
+            long contentLength = connection.getContentLengthLong();
 
             if (contentLength != -1 && showProgress) {
                 pb = new ProgressBar("Downloading", contentLength);
@@ -79,14 +70,15 @@ public class CommonTools {
                 System.out.println("Not showing download progress");
             }
 
-            in = new BufferedInputStream(urlObject.openStream());
+            //Read straight into our own buffer, BufferedInputStream would only add a synchronized copy
+            in = connection.getInputStream();
             fileOutputStream = new FileOutputStream(filePath);
-            byte dataBuffer[] = new byte[1024];
+            byte dataBuffer[] = new byte[BUFFER_SIZE];
             int bytesRead;
-            while ((bytesRead = in.read(dataBuffer, 0, 1024)) != -1) {
+            while ((bytesRead = in.read(dataBuffer, 0, BUFFER_SIZE)) != -1) {
                 fileOutputStream.write(dataBuffer, 0, bytesRead);
                 if (pb != null) {
-                    pb.stepBy(1024);
+                    pb.stepBy(bytesRead);
                 }
 
             }
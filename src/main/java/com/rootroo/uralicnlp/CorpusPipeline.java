@@ -0,0 +1,318 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tokenizes, analyzes or lemmatizes and optionally disambiguates a stream of documents in parallel.
+ * Documents are handed to the sink in the same order as they were read. At most queueCapacity
+ * documents are in flight at a time, so memory use does not grow with the size of the corpus.
+ * Results of repeated tokens are cached.
+ * @author mikahama
+ */
+public class CorpusPipeline {
+
+    /**
+     * Receives the processed documents in input order
+     */
+    public interface DocumentSink {
+
+        /**
+         * Called once for every document, from the thread that called run
+         * @param document the processed document
+         * @throws IOException if the document cannot be stored
+         */
+        void accept(ProcessedDocument document) throws IOException;
+    }
+
+    /**
+     * A tokenized and analyzed document
+     */
+    public static class ProcessedDocument {
+
+        /**
+         * Position of the document in the input, starting from 0
+         */
+        public final long index;
+        /**
+         * Sentences of word tokens
+         */
+        public final List<List<String>> sentences;
+        /**
+         * Lemmas of every token, null if lemmatization is off
+         */
+        public final List<List<List<String>>> lemmas;
+        /**
+         * Morphological readings of every token, null if analysis is off
+         */
+        public final List<List<HashMap<String, Float>>> analyses;
+        /**
+         * Disambiguated readings of every sentence, null if there is no disambiguator
+         */
+        public final List<ArrayList<ArrayList<Cg3Word>>> disambiguated;
+
+        ProcessedDocument(long index, List<List<String>> sentences, List<List<List<String>>> lemmas, List<List<HashMap<String, Float>>> analyses, List<ArrayList<ArrayList<Cg3Word>>> disambiguated) {
+            this.index = index;
+            this.sentences = sentences;
+            this.lemmas = lemmas;
+            this.analyses = analyses;
+            this.disambiguated = disambiguated;
+        }
+    }
+
+    private final UralicApi api;
+    private final String language;
+    private final Tokenizer tokenizer;
+    private ExecutorService executor;
+    private int queueCapacity = 1024;
+    private boolean lemmatize = true;
+    private boolean analyze = false;
+    private Cg3 disambiguator;
+    private int cacheSize = 100000;
+    private final ConcurrentHashMap<String, List<String>> lemmaCache = new ConcurrentHashMap<String, List<String>>();
+    private final ConcurrentHashMap<String, HashMap<String, Float>> analysisCache = new ConcurrentHashMap<String, HashMap<String, Float>>();
+    private PipelineStatistics statistics = new PipelineStatistics();
+
+    /**
+     * Initializes a pipeline that lemmatizes documents of one language
+     * @param api UralicApi used for the morphology
+     * @param language ISO code of the language
+     */
+    public CorpusPipeline(UralicApi api, String language) {
+        this(api, language, new Tokenizer());
+    }
+
+    /**
+     * Initializes a pipeline that lemmatizes documents of one language
+     * @param api UralicApi used for the morphology
+     * @param language ISO code of the language
+     * @param tokenizer tokenizer for the documents
+     */
+    public CorpusPipeline(UralicApi api, String language, Tokenizer tokenizer) {
+        this.api = api;
+        this.language = language;
+        this.tokenizer = tokenizer;
+    }
+
+    /**
+     * Runs the pipeline on the given executor, e.g. a ForkJoinPool. The executor is not shut down by the pipeline.
+     * By default a fixed thread pool with one thread per processor is created for each run.
+     * @param executor executor for the documents
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets how many documents may be in flight at a time
+     * @param queueCapacity maximum number of documents read but not yet handed to the sink (default 1024)
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Turns lemmatization on or off (default on)
+     * @param lemmatize true to lemmatize every token
+     */
+    public void setLemmatize(boolean lemmatize) {
+        this.lemmatize = lemmatize;
+    }
+
+    /**
+     * Turns morphological analysis on or off (default off)
+     * @param analyze true to analyze every token
+     */
+    public void setAnalyze(boolean analyze) {
+        this.analyze = analyze;
+    }
+
+    /**
+     * Disambiguates every sentence with CG. The analyses of the pipeline are handed to the disambiguator,
+     * so the tokens are not looked up twice.
+     * @param disambiguator a Cg3 for the language of the pipeline, null to turn disambiguation off
+     */
+    public void setDisambiguator(Cg3 disambiguator) {
+        this.disambiguator = disambiguator;
+    }
+
+    /**
+     * Sets how many distinct tokens are cached, the cache is emptied when it gets full
+     * @param cacheSize maximum number of cached tokens, 0 turns caching off (default 100000)
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+        lemmaCache.clear();
+        analysisCache.clear();
+    }
+
+    /**
+     * Gets the throughput counters of the latest run
+     * @return statistics
+     */
+    public PipelineStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Processes all documents and hands them to the sink in input order
+     * @param documents source of the documents
+     * @param sink receives the processed documents
+     * @throws IOException Fails if the models are not downloaded or the sink fails
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public void run(Iterator<String> documents, DocumentSink sink) throws IOException, InterruptedException {
+        statistics = new PipelineStatistics();
+        boolean ownExecutor = executor == null;
+        ExecutorService pool = ownExecutor ? Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()) : executor;
+        ArrayDeque<Future<ProcessedDocument>> inFlight = new ArrayDeque<Future<ProcessedDocument>>();
+        try {
+            long index = 0;
+            while (documents.hasNext()) {
+                if (inFlight.size() >= queueCapacity) {
+                    deliver(inFlight.poll(), sink);
+                }
+                final String text = documents.next();
+                final long documentIndex = index++;
+                inFlight.add(pool.submit(new Callable<ProcessedDocument>() {
+                    @Override
+                    public ProcessedDocument call() throws Exception {
+                        return process(documentIndex, text);
+                    }
+                }));
+            }
+            while (!inFlight.isEmpty()) {
+                deliver(inFlight.poll(), sink);
+            }
+        } finally {
+            for (Future<ProcessedDocument> f : inFlight) {
+                f.cancel(true);
+            }
+            if (ownExecutor) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private void deliver(Future<ProcessedDocument> future, DocumentSink sink) throws IOException, InterruptedException {
+        ProcessedDocument document;
+        try {
+            document = future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+        sink.accept(document);
+        statistics.documentDone();
+    }
+
+    private ProcessedDocument process(long index, String text) throws IOException {
+        long start = System.nanoTime();
+        List<List<String>> sentences = tokenizer.tokenize(text);
+        int tokens = 0;
+        for (List<String> sentence : sentences) {
+            tokens += sentence.size();
+        }
+        statistics.record(PipelineStatistics.Stage.TOKENIZE, tokens, System.nanoTime() - start);
+
+        List<List<List<String>>> lemmas = null;
+        List<List<HashMap<String, Float>>> analyses = null;
+        boolean needAnalyses = analyze || disambiguator != null;
+        start = System.nanoTime();
+        if (lemmatize) {
+            lemmas = new ArrayList<List<List<String>>>(sentences.size());
+        }
+        if (needAnalyses) {
+            analyses = new ArrayList<List<HashMap<String, Float>>>(sentences.size());
+        }
+        for (List<String> sentence : sentences) {
+            List<List<String>> sentenceLemmas = new ArrayList<List<String>>(sentence.size());
+            List<HashMap<String, Float>> sentenceAnalyses = new ArrayList<HashMap<String, Float>>(sentence.size());
+            for (String token : sentence) {
+                if (lemmatize) {
+                    sentenceLemmas.add(lemmatize(token));
+                }
+                if (needAnalyses) {
+                    sentenceAnalyses.add(analyze(token));
+                }
+            }
+            if (lemmatize) {
+                lemmas.add(sentenceLemmas);
+            }
+            if (needAnalyses) {
+                analyses.add(sentenceAnalyses);
+            }
+        }
+        if (lemmatize || needAnalyses) {
+            statistics.record(PipelineStatistics.Stage.ANALYZE, tokens, System.nanoTime() - start);
+        }
+
+        List<ArrayList<ArrayList<Cg3Word>>> disambiguated = null;
+        if (disambiguator != null) {
+            start = System.nanoTime();
+            disambiguated = new ArrayList<ArrayList<ArrayList<Cg3Word>>>(sentences.size());
+            for (int i = 0; i < sentences.size(); i++) {
+                List<HashMap<String, Float>> morphologies = new ArrayList<HashMap<String, Float>>(analyses.get(i));
+                disambiguated.add(disambiguator.disambiguate(new ArrayList<String>(sentences.get(i)), null, true, true, null, false, morphologies));
+            }
+            statistics.record(PipelineStatistics.Stage.DISAMBIGUATE, sentences.size(), System.nanoTime() - start);
+        }
+        return new ProcessedDocument(index, sentences, lemmas, analyze ? analyses : null, disambiguated);
+    }
+
+    private List<String> lemmatize(String token) throws IOException {
+        List<String> cached = cacheSize > 0 ? lemmaCache.get(token) : null;
+        if (cached != null) {
+            statistics.cacheHit();
+            return new ArrayList<String>(cached);
+        }
+        statistics.cacheMiss();
+        List<String> lemmas = api.lemmatize(token, language);
+        if (cacheSize > 0) {
+            if (lemmaCache.size() >= cacheSize) {
+                lemmaCache.clear();
+            }
+            lemmaCache.put(token, new ArrayList<String>(lemmas));
+        }
+        return lemmas;
+    }
+
+    private HashMap<String, Float> analyze(String token) throws IOException {
+        HashMap<String, Float> cached = cacheSize > 0 ? analysisCache.get(token) : null;
+        if (cached != null) {
+            statistics.cacheHit();
+            return new HashMap<String, Float>(cached);
+        }
+        statistics.cacheMiss();
+        HashMap<String, Float> analysis = api.analyze(token, language);
+        if (cacheSize > 0) {
+            if (analysisCache.size() >= cacheSize) {
+                analysisCache.clear();
+            }
+            analysisCache.put(token, new HashMap<String, Float>(analysis));
+        }
+        return analysis;
+    }
+}
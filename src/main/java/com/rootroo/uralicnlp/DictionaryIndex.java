@@ -0,0 +1,464 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A compiled, memory mapped index of dictionary.json. The JSON is parsed once and the index is stored
+ * next to it as dictionary.index; it is rebuilt when the JSON changes. The index holds the lemmas in
+ * UTF-8 byte order with their entries, so exact and prefix searches are binary searches, and a suffix
+ * array over the lemmas for infix searches.
+ * <pre>
+ * "UNLPDIC1" int version, long jsonSize, long jsonModified, int lemmaCount, int entryCount, int suffixCount
+ * int[lemmaCount + 1] lemma offsets, int[lemmaCount + 1] first entry of each lemma,
+ * int[entryCount + 1] entry offsets, int[suffixCount] suffixes (lemma blob offsets)
+ * lemma blob: UTF-8 lemmas back to back, entry blob: UTF-8 JSON objects back to back
+ * </pre>
+ * @author mikahama
+ */
+public class DictionaryIndex {
+
+    static final byte[] MAGIC = "UNLPDIC1".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    private static final int HEADER = 8 + 4 + 8 + 8 + 4 + 4 + 4;
+
+    private final ByteBuffer data;
+    private final int lemmaCount;
+    private final int entryCount;
+    private final int suffixCount;
+    private final int lemmaOffsetsStart;
+    private final int entryStartsStart;
+    private final int entryOffsetsStart;
+    private final int suffixesStart;
+    private final int lemmasStart;
+    private final int entriesStart;
+
+    private DictionaryIndex(ByteBuffer data) throws IOException {
+        this.data = data.order(ByteOrder.BIG_ENDIAN);
+        if (data.capacity() < HEADER || !Arrays.equals(bytes(0, MAGIC.length), MAGIC)) {
+            throw new IOException("Not a dictionary index");
+        }
+        if (data.getInt(8) != VERSION) {
+            throw new IOException("Unsupported dictionary index version " + data.getInt(8));
+        }
+        lemmaCount = data.getInt(28);
+        entryCount = data.getInt(32);
+        suffixCount = data.getInt(36);
+        lemmaOffsetsStart = HEADER;
+        entryStartsStart = lemmaOffsetsStart + (lemmaCount + 1) * 4;
+        entryOffsetsStart = entryStartsStart + (lemmaCount + 1) * 4;
+        suffixesStart = entryOffsetsStart + (entryCount + 1) * 4;
+        lemmasStart = suffixesStart + suffixCount * 4;
+        long tables = HEADER + (lemmaCount + 1) * 8L + (entryCount + 1) * 4L + suffixCount * 4L;
+        if (lemmaCount < 0 || entryCount < 0 || suffixCount < 0 || tables > data.capacity()) {
+            throw new IOException("Dictionary index is truncated");
+        }
+        entriesStart = lemmasStart + data.getInt(lemmaOffsetsStart + lemmaCount * 4);
+        if (entriesStart < lemmasStart || (long) entriesStart + data.getInt(entryOffsetsStart + entryCount * 4) > data.capacity()) {
+            throw new IOException("Dictionary index is truncated");
+        }
+    }
+
+    /**
+     * Opens the index of a dictionary, compiling it first if it is missing, older than the JSON or unreadable
+     * @param json path to dictionary.json
+     * @return the index
+     * @throws IOException if the JSON cannot be read or parsed, or the index cannot be written
+     */
+    public static DictionaryIndex open(Path json) throws IOException {
+        Path indexFile = json.resolveSibling("dictionary.index");
+        long size = Files.size(json);
+        long modified = Files.getLastModifiedTime(json).toMillis();
+        if (Files.exists(indexFile)) {
+            try {
+                DictionaryIndex index = map(indexFile);
+                if (index.data.getLong(12) == size && index.data.getLong(20) == modified) {
+                    return index;
+                }
+            } catch (IOException ex) {
+                //a corrupt or truncated index, or one of an older version, is compiled again
+            }
+        }
+        compile(json, indexFile, size, modified);
+        return map(indexFile);
+    }
+
+    private static DictionaryIndex map(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            return new DictionaryIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Parses dictionary.json and writes the index. The JSON may be a TinyDB file ({"_default": {"1": entry, ...}}),
+     * an array of entries or an object of lemmas and their entries. Entries without a lemma field take the lemma
+     * from their key, or are skipped if they have none.
+     */
+    private static void compile(Path json, Path indexFile, long size, long modified) throws IOException {
+        TreeMap<byte[], List<byte[]>> lemmas = new TreeMap<byte[], List<byte[]>>(UNSIGNED);
+        Object root;
+        try (Reader reader = Files.newBufferedReader(json, StandardCharsets.UTF_8)) {
+            root = new JSONParser().parse(reader);
+        } catch (ParseException ex) {
+            throw new IOException("dictionary.json is not valid JSON: " + ex);
+        }
+        boolean tinyDb = false;
+        if (root instanceof JSONObject && ((JSONObject) root).get("_default") instanceof JSONObject) {
+            //TinyDB keys are document ids, not lemmas
+            root = ((JSONObject) root).get("_default");
+            tinyDb = true;
+        }
+        if (root instanceof JSONArray) {
+            for (Object entry : (JSONArray) root) {
+                addEntry(lemmas, null, entry);
+            }
+        } else if (root instanceof JSONObject) {
+            for (Object e : ((JSONObject) root).entrySet()) {
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) e;
+                addEntry(lemmas, tinyDb ? null : entry.getKey().toString(), entry.getValue());
+            }
+        } else {
+            throw new IOException("dictionary.json has no entries");
+        }
+
+        int lemmaCount = lemmas.size();
+        int[] lemmaOffsets = new int[lemmaCount + 1];
+        int[] entryStarts = new int[lemmaCount + 1];
+        List<Integer> entryOffsets = new ArrayList<Integer>();
+        List<Integer> suffixes = new ArrayList<Integer>();
+        int lemmaBytes = 0;
+        int entryBytes = 0;
+        int i = 0;
+        for (Map.Entry<byte[], List<byte[]>> e : lemmas.entrySet()) {
+            byte[] lemma = e.getKey();
+            lemmaOffsets[i] = lemmaBytes;
+            entryStarts[i] = entryOffsets.size();
+            for (int b = 0; b < lemma.length; b++) {
+                //Suffixes start at characters, not inside them
+                if ((lemma[b] & 0xc0) != 0x80) {
+                    suffixes.add(lemmaBytes + b);
+                }
+            }
+            lemmaBytes += lemma.length;
+            for (byte[] entry : e.getValue()) {
+                entryOffsets.add(entryBytes);
+                entryBytes += entry.length;
+            }
+            i++;
+        }
+        lemmaOffsets[lemmaCount] = lemmaBytes;
+        entryStarts[lemmaCount] = entryOffsets.size();
+        int entryCount = entryOffsets.size();
+        entryOffsets.add(entryBytes);
+
+        long total = HEADER + (lemmaCount + 1) * 8L + (entryCount + 1) * 4L + suffixes.size() * 4L + lemmaBytes + (long) entryBytes;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Dictionary index would be larger than 2 GB");
+        }
+        final ByteBuffer blob = ByteBuffer.allocate(lemmaBytes);
+        for (byte[] lemma : lemmas.keySet()) {
+            blob.put(lemma);
+        }
+        Integer[] sorted = suffixes.toArray(new Integer[0]);
+        final int[] ends = lemmaOffsets;
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int endA = ends[lemmaOf(ends, a) + 1];
+                int endB = ends[lemmaOf(ends, b) + 1];
+                int length = Math.min(endA - a, endB - b);
+                for (int k = 0; k < length; k++) {
+                    int c = (blob.get(a + k) & 0xff) - (blob.get(b + k) & 0xff);
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+                return (endA - a) - (endB - b);
+            }
+        });
+
+        ByteBuffer out = ByteBuffer.allocate((int) total).order(ByteOrder.BIG_ENDIAN);
+        out.put(MAGIC).putInt(VERSION).putLong(size).putLong(modified).putInt(lemmaCount).putInt(entryCount).putInt(sorted.length);
+        for (int o : lemmaOffsets) {
+            out.putInt(o);
+        }
+        for (int s : entryStarts) {
+            out.putInt(s);
+        }
+        for (int o : entryOffsets) {
+            out.putInt(o);
+        }
+        for (int s : sorted) {
+            out.putInt(s);
+        }
+        out.put(blob.array());
+        for (List<byte[]> entries : lemmas.values()) {
+            for (byte[] entry : entries) {
+                out.put(entry);
+            }
+        }
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        Files.write(temp, out.array());
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void addEntry(TreeMap<byte[], List<byte[]>> lemmas, String key, Object value) {
+        String lemma = key;
+        String entry;
+        if (value instanceof JSONObject) {
+            Object l = ((JSONObject) value).get("lemma");
+            if (l != null) {
+                lemma = l.toString();
+            }
+            entry = ((JSONObject) value).toJSONString();
+        } else if (value instanceof String && key == null) {
+            lemma = (String) value;
+            entry = "{" + JSONObject.toString("lemma", value) + "}";
+        } else {
+            entry = "{" + JSONObject.toString("lemma", key) + "," + JSONObject.toString("value", value) + "}";
+        }
+        if (lemma == null) {
+            return;
+        }
+        byte[] k = lemma.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> entries = lemmas.get(k);
+        if (entries == null) {
+            entries = new ArrayList<byte[]>(1);
+            lemmas.put(k, entries);
+        }
+        entries.add(entry.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Number of distinct lemmas
+     * @return lemma count
+     */
+    public int size() {
+        return lemmaCount;
+    }
+
+    /**
+     * Gets the dictionary entries of a lemma
+     * @param lemma the lemma
+     * @return the entries as JSON objects, empty if the lemma is not in the dictionary
+     */
+    public String[] search(String lemma) {
+        byte[] key = lemma.getBytes(StandardCharsets.UTF_8);
+        int i = lowerBound(key, false);
+        if (i >= lemmaCount || compareLemma(i, key, false) != 0) {
+            return new String[0];
+        }
+        int first = data.getInt(entryStartsStart + i * 4);
+        int last = data.getInt(entryStartsStart + (i + 1) * 4);
+        String[] entries = new String[last - first];
+        for (int e = first; e < last; e++) {
+            int start = data.getInt(entryOffsetsStart + e * 4);
+            int end = data.getInt(entryOffsetsStart + (e + 1) * 4);
+            entries[e - first] = decode(entriesStart + start, end - start);
+        }
+        return entries;
+    }
+
+    /**
+     * Gets all lemmas in UTF-8 byte order. They are decoded as the iteration proceeds.
+     * @return the lemmas
+     */
+    public Iterable<String> lemmas() {
+        return range(0, lemmaCount);
+    }
+
+    /**
+     * Gets the lemmas that start with a prefix
+     * @param prefix the prefix
+     * @return the lemmas in UTF-8 byte order, decoded as the iteration proceeds
+     */
+    public Iterable<String> prefixSearch(String prefix) {
+        byte[] key = prefix.getBytes(StandardCharsets.UTF_8);
+        return range(lowerBound(key, false), lowerBound(key, true));
+    }
+
+    /**
+     * Gets the lemmas that contain a string
+     * @param infix the string
+     * @return the lemmas in UTF-8 byte order
+     */
+    public List<String> infixSearch(String infix) {
+        byte[] key = infix.getBytes(StandardCharsets.UTF_8);
+        int lo = suffixBound(key, false);
+        int hi = suffixBound(key, true);
+        TreeSet<Integer> found = new TreeSet<Integer>();
+        for (int s = lo; s < hi; s++) {
+            found.add(lemmaOf(data.getInt(suffixesStart + s * 4)));
+        }
+        List<String> result = new ArrayList<String>(found.size());
+        for (int i : found) {
+            result.add(lemma(i));
+        }
+        return result;
+    }
+
+    private Iterable<String> range(final int from, final int to) {
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    int next = from;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < to;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (next >= to) {
+                            throw new NoSuchElementException();
+                        }
+                        return lemma(next++);
+                    }
+                };
+            }
+        };
+    }
+
+    private String lemma(int i) {
+        int start = data.getInt(lemmaOffsetsStart + i * 4);
+        int end = data.getInt(lemmaOffsetsStart + (i + 1) * 4);
+        return decode(lemmasStart + start, end - start);
+    }
+
+    /**
+     * First lemma not smaller than key, or with afterPrefix the first lemma after all lemmas starting with key
+     */
+    private int lowerBound(byte[] key, boolean afterPrefix) {
+        int lo = 0;
+        int hi = lemmaCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compareLemma(mid, key, afterPrefix);
+            if (c < 0 || (afterPrefix && c == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int compareLemma(int i, byte[] key, boolean prefix) {
+        int start = lemmasStart + data.getInt(lemmaOffsetsStart + i * 4);
+        int end = lemmasStart + data.getInt(lemmaOffsetsStart + (i + 1) * 4);
+        return compare(start, end, key, prefix);
+    }
+
+    private int suffixBound(byte[] key, boolean afterPrefix) {
+        int lo = 0;
+        int hi = suffixCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int suffix = data.getInt(suffixesStart + mid * 4);
+            int end = data.getInt(lemmaOffsetsStart + (lemmaOf(suffix) + 1) * 4);
+            int c = compare(lemmasStart + suffix, lemmasStart + end, key, true);
+            if (c < 0 || (afterPrefix && c == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Compares mapped bytes to a key, with prefix a string that starts with the key compares equal
+     */
+    private int compare(int start, int end, byte[] key, boolean prefix) {
+        int length = Math.min(end - start, key.length);
+        for (int i = 0; i < length; i++) {
+            int c = (data.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        if (prefix && end - start >= key.length) {
+            return 0;
+        }
+        return (end - start) - key.length;
+    }
+
+    private int lemmaOf(int offset) {
+        int lo = 0;
+        int hi = lemmaCount - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (data.getInt(lemmaOffsetsStart + mid * 4) <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    private static int lemmaOf(int[] offsets, int offset) {
+        int i = Arrays.binarySearch(offsets, 0, offsets.length - 1, offset);
+        if (i < 0) {
+            return -i - 2;
+        }
+        //Empty lemmas share their offset with the next lemma
+        while (i + 1 < offsets.length - 1 && offsets[i + 1] == offset) {
+            i++;
+        }
+        return i;
+    }
+
+    private byte[] bytes(int position, int length) {
+        byte[] b = new byte[length];
+        ByteBuffer slice = data.duplicate();
+        slice.position(position);
+        slice.get(b);
+        return b;
+    }
+
+    private String decode(int position, int length) {
+        return new String(bytes(position, length), StandardCharsets.UTF_8);
+    }
+
+    private static final Comparator<byte[]> UNSIGNED = new Comparator<byte[]>() {
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                int c = (a[i] & 0xff) - (b[i] & 0xff);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+}
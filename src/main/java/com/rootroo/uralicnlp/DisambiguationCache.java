@@ -0,0 +1,202 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded least recently used cache for Cg3 disambiguation results.
+ * Results are copied on the way in and on the way out, so callers can freely modify what they get.
+ * @author mikahama
+ */
+public class DisambiguationCache {
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, ArrayList<ArrayList<Cg3Word>>> entries;
+    private long hits = 0;
+    private long misses = 0;
+    //Not synchronized, so that waiting virtual threads do not pin their carrier thread
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Initializes an empty cache
+     * @param maxEntries maximum number of sentences kept in the cache
+     */
+    public DisambiguationCache(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Key, ArrayList<ArrayList<Cg3Word>>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ArrayList<ArrayList<Cg3Word>>> eldest) {
+                return size() > DisambiguationCache.this.maxEntries;
+            }
+        };
+    }
+
+    ArrayList<ArrayList<Cg3Word>> get(Key key) {
+        lock.lock();
+        try {
+            ArrayList<ArrayList<Cg3Word>> result = entries.get(key);
+            if (result == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            return copy(result);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(Key key, ArrayList<ArrayList<Cg3Word>> result) {
+        lock.lock();
+        try {
+            entries.put(key, copy(result));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of lookups that were answered from the cache
+     * @return cache hits
+     */
+    public long getHits() {
+        lock.lock();
+        try {
+            return hits;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of lookups that had to run the full disambiguation
+     * @return cache misses
+     */
+    public long getMisses() {
+        lock.lock();
+        try {
+            return misses;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Share of lookups answered from the cache
+     * @return hit rate between 0 and 1, 0 if the cache has not been used yet
+     */
+    public double getHitRate() {
+        lock.lock();
+        try {
+            long total = hits + misses;
+            if (total == 0) {
+                return 0;
+            }
+            return (double) hits / total;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of sentences currently in the cache
+     * @return cache size
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Maximum number of sentences kept in the cache
+     * @return cache capacity
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Empties the cache and resets the hit and miss counters
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+            hits = 0;
+            misses = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static ArrayList<ArrayList<Cg3Word>> copy(ArrayList<ArrayList<Cg3Word>> result) {
+        ArrayList<ArrayList<Cg3Word>> c = new ArrayList<ArrayList<Cg3Word>>(result.size());
+        for (ArrayList<Cg3Word> readings : result) {
+            ArrayList<Cg3Word> r = new ArrayList<Cg3Word>(readings.size());
+            for (Cg3Word word : readings) {
+                r.add(new Cg3Word(word));
+            }
+            c.add(r);
+        }
+        return c;
+    }
+
+    /**
+     * Everything that affects the output of a disambiguation
+     */
+    static class Key {
+
+        private final String language;
+        private final boolean descriptive;
+        private final String morphologyIgnoreAfter;
+        private final boolean removeSymbols;
+        private final boolean languageFlags;
+        private final long grammarModified;
+        private final List<String> words;
+        private final int hash;
+
+        Key(String language, boolean descriptive, String morphologyIgnoreAfter, boolean removeSymbols, boolean languageFlags, long grammarModified, List<String> words) {
+            this.language = language;
+            this.descriptive = descriptive;
+            this.morphologyIgnoreAfter = morphologyIgnoreAfter;
+            this.removeSymbols = removeSymbols;
+            this.languageFlags = languageFlags;
+            this.grammarModified = grammarModified;
+            this.words = new ArrayList<String>(words);
+            this.hash = Arrays.hashCode(new Object[]{language, descriptive, morphologyIgnoreAfter, removeSymbols, languageFlags, grammarModified, this.words});
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            return hash == k.hash && descriptive == k.descriptive && removeSymbols == k.removeSymbols
+                    && languageFlags == k.languageFlags && grammarModified == k.grammarModified
+                    && language.equals(k.language)
+                    && (morphologyIgnoreAfter == null ? k.morphologyIgnoreAfter == null : morphologyIgnoreAfter.equals(k.morphologyIgnoreAfter))
+                    && words.equals(k.words);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import fi.seco.hfst.FlagDiacriticOperation;
+import fi.seco.hfst.HfstOptimizedLookup.FlagDiacriticOperator;
+import fi.seco.hfst.TransducerAlphabet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Approximate lookup: finds the analyses of the words within a Levenshtein distance of the input in one walk
+ * over the transducer. The walk keeps track of the edits used so far, so that branches are cut as soon as
+ * they would need more than maxDistance edits. Insertions, deletions and substitutions cost one edit each
+ * and only involve single character symbols, never tags. A budget on visited states and time keeps the
+ * latency of long or very damaged words bounded; when it runs out, the results found so far are returned.
+ * A FuzzyLookup holds only settings and can be shared between threads; a lookup uses the budget set when
+ * it starts.
+ * @author mikahama
+ */
+public class FuzzyLookup {
+
+    private static final int MATCH = 0;
+    private static final int INSERT = 1;
+    private static final int DELETE = 2;
+    private static final int MAX_DEPTH = 1000;
+
+    private final int maxDistance;
+    private volatile long maxExpansions = 200000;
+    private volatile long timeoutNanos = 50000000L;
+    private volatile int maxResults = 20;
+
+    /**
+     * Initializes a lookup with the default budget: 200000 visited states, 50 ms and 20 results
+     * @param maxDistance maximum number of edits
+     */
+    public FuzzyLookup(int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("maxDistance must not be negative");
+        }
+        this.maxDistance = maxDistance;
+    }
+
+    /**
+     * Sets how many transducer states one lookup may visit
+     * @param maxExpansions visited states
+     */
+    public void setMaxExpansions(long maxExpansions) {
+        this.maxExpansions = maxExpansions;
+    }
+
+    /**
+     * Sets how long one lookup may take
+     * @param timeoutMillis milliseconds, 0 or less for no time limit
+     */
+    public void setTimeout(long timeoutMillis) {
+        this.timeoutNanos = timeoutMillis * 1000000L;
+    }
+
+    /**
+     * Sets how many results are returned
+     * @param maxResults number of best results kept
+     */
+    public void setMaxResults(int maxResults) {
+        this.maxResults = maxResults;
+    }
+
+    /**
+     * Gets the maximum number of edits
+     * @return edit distance
+     */
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+
+    /**
+     * Looks up a word
+     * @param transducer transducer loaded by UralicApi
+     * @param word the word
+     * @return the best results, sorted by distance and then weight
+     */
+    List<FuzzyResult> lookup(TraversableTransducer transducer, String word) {
+        int maxResults = this.maxResults;
+        Search search = new Search(transducer, word);
+        search.visit(0, 0, 0, 0f, new int[transducer.alphabet().features], MATCH, 0);
+        if (search.truncated && Metrics.isEnabled()) {
+            Metrics.getRecorder().count(Metrics.FUZZY_TRUNCATED, 1);
+        }
+        List<FuzzyResult> results = new ArrayList<FuzzyResult>(search.results.values());
+        Collections.sort(results);
+        if (results.size() > maxResults) {
+            results = new ArrayList<FuzzyResult>(results.subList(0, maxResults));
+        }
+        return results;
+    }
+
+    /**
+     * The state of one lookup
+     */
+    private class Search {
+
+        final TraversableTransducer t;
+        final TransducerAlphabet alphabet;
+        final int[] input;
+        final boolean[] editable;
+        final int[] editableSymbols;
+        final HashMap<String, FuzzyResult> results = new HashMap<String, FuzzyResult>();
+        final long deadline;
+        final long maxExpansions = FuzzyLookup.this.maxExpansions;
+        int[] output = new int[64];
+        long expansions = 0;
+        boolean truncated = false;
+
+        Search(TraversableTransducer t, String word) {
+            this.t = t;
+            this.alphabet = t.alphabet();
+            this.deadline = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : Long.MAX_VALUE;
+            int symbols = t.inputSymbolCount();
+            editable = new boolean[symbols];
+            List<Integer> e = new ArrayList<Integer>();
+            for (int s = 1; s < symbols; s++) {
+                String key = alphabet.keyTable.get(s);
+                if (!alphabet.operations.containsKey(s) && key.codePointCount(0, key.length()) == 1) {
+                    editable[s] = true;
+                    e.add(s);
+                }
+            }
+            editableSymbols = new int[e.size()];
+            for (int i = 0; i < editableSymbols.length; i++) {
+                editableSymbols[i] = e.get(i);
+            }
+            input = tokenize(word, symbols);
+        }
+
+        /**
+         * Longest match over the input symbols, characters the transducer does not know become -1
+         */
+        private int[] tokenize(String word, int symbols) {
+            List<Integer> tokens = new ArrayList<Integer>();
+            int i = 0;
+            while (i < word.length()) {
+                int best = -1;
+                int bestLength = 0;
+                for (int s = 1; s < symbols; s++) {
+                    String key = alphabet.keyTable.get(s);
+                    if (key.length() > bestLength && !alphabet.operations.containsKey(s) && word.startsWith(key, i)) {
+                        best = s;
+                        bestLength = key.length();
+                    }
+                }
+                if (best < 0) {
+                    bestLength = Character.charCount(word.codePointAt(i));
+                }
+                tokens.add(best);
+                i += bestLength;
+            }
+            int[] r = new int[tokens.size()];
+            for (int j = 0; j < r.length; j++) {
+                r[j] = tokens.get(j);
+            }
+            return r;
+        }
+
+        private boolean outOfBudget(int depth) {
+            if (truncated) {
+                return true;
+            }
+            if (++expansions > maxExpansions || depth > MAX_DEPTH || ((expansions & 1023) == 0 && System.nanoTime() > deadline)) {
+                truncated = true;
+            }
+            return truncated;
+        }
+
+        /**
+         * Visits a state, depth is the number of output symbols so far
+         */
+        void visit(long target, int pos, int edits, float weight, int[] flags, int lastOp, int depth) {
+            if (outOfBudget(depth)) {
+                return;
+            }
+            int state;
+            if (target >= TraversableTransducer.TRANSITION_TARGET_TABLE_START) {
+                state = (int) (target - TraversableTransducer.TRANSITION_TARGET_TABLE_START);
+                epsilons(state + 1, pos, edits, weight, flags, lastOp, depth);
+                if (pos == input.length && t.transitionFinal(state)) {
+                    note(depth, weight + t.transitionWeight(state), edits);
+                }
+                //Like hfst, only the symbol run right after the state header is followed
+                int sym = t.transitionInput(state + 1);
+                if (sym != 0 && sym != TraversableTransducer.NO_SYMBOL && !alphabet.operations.containsKey(sym)) {
+                    symbolRun(state + 1, sym, pos, edits, weight, flags, lastOp, depth);
+                }
+            } else {
+                state = (int) target;
+                if (t.indexInput(state + 1) == 0) {
+                    epsilons(pivot(t.indexTarget(state + 1)), pos, edits, weight, flags, lastOp, depth);
+                }
+                if (pos == input.length && t.indexFinal(state)) {
+                    note(depth, weight + t.indexFinalWeight(state), edits);
+                }
+                int next = pos < input.length ? input[pos] : -1;
+                if (next > 0) {
+                    indexRun(state, next, pos, edits, weight, flags, lastOp, depth);
+                }
+                if (edits < maxDistance) {
+                    for (int sym : editableSymbols) {
+                        if (sym != next) {
+                            indexRun(state, sym, pos, edits, weight, flags, lastOp, depth);
+                        }
+                    }
+                }
+            }
+            if (edits < maxDistance && pos < input.length && lastOp != INSERT) {
+                //The input has a character too many: skip it
+                visit(target, pos + 1, edits + 1, weight, flags, DELETE, depth);
+            }
+        }
+
+        private void indexRun(int state, int sym, int pos, int edits, float weight, int[] flags, int lastOp, int depth) {
+            int cell = state + 1 + sym;
+            if (t.indexInput(cell) == sym) {
+                symbolRun(pivot(t.indexTarget(cell)), sym, pos, edits, weight, flags, lastOp, depth);
+            }
+        }
+
+        private void symbolRun(int i, int sym, int pos, int edits, float weight, int[] flags, int lastOp, int depth) {
+            boolean match = pos < input.length && input[pos] == sym;
+            boolean edit = edits < maxDistance && editable[sym];
+            if (!match && !edit) {
+                return;
+            }
+            for (; t.transitionInput(i) == sym; i++) {
+                push(depth, t.transitionOutput(i));
+                float w = weight + t.transitionWeight(i);
+                long target = t.transitionTarget(i);
+                if (match) {
+                    visit(target, pos + 1, edits, w, flags, MATCH, depth + 1);
+                } else {
+                    if (pos < input.length) {
+                        //Substitution
+                        visit(target, pos + 1, edits + 1, w, flags, MATCH, depth + 1);
+                    }
+                    if (lastOp != DELETE) {
+                        //The input is missing this character
+                        visit(target, pos, edits + 1, w, flags, INSERT, depth + 1);
+                    }
+                }
+                if (truncated) {
+                    return;
+                }
+            }
+        }
+
+        private void epsilons(int i, int pos, int edits, float weight, int[] flags, int lastOp, int depth) {
+            while (true) {
+                int in = t.transitionInput(i);
+                FlagDiacriticOperation op = alphabet.operations.get(in);
+                int[] nextFlags = flags;
+                if (op != null) {
+                    nextFlags = applyFlag(op, flags);
+                    if (nextFlags == null) {
+                        i++;
+                        continue;
+                    }
+                } else if (in != 0) {
+                    return;
+                }
+                push(depth, t.transitionOutput(i));
+                visit(t.transitionTarget(i), pos, edits, weight + t.transitionWeight(i), nextFlags, lastOp, depth + 1);
+                if (truncated) {
+                    return;
+                }
+                i++;
+            }
+        }
+
+        private void push(int depth, int symbol) {
+            if (depth >= output.length) {
+                int[] grown = new int[output.length * 2];
+                System.arraycopy(output, 0, grown, 0, output.length);
+                output = grown;
+            }
+            output[depth] = symbol;
+        }
+
+        private void note(int depth, float weight, int edits) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < depth; i++) {
+                sb.append(alphabet.keyTable.get(output[i]));
+            }
+            String reading = sb.toString();
+            FuzzyResult old = results.get(reading);
+            FuzzyResult r = new FuzzyResult(reading, weight, edits);
+            if (old == null || r.compareTo(old) < 0) {
+                results.put(reading, r);
+            }
+        }
+    }
+
+    private static int pivot(long target) {
+        if (target >= TraversableTransducer.TRANSITION_TARGET_TABLE_START) {
+            return (int) (target - TraversableTransducer.TRANSITION_TARGET_TABLE_START);
+        }
+        return (int) target;
+    }
+
+    /**
+     * Flag diacritic semantics of hfst, returns the new feature values or null if the flag blocks the path
+     */
+    static int[] applyFlag(FlagDiacriticOperation op, int[] flags) {
+        int current = flags[op.feature];
+        FlagDiacriticOperator o = op.op;
+        int set;
+        if (o == FlagDiacriticOperator.P) {
+            set = op.value;
+        } else if (o == FlagDiacriticOperator.N) {
+            set = -op.value;
+        } else if (o == FlagDiacriticOperator.R) {
+            boolean ok = op.value == 0 ? current != 0 : current == op.value;
+            return ok ? flags : null;
+        } else if (o == FlagDiacriticOperator.D) {
+            boolean ok = op.value == 0 ? current == 0 : current != op.value;
+            return ok ? flags : null;
+        } else if (o == FlagDiacriticOperator.C) {
+            set = 0;
+        } else {
+            //U: unify with an unset, equal or negated other value
+            if (current == 0 || current == op.value || (current < 0 && -current != op.value)) {
+                set = op.value;
+            } else {
+                return null;
+            }
+        }
+        int[] copy = flags.clone();
+        copy[op.feature] = set;
+        return copy;
+    }
+}
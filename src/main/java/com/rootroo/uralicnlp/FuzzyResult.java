@@ -0,0 +1,65 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+/**
+ * An analysis found by an approximate lookup
+ * @author mikahama
+ */
+public class FuzzyResult implements Comparable<FuzzyResult> {
+
+    private final String reading;
+    private final float weight;
+    private final int distance;
+
+    FuzzyResult(String reading, float weight, int distance) {
+        this.reading = reading;
+        this.weight = weight;
+        this.distance = distance;
+    }
+
+    /**
+     * Gets the reading e.g. "koira+N+Sg+Nom"
+     * @return the reading
+     */
+    public String getReading() {
+        return reading;
+    }
+
+    /**
+     * Gets the weight given by the model
+     * @return weight, 0 for unweighted models
+     */
+    public float getWeight() {
+        return weight;
+    }
+
+    /**
+     * Gets the number of edits between the looked up word and the word the transducer recognized
+     * @return edit distance, 0 for an exact match
+     */
+    public int getDistance() {
+        return distance;
+    }
+
+    /**
+     * Smaller distance first, then smaller weight
+     */
+    @Override
+    public int compareTo(FuzzyResult o) {
+        if (distance != o.distance) {
+            return Integer.compare(distance, o.distance);
+        }
+        if (weight != o.weight) {
+            return Float.compare(weight, o.weight);
+        }
+        return reading.compareTo(o.reading);
+    }
+
+    @Override
+    public String toString() {
+        return reading + " (distance " + distance + ", weight " + weight + ")";
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An example MetricsRecorder that keeps totals in memory, e.g. for printing a summary at the end of a batch job:
+ * <pre>
+ * InMemoryMetricsRecorder metrics = new InMemoryMetricsRecorder();
+ * Metrics.setRecorder(metrics);
+ * ...
+ * System.out.println(metrics);
+ * </pre>
+ * Adapters for other metrics systems follow the same pattern: look up or create the meter by name and tags,
+ * then update it.
+ * @author mikahama
+ */
+public class InMemoryMetricsRecorder implements MetricsRecorder {
+
+    private final ConcurrentHashMap<String, Summary> summaries = new ConcurrentHashMap<>();
+
+    @Override
+    public void count(String name, long amount, String... tags) {
+        summary("counter", name, tags).add(amount);
+    }
+
+    @Override
+    public void time(String name, long nanos, String... tags) {
+        summary("timer", name, tags).add(nanos / 1e6);
+    }
+
+    @Override
+    public void record(String name, double value, String... tags) {
+        summary("histogram", name, tags).add(value);
+    }
+
+    /**
+     * Gets the totals of one metric
+     * @param name metric name
+     * @param tags name, value pairs
+     * @return the totals, null if nothing has been recorded. Times are in milliseconds.
+     */
+    public Summary get(String name, String... tags) {
+        return summaries.get(key(name, tags));
+    }
+
+    /**
+     * Gets the totals of all metrics, keyed by name and tags e.g. "uralicnlp.lookup{operation=analyze,language=fin}"
+     * @return the totals sorted by key
+     */
+    public Map<String, Summary> getAll() {
+        return new TreeMap<>(summaries);
+    }
+
+    /**
+     * Forgets everything recorded so far
+     */
+    public void clear() {
+        summaries.clear();
+    }
+
+    private Summary summary(String type, String name, String[] tags) {
+        String key = key(name, tags);
+        Summary s = summaries.get(key);
+        if (s == null) {
+            s = summaries.computeIfAbsent(key, k -> new Summary(type));
+        }
+        return s;
+    }
+
+    private static String key(String name, String[] tags) {
+        if (tags.length == 0) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(name).append('{');
+        for (int i = 0; i + 1 < tags.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(tags[i]).append('=').append(tags[i + 1]);
+        }
+        return sb.append('}').toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Summary> e : getAll().entrySet()) {
+            sb.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Count, sum, min and max of one metric
+     */
+    public static class Summary {
+
+        private final String type;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final DoubleAccumulator min = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        private final DoubleAccumulator max = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+        Summary(String type) {
+            this.type = type;
+        }
+
+        void add(double value) {
+            count.increment();
+            sum.add(value);
+            min.accumulate(value);
+            max.accumulate(value);
+        }
+
+        /**
+         * Kind of the metric
+         * @return counter, timer or histogram
+         */
+        public String getType() {
+            return type;
+        }
+
+        /**
+         * Number of recorded values
+         * @return count
+         */
+        public long getCount() {
+            return count.sum();
+        }
+
+        /**
+         * Sum of recorded values, the total of a counter
+         * @return sum
+         */
+        public double getSum() {
+            return sum.sum();
+        }
+
+        /**
+         * Smallest recorded value
+         * @return min
+         */
+        public double getMin() {
+            return min.get();
+        }
+
+        /**
+         * Largest recorded value
+         * @return max
+         */
+        public double getMax() {
+            return max.get();
+        }
+
+        /**
+         * Average of recorded values
+         * @return mean, 0 if nothing has been recorded
+         */
+        public double getMean() {
+            long n = getCount();
+            return n == 0 ? 0 : getSum() / n;
+        }
+
+        @Override
+        public String toString() {
+            if (type.equals("counter")) {
+                return String.format("count=%.0f", getSum());
+            }
+            String unit = type.equals("timer") ? "ms" : "";
+            return String.format("n=%d mean=%.3f%s min=%.3f%s max=%.3f%s", getCount(), getMean(), unit, getMin(), unit, getMax(), unit);
+        }
+    }
+}
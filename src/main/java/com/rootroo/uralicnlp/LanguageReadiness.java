@@ -0,0 +1,28 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+/**
+ * Preloading state of the models of a language
+ * @author mikahama
+ */
+public enum LanguageReadiness {
+    /**
+     * The language has not been preloaded, models are loaded on first use
+     */
+    NOT_LOADED,
+    /**
+     * Models are being loaded or warmed up
+     */
+    LOADING,
+    /**
+     * All requested models are loaded and warmed up
+     */
+    READY,
+    /**
+     * At least one of the requested models could not be loaded
+     */
+    FAILED
+}
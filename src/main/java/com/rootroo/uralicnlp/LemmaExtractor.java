@@ -0,0 +1,341 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.List;
+
+/**
+ * Extracts the lemma out of a morphological reading. Each language family formats its readings
+ * differently, so UralicApi resolves one extractor per language and reuses it for every reading.
+ * @author mikahama
+ */
+public abstract class LemmaExtractor {
+
+    /**
+     * Extracts the lemma of a reading
+     * @param reading a reading from analyze e.g. "koira+N+Sg+Nom"
+     * @param bound string that joins the parts of a compound, empty for no word boundaries
+     * @return the lemma
+     */
+    public abstract String extract(String reading, String bound);
+
+    /**
+     * Extracts the lemma straight from the output symbols of a transducer lookup
+     * @param symbols output symbols of a result e.g. ["k", "o", "i", "r", "a", "+N", "+Sg", "+Nom"]
+     * @param bound string that joins the parts of a compound, empty for no word boundaries
+     * @return the lemma
+     */
+    public String extract(List<String> symbols, String bound) {
+        StringBuilder reading = new StringBuilder();
+        for (String symbol : symbols) {
+            reading.append(symbol);
+        }
+        return extract(reading.toString(), bound);
+    }
+
+    /**
+     * Gets the built in extractor for a language
+     * @param language ISO code of the language
+     * @return lemma extractor
+     */
+    public static LemmaExtractor forLanguage(String language) {
+        if (language.equals("swe")) {
+            return new SwedishLemmaExtractor();
+        } else if (language.equals("ara")) {
+            return new ArabicLemmaExtractor();
+        } else if (language.equals("fin_hist")) {
+            return new HistoricalFinnishLemmaExtractor();
+        } else {
+            return new GiellaLemmaExtractor(language.equals("eng"));
+        }
+    }
+
+    /**
+     * Appends text with every [start, end] delimited span replaced, like replaceAll("[start].*?[end]", replacement)
+     */
+    static void replaceSpans(String text, int from, int to, char start, char end, String replacement, StringBuilder out) {
+        int i = from;
+        while (i < to) {
+            char c = text.charAt(i);
+            if (c == start) {
+                int close = text.indexOf(end, i + 1);
+                if (close < 0 || close >= to) {
+                    out.append(text, i, to);
+                    return;
+                }
+                out.append(replacement);
+                i = close + 1;
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Readings like "voida+V+Act+Ind+Prs+Sg1" and "luuta+N+Sg+Nom+Cmp#piiri+N+Sg+Nom", with Apertium style
+     * readings like "cat&lt;n&gt;&lt;pl&gt;" detected per reading
+     */
+    static class GiellaLemmaExtractor extends LemmaExtractor {
+
+        private static final String COMPOUND = "+Cmp#";
+        private final boolean removeBrackets;
+
+        GiellaLemmaExtractor(boolean removeBrackets) {
+            this.removeBrackets = removeBrackets;
+        }
+
+        @Override
+        public String extract(String reading, String bound) {
+            if (reading.indexOf('<') >= 0 && reading.indexOf('>') >= 0) {
+                return extractApertium(reading, bound);
+            }
+            String separator = COMPOUND;
+            if (reading.indexOf('#') >= 0 && !reading.contains(COMPOUND)) {
+                separator = "#";
+            }
+            StringBuilder lemma = new StringBuilder(reading.length());
+            int pendingBounds = 0;
+            boolean first = true;
+            int from = 0;
+            while (true) {
+                int idx = reading.indexOf(separator, from);
+                int to = idx < 0 ? reading.length() : idx;
+                if (!first) {
+                    pendingBounds++;
+                }
+                if (to > from || (idx < 0 && first)) {
+                    //String.split semantics: trailing empty parts are dropped
+                    for (int b = 0; b < pendingBounds; b++) {
+                        lemma.append(bound);
+                    }
+                    pendingBounds = 0;
+                    int plus = reading.indexOf('+', from);
+                    int end = plus < 0 || plus > to ? to : plus;
+                    if (removeBrackets) {
+                        replaceSpans(reading, from, end, '[', ']', "", lemma);
+                    } else {
+                        lemma.append(reading, from, end);
+                    }
+                }
+                first = false;
+                if (idx < 0) {
+                    break;
+                }
+                from = idx + separator.length();
+            }
+            return lemma.toString();
+        }
+
+        @Override
+        public String extract(List<String> symbols, String bound) {
+            //First pass: which separator does the reading use, without joining the symbols
+            boolean hasHash = false;
+            boolean hasLt = false;
+            boolean hasGt = false;
+            boolean hasCompound = false;
+            int matched = 0;
+            for (int i = 0; i < symbols.size(); i++) {
+                String symbol = symbols.get(i);
+                for (int j = 0; j < symbol.length(); j++) {
+                    char c = symbol.charAt(j);
+                    if (c == '#') {
+                        hasHash = true;
+                    } else if (c == '<') {
+                        hasLt = true;
+                    } else if (c == '>') {
+                        hasGt = true;
+                    }
+                    matched = matchCompound(matched, c);
+                    if (matched == COMPOUND.length()) {
+                        hasCompound = true;
+                        matched = 0;
+                    }
+                }
+            }
+            if (hasLt && hasGt) {
+                return super.extract(symbols, bound);
+            }
+
+            //Second pass: copy lemma characters up to the first tag of every compound part
+            StringBuilder lemma = new StringBuilder();
+            StringBuilder part = new StringBuilder();
+            boolean inLemma = true;
+            boolean confirmed = false;
+            int pendingBounds = 0;
+            matched = 0;
+            for (int i = 0; i < symbols.size(); i++) {
+                String symbol = symbols.get(i);
+                if (!inLemma && confirmed && !hasCompound && !hasHash) {
+                    //Only tags left and no more compound parts to come
+                    break;
+                }
+                for (int j = 0; j < symbol.length(); j++) {
+                    char c = symbol.charAt(j);
+                    boolean separator = false;
+                    if (hasCompound) {
+                        int before = matched;
+                        matched = matchCompound(matched, c);
+                        if (matched == COMPOUND.length()) {
+                            separator = true;
+                            matched = 0;
+                        } else if (matched != before + 1 || matched == 0) {
+                            //c and the characters of a failed partial match belong to the part
+                            if (!confirmed) {
+                                confirmed = true;
+                                pendingBounds = appendBounds(lemma, bound, pendingBounds);
+                            }
+                        }
+                    } else if (hasHash && c == '#') {
+                        separator = true;
+                    } else if (!confirmed) {
+                        confirmed = true;
+                        pendingBounds = appendBounds(lemma, bound, pendingBounds);
+                    }
+                    if (separator) {
+                        endPart(lemma, part);
+                        pendingBounds++;
+                        inLemma = true;
+                        confirmed = false;
+                        continue;
+                    }
+                    if (inLemma) {
+                        if (c == '+') {
+                            inLemma = false;
+                        } else {
+                            if (!confirmed) {
+                                confirmed = true;
+                                pendingBounds = appendBounds(lemma, bound, pendingBounds);
+                            }
+                            part.append(c);
+                        }
+                    }
+                }
+            }
+            if (matched > 0 && !confirmed) {
+                appendBounds(lemma, bound, pendingBounds);
+            }
+            endPart(lemma, part);
+            return lemma.toString();
+        }
+
+        private static int matchCompound(int matched, char c) {
+            if (c == COMPOUND.charAt(matched)) {
+                return matched + 1;
+            }
+            return c == '+' ? 1 : 0;
+        }
+
+        private static int appendBounds(StringBuilder lemma, String bound, int pendingBounds) {
+            for (int b = 0; b < pendingBounds; b++) {
+                lemma.append(bound);
+            }
+            return 0;
+        }
+
+        private void endPart(StringBuilder lemma, StringBuilder part) {
+            if (removeBrackets) {
+                replaceSpans(part.toString(), 0, part.length(), '[', ']', "", lemma);
+            } else {
+                lemma.append(part);
+            }
+            part.setLength(0);
+        }
+
+        private static String extractApertium(String reading, String bound) {
+            StringBuilder lemma = new StringBuilder(reading.length());
+            int pendingBounds = 0;
+            boolean first = true;
+            int from = 0;
+            while (true) {
+                int idx = reading.indexOf('+', from);
+                int to = idx < 0 ? reading.length() : idx;
+                if (!first) {
+                    pendingBounds++;
+                }
+                if (to > from) {
+                    for (int b = 0; b < pendingBounds; b++) {
+                        lemma.append(bound);
+                    }
+                    pendingBounds = 0;
+                    int tag = reading.indexOf('<', from);
+                    lemma.append(reading, from, tag < 0 || tag > to ? to : tag);
+                }
+                first = false;
+                if (idx < 0) {
+                    break;
+                }
+                from = idx + 1;
+            }
+            return lemma.toString();
+        }
+    }
+
+    /**
+     * Readings like "hund&lt;n&gt;valp&lt;n&gt;&lt;sg&gt;", every tag becomes a boundary
+     */
+    static class SwedishLemmaExtractor extends LemmaExtractor {
+
+        @Override
+        public String extract(String reading, String bound) {
+            StringBuilder lemma = new StringBuilder(reading.length());
+            replaceSpans(reading, 0, reading.length(), '<', '>', bound, lemma);
+            if (bound.length() > 0) {
+                char b = bound.charAt(0);
+                int end = lemma.length();
+                while (end > 0 && lemma.charAt(end - 1) == b) {
+                    end--;
+                }
+                lemma.setLength(end);
+            }
+            return lemma.toString();
+        }
+    }
+
+    /**
+     * Arabic readings, the lemma is the Arabic script in the reading
+     */
+    static class ArabicLemmaExtractor extends LemmaExtractor {
+
+        @Override
+        public String extract(String reading, String bound) {
+            return StringProcessing.filterArabic(reading, true, bound);
+        }
+    }
+
+    /**
+     * Historical Finnish readings where each part of the lemma is in a [WORD_ID=...] tag
+     */
+    static class HistoricalFinnishLemmaExtractor extends LemmaExtractor {
+
+        private static final String WORD_ID = "WORD_ID=";
+
+        @Override
+        public String extract(String reading, String bound) {
+            //Same matches as the regex (?<=WORD_ID=)[^\]]* including the empty ones
+            StringBuilder lemma = new StringBuilder();
+            boolean first = true;
+            int from = 0;
+            int idx = reading.indexOf(WORD_ID);
+            while (idx >= 0) {
+                int start = idx + WORD_ID.length();
+                if (start >= from) {
+                    int end = reading.indexOf(']', start);
+                    if (end < 0) {
+                        end = reading.length();
+                    }
+                    if (!first) {
+                        lemma.append(bound);
+                    }
+                    lemma.append(reading, start, end);
+                    first = false;
+                    from = end > start ? end : end + 1;
+                }
+                idx = reading.indexOf(WORD_ID, idx + 1);
+            }
+            return lemma.toString();
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Builds LexiconTable files out of the analyser of a language. The forms come from a frequency list,
+ * from a corpus, or from the whole analyser when its lexicon is finite.
+ * <pre>
+ * LexiconExporter exporter = new LexiconExporter(api, "fin");
+ * exporter.export(exporter.readCorpus(Paths.get("corpus.txt"), 1000000), Paths.get("analyser.lexicon"));
+ * api.loadLexicon("fin", "analyser.lexicon");
+ * </pre>
+ * @author mikahama
+ */
+public class LexiconExporter {
+
+    private final UralicApi api;
+    private final String language;
+    private boolean descriptive = true;
+    private boolean dictionaryForms = false;
+    private boolean negativeEntries = true;
+
+    /**
+     * Initializes an exporter for the default analyser of a language
+     * @param api UralicApi with the models of the language
+     * @param language ISO code of the language
+     */
+    public LexiconExporter(UralicApi api, String language) {
+        this.api = api;
+        this.language = language;
+    }
+
+    /**
+     * Chooses the analyser to export
+     * @param descriptive true -> descriptive model, false -> normative model
+     * @param dictionaryForms true -> dictionary model
+     */
+    public void setModel(boolean descriptive, boolean dictionaryForms) {
+        this.descriptive = descriptive;
+        this.dictionaryForms = dictionaryForms;
+    }
+
+    /**
+     * Sets whether forms without analyses are stored, so that looking them up skips the transducer too
+     * @param negativeEntries true to store forms without analyses (default true)
+     */
+    public void setNegativeEntries(boolean negativeEntries) {
+        this.negativeEntries = negativeEntries;
+    }
+
+    /**
+     * Reads the most frequent forms from a frequency list. Each line has a form, optionally followed by
+     * a tab and its count. Without counts the order of the file is taken as the frequency order.
+     * @param frequencyList UTF-8 text file
+     * @param topN maximum number of forms
+     * @return forms, most frequent first
+     * @throws IOException if the file cannot be read
+     */
+    public List<String> readFrequencyList(Path frequencyList, int topN) throws IOException {
+        final LinkedHashMap<String, Long> counts = new LinkedHashMap<String, Long>();
+        try (BufferedReader reader = Files.newBufferedReader(frequencyList, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                String form = tab < 0 ? line.trim() : line.substring(0, tab).trim();
+                if (form.length() == 0) {
+                    continue;
+                }
+                long count = 0;
+                if (tab >= 0) {
+                    try {
+                        count = Long.parseLong(line.substring(tab + 1).trim());
+                    } catch (NumberFormatException ex) {
+                        throw new IOException("Not a count on line: " + line);
+                    }
+                }
+                Long old = counts.get(form);
+                counts.put(form, old == null ? count : old + count);
+            }
+        }
+        return top(counts, topN);
+    }
+
+    /**
+     * Counts the word forms of a corpus and returns the most frequent ones
+     * @param corpus UTF-8 text file, tokenized line by line with Tokenizer
+     * @param topN maximum number of forms
+     * @return forms, most frequent first
+     * @throws IOException if the file cannot be read
+     */
+    public List<String> readCorpus(Path corpus, int topN) throws IOException {
+        Tokenizer tokenizer = new Tokenizer();
+        LinkedHashMap<String, Long> counts = new LinkedHashMap<String, Long>();
+        try (BufferedReader reader = Files.newBufferedReader(corpus, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                for (String word : tokenizer.words(line)) {
+                    Long old = counts.get(word);
+                    counts.put(word, old == null ? 1 : old + 1);
+                }
+            }
+        }
+        return top(counts, topN);
+    }
+
+    private static List<String> top(final Map<String, Long> counts, int topN) {
+        List<String> forms = new ArrayList<String>(counts.keySet());
+        //Stable, so forms without counts keep their order
+        Collections.sort(forms, new Comparator<String>() {
+            @Override
+            public int compare(String a, String b) {
+                return Long.compare(counts.get(b), counts.get(a));
+            }
+        });
+        if (forms.size() > topN) {
+            forms = new ArrayList<String>(forms.subList(0, topN));
+        }
+        return forms;
+    }
+
+    /**
+     * Analyzes the forms with the transducer and writes them into a table
+     * @param forms word forms
+     * @param tableFile path of the table to write
+     * @return number of forms written
+     * @throws IOException if the models are not downloaded or the table cannot be written
+     */
+    public int export(Collection<String> forms, Path tableFile) throws IOException {
+        return export(forms, tableFile, negativeEntries);
+    }
+
+    private int export(Collection<String> forms, Path tableFile, boolean negativeEntries) throws IOException {
+        String model = api.getModelName(true, descriptive, dictionaryForms);
+        long[] stamp = api.getModelStamp(language, model);
+        HashMap<String, HashMap<String, Float>> entries = new HashMap<String, HashMap<String, Float>>();
+        for (String form : new LinkedHashSet<String>(forms)) {
+            HashMap<String, Float> readings = api.analyzeWithTransducer(form, language, model);
+            if (readings.size() > 0 || negativeEntries) {
+                entries.put(form, readings);
+            }
+        }
+        LexiconTable.write(model, stamp[0], stamp[1], entries, tableFile);
+        return entries.size();
+    }
+
+    /**
+     * Exports every form the analyser recognizes. Only works for analysers without cycles, i.e. without
+     * productive compounding or derivation.
+     * @param tableFile path of the table to write
+     * @param maxForms the export fails if the analyser has more forms than this
+     * @return number of forms written
+     * @throws IOException if the analyser is cyclic or too large, or the table cannot be written
+     */
+    public int exportLexicon(Path tableFile, int maxForms) throws IOException {
+        String model = api.getModelName(true, descriptive, dictionaryForms);
+        TraversableTransducer t = (TraversableTransducer) api.loadTransducer(language, model);
+        LinkedHashSet<String> forms = new LinkedHashSet<String>();
+        enumerate(t, 0, new StringBuilder(), new HashSet<Long>(), forms, maxForms);
+        //Forms blocked by flag diacritics have no analyses, they are not worth storing
+        return export(forms, tableFile, false);
+    }
+
+    /**
+     * Collects the input side strings of all paths to a final state
+     */
+    private static void enumerate(TraversableTransducer t, long target, StringBuilder form, Set<Long> onPath, Set<String> forms, int maxForms) throws IOException {
+        if (!onPath.add(target)) {
+            throw new IOException("The analyser is cyclic, its lexicon cannot be enumerated");
+        }
+        List<Integer> runs = new ArrayList<Integer>();
+        boolean isFinal;
+        if (target >= TraversableTransducer.TRANSITION_TARGET_TABLE_START) {
+            int state = (int) (target - TraversableTransducer.TRANSITION_TARGET_TABLE_START);
+            isFinal = t.transitionFinal(state);
+            runs.add(state + 1);
+        } else {
+            int state = (int) target;
+            isFinal = t.indexFinal(state);
+            for (int sym = 0; sym < t.inputSymbolCount(); sym++) {
+                if (t.indexInput(state + 1 + sym) == sym) {
+                    runs.add(pivot(t.indexTarget(state + 1 + sym)));
+                }
+            }
+        }
+        if (isFinal && forms.add(form.toString()) && forms.size() > maxForms) {
+            throw new IOException("The analyser has more than " + maxForms + " forms");
+        }
+        for (int start : runs) {
+            int first = t.transitionInput(start);
+            boolean epsilonRun = first == 0 || t.alphabet().operations.containsKey(first);
+            for (int i = start; ; i++) {
+                int in = t.transitionInput(i);
+                if (in == TraversableTransducer.NO_SYMBOL) {
+                    break;
+                }
+                boolean epsilon = in == 0 || t.alphabet().operations.containsKey(in);
+                if (epsilonRun ? !epsilon : in != first) {
+                    break;
+                }
+                int length = form.length();
+                if (!epsilon) {
+                    form.append(t.alphabet().keyTable.get(in));
+                }
+                enumerate(t, t.transitionTarget(i), form, onPath, forms, maxForms);
+                form.setLength(length);
+            }
+        }
+        onPath.remove(target);
+    }
+
+    private static int pivot(long target) {
+        if (target >= TraversableTransducer.TRANSITION_TARGET_TABLE_START) {
+            return (int) (target - TraversableTransducer.TRANSITION_TARGET_TABLE_START);
+        }
+        return (int) target;
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A precomputed table of word forms and their analyses, memory mapped and searched in place.
+ * Forms are sorted by their UTF-8 bytes, so a lookup is a binary search over the key offsets,
+ * narrowed by a table of where each first byte starts. Nothing is decoded except the readings of a hit.
+ * A form with no readings is a negative entry: the analyser is known to have no analyses for it.
+ * The size and modification time of the transducer file are stored too, so that a table exported from
+ * an older transducer is noticed when it is loaded.
+ * <pre>
+ * "UNLPLEX1" int version, int count, int keysStart, int valuesStart, short modelLength, UTF-8 model,
+ * long transducer size, long transducer modification time in milliseconds
+ * int[257] first index of each first byte, int[count + 1] key offsets, int[count] value offsets
+ * keys: UTF-8 forms back to back
+ * values: short readingCount, readingCount times: float weight, short length, UTF-8 reading
+ * </pre>
+ * All numbers are big endian. Offsets are relative to keysStart and valuesStart.
+ * @author mikahama
+ */
+public class LexiconTable {
+
+    static final byte[] MAGIC = "UNLPLEX1".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 2;
+
+    private final ByteBuffer data;
+    private final String model;
+    private final long modelSize;
+    private final long modelModified;
+    private final int count;
+    private final int bucketsStart;
+    private final int keyOffsetsStart;
+    private final int valueOffsetsStart;
+    private final int keysStart;
+    private final int valuesStart;
+
+    private LexiconTable(ByteBuffer data) throws IOException {
+        this.data = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        ByteBuffer header = this.data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        if (header.remaining() < MAGIC.length + 18) {
+            throw new IOException("Not a lexicon table");
+        }
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a lexicon table");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported lexicon table version " + version);
+        }
+        count = header.getInt();
+        keysStart = header.getInt();
+        valuesStart = header.getInt();
+        byte[] modelBytes = new byte[header.getShort() & 0xffff];
+        header.get(modelBytes);
+        model = new String(modelBytes, StandardCharsets.UTF_8);
+        if (header.remaining() < 16) {
+            throw new IOException("Lexicon table is truncated");
+        }
+        modelSize = header.getLong();
+        modelModified = header.getLong();
+        bucketsStart = header.position();
+        keyOffsetsStart = bucketsStart + 257 * 4;
+        valueOffsetsStart = keyOffsetsStart + (count + 1) * 4;
+        if (count < 0 || keysStart < valueOffsetsStart + count * 4 || valuesStart < keysStart || valuesStart > this.data.capacity()) {
+            throw new IOException("Lexicon table is truncated");
+        }
+    }
+
+    /**
+     * Opens a table by memory mapping it
+     * @param tableFile path to the table
+     * @return the table
+     * @throws IOException if the file cannot be read or is not a lexicon table
+     */
+    public static LexiconTable open(Path tableFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(tableFile, StandardOpenOption.READ)) {
+            return new LexiconTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes a table without information about its transducer, so it is never found stale
+     * @param model name of the model the analyses come from, e.g. analyser
+     * @param entries forms and their readings with weights, an empty map marks a form without analyses
+     * @param tableFile path of the table to write
+     * @throws IOException if the file cannot be written or the table would exceed 2 GB
+     */
+    public static void write(String model, Map<String, ? extends Map<String, Float>> entries, Path tableFile) throws IOException {
+        write(model, 0, 0, entries, tableFile);
+    }
+
+    /**
+     * Writes a table
+     * @param model name of the model the analyses come from, e.g. analyser
+     * @param modelSize size of the transducer file in bytes, 0 if not known
+     * @param modelModified modification time of the transducer file in milliseconds, 0 if not known
+     * @param entries forms and their readings with weights, an empty map marks a form without analyses
+     * @param tableFile path of the table to write
+     * @throws IOException if the file cannot be written or the table would exceed 2 GB
+     */
+    public static void write(String model, long modelSize, long modelModified, Map<String, ? extends Map<String, Float>> entries, Path tableFile) throws IOException {
+        TreeMap<byte[], Map<String, Float>> sorted = new TreeMap<byte[], Map<String, Float>>(new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] a, byte[] b) {
+                return compareUnsigned(a, b);
+            }
+        });
+        for (Map.Entry<String, ? extends Map<String, Float>> e : entries.entrySet()) {
+            sorted.put(e.getKey().getBytes(StandardCharsets.UTF_8), e.getValue());
+        }
+        int count = sorted.size();
+        byte[] modelBytes = model.getBytes(StandardCharsets.UTF_8);
+
+        int[] buckets = new int[257];
+        int[] keyOffsets = new int[count + 1];
+        int[] valueOffsets = new int[count];
+        ByteArrayBuilder keys = new ByteArrayBuilder();
+        ByteArrayBuilder values = new ByteArrayBuilder();
+        int negative = -1;
+        Arrays.fill(buckets, -1);
+        int i = 0;
+        for (Map.Entry<byte[], Map<String, Float>> e : sorted.entrySet()) {
+            byte[] key = e.getKey();
+            int first = key.length == 0 ? 0 : key[0] & 0xff;
+            if (buckets[first] < 0) {
+                buckets[first] = i;
+            }
+            keyOffsets[i] = keys.size();
+            keys.put(key);
+            Map<String, Float> readings = e.getValue();
+            if (readings.isEmpty() && negative >= 0) {
+                //All negative entries share one record
+                valueOffsets[i] = negative;
+            } else {
+                valueOffsets[i] = values.size();
+                if (readings.isEmpty()) {
+                    negative = values.size();
+                }
+                values.putShort(readings.size());
+                for (Map.Entry<String, Float> r : readings.entrySet()) {
+                    byte[] reading = r.getKey().getBytes(StandardCharsets.UTF_8);
+                    values.putFloat(r.getValue());
+                    values.putShort(reading.length);
+                    values.put(reading);
+                }
+            }
+            i++;
+        }
+        keyOffsets[count] = keys.size();
+        buckets[256] = count;
+        for (int b = 255; b >= 0; b--) {
+            if (buckets[b] < 0) {
+                buckets[b] = buckets[b + 1];
+            }
+        }
+
+        long headerSize = MAGIC.length + 4 * 4 + 2 + modelBytes.length + 16 + 257 * 4 + (count + 1) * 4L + count * 4L;
+        long total = headerSize + keys.size() + values.size();
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Lexicon table would be larger than 2 GB, export fewer forms");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) total).order(ByteOrder.BIG_ENDIAN);
+        out.put(MAGIC).putInt(VERSION).putInt(count).putInt((int) headerSize).putInt((int) headerSize + keys.size());
+        out.putShort((short) modelBytes.length).put(modelBytes);
+        out.putLong(modelSize).putLong(modelModified);
+        for (int b : buckets) {
+            out.putInt(b);
+        }
+        for (int o : keyOffsets) {
+            out.putInt(o);
+        }
+        for (int o : valueOffsets) {
+            out.putInt(o);
+        }
+        out.put(keys.array(), 0, keys.size());
+        out.put(values.array(), 0, values.size());
+
+        Path temp = tableFile.resolveSibling(tableFile.getFileName() + ".tmp");
+        Files.write(temp, out.array());
+        Files.move(temp, tableFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Gets the name of the model the analyses were exported from
+     * @return model name e.g. analyser
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Tells whether the table was exported from a different transducer file than the given one. A table or
+     * a file without the information is never stale, and only the size is compared if a time is missing.
+     * @param size size of the transducer file in bytes, 0 if not known
+     * @param modified modification time of the transducer file in milliseconds, 0 if not known
+     * @return true if the transducer has changed since the export
+     */
+    public boolean isStale(long size, long modified) {
+        if (modelSize == 0 || size == 0) {
+            return false;
+        }
+        return modelSize != size || (modelModified != 0 && modified != 0 && modelModified != modified);
+    }
+
+    /**
+     * Number of forms in the table
+     * @return form count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Looks up a form
+     * @param form a word form
+     * @return readings and weights, an empty map for a negative entry, null if the form is not in the table
+     */
+    public HashMap<String, Float> lookup(String form) {
+        byte[] key = form.getBytes(StandardCharsets.UTF_8);
+        int first = key.length == 0 ? 0 : key[0] & 0xff;
+        int lo = data.getInt(bucketsStart + first * 4);
+        int hi = data.getInt(bucketsStart + (first + 1) * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int start = keysStart + data.getInt(keyOffsetsStart + mid * 4);
+            int end = keysStart + data.getInt(keyOffsetsStart + (mid + 1) * 4);
+            int c = compareMapped(start, end, key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return readings(valuesStart + data.getInt(valueOffsetsStart + mid * 4));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets all forms in byte order
+     * @return the forms
+     */
+    public List<String> getForms() {
+        List<String> forms = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            int start = keysStart + data.getInt(keyOffsetsStart + i * 4);
+            int end = keysStart + data.getInt(keyOffsetsStart + (i + 1) * 4);
+            forms.add(decode(start, end - start));
+        }
+        return forms;
+    }
+
+    private HashMap<String, Float> readings(int position) {
+        int n = data.getShort(position) & 0xffff;
+        position += 2;
+        HashMap<String, Float> result = new HashMap<String, Float>();
+        for (int i = 0; i < n; i++) {
+            float weight = data.getFloat(position);
+            int length = data.getShort(position + 4) & 0xffff;
+            result.put(decode(position + 6, length), weight);
+            position += 6 + length;
+        }
+        return result;
+    }
+
+    private String decode(int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = data.duplicate();
+        slice.position(position);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int compareMapped(int start, int end, byte[] key) {
+        int length = Math.min(end - start, key.length);
+        for (int i = 0; i < length; i++) {
+            int c = (data.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return (end - start) - key.length;
+    }
+
+    private static int compareUnsigned(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int c = (a[i] & 0xff) - (b[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    /**
+     * A growable big endian byte array
+     */
+    private static class ByteArrayBuilder {
+
+        private byte[] bytes = new byte[4096];
+        private int size = 0;
+
+        int size() {
+            return size;
+        }
+
+        byte[] array() {
+            return bytes;
+        }
+
+        private void ensure(int extra) throws IOException {
+            if ((long) size + extra > Integer.MAX_VALUE - 8) {
+                throw new IOException("Lexicon table would be larger than 2 GB, export fewer forms");
+            }
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(Integer.MAX_VALUE - 8L, Math.max(bytes.length * 2L, size + extra)));
+            }
+        }
+
+        void put(byte[] b) throws IOException {
+            ensure(b.length);
+            System.arraycopy(b, 0, bytes, size, b.length);
+            size += b.length;
+        }
+
+        void putShort(int v) throws IOException {
+            if (v > 0xffff) {
+                throw new IOException("Value too long for a lexicon table: " + v);
+            }
+            ensure(2);
+            bytes[size++] = (byte) (v >>> 8);
+            bytes[size++] = (byte) v;
+        }
+
+        void putFloat(float f) throws IOException {
+            int v = Float.floatToIntBits(f);
+            ensure(4);
+            bytes[size++] = (byte) (v >>> 24);
+            bytes[size++] = (byte) (v >>> 16);
+            bytes[size++] = (byte) (v >>> 8);
+            bytes[size++] = (byte) v;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+/**
+ * Holds the MetricsRecorder that the library reports to. Nothing is measured until a recorder is set,
+ * the default recorder discards everything and the clock is not even read.
+ * @author mikahama
+ */
+public final class Metrics {
+
+    /**
+     * Timer, loading a transducer from disk or a bundle. Tags: language, model
+     */
+    public static final String TRANSDUCER_LOAD = "uralicnlp.transducer.load";
+    /**
+     * Histogram, estimated memory use of a loaded transducer in bytes. Tags: language, model
+     */
+    public static final String TRANSDUCER_BYTES = "uralicnlp.transducer.bytes";
+    /**
+     * Counter, transducer requests answered from the cache. Tags: language, model
+     */
+    public static final String TRANSDUCER_CACHE_HIT = "uralicnlp.transducer.cache.hit";
+    /**
+     * Counter, transducer requests that had to load the transducer. Tags: language, model
+     */
+    public static final String TRANSDUCER_CACHE_MISS = "uralicnlp.transducer.cache.miss";
+    /**
+     * Timer, one analyze, generate or lemmatize call. Tags: operation, language, model
+     */
+    public static final String LOOKUP = "uralicnlp.lookup";
+    /**
+     * Histogram, number of results of one lookup. Tags: operation, language, model
+     */
+    public static final String LOOKUP_RESULTS = "uralicnlp.lookup.results";
+    /**
+     * Counter, approximate lookups that ran out of their budget before the search was complete
+     */
+    public static final String FUZZY_TRUNCATED = "uralicnlp.fuzzy.truncated";
+    /**
+     * Counter, paradigm generations that stopped at the form limit or their budget
+     */
+    public static final String PARADIGM_TRUNCATED = "uralicnlp.paradigm.truncated";
+    /**
+     * Counter, words found in a loaded lexicon table. Tags: language, model
+     */
+    public static final String LEXICON_HIT = "uralicnlp.lexicon.hit";
+    /**
+     * Counter, words not in the lexicon table, analyzed with the transducer. Tags: language, model
+     */
+    public static final String LEXICON_MISS = "uralicnlp.lexicon.miss";
+    /**
+     * Timer, one stage of Cg3.disambiguate. Tags: stage (analyze, spawn, process, parse), language
+     */
+    public static final String CG3_STAGE = "uralicnlp.cg3.stage";
+    /**
+     * Counter, sentences answered from the disambiguation cache. Tags: language
+     */
+    public static final String CG3_CACHE_HIT = "uralicnlp.cg3.cache.hit";
+    /**
+     * Counter, sentences that had to be disambiguated. Tags: language
+     */
+    public static final String CG3_CACHE_MISS = "uralicnlp.cg3.cache.miss";
+    /**
+     * Timer, one Tokenizer call. Tags: method (sentences, words, tokenize, stream)
+     */
+    public static final String TOKENIZER = "uralicnlp.tokenizer";
+    /**
+     * Counter, characters tokenized. Tags: method
+     */
+    public static final String TOKENIZER_CHARS = "uralicnlp.tokenizer.chars";
+    /**
+     * Timer, analyzing one batch of an AnalyzingTokenSink. Tags: language
+     */
+    public static final String TOKEN_SINK_BATCH = "uralicnlp.tokensink.batch";
+    /**
+     * Counter, distinct tokens analyzed by an AnalyzingTokenSink. Tags: language
+     */
+    public static final String TOKEN_SINK_TOKENS = "uralicnlp.tokensink.tokens";
+    /**
+     * Timer, parsing a CoNLL-U collection
+     */
+    public static final String UD_LOAD = "uralicnlp.ud.load";
+    /**
+     * Counter, sentences parsed into UD collections
+     */
+    public static final String UD_SENTENCES = "uralicnlp.ud.sentences";
+    /**
+     * Timer, waiting for a free slot of a language in UralicService
+     */
+    public static final String SERVICE_WAIT = "uralicnlp.service.wait";
+    /**
+     * Counter, UralicService requests rejected because a language had no free slot in time
+     */
+    public static final String SERVICE_REJECTED = "uralicnlp.service.rejected";
+
+    /**
+     * A recorder that discards everything
+     */
+    public static final MetricsRecorder NOOP = new MetricsRecorder() {
+        @Override
+        public void count(String name, long amount, String... tags) {
+        }
+
+        @Override
+        public void time(String name, long nanos, String... tags) {
+        }
+
+        @Override
+        public void record(String name, double value, String... tags) {
+        }
+    };
+
+    private static volatile MetricsRecorder recorder = NOOP;
+
+    private Metrics() {
+    }
+
+    /**
+     * Sets the recorder for the whole library
+     * @param recorder the recorder, null restores the no-op default
+     */
+    public static void setRecorder(MetricsRecorder recorder) {
+        Metrics.recorder = recorder == null ? NOOP : recorder;
+    }
+
+    /**
+     * Gets the current recorder
+     * @return the recorder, NOOP if none is set
+     */
+    public static MetricsRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * Tells whether a recorder is set
+     * @return false if measurements are discarded
+     */
+    public static boolean isEnabled() {
+        return recorder != NOOP;
+    }
+
+    /**
+     * Start time for a timer, 0 when metrics are off so that the clock is not read
+     */
+    static long start() {
+        return recorder != NOOP ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Reports the time elapsed since start, if metrics are on
+     */
+    static void stop(String name, long start, String... tags) {
+        MetricsRecorder r = recorder;
+        if (r != NOOP && start != 0) {
+            r.time(name, System.nanoTime() - start, tags);
+        }
+    }
+}
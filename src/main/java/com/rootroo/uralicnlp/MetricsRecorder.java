@@ -0,0 +1,39 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+/**
+ * Receives measurements from UralicApi, Cg3, Tokenizer and UDCollection. Implement this to bridge
+ * the library to a metrics system and register it with Metrics.setRecorder. Tags are given as
+ * name, value pairs, e.g. "language", "fin", "model", "analyser". The metric names are listed in Metrics.
+ * Implementations are called from many threads and should return quickly.
+ * @author mikahama
+ */
+public interface MetricsRecorder {
+
+    /**
+     * Adds to a counter
+     * @param name metric name
+     * @param amount amount to add
+     * @param tags name, value pairs
+     */
+    void count(String name, long amount, String... tags);
+
+    /**
+     * Records the duration of an operation
+     * @param name metric name
+     * @param nanos duration in nanoseconds
+     * @param tags name, value pairs
+     */
+    void time(String name, long nanos, String... tags);
+
+    /**
+     * Records a value into a histogram, e.g. the number of results of a lookup
+     * @param name metric name
+     * @param value recorded value
+     * @param tags name, value pairs
+     */
+    void record(String name, double value, String... tags);
+}
@@ -0,0 +1,340 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single file that holds all the models of a language.
+ * The file starts with a table of entry names, offsets and lengths, followed by the entries.
+ * Every entry starts at a 4096 byte boundary and is memory mapped on its own, so a bundle can be larger
+ * than 2 GB as long as each model is smaller. Models are parsed straight from their mapping without copying
+ * the file into the heap first, the parsed transducers still live on the heap.
+ * <pre>
+ * "UNLPBNDL" int version, int entryCount
+ * entryCount times: short nameLength, UTF-8 name, long offset, long length
+ * zero padding, then the entries at their offsets
+ * </pre>
+ * All numbers are big endian.
+ * @author mikahama
+ */
+public class ModelBundle {
+
+    static final byte[] MAGIC = "UNLPBNDL".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int ALIGNMENT = 4096;
+    //the files of a language folder that write packs, not indexes, lexicon tables or other bundles
+    static final List<String> MODEL_FILES = Collections.unmodifiableList(Arrays.asList(
+            "analyser", "analyser-norm", "analyser-dict", "generator-desc", "generator-norm", "generator", "cg", "metadata.json"));
+
+    private final LinkedHashMap<String, ByteBuffer> entries;
+
+    private ModelBundle(LinkedHashMap<String, ByteBuffer> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the entry table
+     * @param header a buffer starting at the beginning of the bundle
+     * @param size size of the whole bundle
+     * @return entry name to offset and length
+     */
+    private static LinkedHashMap<String, long[]> readHeader(ByteBuffer header, long size) throws IOException {
+        header.order(ByteOrder.BIG_ENDIAN);
+        LinkedHashMap<String, long[]> table = new LinkedHashMap<String, long[]>();
+        byte[] magic = new byte[MAGIC.length];
+        if (header.remaining() < MAGIC.length + 8) {
+            throw new IOException("Not a model bundle");
+        }
+        header.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a model bundle");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model bundle version " + version);
+        }
+        try {
+            int count = header.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[header.getShort() & 0xffff];
+                header.get(name);
+                long offset = header.getLong();
+                long length = header.getLong();
+                if (offset < 0 || length < 0 || offset + length > size) {
+                    throw new IOException("Model bundle is truncated");
+                }
+                table.put(new String(name, StandardCharsets.UTF_8), new long[]{offset, length});
+            }
+        } catch (BufferUnderflowException ex) {
+            throw new IOException("Model bundle is truncated");
+        }
+        return table;
+    }
+
+    /**
+     * Opens a bundle from the file system by memory mapping each model in it
+     * @param bundleFile path to the bundle
+     * @return the bundle
+     * @throws IOException Fails if the file cannot be read, is not a bundle or has a model larger than 2 GB
+     */
+    public static ModelBundle open(Path bundleFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(bundleFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            //the table is at the start, a mapping is only address space until it is read
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+            LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<String, ByteBuffer>();
+            for (Map.Entry<String, long[]> e : readHeader(header, size).entrySet()) {
+                long[] entry = e.getValue();
+                if (entry[1] > Integer.MAX_VALUE) {
+                    throw new IOException("Model " + e.getKey() + " is larger than 2 GB");
+                }
+                entries.put(e.getKey(), channel.map(FileChannel.MapMode.READ_ONLY, entry[0], entry[1]).asReadOnlyBuffer());
+            }
+            return new ModelBundle(entries);
+        }
+    }
+
+    /**
+     * Opens a bundle from the classpath. Bundles that are plain files on the classpath are memory mapped,
+     * bundles inside a JAR are read into memory and must be smaller than 2 GB.
+     * @param resourceName name of the resource e.g. "models/fin.bundle"
+     * @return the bundle
+     * @throws IOException Fails if the resource cannot be found or is not a bundle
+     */
+    public static ModelBundle fromClasspath(String resourceName) throws IOException {
+        URL url = ModelBundle.class.getClassLoader().getResource(resourceName);
+        if (url == null) {
+            throw new IOException("Resource " + resourceName + " not found");
+        }
+        if ("file".equals(url.getProtocol())) {
+            try {
+                return open(Paths.get(url.toURI()));
+            } catch (URISyntaxException ex) {
+                //fall back to reading the stream
+            }
+        }
+        try (InputStream in = url.openStream(); ReadableByteChannel channel = Channels.newChannel(in)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20);
+            while (channel.read(buffer) != -1) {
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer bigger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                    buffer.flip();
+                    bigger.put(buffer);
+                    buffer = bigger;
+                }
+            }
+            buffer.flip();
+            LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<String, ByteBuffer>();
+            for (Map.Entry<String, long[]> e : readHeader(buffer.duplicate(), buffer.limit()).entrySet()) {
+                ByteBuffer view = buffer.duplicate();
+                view.position((int) e.getValue()[0]);
+                view.limit((int) (e.getValue()[0] + e.getValue()[1]));
+                entries.put(e.getKey(), view.slice().asReadOnlyBuffer());
+            }
+            return new ModelBundle(entries);
+        }
+    }
+
+    /**
+     * Packs the model files of a language folder into a bundle: the transducers, the CG grammar and
+     * metadata.json. Other files such as dictionary indexes, lexicon tables and old bundles are left out.
+     * @param languageFolder a folder with models e.g. ~/.uralicnlp/fin
+     * @param bundleFile where to write the bundle
+     * @throws IOException Fails if the files cannot be read or the bundle cannot be written
+     */
+    public static void write(Path languageFolder, Path bundleFile) throws IOException {
+        List<File> files = new ArrayList<File>();
+        for (String model : MODEL_FILES) {
+            File f = languageFolder.resolve(model).toFile();
+            if (f.isFile()) {
+                files.add(f);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IOException("No models to bundle in " + languageFolder);
+        }
+        Collections.sort(files);
+
+        int headerSize = MAGIC.length + 8;
+        List<byte[]> names = new ArrayList<byte[]>();
+        for (File f : files) {
+            byte[] name = f.getName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            headerSize += 2 + name.length + 16;
+        }
+        long[] offsets = new long[files.size()];
+        long position = align(headerSize);
+        for (int i = 0; i < files.size(); i++) {
+            offsets[i] = position;
+            position = align(position + files.get(i).length());
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.BIG_ENDIAN);
+        header.put(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            header.putShort((short) names.get(i).length);
+            header.put(names.get(i));
+            header.putLong(offsets[i]);
+            header.putLong(files.get(i).length());
+        }
+        header.flip();
+
+        Path tmp = bundleFile.resolveSibling(bundleFile.getFileName().toString() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (int i = 0; i < files.size(); i++) {
+                try (FileChannel in = FileChannel.open(files.get(i).toPath(), StandardOpenOption.READ)) {
+                    long size = in.size();
+                    long done = 0;
+                    while (done < size) {
+                        done += in.transferTo(done, size - done, out.position(offsets[i] + done));
+                    }
+                }
+            }
+            if (out.size() < position) {
+                out.write(ByteBuffer.allocate(1), position - 1);
+            }
+        }
+        Files.move(tmp, bundleFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * Names of the models in the bundle
+     * @return model file names e.g. analyser, generator, cg
+     */
+    public List<String> getEntryNames() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    /**
+     * Checks if the bundle has a model
+     * @param name model file name e.g. analyser
+     * @return true if the model is in the bundle
+     */
+    public boolean hasEntry(String name) {
+        return entries.containsKey(name);
+    }
+
+    /**
+     * Gets a read only view to the bytes of a model, no data is copied
+     * @param name model file name e.g. analyser
+     * @return the model bytes or null if the bundle does not have the model
+     */
+    public ByteBuffer getEntry(String name) {
+        ByteBuffer entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        return entry.duplicate();
+    }
+
+    /**
+     * Opens a model in the bundle for reading
+     * @param name model file name e.g. analyser
+     * @return a stream over the model bytes
+     * @throws IOException Fails if the bundle does not have the model
+     */
+    public InputStream openEntry(String name) throws IOException {
+        ByteBuffer entry = getEntry(name);
+        if (entry == null) {
+            throw new IOException("Model " + name + " is not in the bundle");
+        }
+        return new ByteBufferInputStream(entry);
+    }
+
+    /**
+     * Copies a model out of the bundle, for tools that need a real file such as vislcg3
+     * @param name model file name e.g. cg
+     * @param target where to write the model
+     * @throws IOException Fails if the bundle does not have the model or the file cannot be written
+     */
+    public void extract(String name, Path target) throws IOException {
+        ByteBuffer entry = getEntry(name);
+        if (entry == null) {
+            throw new IOException("Model " + name + " is not in the bundle");
+        }
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (entry.hasRemaining()) {
+                out.write(entry);
+            }
+        }
+    }
+
+    /**
+     * An InputStream over a ByteBuffer
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int k = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + k);
+            return k;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+/**
+ * Downloads the model files of one or more languages concurrently.
+ * Files are written to a .part file first and renamed in place once complete, an interrupted download
+ * is resumed with an HTTP Range request. If metadata.json of a language has a "checksums" object
+ * e.g. {"checksums": {"analyser": "sha256:9f86d0..."}}, the downloaded files are verified against it.
+ * The algorithm prefix is optional and defaults to SHA-256.
+ * @author mikahama
+ */
+public class ModelDownloader {
+
+    private static final String PART_SUFFIX = ".part";
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+
+    private final String serverUrl;
+    private int parallelism = 4;
+    private int connectTimeout = 30000;
+    private int readTimeout = 60000;
+    private boolean verbose = true;
+
+    /**
+     * Initializes a downloader
+     * @param serverUrl base URL of the model server, ending with a slash
+     */
+    public ModelDownloader(String serverUrl) {
+        this.serverUrl = serverUrl;
+    }
+
+    /**
+     * Sets how many files are downloaded at the same time
+     * @param parallelism number of concurrent downloads (default 4)
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the connect and read timeouts of the HTTP connections
+     * @param connectTimeout connect timeout in milliseconds
+     * @param readTimeout read timeout in milliseconds
+     */
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Set to false to stop printing a line for every downloaded file
+     * @param verbose print progress (default true)
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Lists the model files of a language
+     * @param language ISO code of the language
+     * @return A map from local file names to paths relative to the language folder on the server
+     */
+    public static LinkedHashMap<String, String> modelFiles(String language) {
+        LinkedHashMap<String, String> urlMap = new LinkedHashMap<String, String>();
+        urlMap.put("metadata.json", "metadata.json");
+        urlMap.put("analyser", "analyser-gt-desc.hfstol");
+        urlMap.put("analyzer.pt", "../neural/" + language + "_analyzer_nmt-model_step_100000.pt");
+        urlMap.put("generator.pt", "../neural/" + language + "_generator_nmt-model_step_100000.pt");
+        urlMap.put("lemmatizer.pt", "../neural/" + language + "_lemmatizer_nmt-model_step_100000.pt");
+        urlMap.put("analyser-norm", "analyser-gt-norm.hfstol");
+        urlMap.put("analyser-dict", "analyser-dict-gt-norm.hfstol");
+        urlMap.put("generator-desc", "generator-gt-desc.hfstol");
+        urlMap.put("generator-norm", "generator-gt-norm.hfstol");
+        urlMap.put("generator", "generator-dict-gt-norm.hfstol");
+        urlMap.put("cg", "disambiguator.bin");
+        urlMap.put("dictionary.json", "dictionary.json");
+        return urlMap;
+    }
+
+    /**
+     * Downloads all the models of the given languages. Metadata files are fetched first so that
+     * checksums are known before the models arrive.
+     * @param languages ISO codes of the languages
+     * @param modelPath folder that holds one sub folder per language
+     * @return The files that could not be downloaded (language/file) and the reason. Not all languages have all the models, so some failures are to be expected.
+     */
+    public Map<String, Exception> download(Collection<String> languages, String modelPath) {
+        Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        try {
+            Map<String, Future<?>> metadataJobs = new LinkedHashMap<String, Future<?>>();
+            for (String language : languages) {
+                Path languageFolder = Paths.get(modelPath, language);
+                try {
+                    Files.createDirectories(languageFolder);
+                } catch (IOException ex) {
+                    failures.put(language, ex);
+                    continue;
+                }
+                metadataJobs.put(language, executor.submit(downloadJob(language, "metadata.json", "metadata.json", languageFolder, null)));
+            }
+
+            Map<String, Future<?>> jobs = new LinkedHashMap<String, Future<?>>();
+            for (Map.Entry<String, Future<?>> metadataJob : metadataJobs.entrySet()) {
+                String language = metadataJob.getKey();
+                Path languageFolder = Paths.get(modelPath, language);
+                waitFor(language + "/metadata.json", metadataJob.getValue(), failures);
+                Map<String, String> checksums = readChecksums(languageFolder.resolve("metadata.json"));
+                for (Map.Entry<String, String> file : modelFiles(language).entrySet()) {
+                    if ("metadata.json".equals(file.getKey())) {
+                        continue;
+                    }
+                    jobs.put(language + "/" + file.getKey(), executor.submit(downloadJob(language, file.getKey(), file.getValue(), languageFolder, checksums.get(file.getKey()))));
+                }
+            }
+            for (Map.Entry<String, Future<?>> job : jobs.entrySet()) {
+                waitFor(job.getKey(), job.getValue(), failures);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return failures;
+    }
+
+    private void waitFor(String name, Future<?> job, Map<String, Exception> failures) {
+        try {
+            job.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            failures.put(name, cause instanceof Exception ? (Exception) cause : ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            failures.put(name, ex);
+        }
+    }
+
+    private Callable<Void> downloadJob(final String language, final String fileName, final String remoteName, final Path languageFolder, final String checksum) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                downloadFile(serverUrl + language + "/" + remoteName, languageFolder.resolve(fileName), checksum);
+                if (verbose) {
+                    System.out.println("Downloaded model " + fileName + " for language " + language);
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Downloads a single file, resuming a previous partial download if there is one
+     * @param url URL of the file
+     * @param target where to save the file
+     * @param checksum expected checksum e.g. "sha256:9f86d0...", can be null
+     * @throws IOException Fails if the file cannot be downloaded or the checksum does not match
+     */
+    public void downloadFile(String url, Path target, String checksum) throws IOException {
+        Path part = target.resolveSibling(target.getFileName().toString() + PART_SUFFIX);
+        long existing = Files.exists(part) ? Files.size(part) : 0;
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        if (existing > 0) {
+            connection.setRequestProperty("Range", "bytes=" + existing + "-");
+        }
+        try {
+            int status = connection.getResponseCode();
+            if (status == 416 && existing > 0) {
+                //The partial file is already complete or the server does not agree with its size
+                connection.disconnect();
+                Files.delete(part);
+                downloadFile(url, target, checksum);
+                return;
+            }
+            if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL) {
+                throw new IOException("Server returned HTTP " + status + " for " + url);
+            }
+            boolean append = status == HttpURLConnection.HTTP_PARTIAL;
+            try (InputStream in = connection.getInputStream();
+                    ReadableByteChannel source = Channels.newChannel(in);
+                    FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                long position = append ? existing : 0;
+                out.truncate(position);
+                long n;
+                while ((n = out.transferFrom(source, position, TRANSFER_CHUNK)) > 0) {
+                    position += n;
+                }
+                long expected = connection.getContentLengthLong();
+                if (expected != -1 && position != (append ? existing : 0) + expected) {
+                    throw new IOException("Download of " + url + " ended prematurely");
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+
+        if (checksum != null) {
+            verifyChecksum(part, checksum);
+        }
+        try {
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void verifyChecksum(Path file, String checksum) throws IOException {
+        String algorithm = "SHA-256";
+        String expected = checksum;
+        int colon = checksum.indexOf(':');
+        if (colon > 0) {
+            algorithm = checksum.substring(0, colon).toUpperCase();
+            if (algorithm.startsWith("SHA") && !algorithm.startsWith("SHA-")) {
+                algorithm = "SHA-" + algorithm.substring(3);
+            }
+            expected = checksum.substring(colon + 1);
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException("Unsupported checksum algorithm " + algorithm, ex);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        StringBuilder actual = new StringBuilder();
+        for (byte b : digest.digest()) {
+            actual.append(String.format("%02x", b & 0xff));
+        }
+        if (!actual.toString().equalsIgnoreCase(expected.trim())) {
+            Files.delete(file);
+            throw new IOException("Checksum mismatch for " + file.getFileName() + ", expected " + expected + " got " + actual);
+        }
+    }
+
+    private static Map<String, String> readChecksums(Path metadata) {
+        Map<String, String> checksums = new HashMap<String, String>();
+        if (!Files.exists(metadata)) {
+            return checksums;
+        }
+        try (Reader reader = Files.newBufferedReader(metadata, StandardCharsets.UTF_8)) {
+            Object json = new JSONParser().parse(reader);
+            if (json instanceof JSONObject) {
+                Object sums = ((JSONObject) json).get("checksums");
+                if (sums instanceof JSONObject) {
+                    for (Object key : ((JSONObject) sums).keySet()) {
+                        Object value = ((JSONObject) sums).get(key);
+                        if (value != null) {
+                            checksums.put(key.toString(), value.toString());
+                        }
+                    }
+                }
+            }
+        } catch (Exception ex) {
+            //Metadata without checksums or in an unknown format is not an error
+        }
+        return checksums;
+    }
+}
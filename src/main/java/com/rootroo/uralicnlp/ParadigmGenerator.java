@@ -0,0 +1,271 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import fi.seco.hfst.FlagDiacriticOperation;
+import fi.seco.hfst.TransducerAlphabet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Generates all the forms matching a pattern such as "talo+N+*+*" in one walk over a generator transducer.
+ * The lemma is followed symbol by symbol once, and the walk branches only on the tags, so a whole paradigm
+ * costs about as much as the lookups of its distinct forms. Each "+..." part of the pattern matches exactly
+ * one tag symbol; * in it matches any characters, e.g. "+Px*" matches every possessive suffix tag.
+ * A ParadigmGenerator holds only settings and can be shared between threads; a call uses the limits
+ * set when it starts.
+ * @author mikahama
+ */
+public class ParadigmGenerator {
+
+    private static final int MAX_DEPTH = 1000;
+
+    private volatile int maxForms = 10000;
+    private volatile long maxExpansions = 5000000;
+
+    /**
+     * Sets how many forms one call may return, the walk stops when the limit is reached
+     * @param maxForms number of forms
+     */
+    public void setMaxForms(int maxForms) {
+        this.maxForms = maxForms;
+    }
+
+    /**
+     * Sets how many transducer states one call may visit
+     * @param maxExpansions visited states
+     */
+    public void setMaxExpansions(long maxExpansions) {
+        this.maxExpansions = maxExpansions;
+    }
+
+    /**
+     * Generates the forms matching a pattern
+     * @param transducer generator loaded by UralicApi
+     * @param pattern lemma and tag patterns e.g. "talo+N+*+*"
+     * @return the matched tag strings e.g. "talo+N+Sg+Nom" and their forms with weights, sorted by tag string
+     */
+    Map<String, HashMap<String, Float>> generate(TraversableTransducer transducer, String pattern) {
+        Walk walk = new Walk(transducer, pattern);
+        walk.visit(0, 0, 0, 0f, new int[transducer.alphabet().features], 0, 0);
+        if (walk.truncated && Metrics.isEnabled()) {
+            Metrics.getRecorder().count(Metrics.PARADIGM_TRUNCATED, 1);
+        }
+        return walk.results;
+    }
+
+    /**
+     * The state of one call
+     */
+    private class Walk {
+
+        final TraversableTransducer t;
+        final TransducerAlphabet alphabet;
+        final String lemma;
+        final int[][] tagSymbols;
+        final TreeMap<String, HashMap<String, Float>> results = new TreeMap<String, HashMap<String, Float>>();
+        final int maxForms = ParadigmGenerator.this.maxForms;
+        final long maxExpansions = ParadigmGenerator.this.maxExpansions;
+        int[] input = new int[64];
+        int[] output = new int[64];
+        long expansions = 0;
+        int forms = 0;
+        boolean truncated = false;
+
+        Walk(TraversableTransducer t, String pattern) {
+            this.t = t;
+            this.alphabet = t.alphabet();
+            int plus = pattern.indexOf('+', 1);
+            lemma = plus < 0 ? pattern : pattern.substring(0, plus);
+            List<String> tags = new ArrayList<String>();
+            while (plus >= 0) {
+                int next = pattern.indexOf('+', plus + 1);
+                tags.add(next < 0 ? pattern.substring(plus) : pattern.substring(plus, next));
+                plus = next;
+            }
+            //The tag symbols each part of the pattern matches, resolved once against the alphabet
+            tagSymbols = new int[tags.size()][];
+            for (int i = 0; i < tagSymbols.length; i++) {
+                Pattern glob = Pattern.compile(Pattern.quote(tags.get(i)).replace("*", "\\E.*\\Q"));
+                List<Integer> matches = new ArrayList<Integer>();
+                for (int s = 1; s < t.inputSymbolCount(); s++) {
+                    if (!alphabet.operations.containsKey(s) && glob.matcher(alphabet.keyTable.get(s)).matches()) {
+                        matches.add(s);
+                    }
+                }
+                tagSymbols[i] = new int[matches.size()];
+                for (int j = 0; j < tagSymbols[i].length; j++) {
+                    tagSymbols[i][j] = matches.get(j);
+                }
+            }
+        }
+
+        private boolean done(int depth) {
+            if (truncated) {
+                return true;
+            }
+            if (++expansions > maxExpansions || depth > MAX_DEPTH) {
+                truncated = true;
+            }
+            return truncated;
+        }
+
+        /**
+         * Visits a state. pos is a character offset into the lemma while it is being matched, then
+         * lemma.length() + the index of the next tag pattern. inDepth and outDepth count the symbols so far.
+         */
+        void visit(long target, int pos, int inDepth, float weight, int[] flags, int outDepth, int depth) {
+            if (done(depth)) {
+                return;
+            }
+            boolean complete = pos == lemma.length() + tagSymbols.length;
+            if (target >= TraversableTransducer.TRANSITION_TARGET_TABLE_START) {
+                int state = (int) (target - TraversableTransducer.TRANSITION_TARGET_TABLE_START);
+                epsilons(state + 1, pos, inDepth, weight, flags, outDepth, depth);
+                if (complete && t.transitionFinal(state)) {
+                    note(inDepth, outDepth, weight + t.transitionWeight(state));
+                }
+                //Like hfst, only the symbol run right after the state header is followed
+                int sym = t.transitionInput(state + 1);
+                if (!complete && sym != 0 && sym != TraversableTransducer.NO_SYMBOL && !alphabet.operations.containsKey(sym)) {
+                    int next = advance(pos, sym);
+                    if (next >= 0) {
+                        symbolRun(state + 1, sym, next, inDepth, weight, flags, outDepth, depth);
+                    }
+                }
+            } else {
+                int state = (int) target;
+                if (t.indexInput(state + 1) == 0) {
+                    epsilons(pivot(t.indexTarget(state + 1)), pos, inDepth, weight, flags, outDepth, depth);
+                }
+                if (complete && t.indexFinal(state)) {
+                    note(inDepth, outDepth, weight + t.indexFinalWeight(state));
+                }
+                if (pos < lemma.length()) {
+                    for (int sym = 1; sym < t.inputSymbolCount() && !truncated; sym++) {
+                        String key = alphabet.keyTable.get(sym);
+                        if (key.length() > 0 && lemma.startsWith(key, pos)) {
+                            indexRun(state, sym, pos + key.length(), inDepth, weight, flags, outDepth, depth);
+                        }
+                    }
+                } else if (!complete) {
+                    for (int sym : tagSymbols[pos - lemma.length()]) {
+                        indexRun(state, sym, pos + 1, inDepth, weight, flags, outDepth, depth);
+                        if (truncated) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * The position after consuming a symbol, or -1 if the pattern does not allow it
+         */
+        private int advance(int pos, int sym) {
+            if (pos < lemma.length()) {
+                String key = alphabet.keyTable.get(sym);
+                return key.length() > 0 && lemma.startsWith(key, pos) ? pos + key.length() : -1;
+            }
+            for (int s : tagSymbols[pos - lemma.length()]) {
+                if (s == sym) {
+                    return pos + 1;
+                }
+            }
+            return -1;
+        }
+
+        private void indexRun(int state, int sym, int next, int inDepth, float weight, int[] flags, int outDepth, int depth) {
+            int cell = state + 1 + sym;
+            if (t.indexInput(cell) == sym) {
+                symbolRun(pivot(t.indexTarget(cell)), sym, next, inDepth, weight, flags, outDepth, depth);
+            }
+        }
+
+        private void symbolRun(int i, int sym, int next, int inDepth, float weight, int[] flags, int outDepth, int depth) {
+            input = push(input, inDepth, sym);
+            for (; t.transitionInput(i) == sym; i++) {
+                output = push(output, outDepth, t.transitionOutput(i));
+                visit(t.transitionTarget(i), next, inDepth + 1, weight + t.transitionWeight(i), flags, outDepth + 1, depth + 1);
+                if (truncated) {
+                    return;
+                }
+            }
+        }
+
+        private void epsilons(int i, int pos, int inDepth, float weight, int[] flags, int outDepth, int depth) {
+            while (true) {
+                int in = t.transitionInput(i);
+                FlagDiacriticOperation op = alphabet.operations.get(in);
+                int[] nextFlags = flags;
+                if (op != null) {
+                    nextFlags = FuzzyLookup.applyFlag(op, flags);
+                    if (nextFlags == null) {
+                        i++;
+                        continue;
+                    }
+                } else if (in != 0) {
+                    return;
+                }
+                output = push(output, outDepth, t.transitionOutput(i));
+                visit(t.transitionTarget(i), pos, inDepth, weight + t.transitionWeight(i), nextFlags, outDepth + 1, depth + 1);
+                if (truncated) {
+                    return;
+                }
+                i++;
+            }
+        }
+
+        private void note(int inDepth, int outDepth, float weight) {
+            String tags = join(input, inDepth);
+            String form = join(output, outDepth);
+            HashMap<String, Float> forms = results.get(tags);
+            Float old = forms == null ? null : forms.get(form);
+            if (old == null) {
+                if (this.forms >= maxForms) {
+                    truncated = true;
+                    return;
+                }
+                this.forms++;
+                if (forms == null) {
+                    forms = new HashMap<String, Float>();
+                    results.put(tags, forms);
+                }
+                forms.put(form, weight);
+            } else if (weight < old) {
+                forms.put(form, weight);
+            }
+        }
+
+        private String join(int[] symbols, int length) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                sb.append(alphabet.keyTable.get(symbols[i]));
+            }
+            return sb.toString();
+        }
+    }
+
+    private static int[] push(int[] stack, int depth, int symbol) {
+        if (depth >= stack.length) {
+            int[] grown = new int[stack.length * 2];
+            System.arraycopy(stack, 0, grown, 0, stack.length);
+            stack = grown;
+        }
+        stack[depth] = symbol;
+        return stack;
+    }
+
+    private static int pivot(long target) {
+        if (target >= TraversableTransducer.TRANSITION_TARGET_TABLE_START) {
+            return (int) (target - TraversableTransducer.TRANSITION_TARGET_TABLE_START);
+        }
+        return (int) target;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput counters of a CorpusPipeline. Times are summed over all worker threads.
+ * @author mikahama
+ */
+public class PipelineStatistics {
+
+    /**
+     * Stages of the pipeline
+     */
+    public enum Stage {
+        TOKENIZE, ANALYZE, DISAMBIGUATE
+    }
+
+    private final AtomicLong[] items = new AtomicLong[Stage.values().length];
+    private final AtomicLong[] nanos = new AtomicLong[Stage.values().length];
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    PipelineStatistics() {
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new AtomicLong();
+            nanos[i] = new AtomicLong();
+        }
+    }
+
+    void record(Stage stage, long count, long elapsedNanos) {
+        items[stage.ordinal()].addAndGet(count);
+        nanos[stage.ordinal()].addAndGet(elapsedNanos);
+    }
+
+    void documentDone() {
+        documents.incrementAndGet();
+    }
+
+    void cacheHit() {
+        cacheHits.incrementAndGet();
+    }
+
+    void cacheMiss() {
+        cacheMisses.incrementAndGet();
+    }
+
+    /**
+     * Number of documents written to the sink
+     * @return documents
+     */
+    public long getDocuments() {
+        return documents.get();
+    }
+
+    /**
+     * Number of items a stage has processed: tokens for TOKENIZE and ANALYZE, sentences for DISAMBIGUATE
+     * @param stage pipeline stage
+     * @return items
+     */
+    public long getItems(Stage stage) {
+        return items[stage.ordinal()].get();
+    }
+
+    /**
+     * Time spent in a stage, summed over all threads
+     * @param stage pipeline stage
+     * @return nanoseconds
+     */
+    public long getNanos(Stage stage) {
+        return nanos[stage.ordinal()].get();
+    }
+
+    /**
+     * Items per second of one thread in a stage
+     * @param stage pipeline stage
+     * @return items per second, 0 if the stage has not run
+     */
+    public double getThroughput(Stage stage) {
+        long n = getNanos(stage);
+        if (n == 0) {
+            return 0;
+        }
+        return getItems(stage) * 1e9 / n;
+    }
+
+    /**
+     * Share of analyzed tokens that were answered from the token cache
+     * @return hit rate between 0 and 1
+     */
+    public double getCacheHitRate() {
+        long total = cacheHits.get() + cacheMisses.get();
+        if (total == 0) {
+            return 0;
+        }
+        return (double) cacheHits.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("documents: " + getDocuments());
+        for (Stage stage : Stage.values()) {
+            sb.append(String.format(", %s: %d items %.1f/s", stage.name().toLowerCase(), getItems(stage), getThroughput(stage)));
+        }
+        sb.append(String.format(", cache hit rate: %.3f", getCacheHitRate()));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.Arrays;
+
+/**
+ * A morphological reading as a lemma and tag numbers of a TagSymbolTable. Text between the tags that is not
+ * a tag of the table, e.g. the next part of a compound, is kept in the reading itself and has a negative
+ * number. The reading string is only built when toString is called.
+ * @author mikahama
+ */
+public final class Reading implements Comparable<Reading> {
+
+    private final TagSymbolTable table;
+    private final String lemma;
+    private final int[] tags;
+    //a negative number -n in tags is literals[n - 1]
+    private final String[] literals;
+    private final float weight;
+
+    Reading(TagSymbolTable table, String lemma, int[] tags, String[] literals, float weight) {
+        this.table = table;
+        this.lemma = lemma;
+        this.tags = tags;
+        this.literals = literals;
+        this.weight = weight;
+    }
+
+    /**
+     * Gets the lemma, the text before the first tag
+     * @return the lemma e.g. "koira"
+     */
+    public String getLemma() {
+        return lemma;
+    }
+
+    /**
+     * Gets the weight given by the model
+     * @return weight, 0 for unweighted models and CG3 readings
+     */
+    public float getWeight() {
+        return weight;
+    }
+
+    /**
+     * Number of tags
+     * @return tag count
+     */
+    public int getTagCount() {
+        return tags.length;
+    }
+
+    /**
+     * Gets the number of a tag
+     * @param index position of the tag in the reading
+     * @return the tag number in the table of the reading, negative for text that is not in the table
+     */
+    public int getTagId(int index) {
+        return tags[index];
+    }
+
+    /**
+     * Gets a tag
+     * @param index position of the tag in the reading
+     * @return the tag e.g. "+Sg"
+     */
+    public String getTag(int index) {
+        return text(tags[index]);
+    }
+
+    private String text(int id) {
+        return id < 0 ? literals[-id - 1] : table.tag(id);
+    }
+
+    /**
+     * Gets the tag numbers
+     * @return a copy of the tag numbers in order
+     */
+    public int[] getTagIds() {
+        return tags.clone();
+    }
+
+    /**
+     * Tells whether the reading has a tag
+     * @param id tag number from TagSymbolTable.id
+     * @return true if one of the tags is the given one
+     */
+    public boolean hasTag(int id) {
+        if (id < 0) {
+            return false;
+        }
+        for (int t : tags) {
+            if (t == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells whether the reading has a tag
+     * @param tag a tag e.g. "+Pl"
+     * @return true if one of the tags is the given one
+     */
+    public boolean hasTag(String tag) {
+        int id = table.id(tag);
+        if (id >= 0) {
+            return hasTag(id);
+        }
+        for (String literal : literals) {
+            if (literal.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the table the tag numbers refer to
+     * @return the tag table
+     */
+    public TagSymbolTable getTagTable() {
+        return table;
+    }
+
+    /**
+     * Smaller weight first
+     */
+    @Override
+    public int compareTo(Reading o) {
+        return Float.compare(weight, o.weight);
+    }
+
+    /**
+     * Tells whether another reading has the same lemma and tags, whatever its weight
+     */
+    boolean sameAnalysis(Reading r) {
+        return table == r.table && lemma.equals(r.lemma) && Arrays.equals(tags, r.tags) && Arrays.equals(literals, r.literals);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Reading)) {
+            return false;
+        }
+        Reading r = (Reading) o;
+        return table == r.table && weight == r.weight && lemma.equals(r.lemma) && Arrays.equals(tags, r.tags)
+                && Arrays.equals(literals, r.literals);
+    }
+
+    @Override
+    public int hashCode() {
+        return lemma.hashCode() * 31 + Arrays.hashCode(tags);
+    }
+
+    /**
+     * Renders the reading in the format of analyze
+     * @return the reading e.g. "koira+N+Sg+Nom"
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(lemma);
+        for (int t : tags) {
+            sb.append(text(t));
+        }
+        return sb.toString();
+    }
+}
@@ -23,6 +23,9 @@ import org.json.simple.parser.JSONParser;
  */
 public class StringProcessing {
 
+    private static final Pattern ARABIC_WITH_VOWELS = Pattern.compile("[ء-ي'ًٌٍَُِّْـ']+");
+    private static final Pattern ARABIC = Pattern.compile("[ء-ي]+");
+
     private JSONObject isoMap;
 
     /**
@@ -72,17 +75,20 @@ public class StringProcessing {
      * @return Arabic text separated by combineBy
      */
     public static String filterArabic(String word, boolean keepVowels, String combineBy) {
-        String rege = "[ء-ي'ًٌٍَُِّْـ']+";
+        Pattern rege = ARABIC_WITH_VOWELS;
         if (!keepVowels) {
-            rege = "[ء-ي]+";
+            rege = ARABIC;
         }
-        List<String> allMatches = new ArrayList<String>();
-        Matcher matches;
-        matches = Pattern.compile(rege)
-                .matcher(word);
+        StringBuilder result = new StringBuilder();
+        Matcher matches = rege.matcher(word);
+        boolean first = true;
         while (matches.find()) {
-            allMatches.add(matches.group());
+            if (!first) {
+                result.append(combineBy);
+            }
+            result.append(word, matches.start(), matches.end());
+            first = false;
         }
-        return String.join(combineBy, allMatches);
+        return result.toString();
     }
 }
@@ -0,0 +1,315 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import fi.seco.hfst.TransducerAlphabet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The morphological tags of a language, each stored once and numbered. The table holds the
+ * multicharacter symbols of the analyser, e.g. +N, +Sg and +Nom, and only grows when add is called.
+ * Lemmas, compound parts and the CG3 tags the analyser does not have stay in their readings, so the table
+ * does not grow with the text. Readings refer to their tags by number, so millions of readings share
+ * one copy of each tag string and comparing tags is comparing ints.
+ * A table is safe to use from many threads.
+ * @author mikahama
+ */
+public final class TagSymbolTable {
+
+    static final String[] NO_LITERALS = new String[0];
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    //the analyser tags by their characters, for finding tags in reading strings without substrings
+    private final TagTrie trie = new TagTrie();
+    private volatile String[] tags = new String[64];
+    //the analyser tags without their leading +, as CG3 writes them
+    private final String[] bareTags;
+    private volatile int size = 0;
+    private final int analyserTags;
+
+    /**
+     * Initializes an empty table
+     */
+    public TagSymbolTable() {
+        analyserTags = 0;
+        bareTags = new String[0];
+    }
+
+    /**
+     * Initializes a table with the tags of a transducer alphabet
+     * @param alphabet alphabet of a loaded transducer
+     */
+    TagSymbolTable(TransducerAlphabet alphabet) {
+        for (int s = 1; s < alphabet.keyTable.size(); s++) {
+            String symbol = alphabet.keyTable.get(s);
+            if (symbol != null && symbol.codePointCount(0, symbol.length()) > 1 && !alphabet.operations.containsKey(s)) {
+                trie.add(symbol, add(symbol));
+            }
+        }
+        analyserTags = size;
+        bareTags = new String[size];
+        for (int i = 0; i < size; i++) {
+            bareTags[i] = tags[i].startsWith("+") ? tags[i].substring(1) : tags[i];
+        }
+    }
+
+    /**
+     * Gets the number of a tag
+     * @param tag a tag e.g. +Sg
+     * @return the number, -1 if the tag is not in the table
+     */
+    public int id(String tag) {
+        Integer id = ids.get(tag);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the number of a tag, adding the tag if it is not in the table yet
+     * @param tag a tag e.g. @SUBJ&gt;
+     * @return the number
+     */
+    public int add(String tag) {
+        Integer id = ids.get(tag);
+        if (id != null) {
+            return id;
+        }
+        lock.lock();
+        try {
+            id = ids.get(tag);
+            if (id == null) {
+                String[] t = tags;
+                if (size == t.length) {
+                    t = Arrays.copyOf(t, t.length * 2);
+                }
+                t[size] = tag;
+                tags = t;
+                id = size;
+                size = size + 1;
+                //Published after the array, so whoever finds the number also finds the tag
+                ids.put(tag, id);
+            }
+            return id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the shared copy of a string, adding it to the table if needed
+     * @param tag a tag
+     * @return an equal string that is kept by the table
+     */
+    public String intern(String tag) {
+        return tag(add(tag));
+    }
+
+    /**
+     * Gets the number of a tag of the analyser as CG3 writes it
+     * @param bareTag a tag without the leading + e.g. Sg
+     * @return the number of +Sg, -1 if the analyser has no such tag
+     */
+    int analyserId(String bareTag) {
+        for (int i = 0; i < 2; i++) {
+            Integer id = ids.get(i == 0 ? "+" + bareTag : bareTag);
+            if (id != null && id < analyserTags) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets an analyser tag without its leading +
+     * @param id number from analyserId
+     * @return the shared string e.g. Sg
+     */
+    String bareTag(int id) {
+        return bareTags[id];
+    }
+
+    /**
+     * Gets a tag by its number
+     * @param id the number
+     * @return the tag
+     */
+    public String tag(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No tag number " + id);
+        }
+        return tags[id];
+    }
+
+    /**
+     * Number of tags in the table
+     * @return tag count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Splits a reading of the analyser into its lemma and tags. The lemma is the text before the first
+     * known tag; text between later tags, e.g. the next part of a compound, is kept in the reading.
+     * @param reading a reading e.g. "koira+N+Sg+Nom"
+     * @param weight weight of the reading
+     * @return the structured reading
+     */
+    public Reading parse(String reading, float weight) {
+        int[] found = new int[8];
+        int count = 0;
+        List<String> literals = null;
+        String lemma = null;
+        int literal = 0;
+        int i = 0;
+        while (i < reading.length()) {
+            int id = tagAt(reading, i);
+            if (id < 0) {
+                i++;
+                continue;
+            }
+            if (lemma == null) {
+                lemma = reading.substring(0, i);
+            } else if (literal < i) {
+                if (literals == null) {
+                    literals = new ArrayList<String>();
+                }
+                literals.add(reading.substring(literal, i));
+                found = grow(found, count);
+                found[count++] = -literals.size();
+            }
+            found = grow(found, count);
+            found[count++] = id;
+            i += tags[id].length();
+            literal = i;
+        }
+        if (lemma == null) {
+            return new Reading(this, reading, new int[0], NO_LITERALS, weight);
+        }
+        if (literal < reading.length()) {
+            if (literals == null) {
+                literals = new ArrayList<String>();
+            }
+            literals.add(reading.substring(literal));
+            found = grow(found, count);
+            found[count++] = -literals.size();
+        }
+        return new Reading(this, lemma, Arrays.copyOf(found, count),
+                literals == null ? NO_LITERALS : literals.toArray(new String[literals.size()]), weight);
+    }
+
+    /**
+     * Splits the output symbols of a transducer lookup into the lemma and tags. Every multicharacter symbol
+     * of the analyser is a tag and the other symbols are text, so the reading is never joined and searched.
+     * @param symbols output symbols of a result e.g. ["k", "o", "i", "r", "a", "+N"]
+     * @param weight weight of the result
+     * @return the structured reading
+     */
+    Reading parse(List<String> symbols, float weight) {
+        int[] found = new int[8];
+        int count = 0;
+        List<String> literals = null;
+        String lemma = null;
+        StringBuilder text = new StringBuilder();
+        for (String symbol : symbols) {
+            Integer id = symbol.length() > 1 ? ids.get(symbol) : null;
+            if (id == null || id >= analyserTags) {
+                text.append(symbol);
+                continue;
+            }
+            if (lemma == null) {
+                lemma = text.toString();
+            } else if (text.length() > 0) {
+                if (literals == null) {
+                    literals = new ArrayList<String>();
+                }
+                literals.add(text.toString());
+                found = grow(found, count);
+                found[count++] = -literals.size();
+            }
+            text.setLength(0);
+            found = grow(found, count);
+            found[count++] = id;
+        }
+        if (lemma == null) {
+            return new Reading(this, text.toString(), new int[0], NO_LITERALS, weight);
+        }
+        if (text.length() > 0) {
+            if (literals == null) {
+                literals = new ArrayList<String>();
+            }
+            literals.add(text.toString());
+            found = grow(found, count);
+            found[count++] = -literals.size();
+        }
+        return new Reading(this, lemma, Arrays.copyOf(found, count),
+                literals == null ? NO_LITERALS : literals.toArray(new String[literals.size()]), weight);
+    }
+
+    /**
+     * Number of the longest analyser tag at a position, -1 if none starts there
+     */
+    private int tagAt(String reading, int i) {
+        int id = -1;
+        TagTrie node = trie;
+        for (int j = i; j < reading.length(); j++) {
+            node = node.child(reading.charAt(j));
+            if (node == null) {
+                break;
+            }
+            if (node.id >= 0) {
+                id = node.id;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * A node of the tag trie, children are kept in arrays sorted by their character.
+     * The trie is only built in the constructor, after which it is read by many threads.
+     */
+    private static final class TagTrie {
+
+        private char[] keys = new char[0];
+        private TagTrie[] next = new TagTrie[0];
+        private int id = -1;
+
+        void add(String tag, int id) {
+            TagTrie node = this;
+            for (int i = 0; i < tag.length(); i++) {
+                char c = tag.charAt(i);
+                int k = Arrays.binarySearch(node.keys, c);
+                if (k < 0) {
+                    k = -k - 1;
+                    char[] keys = new char[node.keys.length + 1];
+                    TagTrie[] next = new TagTrie[keys.length];
+                    System.arraycopy(node.keys, 0, keys, 0, k);
+                    System.arraycopy(node.next, 0, next, 0, k);
+                    System.arraycopy(node.keys, k, keys, k + 1, node.keys.length - k);
+                    System.arraycopy(node.next, k, next, k + 1, node.next.length - k);
+                    keys[k] = c;
+                    next[k] = new TagTrie();
+                    node.keys = keys;
+                    node.next = next;
+                }
+                node = node.next[k];
+            }
+            node.id = id;
+        }
+
+        TagTrie child(char c) {
+            int k = Arrays.binarySearch(keys, c);
+            return k < 0 ? null : next[k];
+        }
+    }
+
+    private static int[] grow(int[] array, int count) {
+        return count < array.length ? array : Arrays.copyOf(array, array.length * 2);
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+
+/**
+ * Receives the tokens of Tokenizer.tokenize as they are found, without lists of sentences and tokens.
+ * Returning false from token or sentenceEnd stops the tokenization.
+ * @author mikahama
+ */
+public interface TokenSink {
+
+    /**
+     * Called for every word token in text order
+     * @param token the token
+     * @param sentence number of the sentence, from 0
+     * @param index position of the token in the sentence, from 0
+     * @return true to go on, false to stop
+     * @throws IOException if the token cannot be processed
+     */
+    boolean token(String token, int sentence, int index) throws IOException;
+
+    /**
+     * Called after the last token of every sentence
+     * @param sentence number of the sentence, from 0
+     * @param tokens number of tokens in the sentence
+     * @return true to go on, false to stop
+     * @throws IOException if the sentence cannot be processed
+     */
+    boolean sentenceEnd(int sentence, int tokens) throws IOException;
+
+    /**
+     * Called once after the whole text has been tokenized, not if the sink stopped the tokenization
+     * @throws IOException if the results cannot be processed
+     */
+    default void end() throws IOException {
+    }
+}
@@ -4,61 +4,52 @@
  */
 package com.rootroo.uralicnlp;
 
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
+import java.util.function.Predicate;
 
 /**
- *
+ * Splits text into sentences and word tokens. The punctuation and abbreviations come from a TokenizerProfile,
+ * the default one or that of a language, and the text is read once from left to right.
  * @author mikahama
  */
 public class Tokenizer {
 
-    private String sentenceEnd = "!?。……‥！？。⋯…؟჻!…";
-    private String wordEndPuct = ",;:”’'\"»」)]}،؛》』〕｠〉》】〗〙〛–—";
-    private String wordStartPunct = "'\"¡¿「«“”‘({[《『〔｟〈《【〖〘〚–—”";
-    private String numbers = "0123456789١٢٣٤٥٦٧٨٩٠";
-    private String customPunctuation = "!\"#$%&'()*+,-.:;<=>?@[]^_`{|}~";
-    Pattern abrvRegex;
+    private final TokenizerProfile profile;
 
     /**
-     * Initializes a tokenizer
+     * Initializes a tokenizer with the default profile
      */
     public Tokenizer() {
-        List<String> abreviations = new ArrayList<String>();
-        JSONParser jsonParser = new JSONParser();
+        this(TokenizerProfile.forLanguage(null));
+    }
 
-        try (InputStream stream = this.getClass().getClassLoader().getResourceAsStream("abrvs.json");) {
-            //Read JSON file
-            String UTF8 = "utf8";
-            int BUFFER_SIZE = 8192;
-            String file = "";
-            BufferedReader br = new BufferedReader(new InputStreamReader(stream,
-                    UTF8), BUFFER_SIZE);
-            String str;
-            while ((str = br.readLine()) != null) {
-                file += str;
-            }
-            Object obj = jsonParser.parse(file);
+    /**
+     * Initializes a tokenizer for a language, e.g. fin keeps the dot of ordinals like 3. päivänä. Languages
+     * without a profile of their own are tokenized with the default profile.
+     * @param language ISO code of the language
+     */
+    public Tokenizer(String language) {
+        this(TokenizerProfile.forLanguage(language));
+    }
 
-            JSONArray abreviationsJSON = (JSONArray) obj;
-            for (Object o : abreviationsJSON) {
-                abreviations.add(Pattern.quote((String) o));
-            }
+    /**
+     * Initializes a tokenizer with a profile
+     * @param profile punctuation and abbreviations
+     */
+    public Tokenizer(TokenizerProfile profile) {
+        this.profile = profile;
+    }
 
-        } catch (Exception e) {
-            //Should not happen because the JSON is always embedded in the JAR
-            e.printStackTrace();
-        }
-        String regex = "(^|\\s)(" + String.join("|", abreviations) + ")$";
-        abrvRegex = Pattern.compile(regex);
+    /**
+     * Gets the profile of the tokenizer
+     * @return the profile
+     */
+    public TokenizerProfile getProfile() {
+        return profile;
     }
 
     /**
@@ -68,81 +59,152 @@ public class Tokenizer {
      * @return A list where each element is a sentence
      */
     public List<String> sentences(String text) {
+        long start = Metrics.start();
         List<String> parts = new ArrayList<String>();
-        String current_s = "";
+        splitSentences(text, new Predicate<String>() {
+            @Override
+            public boolean test(String part) {
+                parts.add(part);
+                return true;
+            }
+        });
+        recordCall("sentences", start, text.length());
+        return parts;
+    }
+
+    /**
+     * Hands every sentence to a consumer as soon as it is known that no more sentence end punctuation
+     * belongs to it
+     * @return false if the consumer stopped the splitting
+     */
+    private boolean splitSentences(String text, Predicate<String> consumer) {
+        //the last finished sentence, it still gets trailing punctuation such as the second ! of !!
+        StringBuilder pending = new StringBuilder();
+        boolean hasPending = false;
+        StringBuilder current = new StringBuilder();
         boolean previous_break = false;
-        for (int i = 0; i < text.length(); i++) {
-            String c = String.valueOf(text.charAt(i));
-            if (sentenceEnd.contains(c)) {
+        for (int i = 0; i < text.length();) {
+            int c = text.codePointAt(i);
+            i += Character.charCount(c);
+            if (profile.is(c, TokenizerProfile.SENTENCE_END)) {
                 //End of a sentence, not a dot
-                if (current_s.length() > 0) {
+                if (current.length() > 0) {
                     //There is a current sentence, apped it and clear it
-                    parts.add(current_s + c);
-                    current_s = "";
-                } else if (parts.size() > 0) {
+                    if (hasPending && !emit(pending, consumer)) {
+                        return false;
+                    }
+                    pending.setLength(0);
+                    pending.append(current).appendCodePoint(c);
+                    hasPending = true;
+                    current.setLength(0);
+                } else if (hasPending) {
                     //No current sentence, add to a previous sentence
-                    parts.set(parts.size() - 1, parts.get(parts.size() - 1) + c);
-
+                    pending.appendCodePoint(c);
                 } else {
                     //Make it a current sentence
-                    current_s = c;
+                    current.appendCodePoint(c);
                 }
-            } else if (c.equals(".")) {
+            } else if (c == '.') {
                 //A dot
-                if (current_s.length() == 0) {
+                if (current.length() == 0) {
                     //no current sentence
-                    if (parts.size() > 0) {
+                    if (hasPending) {
                         //append
-                        parts.set(parts.size() - 1, parts.get(parts.size() - 1) + c);
+                        pending.append('.');
                     } else {
-                        current_s = c;
+                        current.append('.');
                     }
-                } else if (current_s.length() > 0 && numbers.contains(String.valueOf(current_s.charAt(current_s.length() - 1)))) {
+                } else if (profile.is(current.charAt(current.length() - 1), TokenizerProfile.NUMBER)) {
                     //previous is a number
-                    current_s += c;
-                } else if (endsInAbrv(current_s)) {
+                    current.append('.');
+                } else if (profile.endsInAbbreviation(current, 0, current.length())) {
                     //abreviation
-                    current_s += c;
-                } else if (text.length() > i + 1 && String.valueOf(text.charAt(i + 1)).strip().length() != 0) {
+                    current.append('.');
+                } else if (i < text.length() && !Character.isWhitespace(text.charAt(i))) {
                     //dot is not followed by a space
-                    current_s += c;
+                    current.append('.');
                 } else {
                     //dot ending a sentence
-                    parts.add(current_s + c);
-                    current_s = "";
+                    if (hasPending && !emit(pending, consumer)) {
+                        return false;
+                    }
+                    pending.setLength(0);
+                    pending.append(current).append('.');
+                    hasPending = true;
+                    current.setLength(0);
                 }
-            } else if (c.equals("\n")) {
+            } else if (c == '\n') {
                 //line break
-                if (previous_break && current_s.length() > 0) {
-                    parts.add(current_s);
-                    current_s = "";
+                if (previous_break && current.length() > 0) {
+                    if (hasPending && !emit(pending, consumer)) {
+                        return false;
+                    }
+                    pending.setLength(0);
+                    pending.append(current);
+                    hasPending = true;
+                    current.setLength(0);
                 }
-                if (!previous_break && current_s.length() > 0) {
-                    current_s += c;
+                if (!previous_break && current.length() > 0) {
+                    current.append('\n');
                 }
                 previous_break = true;
                 continue;
-            } else if (c.equals("\r")) {
+            } else if (c == '\r') {
                 //Windows line break
                 continue;
             } else {
                 //Any other character
-                current_s += c;
+                current.appendCodePoint(c);
             }
             previous_break = false;
         }
-        if (current_s.length() > 0) {
-            parts.add(current_s);
-        }
-        List<String> returnParts = new ArrayList<String>();
-        for (int i = 0; i < parts.size(); i++) {
-            String part = parts.get(i).trim().replaceAll("\\s+", " ");
-            if (part.length() > 0) {
-                returnParts.add(part);
+        if (current.length() > 0) {
+            if (hasPending && !emit(pending, consumer)) {
+                return false;
             }
+            pending.setLength(0);
+            pending.append(current);
+            hasPending = true;
         }
+        return !hasPending || emit(pending, consumer);
+    }
 
-        return returnParts;
+    /**
+     * Removes extra whitespace from a sentence and hands it on unless it is empty
+     */
+    private static boolean emit(CharSequence part, Predicate<String> consumer) {
+        String cleaned = clean(part);
+        return cleaned.length() == 0 || consumer.test(cleaned);
+    }
+
+    /**
+     * Trims a text and turns every run of whitespace inside it into one space, like
+     * text.trim().replaceAll("\\s+", " ")
+     */
+    static String clean(CharSequence text) {
+        int start = 0;
+        int end = text.length();
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        boolean space = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (TokenizerProfile.isSpace(c)) {
+                if (!space) {
+                    sb.append(' ');
+                }
+                space = true;
+            } else {
+                sb.append(c);
+                space = false;
+            }
+        }
+        return sb.toString();
     }
 
     /**
@@ -152,90 +214,204 @@ public class Tokenizer {
      * @return A list of word tokens
      */
     public List<String> words(String text) {
-        Pattern multidot = Pattern.compile("(\\.{2,})$");
-        for (int i = 0; i < sentenceEnd.length(); i++) {
-            String sentence_end_p = String.valueOf(sentenceEnd.charAt(i));
-            text = text.replaceAll(Pattern.quote(sentence_end_p), " " + sentence_end_p);
-        }
-        text = text.trim().replaceAll("\\s+", " ");
-        String[] whitespace_tokens = text.split(" ");
-        List<String> tokens = new ArrayList<String>();
-        for (int i = 0; i < whitespace_tokens.length; i++) {
-            String t = whitespace_tokens[i];
-            ArrayList<String> first_tok = new ArrayList<String>();
-            ArrayList<String> last_tok = new ArrayList<String>();
-            boolean cont_first = true;
-            while (cont_first) {
-                cont_first = false;
-                if (t.length() > 0 && wordStartPunct.contains(String.valueOf(t.charAt(0)))) {
-                    cont_first = true;
-                    first_tok.add(String.valueOf(t.charAt(0)));
-                    t = t.substring(1);
+        long start = Metrics.start();
+        int length = text.length();
+        ArrayList<String> returnTokens = new ArrayList<String>();
+        try {
+            splitWords(text, new TokenSink() {
+                @Override
+                public boolean token(String token, int sentence, int index) {
+                    returnTokens.add(token);
+                    return true;
                 }
-            }
-            boolean cont_last = true;
-            while (cont_last) {
-                cont_last = false;
-                if (t.length() > 0 && wordEndPuct.contains(String.valueOf(t.charAt(t.length() - 1)))) {
-                    cont_last = true;
 
-                    last_tok.add(0, String.valueOf(t.charAt(t.length() - 1)));
-                    t = t.substring(0, t.length() - 1);
-                } else if (t.length() > 1 && String.valueOf(t.charAt(t.length() - 1)).equals(".") && wordEndPuct.contains(String.valueOf(t.charAt(t.length() - 2)))) {
-                    cont_last = true;
-                    last_tok.add(0, String.valueOf(t.charAt(t.length() - 1)));
-                    last_tok.add(0, String.valueOf(t.charAt(t.length() - 2)));
-                    t = t.substring(0, t.length() - 2);
+                @Override
+                public boolean sentenceEnd(int sentence, int tokens) {
+                    return true;
+                }
+            }, 0);
+        } catch (IOException ex) {
+            //The sink above does not throw
+            throw new UncheckedIOException(ex);
+        }
+        recordCall("words", start, length);
+        return returnTokens;
+    }
+
+    /**
+     * Hands the word tokens of a sentence to a sink
+     * @return number of tokens, -1 if the sink stopped the tokenization
+     */
+    private int splitWords(String text, TokenSink sink, int sentence) throws IOException {
+        int end = text.length();
+        int i = 0;
+        while (i < end && text.charAt(i) <= ' ') {
+            i++;
+        }
+        while (end > i && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        WordSplitter splitter = new WordSplitter(text, end, sink, sentence);
+        while (i < end) {
+            if (TokenizerProfile.isSpace(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            //a token runs to the next whitespace, and sentence end punctuation always starts a new one
+            int j = i;
+            while (j < end && !TokenizerProfile.isSpace(text.charAt(j))) {
+                int cp = text.codePointAt(j);
+                if (j > i && profile.is(cp, TokenizerProfile.SENTENCE_END)) {
+                    break;
                 }
+                j += Character.charCount(cp);
             }
-            Matcher m = multidot.matcher(t);
+            if (!splitter.split(i, j)) {
+                return -1;
+            }
+            i = j;
+        }
+        return splitter.index;
+    }
 
-            if (m.find()) {
-                //Make .. or ... or whaterver its own token
-                String dots = m.group();
+    /**
+     * Splits the whitespace separated tokens of a sentence into words and punctuation
+     */
+    private class WordSplitter {
+
+        private final String text;
+        private final int textEnd;
+        private final TokenSink sink;
+        private final int sentence;
+        private int index = 0;
+        //start and end of the punctuation split off the end of a token, rightmost first
+        private int[] cuts = new int[16];
 
-                last_tok.add(0, dots);
-                t = t.substring(0, t.length() - dots.length());
-            } else if (t.length() > 0 && String.valueOf(t.charAt(t.length() - 1)).equals(".")) {
-                if (!endsInAbrv(t.substring(0, t.length() - 1))) {
-                    t = t.substring(0, t.length() - 1);
-                    last_tok.add(0, ".");
+        WordSplitter(String text, int textEnd, TokenSink sink, int sentence) {
+            this.text = text;
+            this.textEnd = textEnd;
+            this.sink = sink;
+            this.sentence = sentence;
+        }
+
+        boolean split(int start, int end) throws IOException {
+            int tokenEnd = end;
+            while (start < end) {
+                int cp = text.codePointAt(start);
+                if (!profile.is(cp, TokenizerProfile.WORD_START)) {
+                    break;
                 }
+                if (!emit(start, start + Character.charCount(cp))) {
+                    return false;
+                }
+                start += Character.charCount(cp);
             }
-            boolean hasCustomPunct = false;
-            for (int o = 0; o < customPunctuation.length(); o++) {
-                if (t.contains(String.valueOf(customPunctuation.charAt(o)))) {
-                    hasCustomPunct = true;
-                    break;
+            int cutCount = 0;
+            while (true) {
+                if (end > start) {
+                    int cp = codePointBefore(end, start);
+                    if (profile.is(cp, TokenizerProfile.WORD_END)) {
+                        cutCount = cut(cutCount, end - Character.charCount(cp), end);
+                        end -= Character.charCount(cp);
+                        continue;
+                    }
                 }
+                if (end - start > 1 && text.charAt(end - 1) == '.') {
+                    int cp = codePointBefore(end - 1, start);
+                    if (profile.is(cp, TokenizerProfile.WORD_END)) {
+                        cutCount = cut(cutCount, end - 1, end);
+                        cutCount = cut(cutCount, end - 1 - Character.charCount(cp), end - 1);
+                        end -= 1 + Character.charCount(cp);
+                        continue;
+                    }
+                }
+                break;
             }
-            String[] t_tok;
-            if ((t.contains("/") || t.contains("\\")) && !hasCustomPunct) {
-                //not a link
-                t = t.replaceAll(Pattern.quote("/"), " /").replaceAll(Pattern.quote("\\"), " \\");
-                t_tok = t.split(" ");
-            } else {
-                t_tok = new String[]{t};
+            int dots = 0;
+            while (end - dots > start && text.charAt(end - dots - 1) == '.') {
+                dots++;
             }
-            List<String> tt = new ArrayList<String>();
-            for (int u = 0; u < t_tok.length; u++) {
-                String ts = t_tok[u];
-                if (ts.length() > 0) {
-                    tt.add(ts);
+            if (dots > 1) {
+                //Make .. or ... or whaterver its own token
+                cutCount = cut(cutCount, end - dots, end);
+                end -= dots;
+            } else if (dots == 1 && !profile.endsInAbbreviation(text, start, end - 1) && !isOrdinal(start, end - 1, tokenEnd)) {
+                cutCount = cut(cutCount, end - 1, end);
+                end--;
+            }
+            boolean hasCustomPunct = false;
+            boolean hasSlash = false;
+            for (int k = start; k < end;) {
+                int cp = text.codePointAt(k);
+                k += Character.charCount(cp);
+                hasCustomPunct |= profile.is(cp, TokenizerProfile.CUSTOM);
+                hasSlash |= cp == '/' || cp == '\\';
+            }
+            if (hasSlash && !hasCustomPunct) {
+                //not a link, / and \\ start new tokens
+                int piece = start;
+                for (int k = start; k < end; k++) {
+                    char c = text.charAt(k);
+                    if ((c == '/' || c == '\\') && k > piece) {
+                        if (!emit(piece, k)) {
+                            return false;
+                        }
+                        piece = k;
+                    }
+                }
+                if (!emit(piece, end)) {
+                    return false;
                 }
+            } else if (!emit(start, end)) {
+                return false;
             }
+            for (int c = cutCount - 1; c >= 0; c--) {
+                if (!emit(cuts[2 * c], cuts[2 * c + 1])) {
+                    return false;
+                }
+            }
+            return true;
+        }
 
-            first_tok.addAll(tt);
-            first_tok.addAll(last_tok);
-            tokens.addAll(first_tok);
+        private int cut(int cutCount, int start, int end) {
+            if (2 * cutCount + 2 > cuts.length) {
+                cuts = Arrays.copyOf(cuts, cuts.length * 2);
+            }
+            cuts[2 * cutCount] = start;
+            cuts[2 * cutCount + 1] = end;
+            return cutCount + 1;
         }
-        ArrayList<String> returnTokens = new ArrayList<String>();
-        for (String tok : tokens) {
-            if (tok.length() > 0) {
-                returnTokens.add(tok);
+
+        /**
+         * A number followed by a dot and a lowercase word, if the profile keeps ordinal dots
+         */
+        private boolean isOrdinal(int start, int end, int tokenEnd) {
+            if (!profile.hasOrdinalDots() || end <= start) {
+                return false;
             }
+            for (int k = start; k < end; k++) {
+                if (!profile.is(text.charAt(k), TokenizerProfile.NUMBER)) {
+                    return false;
+                }
+            }
+            int next = tokenEnd;
+            while (next < textEnd && TokenizerProfile.isSpace(text.charAt(next))) {
+                next++;
+            }
+            return next < textEnd && Character.isLowerCase(text.codePointAt(next));
+        }
+
+        private int codePointBefore(int index, int start) {
+            char low = text.charAt(index - 1);
+            if (Character.isLowSurrogate(low) && index - 2 >= start && Character.isHighSurrogate(text.charAt(index - 2))) {
+                return Character.toCodePoint(text.charAt(index - 2), low);
+            }
+            return low;
+        }
+
+        private boolean emit(int start, int end) throws IOException {
+            return end <= start || sink.token(text.substring(start, end), sentence, index++);
         }
-        return returnTokens;
     }
 
     /**
@@ -245,16 +421,67 @@ public class Tokenizer {
      * @return A list of sentences that are lists of word level tokens
      */
     public List<List<String>> tokenize(String text) {
+        long start = Metrics.start();
         List<List<String>> result = new ArrayList<List<String>>();
         List<String> sents = sentences(text);
         for (String sent : sents) {
             result.add(words(sent));
         }
+        recordCall("tokenize", start, text.length());
         return result;
     }
 
-    private boolean endsInAbrv(String text) {
-        Matcher matcher = abrvRegex.matcher(text.toLowerCase());
-        return matcher.find();
+    /**
+     * Tokenizes a text on a sentence and word level like tokenize, but hands every token and sentence end
+     * to a sink as soon as it is found instead of building lists
+     * @param text Text to be tokenized
+     * @param sink receives the tokens
+     * @return true if the whole text was tokenized, false if the sink stopped it
+     * @throws IOException if the sink fails
+     */
+    public boolean tokenize(String text, TokenSink sink) throws IOException {
+        long start = Metrics.start();
+        SentenceSplitter splitter = new SentenceSplitter(sink);
+        boolean completed;
+        try {
+            completed = splitSentences(text, splitter);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        if (completed) {
+            sink.end();
+        }
+        recordCall("stream", start, text.length());
+        return completed;
+    }
+
+    /**
+     * Tokenizes each sentence as it is split off and hands the tokens to a sink
+     */
+    private class SentenceSplitter implements Predicate<String> {
+
+        private final TokenSink sink;
+        private int sentence = 0;
+
+        SentenceSplitter(TokenSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public boolean test(String text) {
+            try {
+                int tokens = splitWords(text, sink, sentence);
+                return tokens >= 0 && sink.sentenceEnd(sentence++, tokens);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    private static void recordCall(String method, long start, int chars) {
+        if (Metrics.isEnabled()) {
+            Metrics.stop(Metrics.TOKENIZER, start, "method", method);
+            Metrics.getRecorder().count(Metrics.TOKENIZER_CHARS, chars, "method", method);
+        }
     }
 }
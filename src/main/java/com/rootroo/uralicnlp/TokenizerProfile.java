@@ -0,0 +1,307 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * The punctuation and abbreviations a Tokenizer uses for a language, read from tokenizer/default.json and
+ * tokenizer/LANG.json in the resources. A language file only lists what it adds to the default: its
+ * punctuation characters join the default ones and its abbreviations join abrvs.json.
+ * <p>
+ * A profile is compiled once into a class table with a bit per character class, a table lookup for every
+ * code point, and into a trie of the reversed abbreviations that is walked back from a dot. Both take the same
+ * time however many characters and abbreviations a profile has.
+ * @author mikahama
+ */
+public final class TokenizerProfile {
+
+    static final int SENTENCE_END = 1;
+    static final int WORD_END = 2;
+    static final int WORD_START = 4;
+    static final int NUMBER = 8;
+    static final int CUSTOM = 16;
+
+    private static final ConcurrentHashMap<String, TokenizerProfile> PROFILES = new ConcurrentHashMap<String, TokenizerProfile>();
+    //ISO 639 codes, anything else must not become part of a resource path
+    private static final Pattern LANGUAGE_CODE = Pattern.compile("[a-z]{2,3}");
+
+    private final String language;
+    private final byte[] bmpClasses = new byte[Character.MAX_VALUE + 1];
+    private final int[] supplementaryCodePoints;
+    private final byte[] supplementaryClasses;
+    private final boolean ordinalDots;
+    //Reversed abbreviation trie: the labels and targets of node n are at edgeStart[n]..edgeStart[n + 1]
+    private final int[] edgeStart;
+    private final int[] edgeLabels;
+    private final int[] edgeTargets;
+    private final boolean[] terminal;
+
+    private TokenizerProfile(String language, JSONObject defaults, JSONObject profile, List<String> abbreviations) {
+        this.language = language;
+        TreeMap<Integer, Integer> supplementary = new TreeMap<Integer, Integer>();
+        for (JSONObject json : new JSONObject[]{defaults, profile}) {
+            if (json == null) {
+                continue;
+            }
+            addClass(json, "sentenceEnd", SENTENCE_END, supplementary);
+            addClass(json, "wordEndPunct", WORD_END, supplementary);
+            addClass(json, "wordStartPunct", WORD_START, supplementary);
+            addClass(json, "numbers", NUMBER, supplementary);
+            addClass(json, "customPunctuation", CUSTOM, supplementary);
+            Object list = json.get("abbreviations");
+            if (list != null) {
+                for (Object o : (JSONArray) list) {
+                    abbreviations.add((String) o);
+                }
+            }
+        }
+        supplementaryCodePoints = new int[supplementary.size()];
+        supplementaryClasses = new byte[supplementary.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Integer> e : supplementary.entrySet()) {
+            supplementaryCodePoints[i] = e.getKey();
+            supplementaryClasses[i++] = e.getValue().byteValue();
+        }
+        Object ordinal = profile == null ? defaults.get("ordinalDots") : profile.get("ordinalDots");
+        ordinalDots = ordinal == null ? Boolean.TRUE.equals(defaults.get("ordinalDots")) : Boolean.TRUE.equals(ordinal);
+
+        //build the trie with sorted child maps, then flatten it into arrays
+        List<TreeMap<Integer, Integer>> nodes = new ArrayList<TreeMap<Integer, Integer>>();
+        List<Boolean> ends = new ArrayList<Boolean>();
+        nodes.add(new TreeMap<Integer, Integer>());
+        ends.add(false);
+        int edges = 0;
+        for (String abbreviation : abbreviations) {
+            int node = 0;
+            for (int p = abbreviation.length(); p > 0;) {
+                int cp = abbreviation.codePointBefore(p);
+                p -= Character.charCount(cp);
+                Integer next = nodes.get(node).get(cp);
+                if (next == null) {
+                    next = nodes.size();
+                    nodes.get(node).put(cp, next);
+                    nodes.add(new TreeMap<Integer, Integer>());
+                    ends.add(false);
+                    edges++;
+                }
+                node = next;
+            }
+            if (node != 0) {
+                ends.set(node, true);
+            }
+        }
+        edgeStart = new int[nodes.size() + 1];
+        edgeLabels = new int[edges];
+        edgeTargets = new int[edges];
+        terminal = new boolean[nodes.size()];
+        int e = 0;
+        for (int n = 0; n < nodes.size(); n++) {
+            edgeStart[n] = e;
+            terminal[n] = ends.get(n);
+            for (Map.Entry<Integer, Integer> edge : nodes.get(n).entrySet()) {
+                edgeLabels[e] = edge.getKey();
+                edgeTargets[e++] = edge.getValue();
+            }
+        }
+        edgeStart[nodes.size()] = e;
+    }
+
+    private void addClass(JSONObject json, String key, int flag, TreeMap<Integer, Integer> supplementary) {
+        Object chars = json.get(key);
+        if (chars == null) {
+            return;
+        }
+        String s = (String) chars;
+        for (int i = 0; i < s.length();) {
+            int cp = s.codePointAt(i);
+            i += Character.charCount(cp);
+            if (cp <= Character.MAX_VALUE) {
+                bmpClasses[cp] |= flag;
+            } else {
+                Integer old = supplementary.get(cp);
+                supplementary.put(cp, (old == null ? 0 : old) | flag);
+            }
+        }
+    }
+
+    /**
+     * Gets the profile of a language, compiled on first use. Languages without a profile of their own use the
+     * default profile.
+     * @param language ISO code of the language, e.g. fin, or null for the default profile
+     * @return the profile
+     */
+    public static TokenizerProfile forLanguage(String language) {
+        String key = language == null ? "" : language;
+        TokenizerProfile profile = PROFILES.get(key);
+        if (profile == null) {
+            if (language != null && !hasProfile(language)) {
+                //not cached under its own name, so unknown codes do not fill the cache
+                return forLanguage(null);
+            }
+            try {
+                profile = load(language);
+            } catch (IOException ex) {
+                //Should not happen because the profiles are always embedded in the JAR
+                throw new IllegalStateException("Cannot read the tokenizer profile of " + language, ex);
+            }
+            TokenizerProfile old = PROFILES.putIfAbsent(key, profile);
+            if (old != null) {
+                profile = old;
+            }
+        }
+        return profile;
+    }
+
+    /**
+     * Tells whether a language has a profile of its own
+     * @param language ISO code of the language
+     * @return true if the code is two or three lowercase letters and tokenizer/LANG.json exists
+     */
+    public static boolean hasProfile(String language) {
+        if (language == null || !LANGUAGE_CODE.matcher(language).matches()) {
+            return false;
+        }
+        return TokenizerProfile.class.getClassLoader().getResource("tokenizer/" + language + ".json") != null;
+    }
+
+    private static TokenizerProfile load(String language) throws IOException {
+        JSONObject defaults = readJson("tokenizer/default.json");
+        JSONObject profile = language == null ? null : readJson("tokenizer/" + language + ".json");
+        List<String> abbreviations = new ArrayList<String>();
+        JSONArray shared = (JSONArray) readResource("abrvs.json");
+        for (Object o : shared) {
+            abbreviations.add((String) o);
+        }
+        return new TokenizerProfile(language, defaults, profile, abbreviations);
+    }
+
+    private static JSONObject readJson(String resource) throws IOException {
+        return (JSONObject) readResource(resource);
+    }
+
+    private static Object readResource(String resource) throws IOException {
+        try (InputStream stream = TokenizerProfile.class.getClassLoader().getResourceAsStream(resource)) {
+            if (stream == null) {
+                return null;
+            }
+            try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                return new JSONParser().parse(reader);
+            } catch (ParseException ex) {
+                throw new IOException("Invalid JSON in " + resource, ex);
+            }
+        }
+    }
+
+    /**
+     * The language of the profile
+     * @return ISO code, null for the default profile
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Tells whether a dot after a number stays in the token when a lowercase word follows, as in Finnish
+     * 3. päivänä
+     * @return true if ordinal dots are kept
+     */
+    public boolean hasOrdinalDots() {
+        return ordinalDots;
+    }
+
+    /**
+     * Gets the character classes of a code point
+     * @param codePoint a code point
+     * @return bits of SENTENCE_END, WORD_END, WORD_START, NUMBER and CUSTOM
+     */
+    int classOf(int codePoint) {
+        if (codePoint <= Character.MAX_VALUE) {
+            return bmpClasses[codePoint];
+        }
+        int i = Arrays.binarySearch(supplementaryCodePoints, codePoint);
+        return i < 0 ? 0 : supplementaryClasses[i];
+    }
+
+    boolean is(int codePoint, int flag) {
+        return (classOf(codePoint) & flag) != 0;
+    }
+
+    /**
+     * Tells whether text[start, end) ends in an abbreviation that starts the text or follows whitespace. The text
+     * is compared in lowercase and, like $ in a regular expression, the end may be followed by one line break.
+     */
+    boolean endsInAbbreviation(CharSequence text, int start, int end) {
+        if (end > start && isLineTerminator(text.charAt(end - 1))) {
+            int before = end - 1;
+            if (text.charAt(before) == '\n' && before > start && text.charAt(before - 1) == '\r') {
+                before--;
+            }
+            if (matchesBefore(text, start, before)) {
+                return true;
+            }
+        }
+        return matchesBefore(text, start, end);
+    }
+
+    private boolean matchesBefore(CharSequence text, int start, int end) {
+        int node = 0;
+        int p = end;
+        while (p > start) {
+            int cp = Character.codePointBefore(text, p);
+            p -= Character.charCount(cp);
+            node = child(node, Character.toLowerCase(cp));
+            if (node < 0) {
+                return false;
+            }
+            if (terminal[node] && (p == start || isSpace(text.charAt(p - 1)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int child(int node, int label) {
+        int low = edgeStart[node];
+        int high = edgeStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (edgeLabels[mid] < label) {
+                low = mid + 1;
+            } else if (edgeLabels[mid] > label) {
+                high = mid - 1;
+            } else {
+                return edgeTargets[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    /**
+     * The whitespace of \s in regular expressions
+     */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+}
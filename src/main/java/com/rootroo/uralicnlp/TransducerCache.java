@@ -0,0 +1,253 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import fi.seco.hfst.Transducer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Holds loaded transducers within a memory budget. When the budget is exceeded, the least recently
+ * used transducers are evicted. The memory use of a transducer is estimated from the size of its file:
+ * the lookup tables take about twice as much memory as on the disk.
+ * @author mikahama
+ */
+public class TransducerCache {
+
+    /**
+     * In-memory size of a transducer relative to its file size
+     */
+    static final int MEMORY_FACTOR = 2;
+
+    private long memoryBudget;
+    private long usedBytes = 0;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final HashMap<String, Integer> loadCounts = new HashMap<String, Integer>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final List<TransducerCacheListener> listeners = new CopyOnWriteArrayList<TransducerCacheListener>();
+
+    /**
+     * Initializes a cache without a memory budget
+     */
+    public TransducerCache() {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * Initializes a cache with a memory budget
+     * @param memoryBudget estimated memory in bytes that the cached transducers may use
+     */
+    public TransducerCache(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Changes the memory budget, evicting transducers if needed
+     * @param memoryBudget estimated memory in bytes that the cached transducers may use
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        List<Entry> evicted;
+        lock.lock();
+        try {
+            this.memoryBudget = memoryBudget;
+            evicted = evict(null);
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(evicted, false);
+    }
+
+    /**
+     * Gets the memory budget
+     * @return estimated memory in bytes that the cached transducers may use
+     */
+    public long getMemoryBudget() {
+        lock.lock();
+        try {
+            return memoryBudget;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the estimated memory use of the cached transducers
+     * @return bytes
+     */
+    public long getUsedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Number of transducers in the cache
+     * @return cache size
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Adds a listener for load and eviction events
+     * @param listener the listener
+     */
+    public void addListener(TransducerCacheListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener
+     * @param listener the listener
+     */
+    public void removeListener(TransducerCacheListener listener) {
+        listeners.remove(listener);
+    }
+
+    Transducer get(String key) {
+        lock.lock();
+        try {
+            Entry e = entries.get(key);
+            if (e == null) {
+                return null;
+            }
+            return e.transducer;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(String key, String language, String model, Transducer transducer, long fileBytes) {
+        Entry entry = new Entry(key, language, model, transducer, fileBytes * MEMORY_FACTOR);
+        List<Entry> evicted;
+        int loadCount;
+        lock.lock();
+        try {
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                usedBytes -= old.bytes;
+            }
+            usedBytes += entry.bytes;
+            Integer count = loadCounts.get(language + "/" + model);
+            loadCount = count == null ? 1 : count + 1;
+            loadCounts.put(language + "/" + model, loadCount);
+            evicted = evict(key);
+        } finally {
+            lock.unlock();
+        }
+        for (TransducerCacheListener listener : listeners) {
+            listener.loaded(language, model, entry.bytes, loadCount);
+        }
+        notifyEvicted(evicted, false);
+    }
+
+    /**
+     * Removes all the transducers of a language from memory. They are loaded again on next use.
+     * @param language ISO code of the language
+     */
+    public void unload(String language) {
+        List<Entry> removed = new ArrayList<Entry>();
+        lock.lock();
+        try {
+            Iterator<Entry> iter = entries.values().iterator();
+            while (iter.hasNext()) {
+                Entry e = iter.next();
+                if (e.language.equals(language)) {
+                    iter.remove();
+                    usedBytes -= e.bytes;
+                    removed.add(e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(removed, true);
+    }
+
+    /**
+     * Removes all the transducers from memory
+     */
+    public void unloadAll() {
+        List<Entry> removed;
+        lock.lock();
+        try {
+            removed = new ArrayList<Entry>(entries.values());
+            entries.clear();
+            usedBytes = 0;
+        } finally {
+            lock.unlock();
+        }
+        notifyEvicted(removed, true);
+    }
+
+    /**
+     * How many times a model has been loaded into the cache
+     * @param language ISO code of the language
+     * @param model model name e.g. analyser
+     * @return load count, 0 if never loaded
+     */
+    public int getLoadCount(String language, String model) {
+        lock.lock();
+        try {
+            Integer count = loadCounts.get(language + "/" + model);
+            return count == null ? 0 : count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<Entry> evict(String keep) {
+        List<Entry> evicted = new ArrayList<Entry>();
+        Iterator<Entry> iter = entries.values().iterator();
+        while (usedBytes > memoryBudget && iter.hasNext()) {
+            Entry e = iter.next();
+            if (e.key.equals(keep)) {
+                continue;
+            }
+            iter.remove();
+            usedBytes -= e.bytes;
+            evicted.add(e);
+        }
+        return evicted;
+    }
+
+    private void notifyEvicted(List<Entry> evicted, boolean explicit) {
+        for (Entry e : evicted) {
+            for (TransducerCacheListener listener : listeners) {
+                listener.evicted(e.language, e.model, e.bytes, explicit);
+            }
+        }
+    }
+
+    private static class Entry {
+
+        final String key;
+        final String language;
+        final String model;
+        final Transducer transducer;
+        final long bytes;
+
+        Entry(String key, String language, String model, Transducer transducer, long bytes) {
+            this.key = key;
+            this.language = language;
+            this.model = model;
+            this.transducer = transducer;
+            this.bytes = bytes;
+        }
+    }
+}
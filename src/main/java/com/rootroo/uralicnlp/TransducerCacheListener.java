@@ -0,0 +1,30 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+/**
+ * Receives events from a TransducerCache, e.g. for logging evictions
+ * @author mikahama
+ */
+public interface TransducerCacheListener {
+
+    /**
+     * Called after a transducer has been loaded into the cache
+     * @param language ISO code of the language
+     * @param model model name e.g. analyser
+     * @param estimatedBytes estimated memory use of the transducer
+     * @param loadCount how many times this model has been loaded, more than 1 means it was evicted or unloaded before
+     */
+    void loaded(String language, String model, long estimatedBytes, int loadCount);
+
+    /**
+     * Called after a transducer has been removed from the cache
+     * @param language ISO code of the language
+     * @param model model name e.g. analyser
+     * @param estimatedBytes estimated memory use of the transducer
+     * @param explicit true if removed by unload, false if evicted to stay within the memory budget
+     */
+    void evicted(String language, String model, long estimatedBytes, boolean explicit);
+}
@@ -0,0 +1,48 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import fi.seco.hfst.Transducer;
+import fi.seco.hfst.TransducerAlphabet;
+
+/**
+ * Read access to the lookup tables of an HFST optimized-lookup transducer, so that the library can
+ * walk them for lookups that hfst itself does not offer. Table layout follows fi.seco.hfst: targets at or
+ * above TRANSITION_TARGET_TABLE_START point into the transition table, smaller ones into the index table.
+ * @author mikahama
+ */
+interface TraversableTransducer extends Transducer {
+
+    /**
+     * Start of the transition table in target addresses
+     */
+    long TRANSITION_TARGET_TABLE_START = 2147483648L;
+    /**
+     * Input symbol of an empty table cell and the end of a state
+     */
+    int NO_SYMBOL = 65535;
+
+    TransducerAlphabet alphabet();
+
+    int inputSymbolCount();
+
+    int indexInput(int i);
+
+    long indexTarget(int i);
+
+    boolean indexFinal(int i);
+
+    float indexFinalWeight(int i);
+
+    int transitionInput(int i);
+
+    int transitionOutput(int i);
+
+    long transitionTarget(int i);
+
+    float transitionWeight(int i);
+
+    boolean transitionFinal(int i);
+}
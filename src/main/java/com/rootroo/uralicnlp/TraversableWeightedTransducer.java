@@ -0,0 +1,77 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import fi.seco.hfst.TransducerAlphabet;
+import fi.seco.hfst.TransducerHeader;
+import fi.seco.hfst.WeightedTransducer;
+import java.io.DataInputStream;
+import java.io.IOException;
+
+/**
+ * A weighted transducer with its lookup tables exposed
+ * @author mikahama
+ */
+class TraversableWeightedTransducer extends WeightedTransducer implements TraversableTransducer {
+
+    TraversableWeightedTransducer(DataInputStream charstream, TransducerHeader h, TransducerAlphabet a) throws IOException {
+        super(charstream, h, a);
+    }
+
+    @Override
+    public TransducerAlphabet alphabet() {
+        return alphabet;
+    }
+
+    @Override
+    public int inputSymbolCount() {
+        return header.getInputSymbolCount();
+    }
+
+    @Override
+    public int indexInput(int i) {
+        return indexTable.getInput(i);
+    }
+
+    @Override
+    public long indexTarget(int i) {
+        return indexTable.getTarget(i);
+    }
+
+    @Override
+    public boolean indexFinal(int i) {
+        return indexTable.isFinal(i);
+    }
+
+    @Override
+    public float indexFinalWeight(int i) {
+        return indexTable.getFinalWeight(i);
+    }
+
+    @Override
+    public int transitionInput(int i) {
+        return transitionTable.getInput(i);
+    }
+
+    @Override
+    public int transitionOutput(int i) {
+        return transitionTable.getOutput(i);
+    }
+
+    @Override
+    public long transitionTarget(int i) {
+        return transitionTable.getTarget(i);
+    }
+
+    @Override
+    public float transitionWeight(int i) {
+        return transitionTable.getWeight(i);
+    }
+
+    @Override
+    public boolean transitionFinal(int i) {
+        return transitionTable.isFinal(i);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An inverted index from attribute values to the sentences of a UDCollection that contain them, e.g.
+ * lemma=koira -&gt; sentences 3, 17 and 120. A feats.Name attribute is also indexed under each of its comma
+ * separated values. UDTreePattern uses it to skip sentences that cannot match
+ * and to start matching from the rarest word of a pattern.
+ * @author mikahama
+ */
+public class UDAttributeIndex {
+
+    private final HashMap<String, HashMap<String, int[]>> sentences = new HashMap<String, HashMap<String, int[]>>();
+    private final HashMap<String, HashMap<String, Integer>> counts = new HashMap<String, HashMap<String, Integer>>();
+    private final int sentenceCount;
+
+    /**
+     * Indexes a collection
+     * @param collection the sentences
+     * @param attributes the attributes to index, e.g. lemma, upostag, deprel
+     */
+    public UDAttributeIndex(UDCollection collection, String... attributes) {
+        HashMap<String, HashMap<String, IntList>> postings = new HashMap<String, HashMap<String, IntList>>();
+        for (String attribute : attributes) {
+            postings.put(attribute, new HashMap<String, IntList>());
+            counts.put(attribute, new HashMap<String, Integer>());
+        }
+        sentenceCount = collection.size();
+        for (int i = 0; i < sentenceCount; i++) {
+            for (UDNode node : collection.get(i).find()) {
+                for (String attribute : attributes) {
+                    String value = UDTreePattern.attribute(node, attribute);
+                    if (value == null) {
+                        continue;
+                    }
+                    post(postings.get(attribute), counts.get(attribute), value, i);
+                    if (attribute.startsWith("feats.") && value.indexOf(',') >= 0) {
+                        //PronType=Int,Rel is found with Int and with Rel, as UDTreePattern matches it
+                        for (String v : value.split(",")) {
+                            if (!v.isEmpty()) {
+                                post(postings.get(attribute), counts.get(attribute), v, i);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, HashMap<String, IntList>> a : postings.entrySet()) {
+            HashMap<String, int[]> values = new HashMap<String, int[]>();
+            for (Map.Entry<String, IntList> v : a.getValue().entrySet()) {
+                values.put(v.getKey(), v.getValue().toArray());
+            }
+            sentences.put(a.getKey(), values);
+        }
+    }
+
+    private static void post(HashMap<String, IntList> postings, HashMap<String, Integer> counts, String value, int sentence) {
+        IntList list = postings.get(value);
+        if (list == null) {
+            list = new IntList();
+            postings.put(value, list);
+        }
+        list.addOnce(sentence);
+        Integer old = counts.get(value);
+        counts.put(value, old == null ? 1 : old + 1);
+    }
+
+    /**
+     * Tells whether an attribute is indexed
+     * @param attribute attribute name e.g. lemma
+     * @return true if it is indexed
+     */
+    public boolean isIndexed(String attribute) {
+        return sentences.containsKey(attribute);
+    }
+
+    /**
+     * Gets the sentences that have a word with an attribute value
+     * @param attribute attribute name e.g. lemma
+     * @param value attribute value e.g. koira
+     * @return sorted sentence indexes, null if the attribute is not indexed
+     */
+    public int[] getSentences(String attribute, String value) {
+        HashMap<String, int[]> values = sentences.get(attribute);
+        if (values == null) {
+            return null;
+        }
+        int[] s = values.get(value);
+        return s == null ? new int[0] : s;
+    }
+
+    /**
+     * Gets the number of words with an attribute value
+     * @param attribute attribute name e.g. lemma
+     * @param value attribute value e.g. koira
+     * @return word count, -1 if the attribute is not indexed
+     */
+    public int getCount(String attribute, String value) {
+        HashMap<String, Integer> c = counts.get(attribute);
+        if (c == null) {
+            return -1;
+        }
+        Integer n = c.get(value);
+        return n == null ? 0 : n;
+    }
+
+    /**
+     * Number of sentences in the indexed collection
+     * @return sentence count
+     */
+    public int getSentenceCount() {
+        return sentenceCount;
+    }
+
+    /**
+     * A growable list of ascending ints
+     */
+    private static class IntList {
+
+        private int[] values = new int[4];
+        private int size = 0;
+
+        void addOnce(int v) {
+            if (size > 0 && values[size - 1] == v) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
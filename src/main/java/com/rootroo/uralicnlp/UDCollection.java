@@ -5,20 +5,26 @@
 package com.rootroo.uralicnlp;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.Spliterator;
 
 /**
  * A class that holds an entire UD file
  * @author mikahama
  */
-public class UDCollection implements Iterable<UDSentence> {
+public class UDCollection implements Iterable<UDSentence>, Closeable {
 
-    ArrayList<UDSentence> sentences = new ArrayList<UDSentence>();
+    List<UDSentence> sentences = new ArrayList<UDSentence>();
 
     /**
      * Initializes the class with a BufferedReader that reads a CoNLL-U formatted file
@@ -26,14 +32,13 @@ public class UDCollection implements Iterable<UDSentence> {
      * @throws IOException May fail reading the file
      */
     public UDCollection(BufferedReader in) throws IOException {
-        int intValueOfChar;
-        String targetString = "";
-      String str;
-      while ((str = in.readLine()) != null) {
-          targetString += str +"\n";
-      }
+        StringBuilder targetString = new StringBuilder();
+        String str;
+        while ((str = in.readLine()) != null) {
+            targetString.append(str).append('\n');
+        }
         in.close();
-        init(targetString);
+        init(targetString.toString());
     }
 
     /**
@@ -44,13 +49,110 @@ public class UDCollection implements Iterable<UDSentence> {
         init(UDText);
     }
 
+    /**
+     * Initializes the class with the sentences of a binary snapshot
+     * @param snapshot a snapshot written by writeSnapshot
+     */
+    public UDCollection(UDSnapshot snapshot) {
+        long start = Metrics.start();
+        sentences = new ArrayList<UDSentence>(snapshot.size());
+        for (int i = 0; i < snapshot.size(); i++) {
+            sentences.add(snapshot.get(i));
+        }
+        Metrics.stop(Metrics.UD_LOAD, start);
+        Metrics.getRecorder().count(Metrics.UD_SENTENCES, sentences.size());
+    }
+
+    private UDCollection(List<UDSentence> sentences) {
+        this.sentences = sentences;
+    }
+
+    /**
+     * Opens a CoNLL-U file without parsing it. The file is scanned once for where its sentences are,
+     * and each sentence is read and parsed when it is asked for. Every access parses the sentence again,
+     * so keep the UDSentence if you need it more than once. Close the collection when done.
+     * @param conlluFile a CoNLL-U formatted file
+     * @return a collection backed by the file
+     * @throws IOException May fail reading the file
+     */
+    public static UDCollection openLazy(Path conlluFile) throws IOException {
+        long start = Metrics.start();
+        UDCollection collection = new UDCollection(new UDFileIndex(conlluFile));
+        Metrics.stop(Metrics.UD_LOAD, start);
+        return collection;
+    }
+
+    /**
+     * Opens a binary snapshot without decoding it, each sentence is decoded when it is asked for
+     * @param snapshot a snapshot written by writeSnapshot
+     * @return a collection backed by the snapshot
+     */
+    public static UDCollection openLazy(UDSnapshot snapshot) {
+        return new UDCollection(new SnapshotList(snapshot));
+    }
+
+    /**
+     * Number of sentences
+     * @return sentence count
+     */
+    public int size() {
+        return sentences.size();
+    }
+
+    /**
+     * Gets a sentence
+     * @param index index of the sentence
+     * @return the sentence
+     */
+    public UDSentence get(int index) {
+        return sentences.get(index);
+    }
+
+    /**
+     * Gets the sentences [fromIndex, toIndex) as a view, e.g. for the shard of one worker
+     * @param fromIndex first sentence, inclusive
+     * @param toIndex last sentence, exclusive
+     * @return the sentences
+     */
+    public List<UDSentence> subList(int fromIndex, int toIndex) {
+        return Collections.unmodifiableList(sentences.subList(fromIndex, toIndex));
+    }
+
+    /**
+     * Splits evenly and knows its exact size, so StreamSupport.stream(collection.spliterator(), true)
+     * spreads the sentences over all cores
+     * @return a spliterator over the sentences
+     */
+    @Override
+    public Spliterator<UDSentence> spliterator() {
+        return Collections.unmodifiableList(sentences).spliterator();
+    }
+
+    /**
+     * Closes the file of a collection opened with openLazy, does nothing otherwise
+     * @throws IOException May fail closing the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (sentences instanceof Closeable) {
+            ((Closeable) sentences).close();
+        }
+    }
+
+    /**
+     * Saves the collection as a binary snapshot, which loads much faster than CoNLL-U text
+     * @param snapshotFile path of the snapshot to write
+     * @throws IOException May fail writing the file
+     */
+    public void writeSnapshot(Path snapshotFile) throws IOException {
+        UDSnapshot.write(sentences, snapshotFile);
+    }
+
     private void init(String UDText) {
-        UDText = UDText.replaceAll("\r", "");
-        String[] lines = UDText.split("\n");
+        long start = Metrics.start();
         ArrayList<String> sentence = new ArrayList<String>();
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            if (line.replaceAll("\n", "").length() == 0) {
+        for (String line : UDTools.lines(UDText)) {
+            if (line.isEmpty()) {
                 if (sentence.size() > 0) {
                     sentences.add(UDTools.parseSentence(sentence));
                 }
@@ -64,6 +166,8 @@ public class UDCollection implements Iterable<UDSentence> {
             //add the last sentence
             sentences.add(UDTools.parseSentence(sentence));
         }
+        Metrics.stop(Metrics.UD_LOAD, start);
+        Metrics.getRecorder().count(Metrics.UD_SENTENCES, sentences.size());
     }
 
     /**
@@ -193,4 +297,26 @@ public class UDCollection implements Iterable<UDSentence> {
             }
         };
     }
+
+    /**
+     * The sentences of a snapshot, decoded on access
+     */
+    private static class SnapshotList extends AbstractList<UDSentence> implements RandomAccess {
+
+        private final UDSnapshot snapshot;
+
+        SnapshotList(UDSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public UDSentence get(int index) {
+            return snapshot.get(index);
+        }
+
+        @Override
+        public int size() {
+            return snapshot.size();
+        }
+    }
 }
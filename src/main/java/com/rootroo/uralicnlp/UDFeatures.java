@@ -0,0 +1,207 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The Key=Value pairs of a FEATS or MISC column, parsed once and sorted by key so that a value is found with
+ * a binary search. Keys and FEATS values are interned, a treebank only has a few hundred distinct ones, so
+ * every word shares the same strings. MISC values such as glosses and offsets are open-ended and are kept as
+ * they are. A MISC item without = has the empty string as its value.
+ * @author mikahama
+ */
+public final class UDFeatures {
+
+    static final UDFeatures EMPTY = new UDFeatures(new String[0], new String[0]);
+    //the pool stops growing here, so that malformed input cannot fill the heap
+    private static final int MAX_INTERNED = 1 << 16;
+    private static final ConcurrentHashMap<String, String> STRINGS = new ConcurrentHashMap<String, String>();
+
+    private final String[] keys;
+    private final String[] values;
+
+    private UDFeatures(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * Parses a FEATS column
+     * @param column e.g. Case=Nom|Number=Sing, or _
+     * @return the features
+     */
+    public static UDFeatures parse(String column) {
+        return parse(column, true);
+    }
+
+    /**
+     * Parses a MISC column, only its keys are interned
+     * @param column e.g. SpaceAfter=No|Gloss=dog, or _
+     * @return the items
+     */
+    public static UDFeatures parseMisc(String column) {
+        return parse(column, false);
+    }
+
+    private static UDFeatures parse(String column, boolean internValues) {
+        if (column == null || column.isEmpty() || column.equals("_")) {
+            return EMPTY;
+        }
+        int count = 1;
+        for (int i = 0; i < column.length(); i++) {
+            if (column.charAt(i) == '|') {
+                count++;
+            }
+        }
+        String[] items = new String[count];
+        int n = 0;
+        int start = 0;
+        while (start <= column.length()) {
+            int end = column.indexOf('|', start);
+            if (end < 0) {
+                end = column.length();
+            }
+            if (end > start) {
+                items[n++] = column.substring(start, end);
+            }
+            start = end + 1;
+        }
+        //sort by key, equal keys keep their order
+        Arrays.sort(items, 0, n, (a, b) -> key(a).compareTo(key(b)));
+        String[] keys = new String[n];
+        String[] values = new String[n];
+        for (int i = 0; i < n; i++) {
+            int eq = items[i].indexOf('=');
+            keys[i] = intern(eq < 0 ? items[i] : items[i].substring(0, eq));
+            String value = eq < 0 ? "" : items[i].substring(eq + 1);
+            values[i] = internValues ? intern(value) : value;
+        }
+        return new UDFeatures(keys, values);
+    }
+
+    private static String key(String item) {
+        int eq = item.indexOf('=');
+        return eq < 0 ? item : item.substring(0, eq);
+    }
+
+    private static String intern(String s) {
+        String shared = STRINGS.get(s);
+        if (shared != null) {
+            return shared;
+        }
+        if (STRINGS.size() >= MAX_INTERNED) {
+            return s;
+        }
+        shared = STRINGS.putIfAbsent(s, s);
+        return shared == null ? s : shared;
+    }
+
+    /**
+     * Gets the value of a feature
+     * @param key feature name e.g. Case
+     * @return the value e.g. Nom, null if the word does not have the feature
+     */
+    public String get(String key) {
+        int i = indexOf(key);
+        return i < 0 ? null : values[i];
+    }
+
+    /**
+     * Tells whether a feature has a value, one of the comma separated values of e.g. PronType=Int,Rel counts
+     * @param key feature name e.g. PronType
+     * @param value value e.g. Rel
+     * @return true if the feature has the value
+     */
+    public boolean has(String key, String value) {
+        String v = get(key);
+        if (v == null) {
+            return false;
+        }
+        if (v.equals(value)) {
+            return true;
+        }
+        int start = 0;
+        while (start < v.length()) {
+            int end = v.indexOf(',', start);
+            if (end < 0) {
+                end = v.length();
+            }
+            if (end - start == value.length() && v.startsWith(value, start)) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    private int indexOf(String key) {
+        int low = 0;
+        int high = keys.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = keys[mid].compareTo(key);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                while (mid > 0 && keys[mid - 1].equals(key)) {
+                    mid--;
+                }
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Number of features
+     * @return feature count
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Gets a feature name
+     * @param index index of the feature, features are sorted by name
+     * @return feature name
+     */
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Gets a feature value
+     * @param index index of the feature, features are sorted by name
+     * @return feature value
+     */
+    public String getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Gets the features as Key=Value strings
+     * @return the features sorted by name
+     */
+    public String[] toArray() {
+        String[] items = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            items[i] = values[i].isEmpty() ? keys[i] : keys[i] + "=" + values[i];
+        }
+        return items;
+    }
+
+    /**
+     * Renders the features as a CoNLL-U column
+     * @return e.g. Case=Nom|Number=Sing, or _ if there are none
+     */
+    @Override
+    public String toString() {
+        return keys.length == 0 ? "_" : String.join("|", toArray());
+    }
+}
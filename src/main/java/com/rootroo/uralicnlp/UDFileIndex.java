@@ -0,0 +1,130 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The sentences of a CoNLL-U file, parsed only when they are asked for. Opening the file scans it once for
+ * the byte offsets where sentences start and end; get(i) then reads and parses just that sentence. Reads are
+ * positional, so many threads can share one index.
+ * @author mikahama
+ */
+class UDFileIndex extends AbstractList<UDSentence> implements RandomAccess, Closeable {
+
+    private final FileChannel channel;
+    private long[] starts = new long[1024];
+    private long[] ends = new long[1024];
+    private int size = 0;
+
+    /**
+     * Scans a CoNLL-U file for its sentences
+     * @param conlluFile the file
+     * @throws IOException if the file cannot be read
+     */
+    UDFileIndex(Path conlluFile) throws IOException {
+        channel = FileChannel.open(conlluFile, StandardOpenOption.READ);
+        try {
+            scan();
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    private void scan() throws IOException {
+        //\n and \r never occur inside a UTF-8 character, so the file can be scanned block by block as bytes
+        ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        byte[] block = buffer.array();
+        long position = 0;
+        long lineStart = 0;
+        boolean blank = true;
+        boolean inSentence = false;
+        int read;
+        while ((read = channel.read(buffer)) != -1) {
+            for (int i = 0; i < read; i++) {
+                byte b = block[i];
+                if (b == '\n') {
+                    if (blank && inSentence) {
+                        ends[size++] = lineStart;
+                        inSentence = false;
+                    } else if (!blank && !inSentence) {
+                        grow();
+                        starts[size] = lineStart;
+                        inSentence = true;
+                    }
+                    lineStart = position + i + 1;
+                    blank = true;
+                } else if (b != '\r') {
+                    blank = false;
+                }
+            }
+            position += read;
+            buffer.clear();
+        }
+        if (!blank && !inSentence) {
+            grow();
+            starts[size] = lineStart;
+            inSentence = true;
+        }
+        if (inSentence) {
+            ends[size++] = position;
+        }
+    }
+
+    private void grow() {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Reads and parses a sentence, each call returns new objects
+     * @param index index of the sentence
+     * @return the sentence
+     */
+    @Override
+    public UDSentence get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Sentence " + index + " of " + size);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) (ends[index] - starts[index]));
+        try {
+            long position = starts[index];
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("The CoNLL-U file has been truncated");
+                }
+                position += read;
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return UDTools.parseSentence(new String(buffer.array(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -31,6 +31,24 @@ public class UDNode {
     List<UDRelation> heads;
     List<UDRelation> secondaryChildren;
     //UDRelation relation;
+    //FEATS and MISC parsed on first use, together with the column they were parsed from
+    private Parsed parsedFeats;
+    private Parsed parsedMisc;
+
+    /**
+     * A parsed column and its source. The fields are final, so a thread that sees the object also sees
+     * both of them, and a race only parses the same column twice.
+     */
+    private static final class Parsed {
+
+        final String source;
+        final UDFeatures features;
+
+        Parsed(String source, UDFeatures features) {
+            this.source = source;
+            this.features = features;
+        }
+    }
 
     /**
      * Creates a UDNode with UD word information
@@ -64,7 +82,74 @@ public class UDNode {
      * @return features
      */
     public String[] getFeats() {
-        return getFeats("|");
+        //the same as getFeats("|") without a regex, in the order of the column
+        int bar = feats.indexOf('|');
+        if (bar < 0) {
+            return new String[]{feats};
+        }
+        List<String> items = new ArrayList<String>();
+        int start = 0;
+        while (bar >= 0) {
+            items.add(feats.substring(start, bar));
+            start = bar + 1;
+            bar = feats.indexOf('|', start);
+        }
+        items.add(feats.substring(start));
+        int size = items.size();
+        while (size > 0 && items.get(size - 1).isEmpty()) {
+            size--;
+        }
+        return items.subList(0, size).toArray(new String[size]);
+    }
+
+    /**
+     * Gets the parsed FEATS column, parsed once and kept
+     *
+     * @return features
+     */
+    public UDFeatures getFeatures() {
+        String source = feats;
+        Parsed parsed = parsedFeats;
+        if (parsed == null || parsed.source != source) {
+            parsed = new Parsed(source, UDFeatures.parse(source));
+            parsedFeats = parsed;
+        }
+        return parsed.features;
+    }
+
+    /**
+     * Gets the parsed MISC column, parsed once and kept
+     *
+     * @return features of the MISC column
+     */
+    public UDFeatures getMiscFeatures() {
+        String source = misc;
+        Parsed parsed = parsedMisc;
+        if (parsed == null || parsed.source != source) {
+            parsed = new Parsed(source, UDFeatures.parseMisc(source));
+            parsedMisc = parsed;
+        }
+        return parsed.features;
+    }
+
+    /**
+     * Gets the value of a feature
+     *
+     * @param key feature name e.g. Case
+     * @return the value e.g. Nom, null if the word does not have the feature
+     */
+    public String getFeat(String key) {
+        return getFeatures().get(key);
+    }
+
+    /**
+     * Gets the value of a MISC item
+     *
+     * @param key item name e.g. SpaceAfter
+     * @return the value e.g. No, null if the word does not have the item
+     */
+    public String getMisc(String key) {
+        return getMiscFeatures().get(key);
     }
 
     /**
@@ -87,12 +172,18 @@ public class UDNode {
     }
 
     /**
-     * Gets the value of an attribute such as form, lemma, upostag...
+     * Gets the value of an attribute such as form, lemma, upostag... A single feature is asked for with
+     * feats.Name e.g. feats.Case, and a single MISC item with misc.Name
      *
      * @param attribute The name of the attribute
-     * @return value of the attribute
+     * @return value of the attribute, null if there is no such attribute
      */
     public String getAttribute(String attribute) {
+        if (attribute.startsWith("feats.")) {
+            return getFeat(attribute.substring(6));
+        } else if (attribute.startsWith("misc.")) {
+            return getMisc(attribute.substring(5));
+        }
 
         if (attribute.equals("id")) {
             return this.id;
@@ -154,6 +245,11 @@ public class UDNode {
                 } else {
                     attr = getAttribute(key);
                 }
+                if (attr == null) {
+                    //e.g. a feature the word does not have
+                    passed = false;
+                    break;
+                }
                 String v = query.get(key);
                 if (useRegex) {
                     Pattern p = Pattern.compile(v);
@@ -191,6 +287,10 @@ public class UDNode {
                         } else {
                             attr = getAttribute(key);
                         }
+                        if (attr == null) {
+                            head_pass = false;
+                            break;
+                        }
                         String v = headQuery.get(key);
                         if (useRegex) {
                             Pattern p = Pattern.compile(v);
@@ -226,38 +326,40 @@ public class UDNode {
 
     @Override
     public String toString() {
-
+        boolean range = id.indexOf('-') >= 0;
+        boolean empty = id.indexOf('.') >= 0;
         String head_repr = "0\troot";
-        String deps;
-        if (head != null) {
-            head_repr = head.head.id + "\t" + head.relation;
+        if (range || empty) {
+            //Their head in the tree is only a place to hang them, CoNLL-U has none
+            head_repr = "_\t_";
+        } else if (head != null) {
+            head_repr = head.headId() + "\t" + head.relation;
         }
-        if (heads.size() == 0) {
-            deps = "_";
-        } else {
-            List<UDRelation> rels = new ArrayList<UDRelation>();
-            for (UDRelation r : heads) {
-                if (!r.head.equals(this)) {
-                    rels.add(r);
-                }
-            }
-
-            if (head != null) {
-                rels.add(head);
-            }
-            Collections.sort(rels, new UDRelationComparator());
-            ArrayList<String> relsStrings = new ArrayList<String>();
-            for (UDRelation rel : rels) {
-                relsStrings.add(rel.toString());
-            }
-            deps = String.join("|", relsStrings);
+        return id + "\t" + form + "\t" + lemma + "\t" + upostag + "\t" + xpostag + "\t" + feats + "\t" + head_repr + "\t" + deps() + "\t" + misc;
+    }
 
-            if (deps.equals("")) {
-                deps = "_";
+    /**
+     * The DEPS column: the secondary relations and the primary one if the enhanced graph has it too
+     */
+    String deps() {
+        List<UDRelation> rels = new ArrayList<UDRelation>();
+        for (UDRelation r : heads) {
+            if (r.head != this) {
+                rels.add(r);
             }
         }
-        return id + "\t" + form + "\t" + lemma + "\t" + upostag + "\t" + xpostag + "\t" + feats + "\t" + head_repr + "\t" + deps + "\t" + misc;
-
+        if (head != null && head.enhanced) {
+            rels.add(head);
+        }
+        if (rels.isEmpty()) {
+            return "_";
+        }
+        Collections.sort(rels, new UDRelationComparator());
+        ArrayList<String> relsStrings = new ArrayList<String>();
+        for (UDRelation rel : rels) {
+            relsStrings.add(rel.toString());
+        }
+        return String.join("|", relsStrings);
     }
 
     @Override
@@ -271,30 +373,7 @@ public class UDNode {
      * @return true if less than other, false otherwise
      */
     public boolean lt(UDNode other) {
-        boolean s_dash = false;
-        float s_id;
-        if (id.contains("-")) {
-            s_dash = true;
-            s_id = Integer.parseInt(id.split("-")[0]);
-        } else {
-            s_id = Float.parseFloat(id);
-        }
-        boolean o_dash = false;
-        float o_id;
-        if (other.id.contains("-")) {
-            o_dash = true;
-            o_id = Integer.parseInt(other.id.split("-")[0]);
-        } else {
-            o_id = Float.parseFloat(other.id);
-        }
-        if (o_id == s_id) {
-            if (s_dash) {
-                return true;
-            }
-            return false;
-        } else {
-            return s_id < o_id;
-        }
+        return UDTools.compareIds(id, other.id) < 0;
     }
 
 }
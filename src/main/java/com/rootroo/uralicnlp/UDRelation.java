@@ -15,6 +15,8 @@ class UDRelation {
     UDNode node;
     UDNode head;
     boolean primary;
+    //A primary relation that is also listed in the DEPS column
+    boolean enhanced;
 
     /**
      * Initializes a UDRelation
@@ -55,9 +57,21 @@ class UDRelation {
         this.primary = primary;
     }
 
+    /**
+     * Gets the id of the head, 0 for the root of the sentence
+     *
+     * @return the head id, _ if the head is not in the sentence
+     */
+    String headId() {
+        if (head == null) {
+            return "_";
+        }
+        return head instanceof UDRootNode ? "0" : head.id;
+    }
+
     @Override
     public String toString() {
-        return head.id + ":" + relation;
+        return headId() + ":" + relation;
     }
 
     @Override
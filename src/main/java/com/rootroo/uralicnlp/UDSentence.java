@@ -19,11 +19,14 @@ public class UDSentence implements Iterable<UDNode> {
 
     String comments = "";
     String id = "0";
+    //every word and empty node in the order of the rows, also the ones that are not under root
     List<UDNode> children;
     List<UDNode> secondaryChildren;
+    List<UDNode> ranges;
     UDNode root;
 
     UDRootNode udRootNode;
+    private volatile UDSentenceStructure structure;
 
     /**
      * Initialize a UDSentence, you must also call setRoot after populating the
@@ -32,6 +35,7 @@ public class UDSentence implements Iterable<UDNode> {
     public UDSentence() {
         children = new ArrayList<UDNode>();
         secondaryChildren = new ArrayList<UDNode>();
+        ranges = new ArrayList<UDNode>();
         udRootNode = new UDRootNode("", "", "", "", "", "", "");
     }
 
@@ -76,7 +80,14 @@ public class UDSentence implements Iterable<UDNode> {
      * @return Matching words
      */
     public List<UDNode> find(HashMap<String, String> query, HashMap<String, String> headQuery, boolean matchRangeTokens, boolean matchEmptyNodes, boolean enhancedDependencies, boolean useRegex) {
-        return root.find(query, headQuery, matchRangeTokens, matchEmptyNodes, enhancedDependencies, useRegex);
+        List<UDNode> results = root.find(query, headQuery, matchRangeTokens, matchEmptyNodes, enhancedDependencies, useRegex);
+        if (matchRangeTokens) {
+            //Multiword tokens are not part of the tree
+            for (UDNode range : ranges) {
+                results.addAll(range.find(query, headQuery, true, matchEmptyNodes, enhancedDependencies, useRegex));
+            }
+        }
+        return results;
     }
 
     /**
@@ -142,13 +153,13 @@ public class UDSentence implements Iterable<UDNode> {
 
     @Override
     public String toString() {
-        List<UDNode> children = find();
+        List<UDNode> children = find(new HashMap<String, String>(), new HashMap<String, String>(), true, true, false, false);
         Collections.sort(children, new UDNodeComparator());
-        String representation = comments;
+        StringBuilder representation = new StringBuilder(comments);
         for (UDNode child : children) {
-            representation = representation + child.toString() + "\n";
+            representation.append(child.toString()).append('\n');
         }
-        return representation;
+        return representation.toString();
     }
 
     /**
@@ -163,6 +174,22 @@ public class UDSentence implements Iterable<UDNode> {
         return children;
     }
 
+    /**
+     * Gets the tree as int arrays for fast subtree, ancestor and projectivity questions. It is built on the
+     * first call and kept, so the words should not be relinked afterwards.
+     *
+     * @return the structure of the sentence
+     */
+    public UDSentenceStructure getStructure() {
+        UDSentenceStructure s = structure;
+        if (s == null) {
+            //A race only builds the same structure twice
+            s = new UDSentenceStructure(this);
+            structure = s;
+        }
+        return s;
+    }
+
     @Override
     public Iterator<UDNode> iterator() {
         return new Iterator<UDNode>() {
@@ -0,0 +1,409 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The basic dependency tree of a sentence as int arrays. Words are numbered by their position in the
+ * sentence, from 0, and the structure keeps the head of each word, the children of each word in one shared
+ * array, the pre- and post-order numbers of a depth first walk, the depth and the span of every subtree.
+ * Everything is computed once without recursion, after which subtree and ancestor questions are O(1), the
+ * lowest common ancestor is O(1) with an Euler tour and a sparse table, and paths to the root are O(depth).
+ * Empty nodes and multiword tokens are not part of the structure. Words without a head in the sentence, e.g.
+ * a second word with head 0, are roots of their own under a virtual root, and so is one word of every head cycle.
+ * @author mikahama
+ */
+public final class UDSentenceStructure {
+
+    private final UDNode[] words;
+    private final IdentityHashMap<UDNode, Integer> positions;
+    private final int[] heads;
+    private final int[] childStart;
+    private final int[] children;
+    private final int[] preOrder;
+    private final int[] postOrder;
+    private final int[] depths;
+    private final int[] subtreeSizes;
+    private final int[] spanStart;
+    private final int[] spanEnd;
+    private final boolean[] projectiveArcs;
+    private final boolean projective;
+    //Euler tour of the tree under a virtual root n, and a sparse table of its shallowest entries
+    private final int[] firstVisit;
+    private final int[] tourWords;
+    private final int[] tourDepths;
+    private final int[][] shallowest;
+
+    /**
+     * Builds the structure of a sentence
+     * @param sentence the sentence
+     */
+    UDSentenceStructure(UDSentence sentence) {
+        List<UDNode> sorted = words(sentence);
+        int n = sorted.size();
+        words = sorted.toArray(new UDNode[n]);
+        positions = new IdentityHashMap<UDNode, Integer>(n * 2);
+        for (int i = 0; i < n; i++) {
+            positions.put(words[i], i);
+        }
+        heads = new int[n];
+        for (int i = 0; i < n; i++) {
+            UDRelation head = words[i].head;
+            Integer h = head == null || head.head == null ? null : positions.get(head.head);
+            heads[i] = h == null ? -1 : h;
+        }
+        breakCycles(heads);
+        childStart = new int[n + 2];
+        for (int i = 0; i < n; i++) {
+            childStart[parent(heads[i], n) + 1]++;
+        }
+        for (int i = 0; i <= n; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        //children in sentence order, the words under the virtual root n are the roots of the sentence
+        children = new int[n];
+        int[] fill = childStart.clone();
+        for (int i = 0; i < n; i++) {
+            children[fill[parent(heads[i], n)]++] = i;
+        }
+
+        preOrder = new int[n];
+        postOrder = new int[n];
+        depths = new int[n];
+        subtreeSizes = new int[n];
+        spanStart = new int[n];
+        spanEnd = new int[n];
+        firstVisit = new int[n + 1];
+        tourDepths = new int[2 * n + 1];
+        tourWords = new int[2 * n + 1];
+        int tour = 0;
+        int pre = 0;
+        int post = 0;
+        int[] stack = new int[n + 1];
+        int[] next = new int[n + 1];
+        int top = 0;
+        stack[0] = n;
+        next[n] = childStart[n];
+        firstVisit[n] = 0;
+        tourWords[tour] = n;
+        tourDepths[tour++] = -1;
+        while (top >= 0) {
+            int w = stack[top];
+            if (next[w] < childStart[w + 1]) {
+                int c = children[next[w]++];
+                depths[c] = top;
+                preOrder[c] = pre++;
+                spanStart[c] = c;
+                spanEnd[c] = c;
+                subtreeSizes[c] = 1;
+                next[c] = childStart[c];
+                firstVisit[c] = tour;
+                tourWords[tour] = c;
+                tourDepths[tour++] = top;
+                stack[++top] = c;
+            } else {
+                top--;
+                if (w == n) {
+                    break;
+                }
+                postOrder[w] = post++;
+                int p = stack[top];
+                if (p != n) {
+                    subtreeSizes[p] += subtreeSizes[w];
+                    spanStart[p] = Math.min(spanStart[p], spanStart[w]);
+                    spanEnd[p] = Math.max(spanEnd[p], spanEnd[w]);
+                }
+                tourWords[tour] = p;
+                tourDepths[tour++] = p == n ? -1 : depths[p];
+            }
+        }
+        shallowest = rangeTable(tourDepths, true);
+
+        projectiveArcs = new boolean[n];
+        boolean all = true;
+        int[][] minPre = rangeTable(preOrder, true);
+        int[][] maxPre = rangeTable(preOrder, false);
+        for (int d = 0; d < n; d++) {
+            int h = heads[d];
+            boolean ok = true;
+            if (h >= 0 && Math.abs(h - d) > 1) {
+                int from = Math.min(h, d) + 1;
+                int to = Math.max(h, d) - 1;
+                ok = query(minPre, preOrder, from, to, true) >= preOrder[h]
+                        && query(maxPre, preOrder, from, to, false) < preOrder[h] + subtreeSizes[h];
+            }
+            projectiveArcs[d] = ok;
+            all &= ok;
+        }
+        projective = all;
+    }
+
+    /**
+     * All the words of the sentence in sentence order, also the ones that are not under the root of the
+     * sentence, e.g. when it has several words with head 0 or none at all
+     */
+    private static List<UDNode> words(UDSentence sentence) {
+        List<UDNode> words = new ArrayList<UDNode>(sentence.children.size());
+        for (UDNode node : sentence.children) {
+            if (node.id.indexOf('.') < 0) {
+                words.add(node);
+            }
+        }
+        if (words.isEmpty() && sentence.root != null) {
+            //a sentence that was put together by hand with setRoot
+            return sentence.getSortedChildren();
+        }
+        //by id and not with UDNodeComparator, which compares whole rows
+        Collections.sort(words, new Comparator<UDNode>() {
+            @Override
+            public int compare(UDNode a, UDNode b) {
+                return UDTools.compareIds(a.id, b.id);
+            }
+        });
+        return words;
+    }
+
+    /**
+     * Hangs one word of every head cycle under the virtual root, so that every word can be reached from it
+     */
+    private static void breakCycles(int[] heads) {
+        //0 not seen, 1 on the current walk, 2 reaches the root
+        byte[] state = new byte[heads.length];
+        for (int i = 0; i < heads.length; i++) {
+            int w = i;
+            while (w >= 0 && state[w] == 0) {
+                state[w] = 1;
+                if (heads[w] >= 0 && state[heads[w]] == 1) {
+                    heads[w] = -1;
+                }
+                w = heads[w];
+            }
+            for (w = i; w >= 0 && state[w] == 1; w = heads[w]) {
+                state[w] = 2;
+            }
+        }
+    }
+
+    private static int parent(int head, int n) {
+        return head < 0 ? n : head;
+    }
+
+    /**
+     * Number of words
+     * @return word count
+     */
+    public int size() {
+        return words.length;
+    }
+
+    /**
+     * Gets a word
+     * @param position position of the word in the sentence, from 0
+     * @return the word
+     */
+    public UDNode getWord(int position) {
+        return words[position];
+    }
+
+    /**
+     * Gets the position of a word
+     * @param word a word of the sentence
+     * @return position from 0, -1 if the word is not in the tree
+     */
+    public int indexOf(UDNode word) {
+        Integer p = positions.get(word);
+        return p == null ? -1 : p;
+    }
+
+    /**
+     * Gets the head of a word
+     * @param position position of the word
+     * @return position of the head, -1 for the root
+     */
+    public int getHead(int position) {
+        return heads[position];
+    }
+
+    /**
+     * Number of dependents of a word
+     * @param position position of the word
+     * @return child count
+     */
+    public int getChildCount(int position) {
+        return childStart[position + 1] - childStart[position];
+    }
+
+    /**
+     * Gets a dependent of a word, the dependents are in sentence order
+     * @param position position of the word
+     * @param index index of the dependent, from 0
+     * @return position of the dependent
+     */
+    public int getChild(int position, int index) {
+        if (index < 0 || index >= getChildCount(position)) {
+            throw new IndexOutOfBoundsException("Child " + index + " of " + getChildCount(position));
+        }
+        return children[childStart[position] + index];
+    }
+
+    /**
+     * Number of the word in a depth first walk that visits heads before their dependents
+     * @param position position of the word
+     * @return pre-order number
+     */
+    public int getPreOrder(int position) {
+        return preOrder[position];
+    }
+
+    /**
+     * Number of the word in a depth first walk that visits dependents before their heads
+     * @param position position of the word
+     * @return post-order number
+     */
+    public int getPostOrder(int position) {
+        return postOrder[position];
+    }
+
+    /**
+     * Distance of a word from the root
+     * @param position position of the word
+     * @return depth, 0 for the root
+     */
+    public int getDepth(int position) {
+        return depths[position];
+    }
+
+    /**
+     * Number of words in the subtree of a word, the word included
+     * @param position position of the word
+     * @return subtree size
+     */
+    public int getSubtreeSize(int position) {
+        return subtreeSizes[position];
+    }
+
+    /**
+     * First word of the subtree of a word
+     * @param position position of the word
+     * @return position of the leftmost word in the subtree
+     */
+    public int getSubtreeStart(int position) {
+        return spanStart[position];
+    }
+
+    /**
+     * Last word of the subtree of a word
+     * @param position position of the word
+     * @return position of the rightmost word in the subtree
+     */
+    public int getSubtreeEnd(int position) {
+        return spanEnd[position];
+    }
+
+    /**
+     * Tells whether a word dominates another one
+     * @param ancestor position of the possible ancestor
+     * @param descendant position of the possible descendant
+     * @return true if descendant is in the subtree of ancestor, a word is in its own subtree
+     */
+    public boolean isAncestor(int ancestor, int descendant) {
+        return preOrder[ancestor] <= preOrder[descendant] && postOrder[descendant] <= postOrder[ancestor];
+    }
+
+    /**
+     * Gets the lowest common ancestor of two words
+     * @param a position of a word
+     * @param b position of another word
+     * @return position of the deepest word whose subtree has both, -1 if they are in different trees
+     */
+    public int getLowestCommonAncestor(int a, int b) {
+        int from = Math.min(firstVisit[a], firstVisit[b]);
+        int to = Math.max(firstVisit[a], firstVisit[b]);
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        int x = shallowest[k][from];
+        int y = shallowest[k][to - (1 << k) + 1];
+        int w = tourWords[tourDepths[x] <= tourDepths[y] ? x : y];
+        return w == words.length ? -1 : w;
+    }
+
+    /**
+     * Number of dependency arcs between two words
+     * @param a position of a word
+     * @param b position of another word
+     * @return path length, -1 if they are in different trees
+     */
+    public int getDistance(int a, int b) {
+        int lca = getLowestCommonAncestor(a, b);
+        return lca < 0 ? -1 : depths[a] + depths[b] - 2 * depths[lca];
+    }
+
+    /**
+     * Gets the path from a word to the root
+     * @param position position of the word
+     * @return positions of the word, its head, the head of the head and so on up to the root
+     */
+    public int[] getPathToRoot(int position) {
+        int[] path = new int[depths[position] + 1];
+        for (int i = 0; i < path.length; i++) {
+            path[i] = position;
+            position = heads[position];
+        }
+        return path;
+    }
+
+    /**
+     * Tells whether the arc from a word to its head is projective, i.e. the head dominates every word
+     * between them
+     * @param position position of the dependent
+     * @return true if the arc is projective, true for the root
+     */
+    public boolean isProjective(int position) {
+        return projectiveArcs[position];
+    }
+
+    /**
+     * Tells whether the whole tree is projective
+     * @return true if there are no crossing arcs
+     */
+    public boolean isProjective() {
+        return projective;
+    }
+
+    /**
+     * Sparse table of the positions with the smallest or largest value in each run of 2^k positions
+     */
+    private static int[][] rangeTable(int[] values, boolean min) {
+        int length = values.length;
+        int levels = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1));
+        int[][] table = new int[levels][];
+        table[0] = new int[length];
+        for (int i = 0; i < length; i++) {
+            table[0][i] = i;
+        }
+        for (int k = 1; k < levels; k++) {
+            int half = 1 << (k - 1);
+            int count = length - (1 << k) + 1;
+            table[k] = new int[count];
+            for (int i = 0; i < count; i++) {
+                int a = table[k - 1][i];
+                int b = table[k - 1][i + half];
+                table[k][i] = (values[a] <= values[b]) == min ? a : b;
+            }
+        }
+        return table;
+    }
+
+    private static int query(int[][] table, int[] values, int from, int to, boolean min) {
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        int a = values[table[k][from]];
+        int b = values[table[k][to - (1 << k) + 1]];
+        return min ? Math.min(a, b) : Math.max(a, b);
+    }
+}
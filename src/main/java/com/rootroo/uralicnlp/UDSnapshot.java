@@ -0,0 +1,247 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A parsed UD treebank saved in a binary file. Every distinct string is stored once, each word is ten
+ * string numbers, and an index of where each sentence starts allows decoding sentence i without touching
+ * the rest. The file is memory mapped, and sentences are linked into trees by the same code as CoNLL-U
+ * text, so the objects are the same as those of the text parser.
+ * <pre>
+ * "UNLPUD01" int version, int sentenceCount, int wordCount, int stringCount
+ * int[sentenceCount + 1] first word of each sentence, int[sentenceCount] comment string of each sentence
+ * int[wordCount * 10] words, int[stringCount + 1] string offsets, UTF-8 strings back to back
+ * </pre>
+ * @author mikahama
+ */
+public class UDSnapshot {
+
+    static final byte[] MAGIC = "UNLPUD01".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    private static final int COLUMNS = 10;
+    private static final int HEADER = 8 + 4 * 4;
+
+    private final ByteBuffer data;
+    private final int sentenceCount;
+    private final int stringCount;
+    private final int sentencesStart;
+    private final int commentsStart;
+    private final int wordsStart;
+    private final int stringOffsetsStart;
+    private final int stringsStart;
+    //Decoded strings are kept, so that sentences share them like the strings of a text file would not
+    private final String[] strings;
+
+    private UDSnapshot(ByteBuffer data) throws IOException {
+        this.data = data.order(ByteOrder.BIG_ENDIAN);
+        byte[] magic = new byte[MAGIC.length];
+        if (data.capacity() < HEADER) {
+            throw new IOException("Not a UD snapshot");
+        }
+        data.duplicate().get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a UD snapshot");
+        }
+        if (data.getInt(8) != VERSION) {
+            throw new IOException("Unsupported UD snapshot version " + data.getInt(8));
+        }
+        sentenceCount = data.getInt(12);
+        int wordCount = data.getInt(16);
+        stringCount = data.getInt(20);
+        sentencesStart = HEADER;
+        commentsStart = sentencesStart + (sentenceCount + 1) * 4;
+        wordsStart = commentsStart + sentenceCount * 4;
+        stringOffsetsStart = wordsStart + wordCount * COLUMNS * 4;
+        stringsStart = stringOffsetsStart + (stringCount + 1) * 4;
+        if (sentenceCount < 0 || wordCount < 0 || stringCount < 0 || stringsStart > data.capacity()
+                || stringsStart + data.getInt(stringOffsetsStart + stringCount * 4) > data.capacity()) {
+            throw new IOException("UD snapshot is truncated");
+        }
+        strings = new String[stringCount];
+    }
+
+    /**
+     * Opens a snapshot by memory mapping it
+     * @param snapshotFile path to the snapshot
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is not a UD snapshot
+     */
+    public static UDSnapshot open(Path snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            return new UDSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the sentences of a collection into a snapshot
+     * @param sentences the sentences, e.g. a UDCollection
+     * @param snapshotFile path of the snapshot to write
+     * @throws IOException if the file cannot be written or the snapshot would exceed 2 GB
+     */
+    public static void write(Iterable<UDSentence> sentences, Path snapshotFile) throws IOException {
+        HashMap<String, Integer> ids = new HashMap<String, Integer>();
+        List<byte[]> stringBytes = new ArrayList<byte[]>();
+        List<Integer> sentenceStarts = new ArrayList<Integer>();
+        List<Integer> comments = new ArrayList<Integer>();
+        IntArray words = new IntArray();
+        long stringsSize = 0;
+        for (UDSentence sentence : sentences) {
+            sentenceStarts.add(words.size() / COLUMNS);
+            comments.add(intern(sentence.comments, ids, stringBytes));
+            for (UDNode node : sentence.find(new HashMap<String, String>(), new HashMap<String, String>(), true, true, false, false)) {
+                for (String column : columns(node)) {
+                    words.add(intern(column, ids, stringBytes));
+                }
+            }
+        }
+        sentenceStarts.add(words.size() / COLUMNS);
+        for (byte[] b : stringBytes) {
+            stringsSize += b.length;
+        }
+        long total = HEADER + sentenceStarts.size() * 4L + comments.size() * 4L + words.size() * 4L + (stringBytes.size() + 1) * 4L + stringsSize;
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("UD snapshot would be larger than 2 GB");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) total).order(ByteOrder.BIG_ENDIAN);
+        out.put(MAGIC).putInt(VERSION).putInt(comments.size()).putInt(words.size() / COLUMNS).putInt(stringBytes.size());
+        for (int s : sentenceStarts) {
+            out.putInt(s);
+        }
+        for (int c : comments) {
+            out.putInt(c);
+        }
+        for (int i = 0; i < words.size(); i++) {
+            out.putInt(words.get(i));
+        }
+        int offset = 0;
+        for (byte[] b : stringBytes) {
+            out.putInt(offset);
+            offset += b.length;
+        }
+        out.putInt(offset);
+        for (byte[] b : stringBytes) {
+            out.put(b);
+        }
+        Path temp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        Files.write(temp, out.array());
+        Files.move(temp, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * The CoNLL-U columns of a parsed word, the way the text parser would have seen them
+     */
+    private static String[] columns(UDNode node) {
+        boolean range = node.id.indexOf('-') >= 0;
+        boolean empty = node.id.indexOf('.') >= 0;
+        String head = "0";
+        String deprel = "_";
+        if (range || empty) {
+            head = "_";
+        } else if (node.head != null) {
+            deprel = node.head.relation;
+            if (node.head.head != null) {
+                head = node.head.headId();
+            }
+        }
+        return new String[]{node.id, node.form, node.lemma, node.upostag, node.xpostag, node.feats, head, deprel, node.deps(), node.misc};
+    }
+
+    private static int intern(String s, HashMap<String, Integer> ids, List<byte[]> stringBytes) {
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = stringBytes.size();
+            ids.put(s, id);
+            stringBytes.add(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+    /**
+     * Number of sentences
+     * @return sentence count
+     */
+    public int size() {
+        return sentenceCount;
+    }
+
+    /**
+     * Decodes one sentence
+     * @param index index of the sentence
+     * @return the sentence
+     */
+    public UDSentence get(int index) {
+        if (index < 0 || index >= sentenceCount) {
+            throw new IndexOutOfBoundsException("Sentence " + index + " of " + sentenceCount);
+        }
+        int first = data.getInt(sentencesStart + index * 4);
+        int last = data.getInt(sentencesStart + (index + 1) * 4);
+        List<String[]> rows = new ArrayList<String[]>(last - first);
+        for (int w = first; w < last; w++) {
+            String[] row = new String[COLUMNS];
+            for (int c = 0; c < COLUMNS; c++) {
+                row[c] = string(data.getInt(wordsStart + (w * COLUMNS + c) * 4));
+            }
+            rows.add(row);
+        }
+        return UDTools.buildSentence(string(data.getInt(commentsStart + index * 4)), rows);
+    }
+
+    private String string(int id) {
+        String s = strings[id];
+        if (s == null) {
+            int start = data.getInt(stringOffsetsStart + id * 4);
+            int end = data.getInt(stringOffsetsStart + (id + 1) * 4);
+            byte[] bytes = new byte[end - start];
+            ByteBuffer slice = data.duplicate();
+            slice.position(stringsStart + start);
+            slice.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            //A race only decodes the same string twice
+            strings[id] = s;
+        }
+        return s;
+    }
+
+    /**
+     * A growable int array
+     */
+    private static class IntArray {
+
+        private int[] values = new int[1024];
+        private int size = 0;
+
+        void add(int v) throws IOException {
+            if (size == values.length) {
+                if (size >= Integer.MAX_VALUE / 8) {
+                    throw new IOException("UD snapshot would be larger than 2 GB");
+                }
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = v;
+        }
+
+        int get(int i) {
+            return values[i];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,413 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.stream.StreamSupport;
+
+/**
+ * Counts over a treebank gathered in one pass: dependency relations, head direction, dependency lengths,
+ * part-of-speech n-grams and features that occur on the same word. compute runs over the sentences in
+ * parallel on the fork/join pool, each thread fills its own UDStatistics and the partial results are merged.
+ * An instance can also be filled by hand with add, it is not thread safe.
+ * @author mikahama
+ */
+public class UDStatistics {
+
+    private final int ngramSize;
+    private long sentences = 0;
+    private long words = 0;
+    private final HashMap<String, long[]> deprels = new HashMap<String, long[]>();
+    //per relation: words whose head comes before them, and words whose head comes after them
+    private final HashMap<String, long[]> headDirections = new HashMap<String, long[]>();
+    private long[] lengths = new long[16];
+    private final HashMap<String, long[]> ngrams = new HashMap<String, long[]>();
+    private final HashMap<String, long[]> features = new HashMap<String, long[]>();
+    private final HashMap<String, long[]> featurePairs = new HashMap<String, long[]>();
+
+    /**
+     * Initializes empty statistics
+     * @param ngramSize length of the part-of-speech n-grams e.g. 2 for bigrams
+     */
+    public UDStatistics(int ngramSize) {
+        if (ngramSize < 1) {
+            throw new IllegalArgumentException("The n-gram size must be at least 1");
+        }
+        this.ngramSize = ngramSize;
+    }
+
+    /**
+     * Computes statistics over sentences in parallel, e.g. of a UDCollection
+     * @param sentences the sentences
+     * @param ngramSize length of the part-of-speech n-grams
+     * @return the statistics
+     */
+    public static UDStatistics compute(Iterable<UDSentence> sentences, int ngramSize) {
+        return StreamSupport.stream(sentences.spliterator(), true)
+                .collect(() -> new UDStatistics(ngramSize), UDStatistics::add, UDStatistics::merge);
+    }
+
+    /**
+     * Computes statistics over a CoNLL-U file without loading it, the sentences are parsed while the file
+     * is read and counted in parallel
+     * @param conlluFile the file
+     * @param ngramSize length of the part-of-speech n-grams
+     * @return the statistics
+     * @throws IOException if the file cannot be read
+     */
+    public static UDStatistics compute(Path conlluFile, int ngramSize) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(conlluFile, StandardCharsets.UTF_8)) {
+            Iterator<List<String>> iterator = new SentenceIterator(reader);
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), true)
+                    .map(UDTools::parseSentence)
+                    .collect(() -> new UDStatistics(ngramSize), UDStatistics::add, UDStatistics::merge);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Counts one sentence
+     * @param sentence the sentence
+     */
+    public void add(UDSentence sentence) {
+        //not getStructure, which would keep the arrays on every sentence of the treebank
+        UDSentenceStructure structure = new UDSentenceStructure(sentence);
+        int n = structure.size();
+        sentences++;
+        words += n;
+        String[] tags = new String[n];
+        List<String> feats = new ArrayList<String>();
+        for (int i = 0; i < n; i++) {
+            UDNode word = structure.getWord(i);
+            tags[i] = word.upostag;
+            int head = structure.getHead(i);
+            String deprel = UDTreePattern.attribute(word, "deprel");
+            increment(deprels, deprel, 0, 1);
+            if (head >= 0) {
+                increment(headDirections, deprel, head < i ? 0 : 1, 2);
+                int length = Math.abs(head - i);
+                if (length >= lengths.length) {
+                    lengths = Arrays.copyOf(lengths, Math.max(length + 1, lengths.length * 2));
+                }
+                lengths[length]++;
+            }
+            splitFeats(word.feats, feats);
+            for (int a = 0; a < feats.size(); a++) {
+                increment(features, feats.get(a), 0, 1);
+                for (int b = a + 1; b < feats.size(); b++) {
+                    increment(featurePairs, pairKey(feats.get(a), feats.get(b)), 0, 1);
+                }
+            }
+        }
+        StringBuilder gram = new StringBuilder();
+        for (int i = 0; i + ngramSize <= n; i++) {
+            gram.setLength(0);
+            for (int k = 0; k < ngramSize; k++) {
+                if (k > 0) {
+                    gram.append(' ');
+                }
+                gram.append(tags[i + k]);
+            }
+            increment(ngrams, gram.toString(), 0, 1);
+        }
+    }
+
+    /**
+     * Adds the counts of other statistics to these ones
+     * @param other statistics with the same n-gram size
+     */
+    public void merge(UDStatistics other) {
+        if (other.ngramSize != ngramSize) {
+            throw new IllegalArgumentException("Cannot merge " + other.ngramSize + "-grams into " + ngramSize + "-grams");
+        }
+        sentences += other.sentences;
+        words += other.words;
+        merge(deprels, other.deprels);
+        merge(headDirections, other.headDirections);
+        merge(ngrams, other.ngrams);
+        merge(features, other.features);
+        merge(featurePairs, other.featurePairs);
+        if (other.lengths.length > lengths.length) {
+            lengths = Arrays.copyOf(lengths, other.lengths.length);
+        }
+        for (int i = 0; i < other.lengths.length; i++) {
+            lengths[i] += other.lengths[i];
+        }
+    }
+
+    private static void merge(HashMap<String, long[]> into, HashMap<String, long[]> from) {
+        for (Map.Entry<String, long[]> e : from.entrySet()) {
+            long[] counts = into.get(e.getKey());
+            if (counts == null) {
+                into.put(e.getKey(), e.getValue().clone());
+            } else {
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] += e.getValue()[i];
+                }
+            }
+        }
+    }
+
+    private static void increment(HashMap<String, long[]> map, String key, int slot, int slots) {
+        long[] counts = map.get(key);
+        if (counts == null) {
+            counts = new long[slots];
+            map.put(key, counts);
+        }
+        counts[slot]++;
+    }
+
+    private static void splitFeats(String feats, List<String> into) {
+        into.clear();
+        if (feats == null || feats.equals("_")) {
+            return;
+        }
+        int start = 0;
+        while (start < feats.length()) {
+            int end = feats.indexOf('|', start);
+            if (end < 0) {
+                end = feats.length();
+            }
+            if (end > start) {
+                into.add(feats.substring(start, end));
+            }
+            start = end + 1;
+        }
+    }
+
+    private static String pairKey(String a, String b) {
+        return a.compareTo(b) <= 0 ? a + "|" + b : b + "|" + a;
+    }
+
+    private static long count(HashMap<String, long[]> map, String key, int slot) {
+        long[] counts = map.get(key);
+        return counts == null ? 0 : counts[slot];
+    }
+
+    private static Map<String, Long> sorted(HashMap<String, long[]> map) {
+        TreeMap<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, long[]> e : map.entrySet()) {
+            result.put(e.getKey(), e.getValue()[0]);
+        }
+        return result;
+    }
+
+    /**
+     * Length of the part-of-speech n-grams
+     * @return n
+     */
+    public int getNgramSize() {
+        return ngramSize;
+    }
+
+    /**
+     * Number of sentences counted
+     * @return sentence count
+     */
+    public long getSentenceCount() {
+        return sentences;
+    }
+
+    /**
+     * Number of words counted, without multiword tokens and empty nodes
+     * @return word count
+     */
+    public long getWordCount() {
+        return words;
+    }
+
+    /**
+     * Number of words with a dependency relation
+     * @param deprel relation e.g. nsubj, root for the root words
+     * @return word count
+     */
+    public long getDeprelCount(String deprel) {
+        return count(deprels, deprel, 0);
+    }
+
+    /**
+     * Gets the distribution of dependency relations
+     * @return relation to word count, sorted by relation
+     */
+    public Map<String, Long> getDeprels() {
+        return sorted(deprels);
+    }
+
+    /**
+     * Number of words with a relation whose head comes before them
+     * @param deprel relation e.g. obj, null for all relations
+     * @return word count
+     */
+    public long getHeadInitialCount(String deprel) {
+        return headCount(deprel, 0);
+    }
+
+    /**
+     * Number of words with a relation whose head comes after them
+     * @param deprel relation e.g. obj, null for all relations
+     * @return word count
+     */
+    public long getHeadFinalCount(String deprel) {
+        return headCount(deprel, 1);
+    }
+
+    /**
+     * Share of the words with a relation whose head comes before them
+     * @param deprel relation e.g. obj, null for all relations
+     * @return ratio between 0 and 1, 0 if there are no such words
+     */
+    public double getHeadInitialRatio(String deprel) {
+        long initial = getHeadInitialCount(deprel);
+        long total = initial + getHeadFinalCount(deprel);
+        return total == 0 ? 0 : (double) initial / total;
+    }
+
+    private long headCount(String deprel, int slot) {
+        if (deprel != null) {
+            return count(headDirections, deprel, slot);
+        }
+        long total = 0;
+        for (long[] counts : headDirections.values()) {
+            total += counts[slot];
+        }
+        return total;
+    }
+
+    /**
+     * Gets the histogram of dependency lengths, the distance in words between a word and its head
+     * @return counts indexed by length, index 0 is always 0
+     */
+    public long[] getDependencyLengths() {
+        int size = lengths.length;
+        while (size > 1 && lengths[size - 1] == 0) {
+            size--;
+        }
+        return Arrays.copyOf(lengths, size);
+    }
+
+    /**
+     * Number of times a sequence of parts of speech occurs
+     * @param tags getNgramSize() universal parts of speech e.g. DET, NOUN
+     * @return count
+     */
+    public long getPosNgramCount(String... tags) {
+        return count(ngrams, String.join(" ", tags), 0);
+    }
+
+    /**
+     * Gets the part-of-speech n-grams
+     * @return n-gram with the tags separated by spaces to count, sorted by n-gram
+     */
+    public Map<String, Long> getPosNgrams() {
+        return sorted(ngrams);
+    }
+
+    /**
+     * Number of words with a feature
+     * @param feature a feature e.g. Case=Nom
+     * @return word count
+     */
+    public long getFeatureCount(String feature) {
+        return count(features, feature, 0);
+    }
+
+    /**
+     * Gets the feature counts
+     * @return feature to word count, sorted by feature
+     */
+    public Map<String, Long> getFeatures() {
+        return sorted(features);
+    }
+
+    /**
+     * Number of words that have both features
+     * @param a a feature e.g. Case=Nom
+     * @param b another feature e.g. Number=Plur
+     * @return word count
+     */
+    public long getFeaturePairCount(String a, String b) {
+        return count(featurePairs, pairKey(a, b), 0);
+    }
+
+    /**
+     * Gets the feature co-occurrence counts
+     * @return two features in alphabetical order separated by | to word count, sorted
+     */
+    public Map<String, Long> getFeaturePairs() {
+        return sorted(featurePairs);
+    }
+
+    @Override
+    public String toString() {
+        return "sentences: " + sentences + ", words: " + words + ", relations: " + deprels.size()
+                + ", " + ngramSize + "-grams: " + ngrams.size() + ", features: " + features.size();
+    }
+
+    /**
+     * Reads the lines of one sentence at a time from a CoNLL-U reader, parsing is left to the worker threads
+     */
+    private static class SentenceIterator implements Iterator<List<String>> {
+
+        private final BufferedReader reader;
+        private List<String> next;
+
+        SentenceIterator(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = read();
+            }
+            return next != null;
+        }
+
+        @Override
+        public List<String> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<String> s = next;
+            next = null;
+            return s;
+        }
+
+        private List<String> read() {
+            List<String> lines = new ArrayList<String>();
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        if (!lines.isEmpty()) {
+                            break;
+                        }
+                    } else {
+                        lines.add(line);
+                    }
+                }
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return lines.isEmpty() ? null : lines;
+        }
+    }
+}
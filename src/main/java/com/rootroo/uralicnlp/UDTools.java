@@ -4,9 +4,10 @@
  */
 package com.rootroo.uralicnlp;
 
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Helper tools for loading UD sentences
@@ -14,77 +15,181 @@ import java.util.List;
  */
 public class UDTools {
 
+    private static final int COLUMNS = 10;
+
     /**
      * Parse a single CoNLL-U formatted sentence into a UDSentence
      * @param sentence CoNLL-U formatted sentence
      * @return Parsed sentence
      */
     public static UDSentence parseSentence(String sentence) {
-        sentence = sentence.replaceAll("\r", "");
-        String[] list = sentence.split("\n");
-        return parseSentence(Arrays.asList(list));
+        return parseSentence(lines(sentence));
+    }
+
+    /**
+     * Splits text into lines at \n, dropping the \r of \r\n line ends
+     */
+    static List<String> lines(String text) {
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = text.length();
+            }
+            int stop = end;
+            if (stop > start && text.charAt(stop - 1) == '\r') {
+                stop--;
+            }
+            lines.add(text.substring(start, stop));
+            start = end + 1;
+        }
+        return lines;
     }
-    
+
     /**
      * Parse a single CoNLL-U formatted sentence into a UDSentence
      * @param conlluSentence CoNLL-U formatted sentence split into lines
      * @return Parsed sentence
      */
     public static UDSentence parseSentence(List<String> conlluSentence) {
-        HashMap<String, UDNode> nodes = new HashMap<String, UDNode>();
-        HashMap<String, String[]> relations = new HashMap<String, String[]>();
-        UDSentence ud_sentence = new UDSentence();
-        String comments = "";
+        List<String[]> rows = new ArrayList<String[]>();
+        StringBuilder comments = new StringBuilder();
         for (String annotation : conlluSentence) {
             if (annotation.isEmpty()) {
                 continue;
             }
-            if (annotation.startsWith("#")) {
-                comments = comments + annotation + "\n";
+            if (annotation.charAt(0) == '#') {
+                comments.append(annotation).append('\n');
                 continue;
             }
-            String[] parts = annotation.split("\t");
-            if (parts[0].contains("-")) {
-                //multi-part annotation --> skip for now
+            rows.add(fields(annotation));
+        }
+        return buildSentence(comments.toString(), rows);
+    }
+
+    /**
+     * Splits a word line into its ten tab separated columns, missing columns become _
+     * @param line a CoNLL-U word line
+     * @return the columns
+     */
+    static String[] fields(String line) {
+        String[] fields = new String[COLUMNS];
+        int start = 0;
+        for (int i = 0; i < COLUMNS; i++) {
+            if (start > line.length()) {
+                fields[i] = "_";
                 continue;
             }
+            int end = i == COLUMNS - 1 ? -1 : line.indexOf('\t', start);
+            if (end < 0) {
+                end = line.length();
+            }
+            fields[i] = line.substring(start, end);
+            start = end + 1;
+        }
+        return fields;
+    }
+
+    /**
+     * Links the words of a sentence into a tree. Shared by the text parser and UDSnapshot, so both build
+     * exactly the same objects. Multiword token ranges such as 1-2 are kept beside the tree, empty nodes
+     * such as 8.1 hang under the word they follow and take part in the enhanced graph through DEPS.
+     * @param comments comment lines of the sentence, each ending with a newline
+     * @param rows the ten CoNLL-U columns of each word
+     * @return the sentence
+     */
+    static UDSentence buildSentence(String comments, List<String[]> rows) {
+        LinkedHashMap<String, UDNode> nodes = new LinkedHashMap<String, UDNode>();
+        LinkedHashMap<String, String[]> relations = new LinkedHashMap<String, String[]>();
+        UDSentence ud_sentence = new UDSentence();
+        for (String[] parts : rows) {
             UDNode node = new UDNode(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[9]);
+            if (parts[0].indexOf('-') >= 0) {
+                ud_sentence.ranges.add(node);
+                continue;
+            }
             nodes.put(parts[0], node);
+            ud_sentence.children.add(node);
 
             relations.put(parts[0], new String[]{parts[6], parts[7], parts[8]});
         }
         ud_sentence.comments = comments;
         UDNode root = null;
         nodes.put("0", ud_sentence.udRootNode);
-        for (String id : relations.keySet()) {
-            String[] relation = relations.get(id);
+        for (Map.Entry<String, String[]> entry : relations.entrySet()) {
+            String id = entry.getKey();
+            String[] relation = entry.getValue();
+            UDNode node = nodes.get(id);
             String head_id = relation[0];
             if (head_id.equals("0")) {
-                root = nodes.get(id);
+                root = node;
             }
-            if (id.contains(".") && head_id.equals("_")) {
-                head_id = id.split(".")[0];
+            int dot = id.indexOf('.');
+            if (dot >= 0 && head_id.equals("_")) {
+                head_id = id.substring(0, dot);
             }
-            UDRelation headRelation = new UDRelation(nodes.get(id), relation[1], nodes.get(head_id));
+            new UDRelation(node, relation[1], nodes.get(head_id));
             String o_rel = relation[2];
-            String[] other_relations;
             if (o_rel.equals("_")) {
-                other_relations = new String[]{};
-            } else {
-                other_relations = o_rel.split("|");
+                continue;
             }
-            String head_rel = head_id + ":" + relation[1];
-            for (int u = 0; u < other_relations.length; u++) {
-                String other_relation = other_relations[u];
-                if (other_relation.equals(head_rel)) {
-                    continue;
+            //DEPS is head:relation pairs separated by |, the relation may contain : itself e.g. 4:nmod:poss
+            int start = 0;
+            while (start < o_rel.length()) {
+                int end = o_rel.indexOf('|', start);
+                if (end < 0) {
+                    end = o_rel.length();
+                }
+                int colon = o_rel.indexOf(':', start);
+                if (colon > start && colon < end) {
+                    String other_head = o_rel.substring(start, colon);
+                    String other_name = o_rel.substring(colon + 1, end);
+                    boolean primary = other_head.equals(head_id) && other_name.equals(relation[1]);
+                    UDNode head = nodes.get(other_head);
+                    if (primary) {
+                        node.head.enhanced = true;
+                    } else if (head != null) {
+                        new UDRelation(node, other_name, head, false);
+                    }
                 }
-                String[] other_parts = other_relation.split(":");
-                UDRelation r = new UDRelation(nodes.get(id), other_parts[1], nodes.get(other_parts[0]), false);
+                start = end + 1;
             }
         }
-       
+
         ud_sentence.setRoot(root);
         return ud_sentence;
     }
+
+    /**
+     * Compares word ids in sentence order: 1-2 &lt; 1 &lt; 1.1 &lt; 2, where a range comes just before its first word
+     * @param a an id e.g. 8, 8.1 or 8-9, the empty id of the sentence root counts as 0
+     * @param b an id
+     * @return negative, zero or positive like a Comparator
+     */
+    static int compareIds(String a, String b) {
+        int c = Integer.compare(major(a), major(b));
+        if (c != 0) {
+            return c;
+        }
+        boolean rangeA = a.indexOf('-') >= 0;
+        boolean rangeB = b.indexOf('-') >= 0;
+        if (rangeA != rangeB) {
+            return rangeA ? -1 : 1;
+        }
+        return Integer.compare(minor(a), minor(b));
+    }
+
+    private static int major(String id) {
+        int end = 0;
+        while (end < id.length() && Character.isDigit(id.charAt(end))) {
+            end++;
+        }
+        return end == 0 ? 0 : Integer.parseInt(id.substring(0, end));
+    }
+
+    private static int minor(String id) {
+        int dot = id.indexOf('.');
+        return dot < 0 ? 0 : Integer.parseInt(id.substring(dot + 1));
+    }
 }
@@ -0,0 +1,383 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A query over several words of a dependency tree, e.g. a VERB with an obj child whose lemma is X and
+ * which has an advmod child of its own:
+ * <pre>
+ * UDTreePattern pattern = new UDTreePattern(false);
+ * int verb = pattern.addNode(query("upostag", "VERB"));
+ * int obj = pattern.addChild(verb, "obj", query("lemma", "X"));
+ * pattern.addChild(obj, "advmod", new HashMap&lt;String, String&gt;());
+ * List&lt;UDTreePattern.Match&gt; matches = pattern.match(collection);
+ * </pre>
+ * A single feature is queried with feats.Name, e.g. {"feats.Case":"Nom"}, and a MISC item with misc.Name.
+ * Matching starts from the most selective word of the pattern and follows the pattern edges from there,
+ * so only the words next to an already matched word are tried. With a UDAttributeIndex, the sentences
+ * that lack a required value are skipped altogether. Sentences are matched in parallel.
+ * A pattern can be shared between threads once it has been built.
+ * @author mikahama
+ */
+public class UDTreePattern {
+
+    private final boolean useRegex;
+    private final List<HashMap<String, String>> queries = new ArrayList<HashMap<String, String>>();
+    private final List<Pattern[]> regexes = new ArrayList<Pattern[]>();
+    private final List<Integer> parents = new ArrayList<Integer>();
+    private final List<String> relations = new ArrayList<String>();
+
+    /**
+     * Initializes an empty pattern
+     * @param useRegex Use regex in the query values e.g. {"lemma":"cat.*"}
+     */
+    public UDTreePattern(boolean useRegex) {
+        this.useRegex = useRegex;
+    }
+
+    /**
+     * Adds a word that is not connected to the words added so far, usually the top of the pattern
+     * @param query A query with UD features, for instance {"lemma":"cat"}
+     * @return number of the word in the pattern
+     */
+    public int addNode(HashMap<String, String> query) {
+        return add(-1, null, query);
+    }
+
+    /**
+     * Adds a dependent of a word of the pattern
+     * @param parent number of the head word in the pattern
+     * @param relation dependency relation to the head e.g. obj, null for any relation
+     * @param query A query with UD features, for instance {"lemma":"cat"}
+     * @return number of the word in the pattern
+     */
+    public int addChild(int parent, String relation, HashMap<String, String> query) {
+        if (parent < 0 || parent >= queries.size()) {
+            throw new IllegalArgumentException("No word " + parent + " in the pattern");
+        }
+        return add(parent, relation, query);
+    }
+
+    private int add(int parent, String relation, HashMap<String, String> query) {
+        if (parent < 0 && !queries.isEmpty()) {
+            throw new IllegalArgumentException("The pattern must be connected, use addChild");
+        }
+        HashMap<String, String> q = new HashMap<String, String>(query);
+        queries.add(q);
+        parents.add(parent);
+        relations.add(relation);
+        Pattern[] compiled = new Pattern[q.size()];
+        if (useRegex) {
+            int i = 0;
+            for (String value : q.values()) {
+                compiled[i++] = Pattern.compile(value);
+            }
+        }
+        regexes.add(compiled);
+        return queries.size() - 1;
+    }
+
+    /**
+     * Finds all matches in a sentence
+     * @param sentence the sentence
+     * @return the matches
+     */
+    public List<Match> match(UDSentence sentence) {
+        if (queries.isEmpty()) {
+            return new ArrayList<Match>();
+        }
+        return new Search(plan(null), sentence).run();
+    }
+
+    /**
+     * Finds all matches in a collection, matching sentences in parallel
+     * @param collection the sentences
+     * @return the matches in sentence order
+     */
+    public List<Match> match(UDCollection collection) {
+        return match(collection, null);
+    }
+
+    /**
+     * Finds all matches in a collection, matching sentences in parallel
+     * @param collection the sentences
+     * @param index an index of the collection, or null
+     * @return the matches in sentence order
+     */
+    public List<Match> match(UDCollection collection, UDAttributeIndex index) {
+        if (queries.isEmpty()) {
+            return new ArrayList<Match>();
+        }
+        int[] plan = plan(index);
+        IntStream candidates = index == null ? IntStream.range(0, collection.size()) : Arrays.stream(candidates(index));
+        return candidates.parallel()
+                .mapToObj(i -> new Search(plan, collection.get(i)).run())
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * The sentences that contain every exact value the pattern requires on an indexed attribute
+     */
+    private int[] candidates(UDAttributeIndex index) {
+        int[] result = null;
+        if (!useRegex) {
+            for (HashMap<String, String> query : queries) {
+                for (Map.Entry<String, String> e : query.entrySet()) {
+                    int[] s = index.getSentences(e.getKey(), e.getValue());
+                    if (s != null) {
+                        result = result == null ? s : intersect(result, s);
+                    }
+                }
+            }
+            for (int w = 0; w < relations.size(); w++) {
+                int[] s = relations.get(w) == null ? null : index.getSentences("deprel", relations.get(w));
+                if (s != null) {
+                    result = result == null ? s : intersect(result, s);
+                }
+            }
+        }
+        if (result == null) {
+            result = new int[index.getSentenceCount()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = i;
+            }
+        }
+        return result;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] r = new int[Math.min(a.length, b.length)];
+        int n = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length;) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                r[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(r, n);
+    }
+
+    /**
+     * The order in which the pattern words are matched: the most selective word first, then outwards
+     * along the pattern edges so that every later word is next to an earlier one
+     */
+    private int[] plan(UDAttributeIndex index) {
+        int n = queries.size();
+        int anchor = 0;
+        double best = Double.MAX_VALUE;
+        for (int w = 0; w < n; w++) {
+            double cost = cost(w, index);
+            if (cost < best) {
+                best = cost;
+                anchor = w;
+            }
+        }
+        int[] order = new int[n];
+        boolean[] seen = new boolean[n];
+        order[0] = anchor;
+        seen[anchor] = true;
+        int count = 1;
+        for (int k = 0; k < count; k++) {
+            int w = order[k];
+            for (int o = 0; o < n; o++) {
+                if (!seen[o] && (parents.get(o) == w || parents.get(w) == o)) {
+                    seen[o] = true;
+                    order[count++] = o;
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Estimated number of words a pattern word matches, from the index or else from what the query constrains
+     */
+    private double cost(int w, UDAttributeIndex index) {
+        double cost = index == null ? 1e6 : Double.MAX_VALUE / 2;
+        for (Map.Entry<String, String> e : queries.get(w).entrySet()) {
+            int count = index == null || useRegex ? -1 : index.getCount(e.getKey(), e.getValue());
+            if (count >= 0) {
+                cost = Math.min(cost, count);
+            } else if (index == null) {
+                String key = e.getKey();
+                double selectivity = key.equals("lemma") || key.equals("form") ? 100 : key.equals("feats") || key.equals("xpostag") ? 10 : 4;
+                cost /= useRegex ? Math.sqrt(selectivity) : selectivity;
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Gets an attribute of a word, with the relation of the root word being "root"
+     */
+    static String attribute(UDNode node, String attribute) {
+        if (attribute.equals("deprel")) {
+            return node.head == null ? "root" : node.head.relation;
+        }
+        return node.getAttribute(attribute);
+    }
+
+    private boolean matches(int w, UDNode node) {
+        HashMap<String, String> query = queries.get(w);
+        Pattern[] compiled = regexes.get(w);
+        int i = 0;
+        for (Map.Entry<String, String> e : query.entrySet()) {
+            if (!useRegex && e.getKey().startsWith("feats.")) {
+                //one of the values of e.g. PronType=Int,Rel is enough
+                if (!node.getFeatures().has(e.getKey().substring(6), e.getValue())) {
+                    return false;
+                }
+                i++;
+                continue;
+            }
+            String value = attribute(node, e.getKey());
+            if (value == null) {
+                return false;
+            }
+            if (useRegex ? !compiled[i].matcher(value).find() : !e.getValue().equals(value)) {
+                return false;
+            }
+            i++;
+        }
+        return true;
+    }
+
+    /**
+     * Matching one sentence
+     */
+    private class Search {
+
+        final int[] order;
+        final UDSentence sentence;
+        final UDNode[] bound;
+        final List<Match> matches = new ArrayList<Match>();
+
+        Search(int[] order, UDSentence sentence) {
+            this.order = order;
+            this.sentence = sentence;
+            this.bound = new UDNode[order.length];
+        }
+
+        List<Match> run() {
+            int anchor = order[0];
+            for (UDNode node : sentence.find()) {
+                if (matches(anchor, node)) {
+                    bound[anchor] = node;
+                    extend(1);
+                    bound[anchor] = null;
+                }
+            }
+            return matches;
+        }
+
+        private void extend(int k) {
+            if (k == order.length) {
+                matches.add(new Match(sentence, bound.clone()));
+                return;
+            }
+            int w = order[k];
+            int parent = parents.get(w);
+            if (parent >= 0 && bound[parent] != null) {
+                for (UDRelation child : bound[parent].children) {
+                    //empty nodes and multiword ranges hang under words too, but they are not dependents
+                    if (child.node.id.indexOf('.') >= 0 || child.node.id.indexOf('-') >= 0) {
+                        continue;
+                    }
+                    if (relations.get(w) == null || relations.get(w).equals(child.relation)) {
+                        bind(w, child.node, k);
+                    }
+                }
+            } else {
+                //The dependent is matched already, w is its head
+                for (int o = 0; o < order.length; o++) {
+                    if (parents.get(o) == w && bound[o] != null) {
+                        UDRelation head = bound[o].head;
+                        if (head != null && head.head != null && !(head.head instanceof UDRootNode)
+                                && (relations.get(o) == null || relations.get(o).equals(head.relation))) {
+                            bind(w, head.head, k);
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void bind(int w, UDNode node, int k) {
+            for (UDNode b : bound) {
+                if (b == node) {
+                    return;
+                }
+            }
+            if (matches(w, node)) {
+                bound[w] = node;
+                extend(k + 1);
+                bound[w] = null;
+            }
+        }
+    }
+
+    /**
+     * The words of a sentence that matched a pattern
+     */
+    public static class Match {
+
+        private final UDSentence sentence;
+        private final UDNode[] nodes;
+
+        Match(UDSentence sentence, UDNode[] nodes) {
+            this.sentence = sentence;
+            this.nodes = nodes;
+        }
+
+        /**
+         * Gets the sentence of the match
+         * @return the sentence
+         */
+        public UDSentence getSentence() {
+            return sentence;
+        }
+
+        /**
+         * Gets the word that matched a word of the pattern
+         * @param patternNode number returned by addNode or addChild
+         * @return the matched word
+         */
+        public UDNode getNode(int patternNode) {
+            return nodes[patternNode];
+        }
+
+        /**
+         * Gets the matched words in the order of the pattern
+         * @return the matched words
+         */
+        public List<UDNode> getNodes() {
+            return Arrays.asList(nodes.clone());
+        }
+
+        @Override
+        public String toString() {
+            List<String> forms = new ArrayList<String>();
+            for (UDNode node : nodes) {
+                forms.add(node.id + ":" + node.form);
+            }
+            return "[" + String.join(", ", forms) + "]";
+        }
+    }
+}
@@ -8,8 +8,7 @@ import fi.seco.hfst.Transducer;
 import fi.seco.hfst.Transducer.Result;
 import fi.seco.hfst.TransducerAlphabet;
 import fi.seco.hfst.TransducerHeader;
-import fi.seco.hfst.UnweightedTransducer;
-import fi.seco.hfst.WeightedTransducer;
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.DataInputStream;
@@ -17,19 +16,28 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  *
@@ -37,15 +45,28 @@ import java.util.regex.Pattern;
  */
 public class UralicApi {
 
+    private static final String[] TRANSDUCER_MODELS = {"analyser", "analyser-norm", "analyser-dict", "generator-desc", "generator-norm", "generator"};
+
     private String modelPath;
     private String downloadServerUrl = "https://models.uralicnlp.com/nightly/";
-    private HashMap<String, Transducer> transducerCache = new HashMap<>();
+    private TransducerCache transducerCache = new TransducerCache();
+    private ConcurrentHashMap<String, ReentrantLock> loadLocks = new ConcurrentHashMap<>();
+    private int downloadParallelism = 4;
+    private ConcurrentHashMap<String, ModelBundle> bundles = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, LanguageReadiness> readiness = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, LemmaExtractor> lemmaExtractors = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, LexiconTable> lexicons = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, DictionaryIndex> dictionaries = new ConcurrentHashMap<>();
+    private ConcurrentHashMap<String, TagSymbolTable> tagTables = new ConcurrentHashMap<>();
+    private List<String> warmUpWords = Arrays.asList("a", "ja", "on", "talo", "koira", "voi", "the", "cats", "ei", "1");
+    private int warmUpRounds = 100;
  
     /**
      * Initializes UralicApi with the default path for models (~/.uralicnlp/)
      */
     public UralicApi() {
         modelPath = Paths.get(System.getProperty("user.home"), ".uralicnlp").toString();
+        init();
     }
 
     /**
@@ -54,6 +75,28 @@ public class UralicApi {
      */
     public UralicApi(String modelPath) {
         this.modelPath = modelPath;
+        init();
+    }
+
+    /**
+     * Gets the path the models are downloaded to and loaded from
+     * @return the model path
+     */
+    public String getModelPath() {
+        return modelPath;
+    }
+
+    private void init() {
+        transducerCache.addListener(new TransducerCacheListener() {
+            @Override
+            public void loaded(String language, String model, long estimatedBytes, int loadCount) {
+            }
+
+            @Override
+            public void evicted(String language, String model, long estimatedBytes, boolean explicit) {
+                readiness.remove(language);
+            }
+        });
     }
 
     /**
@@ -74,74 +117,320 @@ public class UralicApi {
      * @param showProgress set to false to hide progress
      */
     public void download(String language, boolean showProgress) {
-        HashMap<String, String> urlMap = new HashMap<String, String>();
-        urlMap.put("analyser", "analyser-gt-desc.hfstol");
-        urlMap.put("analyzer.pt", "../neural/" + language + "_analyzer_nmt-model_step_100000.pt");
-        urlMap.put("generator.pt", "../neural/" + language + "_generator_nmt-model_step_100000.pt");
-        urlMap.put("lemmatizer.pt", "../neural/" + language + "_lemmatizer_nmt-model_step_100000.pt");
-        urlMap.put("analyser-norm", "analyser-gt-norm.hfstol");
-        urlMap.put("analyser-dict", "analyser-dict-gt-norm.hfstol");
-        urlMap.put("generator-desc", "generator-gt-desc.hfstol");
-        urlMap.put("generator-norm", "generator-gt-norm.hfstol");
-        urlMap.put("generator", "generator-dict-gt-norm.hfstol");
-        urlMap.put("cg", "disambiguator.bin");
-        urlMap.put("metadata.json", "metadata.json");
-        urlMap.put("dictionary.json", "dictionary.json");
-
-        Path languageFolder = Paths.get(modelPath, language);
-        try {
-            Files.createDirectories(languageFolder);
-        } catch (IOException ex) {
-
-        }
+        download(Arrays.asList(language), showProgress);
+    }
 
-        for (Map.Entry<String, String> entry : urlMap.entrySet()) {
-            String fileName = entry.getKey();
-            String urlName = language + "/" + entry.getValue();
-            System.out.println("Downloading model " + fileName + " for language " + language);
-            try {
-                CommonTools.downloadToFile(downloadServerUrl + urlName, Paths.get(languageFolder.toString(), fileName).toString(), showProgress);
-            } catch (Exception ex) {
-                System.out.println("Model wasn't downloaded, it may not exist for this language");
-                if ("metadata.json".equals(fileName)) {
-                    try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(languageFolder.toString(), fileName), StandardCharsets.UTF_8)) {
-                        writer.write("{\"info\":\"no metadata provided\"}");
-                    } catch (IOException ex1) {
+    /**
+     * Downloads all the models for the given languages in parallel and saves them in the user home directory or a custom path
+     * This method does not throw exceptions if it fails. It's better to distribute the models with your application.
+     * Note: not all languages have all the models, so some errors during the download are to be expected.
+     * @param languages ISO codes of the languages
+     * @param showProgress set to false to hide progress
+     */
+    public void download(List<String> languages, boolean showProgress) {
+        ModelDownloader downloader = new ModelDownloader(downloadServerUrl);
+        downloader.setParallelism(downloadParallelism);
+        downloader.setVerbose(showProgress);
+        Map<String, Exception> failures = downloader.download(languages, modelPath);
+        for (Map.Entry<String, Exception> failure : failures.entrySet()) {
+            System.out.println("Model " + failure.getKey() + " wasn't downloaded, it may not exist for this language");
+            if (failure.getKey().endsWith("/metadata.json")) {
+                Path metadata = Paths.get(modelPath, failure.getKey());
+                try (BufferedWriter writer = Files.newBufferedWriter(metadata, StandardCharsets.UTF_8)) {
+                    writer.write("{\"info\":\"no metadata provided\"}");
+                } catch (IOException ex1) {
 
-                    }
                 }
             }
         }
     }
 
+    /**
+     * Sets how many model files are downloaded at the same time
+     * @param downloadParallelism number of concurrent downloads (default 4)
+     */
+    public void setDownloadParallelism(int downloadParallelism) {
+        if (downloadParallelism < 1) {
+            throw new IllegalArgumentException("downloadParallelism must be at least 1");
+        }
+        this.downloadParallelism = downloadParallelism;
+    }
+
     /**
      * Checks if models of a language are installed in the system
      * @param language ISO code of the language
      * @return language installed
      */
     public boolean isLanguageInstalled(String language) {
+        if (bundles.containsKey(language)) {
+            return true;
+        }
         Path languageFolder = Paths.get(modelPath, language);
         return Files.exists(languageFolder);
     }
 
-    private Transducer loadTransducer(String language, String filename) throws FileNotFoundException, IOException {
-        String languageFolder = Paths.get(modelPath, language, filename).toString();
-        if (!transducerCache.containsKey(languageFolder)) {
-            FileInputStream transducerfile = new FileInputStream(languageFolder);
-            DataInputStream charstream = new DataInputStream(transducerfile);
-            TransducerHeader h = new TransducerHeader(charstream);
-            TransducerAlphabet a = new TransducerAlphabet(charstream, h.getSymbolCount());
-            Transducer transducer;
-            
-            if (h.isWeighted()) {
-                transducer = new WeightedTransducer(charstream, h, a);
-            } else {
-                
-                transducer = new UnweightedTransducer(charstream, h, a);
+    /**
+     * Uses a model bundle for a language instead of the loose model files in the model path
+     * @param language ISO code of the language
+     * @param bundlePath path to a bundle created with createBundle
+     * @throws IOException Fails if the bundle cannot be read
+     */
+    public void loadBundle(String language, String bundlePath) throws IOException {
+        bundles.put(language, ModelBundle.open(Paths.get(bundlePath)));
+    }
+
+    /**
+     * Uses a model bundle on the classpath for a language instead of the loose model files in the model path
+     * @param language ISO code of the language
+     * @param resourceName name of the bundle resource e.g. "models/fin.bundle"
+     * @throws IOException Fails if the bundle cannot be found or read
+     */
+    public void loadBundleFromClasspath(String language, String resourceName) throws IOException {
+        bundles.put(language, ModelBundle.fromClasspath(resourceName));
+    }
+
+    /**
+     * Packs the downloaded models of a language into a single bundle file
+     * @param language ISO code of the language
+     * @param bundlePath where to write the bundle
+     * @throws IOException Fails if the models are not downloaded or the bundle cannot be written
+     */
+    public void createBundle(String language, String bundlePath) throws IOException {
+        ModelBundle.write(Paths.get(modelPath, language), Paths.get(bundlePath));
+    }
+
+    /**
+     * Loads a precomputed lexicon table from the default location, &lt;model path&gt;/&lt;language&gt;/analyser.lexicon.
+     * Afterwards analyze and lemmatize look words up in the table first and only use the transducer for words not in it.
+     * @param language ISO code of the language
+     * @throws IOException Fails if the table cannot be read
+     */
+    public void loadLexicon(String language) throws IOException {
+        loadLexicon(language, Paths.get(modelPath, language, "analyser.lexicon").toString());
+    }
+
+    /**
+     * Loads a precomputed lexicon table, see LexiconExporter. The table is only used for the model it was exported from.
+     * @param language ISO code of the language
+     * @param lexiconPath path to the table
+     * @throws IOException Fails if the table cannot be read or was exported from an older version of the transducer
+     */
+    public void loadLexicon(String language, String lexiconPath) throws IOException {
+        LexiconTable table = LexiconTable.open(Paths.get(lexiconPath));
+        long[] stamp = getModelStamp(language, table.getModel());
+        if (table.isStale(stamp[0], stamp[1])) {
+            throw new IOException("The lexicon table " + lexiconPath + " was exported from another version of " + table.getModel() + ", export it again");
+        }
+        lexicons.put(language, table);
+    }
+
+    /**
+     * Size and modification time of a model file, zeros for what is not known. A model in a bundle has
+     * the size of its entry and no time.
+     */
+    long[] getModelStamp(String language, String model) throws IOException {
+        ModelBundle bundle = bundles.get(language);
+        if (bundle != null && bundle.hasEntry(model)) {
+            return new long[]{bundle.getEntry(model).remaining(), 0};
+        }
+        Path file = Paths.get(modelPath, language, model);
+        if (!Files.exists(file)) {
+            return new long[]{0, 0};
+        }
+        return new long[]{Files.size(file), Files.getLastModifiedTime(file).toMillis()};
+    }
+
+    /**
+     * Stops using the lexicon table of a language
+     * @param language ISO code of the language
+     */
+    public void unloadLexicon(String language) {
+        lexicons.remove(language);
+    }
+
+    Transducer loadTransducer(String language, String filename) throws FileNotFoundException, IOException {
+        ModelBundle bundle = bundles.get(language);
+        String languageFolder;
+        if (bundle != null && bundle.hasEntry(filename)) {
+            languageFolder = "bundle:" + language + "/" + filename;
+        } else {
+            languageFolder = Paths.get(modelPath, language, filename).toString();
+        }
+        Transducer transducer = transducerCache.get(languageFolder);
+        if (transducer != null) {
+            if (Metrics.isEnabled()) {
+                Metrics.getRecorder().count(Metrics.TRANSDUCER_CACHE_HIT, 1, "language", language, "model", filename);
+            }
+            return transducer;
+        }
+        //A lock instead of a monitor: loading blocks on I/O and must not pin virtual threads
+        ReentrantLock lock = loadLocks.computeIfAbsent(languageFolder, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            transducer = transducerCache.get(languageFolder);
+            if (transducer == null) {
+                long start = Metrics.start();
+                InputStream transducerfile;
+                long fileBytes;
+                if (bundle != null && bundle.hasEntry(filename)) {
+                    transducerfile = bundle.openEntry(filename);
+                    fileBytes = transducerfile.available();
+                } else {
+                    transducerfile = new FileInputStream(languageFolder);
+                    fileBytes = new File(languageFolder).length();
+                }
+                try (DataInputStream charstream = new DataInputStream(new BufferedInputStream(transducerfile))) {
+                    transducer = readTransducer(charstream);
+                }
+                transducerCache.put(languageFolder, language, filename, transducer, fileBytes);
+                if (Metrics.isEnabled()) {
+                    Metrics.stop(Metrics.TRANSDUCER_LOAD, start, "language", language, "model", filename);
+                    Metrics.getRecorder().count(Metrics.TRANSDUCER_CACHE_MISS, 1, "language", language, "model", filename);
+                    Metrics.getRecorder().record(Metrics.TRANSDUCER_BYTES, fileBytes * TransducerCache.MEMORY_FACTOR, "language", language, "model", filename);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return transducer;
+    }
+
+    private boolean hasModel(String language, String filename) {
+        ModelBundle bundle = bundles.get(language);
+        if (bundle != null && bundle.hasEntry(filename)) {
+            return true;
+        }
+        return Files.exists(Paths.get(modelPath, language, filename));
+    }
+
+    /**
+     * Sets the words that preload runs through every loaded model to get the lookup code compiled by the JIT
+     * @param words warm-up words, an empty list turns warm-up off
+     * @param rounds how many times the list is run through each model
+     */
+    public void setWarmUp(List<String> words, int rounds) {
+        this.warmUpWords = new ArrayList<String>(words);
+        this.warmUpRounds = rounds;
+    }
+
+    /**
+     * Loads the transducers of a language into memory and warms them up, so that the first real request is fast
+     * @param language ISO code of the language
+     * @param models model names e.g. analyser, analyser-norm, generator. If none are given, all the installed transducers are loaded
+     * @throws IOException Fails if a model cannot be loaded or none are installed
+     */
+    public void preload(String language, String... models) throws IOException {
+        readiness.put(language, LanguageReadiness.LOADING);
+        try {
+            List<String> modelNames = new ArrayList<String>(Arrays.asList(models));
+            if (modelNames.isEmpty()) {
+                for (String name : TRANSDUCER_MODELS) {
+                    if (hasModel(language, name)) {
+                        modelNames.add(name);
+                    }
+                }
+                if (modelNames.isEmpty()) {
+                    throw new FileNotFoundException("No models of " + language + " have been downloaded");
+                }
+            }
+            for (String modelName : modelNames) {
+                Transducer t = loadTransducer(language, modelName);
+                for (int round = 0; round < warmUpRounds; round++) {
+                    for (String word : warmUpWords) {
+                        t.analyze(word);
+                    }
+                }
+                if ("analyser".equals(modelName) && !warmUpWords.isEmpty()) {
+                    for (int round = 0; round < warmUpRounds; round++) {
+                        for (String word : warmUpWords) {
+                            lemmatize(word, language);
+                        }
+                    }
+                }
             }
-            transducerCache.put(languageFolder, transducer);
+            readiness.put(language, LanguageReadiness.READY);
+        } catch (IOException | RuntimeException ex) {
+            readiness.put(language, LanguageReadiness.FAILED);
+            throw ex;
         }
-        return transducerCache.get(languageFolder);
+    }
+
+    /**
+     * Preloads several languages in parallel, one thread per language up to the number of processors
+     * @param languages ISO codes of the languages
+     * @param models model names e.g. analyser, generator. If none are given, all the installed transducers are loaded
+     * @return The languages that failed to load and the reason, empty if all languages are ready
+     */
+    public Map<String, Exception> preload(List<String> languages, final String... models) {
+        Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+        if (languages.isEmpty()) {
+            return failures;
+        }
+        int threads = Math.min(languages.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Map<String, Future<?>> jobs = new LinkedHashMap<String, Future<?>>();
+            for (final String language : languages) {
+                readiness.put(language, LanguageReadiness.LOADING);
+                jobs.put(language, executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        preload(language, models);
+                        return null;
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<?>> job : jobs.entrySet()) {
+                try {
+                    job.getValue().get();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    failures.put(job.getKey(), cause instanceof Exception ? (Exception) cause : ex);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    failures.put(job.getKey(), ex);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return failures;
+    }
+
+    /**
+     * Gets the preloading state of a language, for health checks
+     * @param language ISO code of the language
+     * @return the state, NOT_LOADED if preload has not been called for the language
+     */
+    public LanguageReadiness getReadiness(String language) {
+        LanguageReadiness state = readiness.get(language);
+        if (state == null) {
+            return LanguageReadiness.NOT_LOADED;
+        }
+        return state;
+    }
+
+    /**
+     * Checks if a language has been preloaded successfully
+     * @param language ISO code of the language
+     * @return true if the language is ready
+     */
+    public boolean isReady(String language) {
+        return getReadiness(language) == LanguageReadiness.READY;
+    }
+
+    private static Transducer readTransducer(DataInputStream charstream) throws IOException {
+        TransducerHeader h = new TransducerHeader(charstream);
+        TransducerAlphabet a = new TransducerAlphabet(charstream, h.getSymbolCount());
+        Transducer transducer;
+
+        if (h.isWeighted()) {
+            transducer = new TraversableWeightedTransducer(charstream, h, a);
+        } else {
+
+            transducer = new TraversableUnweightedTransducer(charstream, h, a);
+        }
+        return transducer;
     }
 
     /**
@@ -150,8 +439,14 @@ public class UralicApi {
      * @throws Exception metadata.json cannot be accessed
      */
     public void modelInfo(String language) throws Exception {
-        Path languageFolder = Paths.get(modelPath, language, "metadata.json");
-        FileInputStream fis = new FileInputStream(languageFolder.toString());
+        InputStream fis;
+        ModelBundle bundle = bundles.get(language);
+        if (bundle != null && bundle.hasEntry("metadata.json")) {
+            fis = bundle.openEntry("metadata.json");
+        } else {
+            Path languageFolder = Paths.get(modelPath, language, "metadata.json");
+            fis = new FileInputStream(languageFolder.toString());
+        }
         InputStreamReader isr = new InputStreamReader(fis, StandardCharsets.UTF_8);
         BufferedReader reader = new BufferedReader(isr);
 
@@ -168,13 +463,55 @@ public class UralicApi {
      * @param language ISO code of the language
      */
     public void uninstall(String language) {
+        unload(language);
         CommonTools.deleteDir(new File(Paths.get(modelPath, language).toString()));
     }
+
+    /**
+     * Limits the estimated memory that loaded transducers may use. Least recently used transducers are
+     * evicted when the limit is exceeded and loaded again on their next use.
+     * @param bytes memory budget in bytes
+     */
+    public void setMemoryBudget(long bytes) {
+        transducerCache.setMemoryBudget(bytes);
+    }
+
+    /**
+     * Removes the loaded transducers of a language from memory without deleting the model files.
+     * The readiness of the language goes back to NOT_LOADED.
+     * @param language ISO code of the language
+     */
+    public void unload(String language) {
+        transducerCache.unload(language);
+        readiness.remove(language);
+        dictionaries.remove(language);
+        lexicons.remove(language);
+        tagTables.remove(language);
+    }
+
+    /**
+     * Removes all loaded transducers from memory without deleting the model files
+     */
+    public void unloadAll() {
+        transducerCache.unloadAll();
+        readiness.clear();
+        dictionaries.clear();
+        lexicons.clear();
+        tagTables.clear();
+    }
+
+    /**
+     * Gets the cache of loaded transducers, e.g. for adding a TransducerCacheListener
+     * @return the transducer cache
+     */
+    public TransducerCache getTransducerCache() {
+        return transducerCache;
+    }
     
 
     
 
-    private String getModelName(boolean analyzer, boolean descriptive, boolean dictionaryForms) {
+    String getModelName(boolean analyzer, boolean descriptive, boolean dictionaryForms) {
         if (analyzer) {
             if (dictionaryForms) {
                 return "analyser-dict";
@@ -227,10 +564,107 @@ public class UralicApi {
      * @throws IOException Fails if the models are not downloaded or the transducers are not in a supported format
      */
     public HashMap<String, Float> analyze(String word, String language, boolean descriptive, boolean dictionaryForms) throws IOException {
+        long start = Metrics.start();
         String modelName = getModelName(true, descriptive, dictionaryForms);
+        LexiconTable lexicon = lexicons.get(language);
+        HashMap<String, Float> results = null;
+        if (lexicon != null && lexicon.getModel().equals(modelName)) {
+            results = lexicon.lookup(word);
+            if (Metrics.isEnabled()) {
+                Metrics.getRecorder().count(results != null ? Metrics.LEXICON_HIT : Metrics.LEXICON_MISS, 1, "language", language, "model", modelName);
+            }
+        }
+        if (results == null) {
+            results = analyzeWithTransducer(word, language, modelName);
+        }
+        recordLookup("analyze", language, modelName, start, results.size());
+        return results;
+    }
+
+    HashMap<String, Float> analyzeWithTransducer(String word, String language, String modelName) throws IOException {
         Transducer t = loadTransducer(language, modelName);
-        Collection<Result> analyses = t.analyze(word);
-        return parseHfstResult(analyses);
+        return parseHfstResult(t.analyze(word));
+    }
+
+    /**
+     * Analyzes a word morphologically into structured readings that share their tags with all other
+     * readings of the language
+     * @param word a single word
+     * @param language ISO code of the language
+     * @return the readings, smallest weight first
+     * @throws IOException Fails if the models are not downloaded or the transducers are not in a supported format
+     */
+    public List<Reading> analyzeReadings(String word, String language) throws IOException {
+        return analyzeReadings(word, language, true, false);
+    }
+
+    /**
+     * Analyzes a word morphologically into structured readings
+     * @param word a single word
+     * @param language ISO code of the language
+     * @param descriptive true -> descriptive model, false -> normative model
+     * @param dictionaryForms true -> dictionary model
+     * @return the readings, smallest weight first
+     * @throws IOException Fails if the models are not downloaded or the transducers are not in a supported format
+     */
+    public List<Reading> analyzeReadings(String word, String language, boolean descriptive, boolean dictionaryForms) throws IOException {
+        long start = Metrics.start();
+        String modelName = getModelName(true, descriptive, dictionaryForms);
+        TagSymbolTable table = getTagTable(language);
+        List<Reading> readings = new ArrayList<Reading>();
+        LexiconTable lexicon = lexicons.get(language);
+        HashMap<String, Float> analyses = null;
+        if (lexicon != null && lexicon.getModel().equals(modelName)) {
+            analyses = lexicon.lookup(word);
+            if (Metrics.isEnabled()) {
+                Metrics.getRecorder().count(analyses != null ? Metrics.LEXICON_HIT : Metrics.LEXICON_MISS, 1, "language", language, "model", modelName);
+            }
+        }
+        if (analyses != null) {
+            for (Map.Entry<String, Float> e : analyses.entrySet()) {
+                readings.add(table.parse(e.getKey(), e.getValue()));
+            }
+        } else {
+            //Tags are looked up symbol by symbol, the readings are never joined into strings
+            Transducer t = loadTransducer(language, modelName);
+            for (Result result : t.analyze(word)) {
+                Reading reading = table.parse(result.getSymbols(), result.getWeight());
+                //Like analyze, a reading found twice keeps the weight of the later result
+                int same = 0;
+                while (same < readings.size() && !readings.get(same).sameAnalysis(reading)) {
+                    same++;
+                }
+                if (same < readings.size()) {
+                    readings.set(same, reading);
+                } else {
+                    readings.add(reading);
+                }
+            }
+        }
+        Collections.sort(readings);
+        recordLookup("analyze", language, modelName, start, readings.size());
+        return readings;
+    }
+
+    /**
+     * Gets the tag table of a language. It is built from the symbols of the analyser the first time,
+     * or starts out empty if the analyser is not downloaded.
+     * @param language ISO code of the language
+     * @return the tag table
+     * @throws IOException Fails if the analyser is not in a supported format
+     */
+    public TagSymbolTable getTagTable(String language) throws IOException {
+        TagSymbolTable table = tagTables.get(language);
+        if (table != null) {
+            return table;
+        }
+        if (hasModel(language, "analyser")) {
+            table = new TagSymbolTable(((TraversableTransducer) loadTransducer(language, "analyser")).alphabet());
+        } else {
+            table = new TagSymbolTable();
+        }
+        TagSymbolTable old = tagTables.putIfAbsent(language, table);
+        return old != null ? old : table;
     }
 
     /**
@@ -254,10 +688,83 @@ public class UralicApi {
      * @throws IOException Fails if the models are not downloaded or the transducers are not in a supported format
      */
     public HashMap<String, Float> generate(String word, String language, boolean descriptive, boolean dictionaryForms) throws IOException {
+        long start = Metrics.start();
         String modelName = getModelName(false, descriptive, dictionaryForms);
         Transducer t = loadTransducer(language, modelName);
         Collection<Result> analyses = t.analyze(word);
-        return parseHfstResult(analyses);
+        HashMap<String, Float> results = parseHfstResult(analyses);
+        recordLookup("generate", language, modelName, start, results.size());
+        return results;
+    }
+
+    /**
+     * Generates all the forms of a lemma matching a tag pattern in one walk over the generator, e.g.
+     * "talo+N+*+*" gives every number and case form. Each "+..." part matches one tag and * matches any characters in it.
+     * @param pattern a lemma and tag patterns
+     * @param language ISO code of the language
+     * @return the matched tag strings, e.g. "talo+N+Pl+Gen", and their forms with weights, sorted by tag string
+     * @throws IOException Fails if the models are not downloaded or the transducers are not in a supported format
+     */
+    public Map<String, HashMap<String, Float>> generateParadigm(String pattern, String language) throws IOException {
+        return generateParadigm(pattern, language, new ParadigmGenerator(), false, false);
+    }
+
+    /**
+     * Generates all the forms of a lemma matching a tag pattern in one walk over the generator
+     * @param pattern a lemma and tag patterns e.g. "talo+N+*+*"
+     * @param language ISO code of the language
+     * @param generator the output limit and search budget
+     * @param descriptive true -> descriptive model, false -> normative model
+     * @param dictionaryForms true -> dictionary model
+     * @return the matched tag strings and their forms with weights, sorted by tag string
+     * @throws IOException Fails if the models are not downloaded or the transducers are not in a supported format
+     */
+    public Map<String, HashMap<String, Float>> generateParadigm(String pattern, String language, ParadigmGenerator generator, boolean descriptive, boolean dictionaryForms) throws IOException {
+        long start = Metrics.start();
+        String modelName = getModelName(false, descriptive, dictionaryForms);
+        Transducer t = loadTransducer(language, modelName);
+        Map<String, HashMap<String, Float>> results = generator.generate((TraversableTransducer) t, pattern);
+        recordLookup("generateParadigm", language, modelName, start, results.size());
+        return results;
+    }
+
+    private static void recordLookup(String operation, String language, String modelName, long start, int results) {
+        if (Metrics.isEnabled()) {
+            Metrics.stop(Metrics.LOOKUP, start, "operation", operation, "language", language, "model", modelName);
+            Metrics.getRecorder().record(Metrics.LOOKUP_RESULTS, results, "operation", operation, "language", language, "model", modelName);
+        }
+    }
+
+    /**
+     * Analyzes a word that may be misspelled, e.g. an OCR error. Finds the analyses of all words within
+     * maxDistance edits of the input in one walk over the transducer.
+     * @param word a single word
+     * @param language ISO code of the language
+     * @param maxDistance maximum number of edits
+     * @return analyses sorted by edit distance and then weight
+     * @throws IOException Fails if the models are not downloaded or the transducers are not in a supported format
+     */
+    public List<FuzzyResult> fuzzyAnalyze(String word, String language, int maxDistance) throws IOException {
+        return fuzzyAnalyze(word, language, new FuzzyLookup(maxDistance), true, false);
+    }
+
+    /**
+     * Analyzes a word that may be misspelled, e.g. an OCR error
+     * @param word a single word
+     * @param language ISO code of the language
+     * @param lookup the maximum edit distance and the search budget
+     * @param descriptive true -> descriptive model, false -> normative model
+     * @param dictionaryForms true -> dictionary model
+     * @return analyses sorted by edit distance and then weight
+     * @throws IOException Fails if the models are not downloaded or the transducers are not in a supported format
+     */
+    public List<FuzzyResult> fuzzyAnalyze(String word, String language, FuzzyLookup lookup, boolean descriptive, boolean dictionaryForms) throws IOException {
+        long start = Metrics.start();
+        String modelName = getModelName(true, descriptive, dictionaryForms);
+        Transducer t = loadTransducer(language, modelName);
+        List<FuzzyResult> results = lookup.lookup((TraversableTransducer) t, word);
+        recordLookup("fuzzyAnalyze", language, modelName, start, results.size());
+        return results;
     }
 
     /**
@@ -294,63 +801,63 @@ public class UralicApi {
      * @throws IOException Fails if the models are not downloaded or the transducers are not in a supported format
      */
     public ArrayList<String> lemmatize(String word, String language, boolean descriptive, boolean dictionaryForms, boolean wordBoundaries) throws IOException {
-        ArrayList<String> results = new ArrayList<String>();
-        HashMap<String, Float> res = analyze(word, language, descriptive, dictionaryForms);
+        long start = Metrics.start();
+        String modelName = getModelName(true, descriptive, dictionaryForms);
 
         String bound = "";
         if (wordBoundaries) {
             bound = "|";
         }
 
-        for (String an : res.keySet()) {
-            String lemma;
-            if (language.equals("swe")) {
-                lemma = an.replaceAll("[<].*?[>]", bound);
-                while (lemma.length() > 0 && bound.length() >0 && bound.charAt(0) == lemma.charAt(lemma.length() - 1)) {
-                    lemma = lemma.substring(0, lemma.length() - 1);
-                }
-            } else if (language.equals("ara")) {
-                lemma = StringProcessing.filterArabic(an, true, bound);
-            } else if (language.equals("fin_hist")) {
-                String rege = "(?<=WORD_ID=)[^\\]]*";
-                List<String> allMatches = new ArrayList<String>();
-                Matcher matches;
-                matches = Pattern.compile(rege)
-                        .matcher(an);
-                while (matches.find()) {
-                    allMatches.add(matches.group());
-                }
-                lemma = String.join(bound, allMatches);
-            }else if(an.contains("<") && an.contains(">")){
-                //apertium
-                String[] parts = an.split("\\+");
-                //lemma = bound.join([x.split("<")[0] for x in parts])
-                List<String> lemmaParts = new ArrayList<String>();
-                for(int i =0; i< parts.length; i++){
-                    lemmaParts.add(parts[i].split("<")[0]);
-                }
-                lemma = String.join(bound, lemmaParts);
-            }else{
-                if(an.contains("#") && !an.contains("+Cmp#")){
-                    an = an.replaceAll("#", "+Cmp#");
-                }
-                String[] parts = an.split("\\+Cmp#");
-                List<String> lemmaParts = new ArrayList<String>();
-                for(int i =0; i< parts.length; i++){
-                    String p = parts[i].split("\\+")[0];
-                    if(language.equals("eng")){
-                        p = p.replaceAll("[\\[].*?[\\]]", "");
-                    }
-                    lemmaParts.add(p);
-                }
-                lemma = String.join(bound, lemmaParts);
-                
+        LemmaExtractor extractor = getLemmaExtractor(language);
+        LinkedHashSet<String> results = new LinkedHashSet<String>();
+        LexiconTable lexicon = lexicons.get(language);
+        HashMap<String, Float> readings = null;
+        if (lexicon != null && lexicon.getModel().equals(modelName)) {
+            readings = lexicon.lookup(word);
+            if (Metrics.isEnabled()) {
+                Metrics.getRecorder().count(readings != null ? Metrics.LEXICON_HIT : Metrics.LEXICON_MISS, 1, "language", language, "model", modelName);
+            }
+        }
+        if (readings != null) {
+            for (String reading : readings.keySet()) {
+                results.add(extractor.extract(reading, bound));
+            }
+        } else {
+            //Lemmas are read from the result symbols directly, the readings are never joined into strings
+            Transducer t = loadTransducer(language, modelName);
+            for (Result result : t.analyze(word)) {
+                results.add(extractor.extract(result.getSymbols(), bound));
+            }
+        }
+        recordLookup("lemmatize", language, modelName, start, results.size());
+        return new ArrayList<String>(results);
+    }
+
+    /**
+     * Gets the lemma extractor used for a language
+     * @param language ISO code of the language
+     * @return lemma extractor
+     */
+    public LemmaExtractor getLemmaExtractor(String language) {
+        LemmaExtractor extractor = lemmaExtractors.get(language);
+        if (extractor == null) {
+            extractor = LemmaExtractor.forLanguage(language);
+            LemmaExtractor existing = lemmaExtractors.putIfAbsent(language, extractor);
+            if (existing != null) {
+                extractor = existing;
             }
-            results.add(lemma);
         }
+        return extractor;
+    }
 
-        return new ArrayList<String>(
-      new LinkedHashSet<String>(results));
+    /**
+     * Replaces the lemma extractor of a language, e.g. for a language with its own reading format
+     * @param language ISO code of the language
+     * @param extractor lemma extractor
+     */
+    public void setLemmaExtractor(String language, LemmaExtractor extractor) {
+        lemmaExtractors.put(language, extractor);
     }
 
     /**
@@ -361,11 +868,55 @@ public class UralicApi {
         String s = CommonTools.readToString(downloadServerUrl + "supported_languages.json");
         System.out.println(s);
     }
-    /*
-    public String[] dictionarySearch(String word, String language) {
+
+    /**
+     * Gets the dictionary entries of a lemma
+     * @param word a lemma
+     * @param language ISO code of the language
+     * @return the entries as JSON objects, empty if the lemma is not in the dictionary
+     * @throws IOException Fails if the dictionary is not downloaded or cannot be indexed
+     */
+    public String[] dictionarySearch(String word, String language) throws IOException {
+        return getDictionary(language).search(word);
     }
 
-    public String[] dictionaryLemmas(String language) {
+    /**
+     * Lists the lemmas of the dictionary of a language
+     * @param language ISO code of the language
+     * @return the lemmas, read from the index as the iteration proceeds
+     * @throws IOException Fails if the dictionary is not downloaded or cannot be indexed
+     */
+    public Iterable<String> dictionaryLemmas(String language) throws IOException {
+        return getDictionary(language).lemmas();
     }
+
+    /**
+     * Gets the index of the dictionary of a language, e.g. for prefix and infix searches. The index is
+     * compiled from dictionary.json the first time and stored next to it.
+     * @param language ISO code of the language
+     * @return the dictionary index
+     * @throws IOException Fails if the dictionary is not downloaded or cannot be indexed
      */
+    public DictionaryIndex getDictionary(String language) throws IOException {
+        DictionaryIndex index = dictionaries.get(language);
+        if (index != null) {
+            return index;
+        }
+        Path json = Paths.get(modelPath, language, "dictionary.json");
+        ReentrantLock lock = loadLocks.computeIfAbsent(json.toString(), k -> new ReentrantLock());
+        lock.lock();
+        try {
+            index = dictionaries.get(language);
+            if (index == null) {
+                if (!Files.exists(json)) {
+                    throw new FileNotFoundException("No dictionary for " + language + ", download the models first");
+                }
+                index = DictionaryIndex.open(json);
+                dictionaries.put(language, index);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return index;
+    }
 }
@@ -0,0 +1,107 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executors for running many blocking calls such as Cg3.disambiguate concurrently.
+ * On Java 21 and newer every task gets its own virtual thread. On older runtimes the
+ * same methods fall back to platform threads, so the library runs on Java 17 too.
+ * @author mikahama
+ */
+public class UralicExecutors {
+
+    private static final Method NEW_VIRTUAL_EXECUTOR;
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_START;
+
+    static {
+        Method newVirtualExecutor = null;
+        Method ofVirtual = null;
+        Method builderStart = null;
+        try {
+            newVirtualExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderStart = Class.forName("java.lang.Thread$Builder").getMethod("start", Runnable.class);
+        } catch (ReflectiveOperationException ex) {
+            newVirtualExecutor = null;
+            ofVirtual = null;
+            builderStart = null;
+        }
+        NEW_VIRTUAL_EXECUTOR = newVirtualExecutor;
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_START = builderStart;
+    }
+
+    private UralicExecutors() {
+    }
+
+    /**
+     * Tells whether the runtime supports virtual threads
+     * @return true on Java 21 and newer
+     */
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread for each task. Without virtual thread
+     * support a cached pool of daemon platform threads is returned instead.
+     * @return executor for blocking tasks
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        if (NEW_VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                //fall through to platform threads
+            }
+        }
+        return Executors.newCachedThreadPool(daemonThreads());
+    }
+
+    /**
+     * Creates an executor for blocking tasks: virtual threads if supported, otherwise a fixed pool
+     * @param platformThreads number of platform threads used when virtual threads are not supported
+     * @return executor for blocking tasks
+     */
+    public static ExecutorService newBlockingExecutor(int platformThreads) {
+        if (isVirtualThreadsSupported()) {
+            return newVirtualThreadExecutor();
+        }
+        return Executors.newFixedThreadPool(platformThreads, daemonThreads());
+    }
+
+    /**
+     * Starts a helper thread, virtual if supported
+     */
+    static Thread startThread(Runnable task) {
+        if (OF_VIRTUAL != null) {
+            try {
+                return (Thread) BUILDER_START.invoke(OF_VIRTUAL.invoke(null), task);
+            } catch (ReflectiveOperationException ex) {
+                //fall through to platform threads
+            }
+        }
+        Thread thread = daemonThreads().newThread(task);
+        thread.start();
+        return thread;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            }
+        };
+    }
+}
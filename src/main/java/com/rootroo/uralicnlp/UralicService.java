@@ -0,0 +1,405 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A thread-safe facade for serving many languages from one JVM. Every language gets its own context with its
+ * own UralicApi (transducers and caches), Cg3 disambiguator, Tokenizer and limits:
+ * <pre>
+ * UralicService service = new UralicService();
+ * service.setConcurrency("fin", 16, 4);
+ * service.setConcurrency("sms", 4, 1);
+ * service.analyze("koira", "fin");
+ * </pre>
+ * A language admits at most its number of concurrent requests and vislcg3 pipelines, the rest wait in
+ * arrival order, so a flood of requests for one language cannot take the slots of another. A language is
+ * loaded on its first request. reload builds a new context next to the old one and swaps it in, requests
+ * that are already running finish with the old models before they are unloaded.
+ * @author mikahama
+ */
+public class UralicService implements AutoCloseable {
+
+    /**
+     * Everything a language needs, replaced as a whole on reload
+     */
+    static final class LanguageContext {
+
+        final String language;
+        final UralicApi api;
+        final Cg3 cg3;
+        final Tokenizer tokenizer;
+        final int requests;
+        final int cg3Workers;
+        final Semaphore requestSlots;
+        final Semaphore cg3Slots;
+
+        LanguageContext(String language, UralicApi api, Cg3 cg3, Tokenizer tokenizer, int requests, int cg3Workers) {
+            this.language = language;
+            this.api = api;
+            this.cg3 = cg3;
+            this.tokenizer = tokenizer;
+            this.requests = requests;
+            this.cg3Workers = cg3Workers;
+            //fair, so waiting requests are served in arrival order and reload waits behind them
+            this.requestSlots = new Semaphore(requests, true);
+            this.cg3Slots = new Semaphore(cg3Workers, true);
+        }
+    }
+
+    /**
+     * A request run inside a language context
+     */
+    interface Call<T> {
+
+        T call(LanguageContext context) throws IOException;
+    }
+
+    private final String modelPath;
+    private final ConcurrentHashMap<String, LanguageContext> contexts = new ConcurrentHashMap<String, LanguageContext>();
+    private final ConcurrentHashMap<String, ReentrantLock> swapLocks = new ConcurrentHashMap<String, ReentrantLock>();
+    private final ConcurrentHashMap<String, int[]> limits = new ConcurrentHashMap<String, int[]>();
+    private volatile int defaultRequests = Runtime.getRuntime().availableProcessors();
+    private volatile int defaultCg3Workers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private volatile long timeoutMillis = -1;
+    private volatile int disambiguationCacheSize = 0;
+
+    /**
+     * Initializes a service with the default path for models (~/.uralicnlp/)
+     */
+    public UralicService() {
+        this(Paths.get(System.getProperty("user.home"), ".uralicnlp").toString());
+    }
+
+    /**
+     * Initializes a service with a custom path for models
+     * @param modelPath Path the models of all languages are loaded from
+     */
+    public UralicService(String modelPath) {
+        this.modelPath = modelPath;
+    }
+
+    /**
+     * Sets the limits of languages that have none of their own
+     * @param requests number of requests of a language that run at the same time
+     * @param cg3Workers number of vislcg3 pipelines of a language that run at the same time
+     */
+    public void setDefaultConcurrency(int requests, int cg3Workers) {
+        checkLimits(requests, cg3Workers);
+        defaultRequests = requests;
+        defaultCg3Workers = cg3Workers;
+    }
+
+    /**
+     * Sets the limits of a language. A loaded language gets the new limits at once, requests running under
+     * the old limits are not interrupted.
+     * @param language ISO code of the language
+     * @param requests number of requests of the language that run at the same time
+     * @param cg3Workers number of vislcg3 pipelines of the language that run at the same time
+     * @throws IOException if interrupted while waiting for running requests
+     */
+    public void setConcurrency(String language, int requests, int cg3Workers) throws IOException {
+        checkLimits(requests, cg3Workers);
+        limits.put(language, new int[]{requests, cg3Workers});
+        ReentrantLock lock = swapLocks.computeIfAbsent(language, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            LanguageContext old = contexts.get(language);
+            if (old != null) {
+                //same models, new slots
+                LanguageContext fresh = new LanguageContext(language, old.api, old.cg3, old.tokenizer, requests, cg3Workers);
+                contexts.put(language, fresh);
+                drain(old);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void checkLimits(int requests, int cg3Workers) {
+        if (requests < 1 || cg3Workers < 1) {
+            throw new IllegalArgumentException("Limits must be at least 1");
+        }
+    }
+
+    /**
+     * Sets how long a request waits for a free slot of its language
+     * @param timeout maximum wait, negative waits as long as it takes
+     * @param unit unit of the timeout
+     */
+    public void setTimeout(long timeout, TimeUnit unit) {
+        timeoutMillis = timeout < 0 ? -1 : unit.toMillis(timeout);
+    }
+
+    /**
+     * Caches the disambiguation results of repeated sentences in languages loaded after this call
+     * @param maxEntries maximum number of sentences kept per language, 0 turns caching off
+     */
+    public void setDisambiguationCacheSize(int maxEntries) {
+        disambiguationCacheSize = maxEntries;
+    }
+
+    private LanguageContext createContext(String language) {
+        int[] limit = limits.get(language);
+        UralicApi api = new UralicApi(modelPath);
+        Cg3 cg3 = new Cg3(language, api);
+        if (disambiguationCacheSize > 0) {
+            cg3.enableCache(disambiguationCacheSize);
+        }
+        return new LanguageContext(language, api, cg3, new Tokenizer(language),
+                limit == null ? defaultRequests : limit[0], limit == null ? defaultCg3Workers : limit[1]);
+    }
+
+    private LanguageContext getContext(String language) {
+        LanguageContext context = contexts.get(language);
+        if (context == null) {
+            //creating a context is cheap, the transducers are loaded on their first use
+            context = contexts.computeIfAbsent(language, this::createContext);
+        }
+        return context;
+    }
+
+    /**
+     * Loads the transducers of a language and warms them up, so that its first request is fast
+     * @param language ISO code of the language
+     * @param models model names e.g. analyser, generator. If none are given, all the installed transducers are loaded
+     * @throws IOException Fails if a model cannot be loaded
+     */
+    public void load(String language, String... models) throws IOException {
+        getContext(language).api.preload(language, models);
+    }
+
+    /**
+     * Loads the models of a language again, e.g. after they have been updated on disk. The new models are
+     * loaded while the old ones keep serving, then new requests go to the new models and the old ones are
+     * unloaded when the requests running on them have finished.
+     * @param language ISO code of the language
+     * @param models model names to load before the swap, if none are given all the installed transducers are loaded
+     * @throws IOException Fails if a model cannot be loaded, the old models are kept then
+     */
+    public void reload(String language, String... models) throws IOException {
+        ReentrantLock lock = swapLocks.computeIfAbsent(language, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            LanguageContext fresh = createContext(language);
+            try {
+                fresh.api.preload(language, models);
+            } catch (IOException | RuntimeException ex) {
+                //the models that did load are dropped with the context
+                fresh.api.unloadAll();
+                throw ex;
+            }
+            LanguageContext old = contexts.put(language, fresh);
+            if (old != null) {
+                drain(old);
+                old.api.unloadAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unloads a language after its running requests have finished. It is loaded again on its next request.
+     * @param language ISO code of the language
+     * @throws IOException if interrupted while waiting for running requests
+     */
+    public void unload(String language) throws IOException {
+        ReentrantLock lock = swapLocks.computeIfAbsent(language, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            LanguageContext old = contexts.remove(language);
+            if (old != null) {
+                drain(old);
+                old.api.unloadAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unloads all languages after their running requests have finished
+     * @throws IOException if interrupted while waiting for running requests
+     */
+    @Override
+    public void close() throws IOException {
+        for (String language : getLanguages()) {
+            unload(language);
+        }
+    }
+
+    /**
+     * Waits until no request runs in a context that is no longer reachable
+     */
+    private static void drain(LanguageContext context) throws IOException {
+        try {
+            context.requestSlots.acquire(context.requests);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the requests of " + context.language);
+        }
+        context.requestSlots.release(context.requests);
+    }
+
+    /**
+     * Gets the languages that are loaded
+     * @return ISO codes in alphabetical order
+     */
+    public Set<String> getLanguages() {
+        return new TreeSet<String>(contexts.keySet());
+    }
+
+    /**
+     * Gets the number of requests of a language that are running
+     * @param language ISO code of the language
+     * @return running requests, 0 if the language is not loaded
+     */
+    public int getActiveRequests(String language) {
+        LanguageContext context = contexts.get(language);
+        return context == null ? 0 : context.requests - context.requestSlots.availablePermits();
+    }
+
+    /**
+     * Gets the UralicApi that currently serves a language, e.g. for setting its memory budget. It is replaced
+     * on reload.
+     * @param language ISO code of the language
+     * @return the UralicApi of the language
+     */
+    public UralicApi getApi(String language) {
+        return getContext(language).api;
+    }
+
+    /**
+     * Runs a request in the context of a language once a request slot of the language is free
+     */
+    <T> T run(String language, Call<T> call) throws IOException {
+        while (true) {
+            LanguageContext context = getContext(language);
+            acquire(context.requestSlots, context.language);
+            try {
+                //a reload may have swapped the context while this request was waiting
+                if (contexts.get(language) == context) {
+                    return call.call(context);
+                }
+            } finally {
+                context.requestSlots.release();
+            }
+        }
+    }
+
+    private void acquire(Semaphore slots, String language) throws IOException {
+        long start = Metrics.start();
+        boolean acquired;
+        try {
+            if (timeoutMillis < 0) {
+                slots.acquire();
+                acquired = true;
+            } else {
+                acquired = slots.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a free slot of " + language);
+        }
+        if (Metrics.isEnabled()) {
+            Metrics.stop(Metrics.SERVICE_WAIT, start, "language", language);
+        }
+        if (!acquired) {
+            if (Metrics.isEnabled()) {
+                Metrics.getRecorder().count(Metrics.SERVICE_REJECTED, 1, "language", language);
+            }
+            throw new IOException("No free slot for " + language + " within " + timeoutMillis + " ms");
+        }
+    }
+
+    /**
+     * Analyzes a word morphologically
+     * @param word a single word
+     * @param language ISO code of the language
+     * @return A HashMap where the keys are possible morphological readings and values are weights given by the model
+     * @throws IOException Fails if the models are not downloaded or no slot was free in time
+     */
+    public HashMap<String, Float> analyze(String word, String language) throws IOException {
+        return analyze(word, language, true, false);
+    }
+
+    /**
+     * Analyzes a word morphologically
+     * @param word a single word
+     * @param language ISO code of the language
+     * @param descriptive true -> descriptive model, false -> normative model
+     * @param dictionaryForms true -> dictionary model
+     * @return A HashMap where the keys are possible morphological readings and values are weights given by the model
+     * @throws IOException Fails if the models are not downloaded or no slot was free in time
+     */
+    public HashMap<String, Float> analyze(String word, String language, boolean descriptive, boolean dictionaryForms) throws IOException {
+        return run(language, c -> c.api.analyze(word, language, descriptive, dictionaryForms));
+    }
+
+    /**
+     * Generates a word form
+     * @param word lemma and morphological tags e.g. koira+N+Sg+Ine
+     * @param language ISO code of the language
+     * @return A HashMap where the keys are generated word forms and values are weights given by the model
+     * @throws IOException Fails if the models are not downloaded or no slot was free in time
+     */
+    public HashMap<String, Float> generate(String word, String language) throws IOException {
+        return run(language, c -> c.api.generate(word, language));
+    }
+
+    /**
+     * Lemmatizes a word
+     * @param word a single word
+     * @param language ISO code of the language
+     * @return A list of lemmas
+     * @throws IOException Fails if the models are not downloaded or no slot was free in time
+     */
+    public ArrayList<String> lemmatize(String word, String language) throws IOException {
+        return run(language, c -> c.api.lemmatize(word, language));
+    }
+
+    /**
+     * Tokenizes a text with the tokenizer profile of the language
+     * @param text Text to be tokenized
+     * @param language ISO code of the language
+     * @return A list of sentences, each a list of tokens
+     * @throws IOException Fails if no slot was free in time
+     */
+    public List<List<String>> tokenize(String text, String language) throws IOException {
+        return run(language, c -> c.tokenizer.tokenize(text));
+    }
+
+    /**
+     * Analyzes and disambiguates a tokenized sentence. Besides a request slot this waits for one of the
+     * vislcg3 workers of the language.
+     * @param words One tokenized sentence  e.g. ["koira", "voi", "haukkua"]
+     * @param language ISO code of the language
+     * @return A list of potential readings for each token in the input sentence
+     * @throws IOException Fails if the models are not downloaded, vislcg3 fails or no slot was free in time
+     */
+    public ArrayList<ArrayList<Cg3Word>> disambiguate(List<String> words, String language) throws IOException {
+        return run(language, c -> {
+            acquire(c.cg3Slots, language);
+            try {
+                return c.cg3.disambiguate(words);
+            } finally {
+                c.cg3Slots.release();
+            }
+        });
+    }
+}
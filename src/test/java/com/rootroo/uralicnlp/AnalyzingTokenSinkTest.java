@@ -0,0 +1,136 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests streaming tokenization into an AnalyzingTokenSink over the analyser of the test models
+ */
+public class AnalyzingTokenSinkTest {
+
+    private static final String TEXT = "koira kissa. kissat koira ja koira!";
+
+    private Path models;
+    private UralicApi api;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    /**
+     * Writes down what it receives, stops after a number of calls or fails once
+     */
+    private static class Recorder implements AnalyzingTokenSink.Listener {
+
+        final List<String> events = new ArrayList<String>();
+        final List<HashMap<String, Float>> analyses = new ArrayList<HashMap<String, Float>>();
+        int stopAfter = Integer.MAX_VALUE;
+        boolean fail = false;
+
+        @Override
+        public boolean analyzed(String token, int sentence, int index, HashMap<String, Float> analyses) throws IOException {
+            if (fail) {
+                fail = false;
+                throw new IOException("failed");
+            }
+            events.add(sentence + ":" + index + ":" + token);
+            this.analyses.add(analyses);
+            return events.size() < stopAfter;
+        }
+
+        @Override
+        public boolean sentenceEnd(int sentence, int tokens) {
+            events.add(sentence + ":end:" + tokens);
+            return events.size() < stopAfter;
+        }
+    }
+
+    @Test
+    public void handsOnTokensInTextOrder() throws IOException {
+        List<String> expected = Arrays.asList("0:0:koira", "0:1:kissa", "0:2:.", "0:end:3",
+                "1:0:kissat", "1:1:koira", "1:2:ja", "1:3:koira", "1:4:!", "1:end:5");
+        for (int batchSize : new int[]{1, 2, 3, 256}) {
+            Recorder recorder = new Recorder();
+            AnalyzingTokenSink sink = new AnalyzingTokenSink(api, "xx", batchSize, true, false, recorder);
+            assertTrue(new Tokenizer().tokenize(TEXT, sink));
+            assertEquals("batch of " + batchSize, expected, recorder.events);
+        }
+    }
+
+    @Test
+    public void countsTheTokensOfEachSentence() throws IOException {
+        Tokenizer tokenizer = new Tokenizer();
+        Recorder recorder = new Recorder();
+        tokenizer.tokenize(TEXT, new AnalyzingTokenSink(api, "xx", 4, true, false, recorder));
+        List<String> ends = new ArrayList<String>();
+        for (String event : recorder.events) {
+            if (event.contains(":end:")) {
+                ends.add(event);
+            }
+        }
+        List<List<String>> sentences = tokenizer.tokenize(TEXT);
+        assertEquals(Arrays.asList("0:end:" + sentences.get(0).size(), "1:end:" + sentences.get(1).size()), ends);
+    }
+
+    @Test
+    public void analyzesEachTokenOncePerBatch() throws IOException {
+        Recorder recorder = new Recorder();
+        new Tokenizer().tokenize(TEXT, new AnalyzingTokenSink(api, "xx", 256, true, false, recorder));
+        //koira is the 1st, 5th and 7th token
+        assertTrue(recorder.analyses.get(0).containsKey("koira+N"));
+        assertSame(recorder.analyses.get(0), recorder.analyses.get(4));
+        assertSame(recorder.analyses.get(0), recorder.analyses.get(6));
+        assertTrue(recorder.analyses.get(3).containsKey("kissat+Pl"));
+        assertTrue(recorder.analyses.get(2).isEmpty());
+    }
+
+    @Test
+    public void stopsWhenTheListenerSaysSo() throws IOException {
+        for (int batchSize : new int[]{1, 2, 256}) {
+            Recorder recorder = new Recorder();
+            recorder.stopAfter = 2;
+            AnalyzingTokenSink sink = new AnalyzingTokenSink(api, "xx", batchSize, true, false, recorder);
+            boolean completed = new Tokenizer().tokenize(TEXT, sink);
+            assertEquals(Arrays.asList("0:0:koira", "0:1:kissa"), recorder.events);
+            //a batch that holds the whole text is only handed on at the end, after the tokenization
+            assertEquals(batchSize == 256, completed);
+        }
+    }
+
+    @Test
+    public void emptiesTheBatchWhenTheListenerFails() throws IOException {
+        Recorder recorder = new Recorder();
+        recorder.fail = true;
+        AnalyzingTokenSink sink = new AnalyzingTokenSink(api, "xx", 256, true, false, recorder);
+        Tokenizer tokenizer = new Tokenizer();
+        try {
+            tokenizer.tokenize(TEXT, sink);
+            fail();
+        } catch (IOException ex) {
+            assertEquals("failed", ex.getMessage());
+        }
+        assertFalse(recorder.fail);
+        assertTrue(tokenizer.tokenize("kissa.", sink));
+        assertEquals(Arrays.asList("0:0:kissa", "0:1:.", "0:end:2"), recorder.events);
+    }
+}
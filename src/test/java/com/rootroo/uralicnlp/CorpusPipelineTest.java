@@ -0,0 +1,226 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the order, the in-flight bound, the error handling and the token cache of CorpusPipeline
+ * on the analyser of the test models
+ */
+public class CorpusPipelineTest {
+
+    private static final String[] TEXTS = {"koira kissa", "kissat", "koiras koira kiss", "kissa"};
+
+    private Path models;
+    private UralicApi api;
+    private ExecutorService pool;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+        pool = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void delete() throws IOException {
+        pool.shutdownNow();
+        TestModels.delete(models);
+    }
+
+    /**
+     * Hands out the same texts over and over and counts how many documents have been read
+     */
+    private static class Documents implements Iterator<String> {
+
+        final int count;
+        int read = 0;
+
+        Documents(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return read < count;
+        }
+
+        @Override
+        public String next() {
+            return TEXTS[read++ % TEXTS.length];
+        }
+    }
+
+    /**
+     * Fails on the documents that say boom
+     */
+    private static class FailingTokenizer extends Tokenizer {
+
+        @Override
+        public List<List<String>> tokenize(String text) {
+            if (text.equals("boom")) {
+                throw new IllegalStateException("boom");
+            }
+            return super.tokenize(text);
+        }
+    }
+
+    @Test
+    public void keepsTheInputOrder() throws IOException, InterruptedException {
+        CorpusPipeline pipeline = new CorpusPipeline(api, "xx");
+        pipeline.setExecutor(pool);
+        pipeline.setQueueCapacity(8);
+        pipeline.setAnalyze(true);
+        final List<CorpusPipeline.ProcessedDocument> documents = new ArrayList<CorpusPipeline.ProcessedDocument>();
+        pipeline.run(new Documents(2000), new CorpusPipeline.DocumentSink() {
+            @Override
+            public void accept(CorpusPipeline.ProcessedDocument document) {
+                documents.add(document);
+            }
+        });
+        assertEquals(2000, documents.size());
+        Tokenizer tokenizer = new Tokenizer();
+        for (int i = 0; i < documents.size(); i++) {
+            CorpusPipeline.ProcessedDocument document = documents.get(i);
+            assertEquals(i, document.index);
+            List<List<String>> sentences = tokenizer.tokenize(TEXTS[i % TEXTS.length]);
+            assertEquals(sentences, document.sentences);
+            for (int s = 0; s < sentences.size(); s++) {
+                for (int t = 0; t < sentences.get(s).size(); t++) {
+                    String token = sentences.get(s).get(t);
+                    assertEquals(api.lemmatize(token, "xx"), document.lemmas.get(s).get(t));
+                    assertEquals(api.analyze(token, "xx"), document.analyses.get(s).get(t));
+                }
+            }
+        }
+        assertEquals(2000, pipeline.getStatistics().getDocuments());
+        //the pipeline leaves an executor it did not create running
+        assertFalse(pool.isShutdown());
+    }
+
+    @Test
+    public void boundsTheDocumentsInFlight() throws IOException, InterruptedException {
+        for (final int capacity : new int[]{1, 3, 16}) {
+            CorpusPipeline pipeline = new CorpusPipeline(api, "xx");
+            pipeline.setExecutor(pool);
+            pipeline.setQueueCapacity(capacity);
+            final Documents input = new Documents(200);
+            pipeline.run(input, new CorpusPipeline.DocumentSink() {
+                @Override
+                public void accept(CorpusPipeline.ProcessedDocument document) {
+                    assertTrue(input.read - document.index <= capacity);
+                }
+            });
+            assertEquals(200, pipeline.getStatistics().getDocuments());
+        }
+    }
+
+    @Test
+    public void passesErrorsOnToTheCaller() throws InterruptedException, IOException {
+        CorpusPipeline pipeline = new CorpusPipeline(api, "xx", new FailingTokenizer());
+        pipeline.setExecutor(pool);
+        final List<Long> delivered = new ArrayList<Long>();
+        CorpusPipeline.DocumentSink sink = new CorpusPipeline.DocumentSink() {
+            @Override
+            public void accept(CorpusPipeline.ProcessedDocument document) {
+                delivered.add(document.index);
+            }
+        };
+        try {
+            pipeline.run(Arrays.asList("koira", "kissa", "boom", "kiss").iterator(), sink);
+            fail();
+        } catch (IllegalStateException ex) {
+            assertEquals("boom", ex.getMessage());
+        }
+        assertEquals(Arrays.asList(0L, 1L), delivered);
+
+        try {
+            new CorpusPipeline(api, "zz").run(Arrays.asList("koira").iterator(), sink);
+            fail();
+        } catch (IOException ex) {
+            //there are no models for zz
+        }
+
+        try {
+            pipeline.run(Arrays.asList("koira").iterator(), new CorpusPipeline.DocumentSink() {
+                @Override
+                public void accept(CorpusPipeline.ProcessedDocument document) throws IOException {
+                    throw new IOException("full");
+                }
+            });
+            fail();
+        } catch (IOException ex) {
+            assertEquals("full", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void countsCacheHits() throws IOException, InterruptedException {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        try {
+            CorpusPipeline pipeline = new CorpusPipeline(api, "xx");
+            pipeline.setExecutor(single);
+            pipeline.run(Arrays.asList("koira kissa", "koira kissa koira", "kiss").iterator(), new CorpusPipeline.DocumentSink() {
+                @Override
+                public void accept(CorpusPipeline.ProcessedDocument document) {
+                }
+            });
+            //koira, kissa and kiss are looked up once, the other 3 tokens come from the cache
+            assertEquals(0.5, pipeline.getStatistics().getCacheHitRate(), 0);
+            assertEquals(6, pipeline.getStatistics().getItems(PipelineStatistics.Stage.ANALYZE));
+
+            pipeline.setAnalyze(true);
+            pipeline.run(Arrays.asList("koira kissa").iterator(), new CorpusPipeline.DocumentSink() {
+                @Override
+                public void accept(CorpusPipeline.ProcessedDocument document) {
+                }
+            });
+            //the lemmas are still cached, the analyses are not
+            assertEquals(0.5, pipeline.getStatistics().getCacheHitRate(), 0);
+
+            pipeline.setCacheSize(0);
+            pipeline.run(Arrays.asList("koira koira").iterator(), new CorpusPipeline.DocumentSink() {
+                @Override
+                public void accept(CorpusPipeline.ProcessedDocument document) {
+                }
+            });
+            assertEquals(0, pipeline.getStatistics().getCacheHitRate(), 0);
+        } finally {
+            single.shutdownNow();
+        }
+    }
+
+    @Test
+    public void copiesCachedLemmas() throws IOException, InterruptedException {
+        final List<String> expected = api.lemmatize("koira", "xx");
+        final List<List<String>> seen = new ArrayList<List<String>>();
+        CorpusPipeline pipeline = new CorpusPipeline(api, "xx");
+        pipeline.setExecutor(pool);
+        //with one document in flight each document is processed after the sink has edited the one before
+        pipeline.setQueueCapacity(1);
+        pipeline.run(Arrays.asList("koira", "koira", "koira").iterator(), new CorpusPipeline.DocumentSink() {
+            @Override
+            public void accept(CorpusPipeline.ProcessedDocument document) {
+                List<String> lemmas = document.lemmas.get(0).get(0);
+                seen.add(new ArrayList<String>(lemmas));
+                lemmas.add("edited");
+            }
+        });
+        assertEquals(Arrays.asList(expected, expected, expected), seen);
+        assertEquals(2.0 / 3, pipeline.getStatistics().getCacheHitRate(), 1e-9);
+    }
+}
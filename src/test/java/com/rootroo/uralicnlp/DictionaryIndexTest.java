@@ -0,0 +1,99 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests compiling the dictionary of the test models into an index and searching it
+ */
+public class DictionaryIndexTest {
+
+    private Path models;
+    private Path json;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        json = models.resolve("xx").resolve("dictionary.json");
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    private static List<String> list(Iterable<String> lemmas) {
+        List<String> result = new ArrayList<String>();
+        for (String lemma : lemmas) {
+            result.add(lemma);
+        }
+        return result;
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        DictionaryIndex index = DictionaryIndex.open(json);
+        assertTrue(Files.exists(json.resolveSibling("dictionary.index")));
+        assertEquals(4, index.size());
+        //UTF-8 byte order puts ä after the ASCII letters
+        assertEquals(Arrays.asList("kissa", "koira", "kotikissa", "äiti"), list(index.lemmas()));
+        String[] koira = index.search("koira");
+        assertEquals(2, koira.length);
+        assertTrue(koira[0].contains("\"dog\""));
+        assertTrue(koira[1].contains("\"V\""));
+        assertEquals(1, index.search("äiti").length);
+        assertEquals(0, index.search("koir").length);
+        assertEquals(0, index.search("").length);
+
+        DictionaryIndex reopened = DictionaryIndex.open(json);
+        assertEquals(list(index.lemmas()), list(reopened.lemmas()));
+        assertArrayEquals(koira, reopened.search("koira"));
+    }
+
+    @Test
+    public void searchesPrefixesAndInfixes() throws IOException {
+        DictionaryIndex index = DictionaryIndex.open(json);
+        assertEquals(Arrays.asList("koira", "kotikissa"), list(index.prefixSearch("ko")));
+        assertEquals(Arrays.asList("kissa", "koira", "kotikissa"), list(index.prefixSearch("k")));
+        assertEquals(Arrays.asList(), list(index.prefixSearch("x")));
+        assertEquals(4, list(index.prefixSearch("")).size());
+        assertEquals(Arrays.asList("kissa", "kotikissa"), index.infixSearch("issa"));
+        assertEquals(Arrays.asList("kotikissa", "äiti"), index.infixSearch("ti"));
+        assertEquals(Arrays.asList("äiti"), index.infixSearch("äi"));
+        assertEquals(Arrays.asList(), index.infixSearch("koti koira"));
+    }
+
+    @Test
+    public void recompilesAChangedDictionary() throws IOException {
+        DictionaryIndex.open(json);
+        Files.write(json, "{\"talo\": {\"pos\": \"N\"}}".getBytes("UTF-8"));
+        Files.setLastModifiedTime(json, FileTime.fromMillis(Files.getLastModifiedTime(json).toMillis() + 60000));
+        assertEquals(Arrays.asList("talo"), list(DictionaryIndex.open(json).lemmas()));
+    }
+
+    @Test
+    public void recompilesACorruptIndex() throws IOException {
+        Path indexFile = json.resolveSibling("dictionary.index");
+        DictionaryIndex.open(json);
+        byte[] bytes = Files.readAllBytes(indexFile);
+        Files.write(indexFile, Arrays.copyOf(bytes, bytes.length / 2));
+        assertEquals(4, DictionaryIndex.open(json).size());
+        Files.write(indexFile, new byte[3]);
+        assertEquals(4, DictionaryIndex.open(json).size());
+        bytes[11] = 9;
+        Files.write(indexFile, bytes);
+        assertEquals(4, DictionaryIndex.open(json).size());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * (C) Mika Hämäläinen 2022 CC BY-NC-ND 4.0
+ * Full license https://creativecommons.org/licenses/by-nc-nd/4.0/legalcode
+ */
+package com.rootroo.uralicnlp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares platform threads with UralicExecutors.newVirtualThreadExecutor on concurrent
+ * disambiguation requests. Both get one thread per concurrent request, so the difference is the cost of
+ * the threads themselves and not the size of a pool. Run with the test classpath:
+ * java com.rootroo.uralicnlp.DisambiguationBenchmark [language] [requests]
+ * Without vislcg3 and the models of the language, a 20 ms blocking call stands in for Cg3.
+ * @author mikahama
+ */
+public class DisambiguationBenchmark {
+
+    private static final int[] CONCURRENCY = {1, 16, 256, 4096};
+
+    public static void main(String[] args) throws Exception {
+        String language = args.length > 0 ? args[0] : "fin";
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 4096;
+        final List<String> sentence = Arrays.asList("koira", "voi", "haukkua");
+
+        Callable<Object> task;
+        if (new UralicApi().isLanguageInstalled(language) && onPath("vislcg3")) {
+            final Cg3 cg = new Cg3(language);
+            task = new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return cg.disambiguate(new ArrayList<String>(sentence));
+                }
+            };
+            System.out.println("Disambiguating with " + language);
+        } else {
+            task = new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    Thread.sleep(20);
+                    return null;
+                }
+            };
+            System.out.println("vislcg3 or models missing, using a 20 ms blocking stand-in");
+        }
+        System.out.println("Virtual threads supported: " + UralicExecutors.isVirtualThreadsSupported());
+        System.out.println("concurrency\tplatform req/s\tvirtual req/s");
+        for (int concurrency : CONCURRENCY) {
+            double platform = run(Executors.newFixedThreadPool(concurrency), task, requests, concurrency);
+            double virtual = run(UralicExecutors.newVirtualThreadExecutor(), task, requests, concurrency);
+            System.out.println(String.format("%d\t%.1f\t%.1f", concurrency, platform, virtual));
+        }
+    }
+
+    private static double run(ExecutorService executor, Callable<Object> task, int requests, int concurrency) throws Exception {
+        long start = System.nanoTime();
+        try {
+            List<Future<Object>> inFlight = new ArrayList<Future<Object>>();
+            for (int i = 0; i < requests; i++) {
+                inFlight.add(executor.submit(task));
+                if (inFlight.size() >= concurrency) {
+                    for (Future<Object> f : inFlight) {
+                        f.get();
+                    }
+                    inFlight.clear();
+                }
+            }
+            for (Future<Object> f : inFlight) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return requests * 1e9 / (System.nanoTime() - start);
+    }
+
+    private static boolean onPath(String command) {
+        for (String dir : System.getenv("PATH").split(java.io.File.pathSeparator)) {
+            if (new java.io.File(dir, command).canExecute()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,176 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the disambiguation cache on results parsed from CG output, without running vislcg3
+ */
+public class DisambiguationCacheTest {
+
+    //the last cohort stands for the empty token that ends every sentence
+    private static final String CG_OUTPUT = "\"<koira>\"\n\t\"koira\" N @SUBJ\n\t\"koiras\" N\n"
+            + "\"<kissa>\"\n\t\"kissa\" N\n\"<>\"\n";
+    private static final List<String> WORDS = Arrays.asList("koira", "kissa");
+
+    private Path models;
+    private UralicApi api;
+    private Cg3 cg;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+        cg = new Cg3("xx", api);
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    private ArrayList<ArrayList<Cg3Word>> parse() throws IOException {
+        return cg.parseCgResults(CG_OUTPUT, api.getTagTable("xx"));
+    }
+
+    private static DisambiguationCache.Key key(List<String> words) {
+        return new DisambiguationCache.Key("xx", false, null, true, false, 0, words);
+    }
+
+    private static String text(ArrayList<ArrayList<Cg3Word>> result) {
+        return result.toString();
+    }
+
+    @Test
+    public void parsesTheCohorts() throws IOException {
+        ArrayList<ArrayList<Cg3Word>> result = parse();
+        assertEquals("[[<koira - N, @SUBJ>, <koiras - N>], [<kissa - N>]]", text(result));
+        assertEquals("koira", result.get(0).get(0).form);
+        assertEquals("koira+N+@SUBJ", result.get(0).get(0).reading.toString());
+    }
+
+    @Test
+    public void dropsTheLeastRecentlyUsed() throws IOException {
+        DisambiguationCache cache = new DisambiguationCache(2);
+        cache.put(key(Arrays.asList("a")), parse());
+        cache.put(key(Arrays.asList("b")), parse());
+        assertNotNull(cache.get(key(Arrays.asList("a"))));
+        cache.put(key(Arrays.asList("c")), parse());
+        assertEquals(2, cache.size());
+        assertNull(cache.get(key(Arrays.asList("b"))));
+        assertNotNull(cache.get(key(Arrays.asList("a"))));
+        assertNotNull(cache.get(key(Arrays.asList("c"))));
+        //putting a key again does not take more room
+        cache.put(key(Arrays.asList("c")), parse());
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getMaxEntries());
+    }
+
+    @Test
+    public void copiesResultsInAndOut() throws IOException {
+        DisambiguationCache cache = new DisambiguationCache(10);
+        ArrayList<ArrayList<Cg3Word>> result = parse();
+        String expected = text(result);
+        cache.put(key(WORDS), result);
+        result.get(0).get(0).morphology[0] = "V";
+        result.get(0).remove(1);
+        result.get(1).get(0).lemma = "koira";
+        assertEquals(expected, text(cache.get(key(WORDS))));
+
+        ArrayList<ArrayList<Cg3Word>> cached = cache.get(key(WORDS));
+        cached.get(0).get(0).morphology[1] = "@OBJ";
+        cached.get(0).get(0).form = "kissa";
+        cached.get(1).clear();
+        cached.add(new ArrayList<Cg3Word>());
+        ArrayList<ArrayList<Cg3Word>> again = cache.get(key(WORDS));
+        assertEquals(expected, text(again));
+        assertEquals("koira", again.get(0).get(0).form);
+    }
+
+    @Test
+    public void missesOnAnyOtherKey() throws IOException {
+        DisambiguationCache cache = new DisambiguationCache(10);
+        List<String> words = new ArrayList<String>(WORDS);
+        DisambiguationCache.Key key = new DisambiguationCache.Key("xx", false, "#", true, false, 1000, words);
+        cache.put(key, parse());
+        //the key keeps its own copy of the words
+        words.add("koira");
+        assertNotNull(cache.get(new DisambiguationCache.Key("xx", false, "#", true, false, 1000, WORDS)));
+
+        DisambiguationCache.Key[] others = {
+            new DisambiguationCache.Key("yy", false, "#", true, false, 1000, WORDS),
+            new DisambiguationCache.Key("xx", true, "#", true, false, 1000, WORDS),
+            new DisambiguationCache.Key("xx", false, null, true, false, 1000, WORDS),
+            new DisambiguationCache.Key("xx", false, "+", true, false, 1000, WORDS),
+            new DisambiguationCache.Key("xx", false, "#", false, false, 1000, WORDS),
+            new DisambiguationCache.Key("xx", false, "#", true, true, 1000, WORDS),
+            new DisambiguationCache.Key("xx", false, "#", true, false, 2000, WORDS),
+            new DisambiguationCache.Key("xx", false, "#", true, false, 1000, Arrays.asList("kissa", "koira")),
+            new DisambiguationCache.Key("xx", false, "#", true, false, 1000, Arrays.asList("koira"))
+        };
+        for (DisambiguationCache.Key other : others) {
+            assertNull(cache.get(other));
+        }
+        assertEquals(1, cache.getHits());
+        assertEquals(others.length, cache.getMisses());
+    }
+
+    @Test
+    public void countsHitsAndMisses() throws IOException {
+        DisambiguationCache cache = new DisambiguationCache(10);
+        assertEquals(0, cache.getHitRate(), 0);
+        assertNull(cache.get(key(WORDS)));
+        cache.put(key(WORDS), parse());
+        cache.get(key(WORDS));
+        cache.get(key(WORDS));
+        cache.get(key(WORDS));
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(0.75, cache.getHitRate(), 0);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void answersFromTheCacheUntilTheGrammarChanges() throws IOException {
+        File grammar = models.resolve("xx").resolve("cg").toFile();
+        Files.write(grammar.toPath(), new byte[]{0});
+        grammar.setLastModified(1000000);
+        cg.enableCache(10);
+        DisambiguationCache cache = cg.getCache();
+        ArrayList<ArrayList<Cg3Word>> result = parse();
+        cache.put(new DisambiguationCache.Key("xx", true, null, true, false, grammar.lastModified(), WORDS), result);
+        String expected = text(result);
+
+        ArrayList<ArrayList<Cg3Word>> disambiguated = cg.disambiguate(WORDS);
+        assertEquals(expected, text(disambiguated));
+        disambiguated.get(0).get(0).lemma = "kissa";
+        assertEquals(expected, text(cg.disambiguate(new ArrayList<String>(WORDS))));
+        assertEquals(2, cache.getHits());
+
+        //a new grammar is looked up under its own time stamp
+        grammar.setLastModified(2000000);
+        ArrayList<ArrayList<Cg3Word>> other = new ArrayList<ArrayList<Cg3Word>>(result.subList(1, 2));
+        cache.put(new DisambiguationCache.Key("xx", true, null, true, false, grammar.lastModified(), WORDS), other);
+        assertEquals(text(other), text(cg.disambiguate(WORDS)));
+        assertEquals(3, cache.getHits());
+        assertEquals(0, cache.getMisses());
+
+        cg.disableCache();
+        assertNull(cg.getCache());
+    }
+}
@@ -0,0 +1,104 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.TreeMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests approximate lookup against the Levenshtein distances to the words of the test analyser
+ */
+public class FuzzyLookupTest {
+
+    //the words of the test analyser and their readings
+    private static final String[][] WORDS = {
+        {"koira", "koira+N"}, {"koiras", "koiras+N"}, {"kissa", "kissa+N"}, {"kiss", "kiss+V"}, {"kissat", "kissat+Pl"}
+    };
+
+    private Path models;
+    private UralicApi api;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    private static int levenshtein(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    @Test
+    public void findsTheWordsWithinTheDistance() throws IOException {
+        String[] inputs = {"koira", "koirs", "kira", "koiraa", "kisa", "kissat", "kisat", "ukoira", "koir", "zzzzz", ""};
+        for (String input : inputs) {
+            for (int distance = 0; distance <= 2; distance++) {
+                TreeMap<String, Integer> expected = new TreeMap<String, Integer>();
+                for (String[] word : WORDS) {
+                    int d = levenshtein(input, word[0]);
+                    if (d <= distance) {
+                        expected.put(word[1], d);
+                    }
+                }
+                TreeMap<String, Integer> found = new TreeMap<String, Integer>();
+                for (FuzzyResult result : api.fuzzyAnalyze(input, "xx", distance)) {
+                    found.put(result.getReading(), result.getDistance());
+                }
+                assertEquals(input + " within " + distance, expected, found);
+            }
+        }
+    }
+
+    @Test
+    public void sortsByDistanceAndWeight() throws IOException {
+        List<FuzzyResult> results = api.fuzzyAnalyze("kira", "xx", 2);
+        assertEquals("koira+N", results.get(0).getReading());
+        assertEquals(1, results.get(0).getDistance());
+        for (int i = 1; i < results.size(); i++) {
+            FuzzyResult a = results.get(i - 1);
+            FuzzyResult b = results.get(i);
+            assertTrue(a.getDistance() < b.getDistance() || (a.getDistance() == b.getDistance() && a.getWeight() <= b.getWeight()));
+        }
+        assertEquals(api.analyze("koira", "xx").get("koira+N"), results.get(0).getWeight(), 0f);
+    }
+
+    @Test
+    public void keepsToTheBudget() throws IOException {
+        FuzzyLookup lookup = new FuzzyLookup(2);
+        lookup.setMaxResults(2);
+        List<FuzzyResult> results = api.fuzzyAnalyze("kira", "xx", lookup, true, false);
+        assertEquals(2, results.size());
+        assertEquals("koira+N", results.get(0).getReading());
+        lookup.setMaxResults(20);
+        lookup.setMaxExpansions(3);
+        assertTrue(api.fuzzyAnalyze("kira", "xx", lookup, true, false).size() < 4);
+        lookup.setMaxExpansions(200000);
+        assertTrue(api.fuzzyAnalyze("zzzzz", "xx", lookup, true, false).isEmpty());
+    }
+}
@@ -0,0 +1,151 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests the lemma extractors against what the regex and split based lemmatization used to return,
+ * and the symbol list path of the Giella extractor against the string path
+ */
+public class LemmaExtractorTest {
+
+    //language, reading, lemma without and with word boundaries
+    private static final String[][] READINGS = {
+        {"fin", "koira+N+Sg+Nom", "koira", "koira"},
+        {"fin", "luuta+N+Sg+Nom+Cmp#piiri+N+Sg+Nom", "luutapiiri", "luuta|piiri"},
+        {"fin", "luuta#piiri+N+Sg+Nom", "luutapiiri", "luuta|piiri"},
+        //with +Cmp# in the reading a plain # is part of the lemma
+        {"fin", "a#b+Cmp#c+N", "a#bc", "a#b|c"},
+        {"fin", "kissa", "kissa", "kissa"},
+        {"fin", "", "", ""},
+        {"fin", "+N", "", ""},
+        {"fin", "koira+Cmp#", "koira", "koira"},
+        {"fin", "+Cmp#koira+N", "koira", "|koira"},
+        {"fin", "a+Cmp#+Cmp#b+N", "ab", "a||b"},
+        {"fin", "#koira+N", "koira", "|koira"},
+        {"fin", "koira##kissa+N", "koirakissa", "koira||kissa"},
+        {"fin", "+Cmp#", "", ""},
+        //Apertium readings
+        {"fin", "cat<n><pl>", "cat", "cat"},
+        {"fin", "take<vblex>+away<adv>", "takeaway", "take|away"},
+        {"fin", "+cat<n>", "cat", "|cat"},
+        {"fin", "a<n>++b<n>", "ab", "a||b"},
+        {"fin", "<n>", "", ""},
+        {"eng", "play[er]+N+Pl", "play", "play"},
+        {"eng", "[ab]c+N", "c", "c"},
+        {"eng", "a[b+N", "a[b", "a[b"},
+        {"eng", "x[1]#y[2]+N", "xy", "x|y"},
+        {"eng", "[x]", "", ""},
+        {"swe", "hund<n>valp<n><sg>", "hundvalp", "hund|valp"},
+        {"swe", "hund<n>", "hund", "hund"},
+        {"swe", "<n>", "", ""},
+        {"swe", "hund<ab", "hund<ab", "hund<ab"},
+        {"swe", "a<x>b", "ab", "a|b"},
+        {"swe", "a|<x>", "a|", "a"},
+        {"fin_hist", "[WORD_ID=koira][POS=NOUN]", "koira", "koira"},
+        {"fin_hist", "[WORD_ID=koti][POS=NOUN]#[WORD_ID=kissa][POS=NOUN]", "kotikissa", "koti|kissa"},
+        {"fin_hist", "[WORD_ID=]", "", ""},
+        {"fin_hist", "[WORD_ID=][WORD_ID=]", "", "|"},
+        {"fin_hist", "[WORD_ID=koira", "koira", "koira"},
+        {"fin_hist", "WORD_ID=WORD_ID=x]", "WORD_ID=x", "WORD_ID=x"},
+        {"fin_hist", "koira+N", "", ""},
+        {"ara", "كِتاب<n>+ال<det>", "كِتابال", "كِتاب|ال"},
+        {"ara", "كتب+V", "كتب", "كتب"},
+        {"ara", "book", "", ""}
+    };
+
+    //readings that used to throw ArrayIndexOutOfBoundsException, now their empty parts are left out
+    private static final String[][] BROKEN_READINGS = {
+        {"fin", "+", "", ""},
+        {"eng", "+", "", ""},
+        {"fin", "koira#+", "koira", "koira|"},
+        {"fin", "a<n>+<", "a", "a|"}
+    };
+
+    private static void check(String[][] table) {
+        for (String[] row : table) {
+            LemmaExtractor extractor = LemmaExtractor.forLanguage(row[0]);
+            assertEquals(row[0] + " " + row[1], row[2], extractor.extract(row[1], ""));
+            assertEquals(row[0] + " " + row[1], row[3], extractor.extract(row[1], "|"));
+        }
+    }
+
+    @Test
+    public void extractsLikeTheRegularExpressions() {
+        check(READINGS);
+    }
+
+    @Test
+    public void handlesReadingsWithoutParts() {
+        check(BROKEN_READINGS);
+    }
+
+    //how a transducer might have split the reading into output symbols
+    private static List<List<String>> symbolLists(String reading, Random random) {
+        List<List<String>> lists = new ArrayList<List<String>>();
+        lists.add(Arrays.asList(reading));
+        for (int size = 1; size <= 5; size++) {
+            List<String> symbols = new ArrayList<String>();
+            for (int i = 0; i < reading.length(); i += size) {
+                symbols.add(reading.substring(i, Math.min(reading.length(), i + size)));
+            }
+            lists.add(symbols);
+        }
+        //tags as multicharacter symbols, with the compound separator in a symbol of its own or glued to the next lemma
+        List<String> tags = new ArrayList<String>();
+        List<String> glued = new ArrayList<String>();
+        int start = 0;
+        for (int i = 1; i <= reading.length(); i++) {
+            if (i == reading.length() || reading.charAt(i) == '+' || reading.charAt(i) == '#') {
+                tags.add(reading.substring(start, i));
+                start = i;
+            }
+        }
+        for (int i = 0; i < tags.size(); i++) {
+            if (i + 1 < tags.size() && tags.get(i).startsWith("+Cmp")) {
+                glued.add(tags.get(i) + tags.get(++i));
+            } else {
+                glued.add(tags.get(i));
+            }
+        }
+        lists.add(tags);
+        lists.add(glued);
+        for (int n = 0; n < 50; n++) {
+            List<String> symbols = new ArrayList<String>();
+            int from = 0;
+            while (from < reading.length()) {
+                int to = Math.min(reading.length(), from + 1 + random.nextInt(6));
+                symbols.add(reading.substring(from, to));
+                from = to;
+            }
+            lists.add(symbols);
+        }
+        return lists;
+    }
+
+    @Test
+    public void extractsTheSameLemmaFromSymbols() {
+        Random random = new Random(1);
+        List<String[]> rows = new ArrayList<String[]>(Arrays.asList(READINGS));
+        rows.addAll(Arrays.asList(BROKEN_READINGS));
+        rows.add(new String[]{"fin", "koira+N+Cmp#+Cmp#kissa+N+Cmp"});
+        rows.add(new String[]{"fin", "a++Cmp#b+Cm+Cmp#c"});
+        rows.add(new String[]{"fin", "+C+Cmp#a"});
+        rows.add(new String[]{"eng", "x[1+Cmp#]y[2]+N"});
+        for (String[] row : rows) {
+            if (row[0].equals("fin") || row[0].equals("eng")) {
+                LemmaExtractor extractor = LemmaExtractor.forLanguage(row[0]);
+                for (List<String> symbols : symbolLists(row[1], random)) {
+                    for (String bound : new String[]{"", "|"}) {
+                        assertEquals(symbols + " " + bound, extractor.extract(row[1], bound), extractor.extract(symbols, bound));
+                    }
+                }
+            }
+        }
+    }
+}
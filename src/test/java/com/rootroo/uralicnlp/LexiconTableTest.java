@@ -0,0 +1,110 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests writing, reading and using lexicon tables exported from the analyser of the test models
+ */
+public class LexiconTableTest {
+
+    private Path models;
+    private UralicApi api;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    @Test
+    public void roundTrips() throws IOException {
+        TreeMap<String, HashMap<String, Float>> entries = new TreeMap<String, HashMap<String, Float>>();
+        HashMap<String, Float> koira = new HashMap<String, Float>();
+        koira.put("koira+N", 1f);
+        koira.put("koira+V", 2.5f);
+        entries.put("koira", koira);
+        entries.put("äiti", new HashMap<String, Float>());
+        entries.put("zzz", new HashMap<String, Float>());
+        entries.put("", new HashMap<String, Float>());
+        Path file = models.resolve("test.lexicon");
+        LexiconTable.write("analyser", entries, file);
+        LexiconTable table = LexiconTable.open(file);
+        assertEquals("analyser", table.getModel());
+        assertEquals(4, table.size());
+        assertEquals(koira, table.lookup("koira"));
+        assertEquals(0, table.lookup("äiti").size());
+        assertEquals(0, table.lookup("").size());
+        assertNull(table.lookup("koir"));
+        assertNull(table.lookup("koiraa"));
+        assertEquals(Arrays.asList("", "koira", "zzz", "äiti"), table.getForms());
+    }
+
+    @Test
+    public void exportsTheWholeLexicon() throws IOException {
+        Path file = models.resolve("xx").resolve("analyser.lexicon");
+        LexiconExporter exporter = new LexiconExporter(api, "xx");
+        exporter.exportLexicon(file, 100);
+        LexiconTable table = LexiconTable.open(file);
+        List<String> forms = table.getForms();
+        assertTrue(forms.contains("koira"));
+        assertTrue(forms.contains("kissat"));
+        for (String form : forms) {
+            assertEquals(form, api.analyze(form, "xx"), table.lookup(form));
+        }
+    }
+
+    @Test
+    public void lemmatizesFromTheTable() throws IOException {
+        Path file = models.resolve("xx").resolve("analyser.lexicon");
+        new LexiconExporter(api, "xx").export(Arrays.asList("koira", "kissa", "zzz"), file);
+        api.loadLexicon("xx");
+        //the transducer is not needed for the forms in the table
+        Files.delete(models.resolve("xx").resolve("analyser"));
+        assertEquals(Arrays.asList("koira"), api.lemmatize("koira", "xx"));
+        assertEquals(Arrays.asList("kissa"), api.lemmatize("kissa", "xx"));
+        assertEquals(0, api.lemmatize("zzz", "xx").size());
+        assertEquals(0, api.analyze("zzz", "xx").size());
+        api.unload("xx");
+        try {
+            api.lemmatize("koira", "xx");
+            fail("The lexicon should be unloaded with the language");
+        } catch (IOException ex) {
+            //the analyser is gone
+        }
+    }
+
+    @Test
+    public void refusesAStaleTable() throws IOException {
+        Path file = models.resolve("xx").resolve("analyser.lexicon");
+        new LexiconExporter(api, "xx").export(Arrays.asList("koira"), file);
+        api.loadLexicon("xx");
+        Path analyser = models.resolve("xx").resolve("analyser");
+        Files.setLastModifiedTime(analyser, FileTime.fromMillis(Files.getLastModifiedTime(analyser).toMillis() + 60000));
+        try {
+            api.loadLexicon("xx");
+            fail("A table older than its analyser should not load");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("export it again"));
+        }
+    }
+}
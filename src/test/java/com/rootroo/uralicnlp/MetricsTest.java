@@ -0,0 +1,108 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests what the library reports to an InMemoryMetricsRecorder while it works on the test models
+ */
+public class MetricsTest {
+
+    private static final String TEXT = "koira kissa. kissat!";
+
+    private Path models;
+    private UralicApi api;
+    private InMemoryMetricsRecorder recorder;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+        recorder = new InMemoryMetricsRecorder();
+    }
+
+    @After
+    public void delete() throws IOException {
+        Metrics.setRecorder(null);
+        TestModels.delete(models);
+    }
+
+    private long count(String name, String... tags) {
+        InMemoryMetricsRecorder.Summary summary = recorder.get(name, tags);
+        return summary == null ? 0 : summary.getCount();
+    }
+
+    private double sum(String name, String... tags) {
+        return recorder.get(name, tags).getSum();
+    }
+
+    @Test
+    public void reportsLookups() throws IOException {
+        Metrics.setRecorder(recorder);
+        assertTrue(Metrics.isEnabled());
+        api.analyze("koira", "xx");
+        api.analyze("kissat", "xx");
+        api.lemmatize("koira", "xx");
+
+        String[] model = {"language", "xx", "model", "analyser"};
+        assertEquals(1, count(Metrics.TRANSDUCER_LOAD, model));
+        assertEquals("timer", recorder.get(Metrics.TRANSDUCER_LOAD, model).getType());
+        assertEquals(1, sum(Metrics.TRANSDUCER_CACHE_MISS, model), 0);
+        assertEquals(2, sum(Metrics.TRANSDUCER_CACHE_HIT, model), 0);
+        assertEquals(Files.size(models.resolve("xx").resolve("analyser")) * TransducerCache.MEMORY_FACTOR,
+                sum(Metrics.TRANSDUCER_BYTES, model), 0);
+
+        String[] analyze = {"operation", "analyze", "language", "xx", "model", "analyser"};
+        assertEquals(2, count(Metrics.LOOKUP, analyze));
+        assertEquals("histogram", recorder.get(Metrics.LOOKUP_RESULTS, analyze).getType());
+        assertEquals(2, sum(Metrics.LOOKUP_RESULTS, analyze), 0);
+        String[] lemmatize = {"operation", "lemmatize", "language", "xx", "model", "analyser"};
+        assertEquals(1, count(Metrics.LOOKUP, lemmatize));
+        assertEquals(1, sum(Metrics.LOOKUP_RESULTS, lemmatize), 0);
+        assertEquals("counter", recorder.get(Metrics.TRANSDUCER_CACHE_HIT, model).getType());
+    }
+
+    @Test
+    public void reportsTokenization() {
+        Metrics.setRecorder(recorder);
+        new Tokenizer().tokenize(TEXT);
+        assertEquals(1, count(Metrics.TOKENIZER, "method", "tokenize"));
+        assertEquals(TEXT.length(), sum(Metrics.TOKENIZER_CHARS, "method", "tokenize"), 0);
+        //tokenize splits the sentences and then the words of each one
+        assertEquals(1, count(Metrics.TOKENIZER, "method", "sentences"));
+        assertEquals(2, count(Metrics.TOKENIZER, "method", "words"));
+    }
+
+    @Test
+    public void measuresNothingWithoutARecorder() throws IOException {
+        assertSame(Metrics.NOOP, Metrics.getRecorder());
+        assertFalse(Metrics.isEnabled());
+        //the clock is only read when there is a recorder
+        assertEquals(0, Metrics.start());
+        long start = Metrics.start();
+        api.analyze("koira", "xx");
+        new Tokenizer().tokenize(TEXT);
+
+        Metrics.setRecorder(recorder);
+        assertTrue(Metrics.start() != 0);
+        //a timer started without a recorder is not reported
+        Metrics.stop(Metrics.LOOKUP, start);
+        assertNull(recorder.get(Metrics.LOOKUP));
+        assertTrue(recorder.getAll().isEmpty());
+
+        Metrics.setRecorder(null);
+        assertSame(Metrics.NOOP, Metrics.getRecorder());
+        api.analyze("kissa", "xx");
+        assertTrue(recorder.getAll().isEmpty());
+    }
+}
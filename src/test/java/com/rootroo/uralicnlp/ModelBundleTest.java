@@ -0,0 +1,89 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests packing the test models into a bundle and analysing from it
+ */
+public class ModelBundleTest {
+
+    private Path models;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    @Test
+    public void bundlesOnlyModels() throws IOException {
+        Path folder = models.resolve("xx");
+        Files.write(folder.resolve("metadata.json"), "{}".getBytes("UTF-8"));
+        Files.write(folder.resolve("dictionary.index"), new byte[10]);
+        Files.write(folder.resolve("analyser.lexicon"), new byte[10]);
+        Files.write(folder.resolve("old.bundle"), new byte[10]);
+        Path bundleFile = folder.resolve("xx.bundle");
+        ModelBundle.write(folder, bundleFile);
+
+        ModelBundle bundle = ModelBundle.open(bundleFile);
+        assertEquals(Arrays.asList("analyser", "metadata.json"), bundle.getEntryNames());
+        ByteBuffer analyser = bundle.getEntry("analyser");
+        byte[] bytes = new byte[analyser.remaining()];
+        analyser.get(bytes);
+        assertArrayEquals(Files.readAllBytes(folder.resolve("analyser")), bytes);
+        assertEquals(bytes.length, bundle.getEntry("analyser").remaining());
+        assertEquals(0, Files.size(bundleFile) % ModelBundle.ALIGNMENT);
+    }
+
+    @Test
+    public void analyzesFromTheBundle() throws IOException {
+        Path bundleFile = models.resolve("xx.bundle");
+        ModelBundle.write(models.resolve("xx"), bundleFile);
+        Files.delete(models.resolve("xx").resolve("analyser"));
+        UralicApi api = new UralicApi(models.toString());
+        api.loadBundle("xx", bundleFile.toString());
+        HashMap<String, Float> analyses = api.analyze("koira", "xx");
+        assertTrue(analyses.containsKey("koira+N"));
+    }
+
+    @Test
+    public void refusesFoldersWithoutModels() {
+        try {
+            ModelBundle.write(models.resolve("zz"), models.resolve("zz.bundle"));
+            fail();
+        } catch (IOException ex) {
+            //expected
+        }
+    }
+
+    @Test
+    public void refusesTruncatedBundles() throws IOException {
+        Path bundleFile = models.resolve("xx.bundle");
+        ModelBundle.write(models.resolve("xx"), bundleFile);
+        byte[] bytes = Files.readAllBytes(bundleFile);
+        Files.write(bundleFile, Arrays.copyOf(bytes, 30));
+        try {
+            ModelBundle.open(bundleFile);
+            fail();
+        } catch (IOException ex) {
+            //expected
+        }
+    }
+}
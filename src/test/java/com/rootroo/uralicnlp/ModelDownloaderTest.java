@@ -0,0 +1,139 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests ModelDownloader against a local HTTP server
+ */
+public class ModelDownloaderTest {
+
+    private HttpServer server;
+    private String serverUrl;
+    private Path modelPath;
+    private final Map<String, byte[]> files = new HashMap<String, byte[]>();
+    private final Map<String, String> ranges = new ConcurrentHashMap<String, String>();
+
+    @Before
+    public void startServer() throws IOException {
+        modelPath = Files.createTempDirectory("uralicnlp-models");
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath().substring(1);
+                byte[] body = files.get(path);
+                if (body == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    exchange.close();
+                    return;
+                }
+                String range = exchange.getRequestHeaders().getFirst("Range");
+                int start = 0;
+                int status = 200;
+                if (range != null) {
+                    ranges.put(path, range);
+                    start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                    status = 206;
+                }
+                exchange.sendResponseHeaders(status, body.length - start);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body, start, body.length - start);
+                }
+            }
+        });
+        server.start();
+        serverUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        CommonTools.deleteDir(modelPath.toFile());
+    }
+
+    @Test
+    public void downloadsAllLanguagesConcurrently() throws Exception {
+        byte[] analyser = model(100000);
+        files.put("fin/analyser-gt-desc.hfstol", analyser);
+        files.put("fin/metadata.json", ("{\"checksums\":{\"analyser\":\"sha256:" + sha256(analyser) + "\"}}").getBytes(StandardCharsets.UTF_8));
+        files.put("sms/analyser-gt-desc.hfstol", model(5000));
+
+        ModelDownloader downloader = new ModelDownloader(serverUrl);
+        downloader.setParallelism(8);
+        downloader.setVerbose(false);
+        Map<String, Exception> failures = downloader.download(Arrays.asList("fin", "sms"), modelPath.toString());
+
+        assertArrayEquals(analyser, Files.readAllBytes(modelPath.resolve("fin").resolve("analyser")));
+        assertArrayEquals(files.get("sms/analyser-gt-desc.hfstol"), Files.readAllBytes(modelPath.resolve("sms").resolve("analyser")));
+        assertFalse(failures.containsKey("fin/analyser"));
+        assertTrue(failures.containsKey("fin/generator"));
+        assertTrue(failures.containsKey("sms/metadata.json"));
+        assertFalse(Files.exists(modelPath.resolve("fin").resolve("analyser.part")));
+    }
+
+    @Test
+    public void resumesPartialDownload() throws Exception {
+        byte[] generator = model(70000);
+        files.put("fin/generator-dict-gt-norm.hfstol", generator);
+        Path target = modelPath.resolve("generator");
+        Files.write(modelPath.resolve("generator.part"), Arrays.copyOf(generator, 30000));
+
+        new ModelDownloader(serverUrl).downloadFile(serverUrl + "fin/generator-dict-gt-norm.hfstol", target, "sha256:" + sha256(generator));
+
+        assertEquals("bytes=30000-", ranges.get("fin/generator-dict-gt-norm.hfstol"));
+        assertArrayEquals(generator, Files.readAllBytes(target));
+    }
+
+    @Test
+    public void rejectsChecksumMismatch() throws Exception {
+        files.put("fin/disambiguator.bin", model(2000));
+        Path target = modelPath.resolve("cg");
+        try {
+            new ModelDownloader(serverUrl).downloadFile(serverUrl + "fin/disambiguator.bin", target, sha256(new byte[1]));
+            fail("Checksum mismatch was not detected");
+        } catch (IOException ex) {
+            assertFalse(Files.exists(target));
+            assertFalse(Files.exists(modelPath.resolve("cg.part")));
+        }
+        assertEquals(Collections.emptyMap(), ranges);
+    }
+
+    private static byte[] model(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + 7);
+        }
+        return bytes;
+    }
+
+    private static String sha256(byte[] bytes) throws Exception {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes)) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,73 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests generating paradigms with tag wildcards from the normative generator of the test models
+ */
+public class ParadigmGeneratorTest {
+
+    private Path models;
+    private UralicApi api;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    @Test
+    public void generatesEveryNumberAndCase() throws IOException {
+        Map<String, HashMap<String, Float>> paradigm = api.generateParadigm("talo+N+*+*", "yy");
+        assertEquals(Arrays.asList("talo+N+Pl+Gen", "talo+N+Pl+Nom", "talo+N+Sg+Gen", "talo+N+Sg+Nom",
+                "talo+N+Sg+PxPl1", "talo+N+Sg+PxSg1"), new ArrayList<String>(paradigm.keySet()));
+        assertEquals(0.5f, paradigm.get("talo+N+Pl+Gen").get("talojen"), 0f);
+        assertEquals(api.generate("talo+N+Sg+Gen", "yy"), paradigm.get("talo+N+Sg+Gen"));
+    }
+
+    @Test
+    public void matchesPartsOfTags() throws IOException {
+        Map<String, HashMap<String, Float>> paradigm = api.generateParadigm("talo+N+Sg+Px*", "yy");
+        assertEquals(Arrays.asList("talo+N+Sg+PxPl1", "talo+N+Sg+PxSg1"), new ArrayList<String>(paradigm.keySet()));
+        assertTrue(paradigm.get("talo+N+Sg+PxSg1").containsKey("taloni"));
+        assertTrue(paradigm.get("talo+N+Sg+PxPl1").containsKey("talomme"));
+
+        assertEquals(Arrays.asList("talo+N+Pl+Nom", "talo+N+Sg+Nom"),
+                new ArrayList<String>(api.generateParadigm("talo+N+*+Nom", "yy").keySet()));
+        assertEquals(Arrays.asList("talo+N+Sg+Nom"), new ArrayList<String>(api.generateParadigm("talo+N+Sg+Nom", "yy").keySet()));
+    }
+
+    @Test
+    public void needsTheWholePattern() throws IOException {
+        assertEquals(0, api.generateParadigm("talo+N+*", "yy").size());
+        assertEquals(0, api.generateParadigm("tal+N+*+*", "yy").size());
+        assertEquals(0, api.generateParadigm("koira+N+*+*", "yy").size());
+    }
+
+    @Test
+    public void stopsAtTheFormLimit() throws IOException {
+        ParadigmGenerator generator = new ParadigmGenerator();
+        generator.setMaxForms(2);
+        Map<String, HashMap<String, Float>> paradigm = api.generateParadigm("talo+N+*+*", "yy", generator, false, false);
+        assertEquals(2, paradigm.size());
+        generator.setMaxForms(10000);
+        generator.setMaxExpansions(3);
+        assertTrue(api.generateParadigm("talo+N+*+*", "yy", generator, false, false).size() < 6);
+    }
+}
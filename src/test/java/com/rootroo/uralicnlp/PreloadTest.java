@@ -0,0 +1,120 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests preloading the test models and the readiness of their languages
+ */
+public class PreloadTest {
+
+    private Path models;
+    private UralicApi api;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    @Test
+    public void becomesReady() throws IOException {
+        assertEquals(LanguageReadiness.NOT_LOADED, api.getReadiness("xx"));
+        assertFalse(api.isReady("xx"));
+        api.setWarmUp(Arrays.asList("koira", "kissat"), 2);
+        api.preload("xx");
+        assertEquals(LanguageReadiness.READY, api.getReadiness("xx"));
+        assertTrue(api.isReady("xx"));
+        assertEquals(1, api.getTransducerCache().getLoadCount("xx", "analyser"));
+        //only the installed models are loaded when none are named
+        assertEquals(1, api.getTransducerCache().size());
+        assertEquals(LanguageReadiness.NOT_LOADED, api.getReadiness("yy"));
+    }
+
+    @Test
+    public void failsForAMissingModel() {
+        try {
+            api.preload("xx", "generator");
+            fail();
+        } catch (IOException ex) {
+            assertEquals(LanguageReadiness.FAILED, api.getReadiness("xx"));
+        }
+        try {
+            api.preload("zz", "analyser");
+            fail();
+        } catch (IOException ex) {
+            assertEquals(LanguageReadiness.FAILED, api.getReadiness("zz"));
+        }
+        assertFalse(api.isReady("zz"));
+    }
+
+    @Test
+    public void preloadsLanguagesInParallel() {
+        Map<String, Exception> failures = api.preload(Arrays.asList("xx", "yy", "zz"));
+        assertEquals(Arrays.asList("zz"), new ArrayList<String>(failures.keySet()));
+        assertTrue(failures.get("zz") instanceof IOException);
+        assertEquals(LanguageReadiness.READY, api.getReadiness("xx"));
+        assertEquals(LanguageReadiness.READY, api.getReadiness("yy"));
+        assertEquals(LanguageReadiness.FAILED, api.getReadiness("zz"));
+        assertEquals(1, api.getTransducerCache().getLoadCount("xx", "analyser"));
+        assertEquals(1, api.getTransducerCache().getLoadCount("yy", "generator-norm"));
+
+        //each language misses one of the named models
+        assertEquals(2, api.preload(Arrays.asList("xx", "yy"), "analyser", "generator-norm").size());
+        assertTrue(api.preload(new ArrayList<String>()).isEmpty());
+    }
+
+    @Test
+    public void loadsAFileOnceForConcurrentCallers() throws Exception {
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+            for (int i = 0; i < threads; i++) {
+                final boolean preload = i % 2 == 0;
+                results.add(pool.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        start.await();
+                        if (preload) {
+                            api.preload("xx", "analyser");
+                            return 1;
+                        }
+                        return api.analyze("koira", "xx").size();
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Integer> result : results) {
+                assertEquals(1, (int) result.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, api.getTransducerCache().getLoadCount("xx", "analyser"));
+        assertEquals(LanguageReadiness.READY, api.getReadiness("xx"));
+    }
+}
@@ -0,0 +1,151 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests structured readings and the tag table built from the analyser of the test models
+ */
+public class ReadingTest {
+
+    private Path models;
+    private UralicApi api;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    @Test
+    public void readsTheAnalyserTags() throws IOException {
+        TagSymbolTable table = api.getTagTable("xx");
+        assertTrue(table.id("+N") >= 0);
+        assertTrue(table.id("+Pl") >= 0);
+        assertEquals(-1, table.id("@P.NUM.SG@"));
+        assertEquals(-1, table.id("k"));
+    }
+
+    @Test
+    public void analyzesIntoReadings() throws IOException {
+        List<Reading> readings = api.analyzeReadings("koira", "xx");
+        assertEquals(1, readings.size());
+        Reading koira = readings.get(0);
+        assertEquals("koira", koira.getLemma());
+        assertEquals("koira+N", koira.toString());
+        assertEquals(1.0f, koira.getWeight(), 0f);
+        assertTrue(koira.hasTag("+N"));
+        assertFalse(koira.hasTag("+V"));
+        assertEquals(api.getTagTable("xx").id("+N"), koira.getTagId(0));
+        assertEquals("kissat+Pl", api.analyzeReadings("kissat", "xx").get(0).toString());
+    }
+
+    @Test
+    public void keepsCompoundPartsOutOfTheTable() throws IOException {
+        TagSymbolTable table = api.getTagTable("xx");
+        int size = table.size();
+        Reading compound = table.parse("koira+N+Pl#kissa+N", 0.5f);
+        assertEquals("koira", compound.getLemma());
+        assertEquals(4, compound.getTagCount());
+        assertEquals("#kissa", compound.getTag(2));
+        assertTrue(compound.getTagId(2) < 0);
+        assertTrue(compound.hasTag("#kissa"));
+        assertFalse(compound.hasTag(-1));
+        assertEquals("koira+N+Pl#kissa+N", compound.toString());
+        assertEquals(compound, table.parse("koira+N+Pl#kissa+N", 0.5f));
+        assertEquals(size, table.size());
+    }
+
+    @Test
+    public void sharesTagsWithCg3() throws IOException {
+        TagSymbolTable table = api.getTagTable("xx");
+        int id = table.analyserId("Pl");
+        assertEquals(table.id("+Pl"), id);
+        assertSame(table.bareTag(id), table.bareTag(table.analyserId("Pl")));
+        assertEquals(-1, table.analyserId("@SUBJ>"));
+    }
+
+    @Test
+    public void parsesCg3OutputWithoutGrowingTheTable() throws IOException {
+        TagSymbolTable table = api.getTagTable("xx");
+        int size = table.size();
+        Cg3 cg3 = new Cg3("xx", api);
+        ArrayList<ArrayList<Cg3Word>> words = cg3.parseCgResults("\"<koirat>\"\n\t\"koira\" N Pl @SUBJ> #1->2\n"
+                + "\"<.>\"\n\t\".\" CLB #2->0\n", table);
+        Cg3Word koira = words.get(0).get(0);
+        assertEquals("koirat", koira.form);
+        assertEquals("koira", koira.lemma);
+        assertSame(table.bareTag(table.id("+N")), koira.morphology[0]);
+        assertEquals("@SUBJ>", koira.morphology[2]);
+        assertEquals("koira+N+Pl+@SUBJ>+#1->2", koira.reading.toString());
+        assertTrue(koira.reading.hasTag(table.id("+Pl")));
+        assertEquals(size, table.size());
+    }
+
+    @Test
+    public void readsTheSameFromSymbolsAsFromStrings() throws IOException {
+        TagSymbolTable table = api.getTagTable("xx");
+        for (String word : new String[]{"koira", "koiras", "kissa", "kiss", "kissat", "koir"}) {
+            List<Reading> readings = api.analyzeReadings(word, "xx");
+            assertEquals(api.analyze(word, "xx").size(), readings.size());
+            for (Reading reading : readings) {
+                Reading parsed = table.parse(reading.toString(), reading.getWeight());
+                assertEquals(parsed, reading);
+                assertEquals(api.analyze(word, "xx").get(reading.toString()), reading.getWeight(), 0f);
+            }
+        }
+        //a tag symbol is a tag, the same characters one by one are text
+        Reading reading = table.parse(Arrays.asList("k", "+", "N", "+N", "+", "P", "l", "+Pl", "#", "+N"), 2f);
+        assertEquals("k+N", reading.getLemma());
+        assertEquals(5, reading.getTagCount());
+        assertEquals(table.id("+N"), reading.getTagId(0));
+        assertEquals("+Pl", reading.getTag(1));
+        assertEquals(table.id("+Pl"), reading.getTagId(2));
+        assertEquals("#", reading.getTag(3));
+        assertEquals(table.id("+N"), reading.getTagId(4));
+        assertEquals("k+N+N+Pl+Pl#+N", reading.toString());
+        assertEquals(0, table.parse(Arrays.asList("k", "o"), 0f).getTagCount());
+    }
+
+    @Test
+    public void findsTheLongestTag() throws IOException {
+        TagSymbolTable table = api.getTagTable("xx");
+        Reading reading = table.parse("koira+Pl+P+N+", 0f);
+        assertEquals("koira", reading.getLemma());
+        assertEquals("koira+Pl+P+N+", reading.toString());
+        assertEquals(table.id("+Pl"), reading.getTagId(0));
+        assertEquals("+P", reading.getTag(1));
+        assertEquals(table.id("+N"), reading.getTagId(2));
+        assertEquals("+", reading.getTag(3));
+    }
+
+    @Test
+    public void parsesWithoutAnalyser() {
+        Reading reading = new TagSymbolTable().parse("koira+N", 0f);
+        assertEquals("koira+N", reading.getLemma());
+        assertEquals(0, reading.getTagCount());
+    }
+
+    @Test
+    public void dropsTheTableOnUnload() throws IOException {
+        TagSymbolTable table = api.getTagTable("xx");
+        api.unload("xx");
+        assertFalse(table == api.getTagTable("xx"));
+    }
+}
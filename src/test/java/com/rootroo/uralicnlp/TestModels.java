@@ -0,0 +1,52 @@
+package com.rootroo.uralicnlp;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Small hand-built models in src/test/resources/models, copied to a temporary folder for each test.
+ * xx has an analyser for koira+N, koiras+N, kissa+N, kiss+V and kissat+Pl (through flag diacritics)
+ * and a dictionary; yy has a normative generator for talo+N+{Sg,Pl}+{Nom,Gen} and talo+N+Sg+Px{Sg1,Pl1}.
+ */
+final class TestModels {
+
+    private TestModels() {
+    }
+
+    static Path copy() throws IOException {
+        Path source;
+        try {
+            source = Paths.get(TestModels.class.getResource("/models").toURI());
+        } catch (URISyntaxException ex) {
+            throw new IOException(ex);
+        }
+        Path target = Files.createTempDirectory("uralicnlp-test-models");
+        try (Stream<Path> files = Files.walk(source)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                Path copy = target.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(file, copy);
+                }
+            }
+        }
+        return target;
+    }
+
+    static void delete(Path folder) throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            List<Path> all = files.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path file : all) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests the tokenizer profiles in the resources and the fallback to the default profile
+ */
+public class TokenizerProfileTest {
+
+    private static List<List<String>> sentences(String... sentences) {
+        List<List<String>> result = new ArrayList<List<String>>();
+        for (String sentence : sentences) {
+            result.add(Arrays.asList(sentence.split(" ")));
+        }
+        return result;
+    }
+
+    @Test
+    public void keepsFinnishOrdinalDots() {
+        String text = "Se oli 3. päivänä.";
+        assertEquals(sentences("Se oli 3. päivänä ."), new Tokenizer("fin").tokenize(text));
+        assertEquals(sentences("Se oli 3 . päivänä ."), new Tokenizer().tokenize(text));
+        assertTrue(TokenizerProfile.forLanguage("fin").hasOrdinalDots());
+        assertFalse(TokenizerProfile.forLanguage(null).hasOrdinalDots());
+    }
+
+    @Test
+    public void addsLanguageAbbreviations() {
+        String text = "Mun boran jna. ja vrt. dan";
+        assertEquals(sentences("Mun boran jna. ja vrt .", "dan"), new Tokenizer("sme").tokenize(text));
+        assertEquals(sentences("Mun boran jna .", "ja vrt. dan"), new Tokenizer("fin").tokenize(text));
+        assertEquals(sentences("Mun boran jna .", "ja vrt .", "dan"), new Tokenizer().tokenize(text));
+    }
+
+    @Test
+    public void addsArabicPunctuation() {
+        String text = "هل أنت هنا؟ نعم، أنا هنا۔ شكرا";
+        assertEquals(sentences("هل أنت هنا ؟", "نعم ، أنا هنا ۔", "شكرا"), new Tokenizer("ara").tokenize(text));
+        assertEquals(sentences("هل أنت هنا ؟", "نعم ، أنا هنا۔ شكرا"), new Tokenizer().tokenize(text));
+    }
+
+    @Test
+    public void fallsBackToTheDefault() {
+        TokenizerProfile defaults = TokenizerProfile.forLanguage(null);
+        assertNull(defaults.getLanguage());
+        assertEquals("fin", TokenizerProfile.forLanguage("fin").getLanguage());
+        for (String language : new String[]{"xyz", "../abrvs", "tokenizer/fin", "FIN", "default", ""}) {
+            assertFalse(language, TokenizerProfile.hasProfile(language));
+            assertSame(language, defaults, TokenizerProfile.forLanguage(language));
+        }
+        assertEquals(sentences("Se oli 3 . päivänä ."), new Tokenizer("../abrvs").tokenize("Se oli 3. päivänä."));
+    }
+}
@@ -0,0 +1,115 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the memory budget, the load counts and unloading of the transducer cache on the test models
+ */
+public class TransducerCacheTest {
+
+    private Path models;
+    private UralicApi api;
+    private long analyserBytes;
+    private long generatorBytes;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        api = new UralicApi(models.toString());
+        analyserBytes = Files.size(models.resolve("xx").resolve("analyser")) * TransducerCache.MEMORY_FACTOR;
+        generatorBytes = Files.size(models.resolve("yy").resolve("generator-norm")) * TransducerCache.MEMORY_FACTOR;
+    }
+
+    @After
+    public void delete() throws IOException {
+        TestModels.delete(models);
+    }
+
+    /**
+     * Writes down the events of the cache
+     */
+    private static class Recorder implements TransducerCacheListener {
+
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void loaded(String language, String model, long estimatedBytes, int loadCount) {
+            events.add("loaded " + language + "/" + model + " " + estimatedBytes + " " + loadCount);
+        }
+
+        @Override
+        public void evicted(String language, String model, long estimatedBytes, boolean explicit) {
+            events.add((explicit ? "unloaded " : "evicted ") + language + "/" + model + " " + estimatedBytes);
+        }
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsed() throws IOException {
+        Recorder recorder = new Recorder();
+        api.getTransducerCache().addListener(recorder);
+        //room for the bigger model but not for both
+        api.setMemoryBudget(analyserBytes + generatorBytes - 1);
+        api.analyze("koira", "xx");
+        api.generate("talo+N+Sg+Gen", "yy");
+        assertEquals(Arrays.asList("loaded xx/analyser " + analyserBytes + " 1",
+                "loaded yy/generator-norm " + generatorBytes + " 1",
+                "evicted xx/analyser " + analyserBytes), recorder.events);
+        assertEquals(1, api.getTransducerCache().size());
+        assertEquals(generatorBytes, api.getTransducerCache().getUsedBytes());
+
+        //the analyser is read from the disk again and the generator has to go
+        assertTrue(api.analyze("koira", "xx").containsKey("koira+N"));
+        assertEquals(2, api.getTransducerCache().getLoadCount("xx", "analyser"));
+        assertEquals(1, api.getTransducerCache().getLoadCount("yy", "generator-norm"));
+        assertEquals("evicted yy/generator-norm " + generatorBytes, recorder.events.get(recorder.events.size() - 1));
+    }
+
+    @Test
+    public void shrinksToANewBudget() throws IOException {
+        Recorder recorder = new Recorder();
+        api.analyze("koira", "xx");
+        api.generate("talo+N+Sg+Gen", "yy");
+        //the analyser was used last
+        api.analyze("kissa", "xx");
+        api.getTransducerCache().addListener(recorder);
+        api.setMemoryBudget(analyserBytes);
+        assertEquals(Arrays.asList("evicted yy/generator-norm " + generatorBytes), recorder.events);
+        assertEquals(analyserBytes, api.getTransducerCache().getUsedBytes());
+        api.analyze("koira", "xx");
+        assertEquals(1, api.getTransducerCache().getLoadCount("xx", "analyser"));
+    }
+
+    @Test
+    public void reloadsAfterUnloading() throws IOException {
+        Recorder recorder = new Recorder();
+        api.getTransducerCache().addListener(recorder);
+        api.preload("xx");
+        api.preload("yy");
+        assertEquals(LanguageReadiness.READY, api.getReadiness("xx"));
+        api.unload("xx");
+        assertEquals(LanguageReadiness.NOT_LOADED, api.getReadiness("xx"));
+        assertEquals(LanguageReadiness.READY, api.getReadiness("yy"));
+        assertEquals("unloaded xx/analyser " + analyserBytes, recorder.events.get(recorder.events.size() - 1));
+        assertEquals(generatorBytes, api.getTransducerCache().getUsedBytes());
+
+        api.analyze("koira", "xx");
+        assertEquals(2, api.getTransducerCache().getLoadCount("xx", "analyser"));
+        assertEquals("loaded xx/analyser " + analyserBytes + " 2", recorder.events.get(recorder.events.size() - 1));
+
+        api.unloadAll();
+        assertEquals(LanguageReadiness.NOT_LOADED, api.getReadiness("yy"));
+        assertEquals(0, api.getTransducerCache().size());
+        assertEquals(0, api.getTransducerCache().getUsedBytes());
+    }
+}
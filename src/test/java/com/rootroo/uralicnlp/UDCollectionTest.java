@@ -0,0 +1,119 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that collections opened lazily from CoNLL-U files and snapshots have the same sentences as the
+ * eager parse of the same text
+ */
+public class UDCollectionTest {
+
+    private String text;
+    private Path file;
+
+    @Before
+    public void load() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/conformance.conllu")) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        file = Files.createTempFile("conformance", ".conllu");
+    }
+
+    @After
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static List<String> strings(Iterable<UDSentence> sentences) {
+        List<String> result = new ArrayList<String>();
+        for (UDSentence sentence : sentences) {
+            result.add(sentence.toString());
+        }
+        return result;
+    }
+
+    @Test
+    public void parsesLikeTheEagerParser() throws IOException {
+        String lf = text.replace("\r", "");
+        String[] variants = {
+            text,
+            lf,
+            lf.trim(),
+            "\n\n" + lf.replace("\n\n", "\n\n\n"),
+            lf.replace("\n", "\r\n").trim(),
+            ""
+        };
+        for (String variant : variants) {
+            Files.write(file, variant.getBytes(StandardCharsets.UTF_8));
+            List<String> expected = strings(new UDCollection(variant));
+            try (UDCollection lazy = UDCollection.openLazy(file)) {
+                assertEquals(expected.size(), lazy.size());
+                assertEquals(expected, strings(lazy));
+                for (int i = lazy.size() - 1; i >= 0; i--) {
+                    assertEquals(expected.get(i), lazy.get(i).toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void findsSentencesAcrossReadBlocks() throws IOException {
+        StringBuilder big = new StringBuilder();
+        //odd padding moves the sentence and line ends around the 64 KB blocks of the scan
+        for (int i = 0; big.length() < 300000; i++) {
+            big.append("# sent_id = ").append(i).append(i % 7 == 0 ? "\r\n" : "\n").append(text.trim());
+            big.append(i % 3 == 0 ? "\r\n\r\n" : "\n\n\n");
+        }
+        String variant = big.toString().trim();
+        Files.write(file, variant.getBytes(StandardCharsets.UTF_8));
+        List<String> expected = strings(new UDCollection(variant));
+        try (UDCollection lazy = UDCollection.openLazy(file)) {
+            assertEquals(expected.size(), lazy.size());
+            assertEquals(expected, strings(lazy));
+        }
+    }
+
+    @Test
+    public void parsesEachAccessAgain() throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        try (UDCollection lazy = UDCollection.openLazy(file)) {
+            assertNotSame(lazy.get(1), lazy.get(1));
+            assertEquals(strings(new UDCollection(text)).subList(1, 3), strings(lazy.subList(1, 3)));
+            List<String> parallel = StreamSupport.stream(lazy.spliterator(), true)
+                    .map(UDSentence::toString).collect(Collectors.toList());
+            assertEquals(strings(new UDCollection(text)), parallel);
+        }
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void failsOnceClosed() throws IOException {
+        Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+        UDCollection lazy = UDCollection.openLazy(file);
+        lazy.close();
+        lazy.get(0);
+    }
+
+    @Test
+    public void opensSnapshotsLazily() throws IOException {
+        UDCollection eager = new UDCollection(text);
+        eager.writeSnapshot(file);
+        UDCollection lazy = UDCollection.openLazy(UDSnapshot.open(file));
+        assertEquals(strings(eager), strings(lazy));
+        assertEquals(strings(eager), strings(new UDCollection(UDSnapshot.open(file))));
+    }
+}
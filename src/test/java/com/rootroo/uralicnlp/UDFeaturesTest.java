@@ -0,0 +1,75 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests parsing of FEATS and MISC columns and the feature access of UDNode
+ */
+public class UDFeaturesTest {
+
+    @Test
+    public void sortsByKey() {
+        UDFeatures features = UDFeatures.parse("Number=Sing|NumType=Card|Case=Nom");
+        assertEquals(3, features.size());
+        assertEquals("Case", features.getKey(0));
+        assertEquals("Card", features.get("NumType"));
+        assertEquals("Sing", features.get("Number"));
+        assertNull(features.get("Person"));
+        assertEquals("Case=Nom|NumType=Card|Number=Sing", features.toString());
+    }
+
+    @Test
+    public void matchesOneOfSeveralValues() {
+        UDFeatures features = UDFeatures.parse("PronType=Int,Rel");
+        assertTrue(features.has("PronType", "Rel"));
+        assertTrue(features.has("PronType", "Int"));
+        assertTrue(features.has("PronType", "Int,Rel"));
+        assertFalse(features.has("PronType", "In"));
+        assertFalse(features.has("Case", "Nom"));
+    }
+
+    @Test
+    public void parsesEmptyColumns() {
+        assertEquals(0, UDFeatures.parse("_").size());
+        assertEquals(0, UDFeatures.parse("").size());
+        assertEquals("_", UDFeatures.parse("_").toString());
+        UDFeatures misc = UDFeatures.parseMisc("SpaceAfter=No|Foreign");
+        assertEquals("", misc.get("Foreign"));
+        assertArrayEquals(new String[]{"Foreign", "SpaceAfter=No"}, misc.toArray());
+    }
+
+    @Test
+    public void internsKeysAndFeatureValuesOnly() {
+        UDFeatures a = UDFeatures.parse(new String("Case=Nom"));
+        UDFeatures b = UDFeatures.parse(new String("Case=Nom"));
+        assertSame(a.getKey(0), b.getKey(0));
+        assertSame(a.getValue(0), b.getValue(0));
+        UDFeatures c = UDFeatures.parseMisc(new String("Gloss=dog"));
+        UDFeatures d = UDFeatures.parseMisc(new String("Gloss=dog"));
+        assertSame(c.getKey(0), d.getKey(0));
+        assertNotSame(c.getValue(0), d.getValue(0));
+    }
+
+    @Test
+    public void nodeKeepsColumnOrder() {
+        UDNode node = new UDNode("1", "kaksi", "kaksi", "NUM", "_", "Number=Sing|NumType=Card|Case=Nom", "Gloss=two");
+        assertArrayEquals(new String[]{"Number=Sing", "NumType=Card", "Case=Nom"}, node.getFeats());
+        assertArrayEquals(node.getFeats("|"), node.getFeats());
+        assertEquals("Card", node.getFeat("NumType"));
+        assertEquals("two", node.getMisc("Gloss"));
+        assertEquals("Card", node.getAttribute("feats.NumType"));
+        node.feats = "Case=Gen";
+        assertEquals("Gen", node.getFeat("Case"));
+        assertNull(node.getFeat("NumType"));
+        node.feats = "_";
+        assertArrayEquals(new String[]{"_"}, node.getFeats());
+    }
+}
@@ -0,0 +1,205 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests the tree arrays of UDSentenceStructure against walks up the head links, on conformance.conllu,
+ * on a sentence with a crossing arc and on sentences with several roots or none
+ */
+public class UDSentenceStructureTest {
+
+    //the arc of issue to hearing crosses the arc of scheduled to the root
+    private static final String NON_PROJECTIVE = "1\tA\ta\tDET\t_\t_\t2\tdet\t_\t_\n"
+            + "2\thearing\thearing\tNOUN\t_\t_\t4\tnsubj\t_\t_\n"
+            + "3\tis\tbe\tAUX\t_\t_\t4\taux\t_\t_\n"
+            + "4\tscheduled\tschedule\tVERB\t_\t_\t0\troot\t_\t_\n"
+            + "5\ton\ton\tADP\t_\t_\t7\tcase\t_\t_\n"
+            + "6\tthe\tthe\tDET\t_\t_\t7\tdet\t_\t_\n"
+            + "7\tissue\tissue\tNOUN\t_\t_\t2\tnmod\t_\t_\n"
+            + "8\ttoday\ttoday\tNOUN\t_\t_\t4\tobl\t_\t_\n";
+
+    //Yes and bark both have head 0
+    private static final String TWO_ROOTS = "1\tYes\tyes\tINTJ\t_\t_\t0\troot\t_\t_\n"
+            + "2\t,\t,\tPUNCT\t_\t_\t1\tpunct\t_\t_\n"
+            + "3\tdogs\tdog\tNOUN\t_\t_\t4\tnsubj\t_\t_\n"
+            + "4\tbark\tbark\tVERB\t_\t_\t0\troot\t_\t_\n";
+
+    //a tokenized sentence without a tree, and one whose heads go round in a cycle or point outside the sentence
+    private static final String NO_ROOT = "1\tDogs\tdog\tNOUN\t_\t_\t_\t_\t_\t_\n"
+            + "2\tbark\tbark\tVERB\t_\t_\t_\t_\t_\t_\n\n"
+            + "1\tDogs\tdog\tNOUN\t_\t_\t2\tnsubj\t_\t_\n"
+            + "2\tbark\tbark\tVERB\t_\t_\t3\tconj\t_\t_\n"
+            + "3\tloudly\tloudly\tADV\t_\t_\t1\tadvmod\t_\t_\n"
+            + "4\t!\t!\tPUNCT\t_\t_\t9\tpunct\t_\t_\n";
+
+    private static List<UDSentenceStructure> structures(String text) {
+        List<UDSentenceStructure> result = new ArrayList<UDSentenceStructure>();
+        for (UDSentence sentence : new UDCollection(text)) {
+            result.add(new UDSentenceStructure(sentence));
+        }
+        return result;
+    }
+
+    private static List<UDSentenceStructure> all() throws IOException {
+        List<UDSentenceStructure> result;
+        try (InputStream in = UDSentenceStructureTest.class.getResourceAsStream("/conformance.conllu")) {
+            result = structures(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        result.addAll(structures(NON_PROJECTIVE));
+        result.addAll(structures(TWO_ROOTS));
+        result.addAll(structures(NO_ROOT));
+        return result;
+    }
+
+    private static List<Integer> path(UDSentenceStructure s, int position) {
+        List<Integer> path = new ArrayList<Integer>();
+        for (int p = position; p >= 0; p = s.getHead(p)) {
+            path.add(p);
+        }
+        return path;
+    }
+
+    @Test
+    public void skipsEmptyNodesAndRanges() throws IOException {
+        List<UDSentenceStructure> structures = all();
+        assertEquals(4, structures.get(0).size());
+        assertEquals(5, structures.get(1).size());
+        assertEquals(6, structures.get(2).size());
+        UDSentenceStructure mar = structures.get(1);
+        assertEquals("mar", mar.getWord(4).form);
+        assertEquals(0, mar.getHead(4));
+        assertEquals(-1, mar.getHead(0));
+        assertEquals(2, mar.getChildCount(4));
+        assertEquals(2, mar.getChild(4, 0));
+        assertEquals(3, mar.getChild(4, 1));
+        assertEquals(4, mar.indexOf(mar.getWord(4)));
+    }
+
+    @Test
+    public void findsTheLowestCommonAncestor() throws IOException {
+        for (UDSentenceStructure s : all()) {
+            for (int a = 0; a < s.size(); a++) {
+                List<Integer> up = path(s, a);
+                assertEquals(up.size() - 1, s.getDepth(a));
+                int[] expected = new int[up.size()];
+                for (int i = 0; i < expected.length; i++) {
+                    expected[i] = up.get(i);
+                }
+                assertArrayEquals(expected, s.getPathToRoot(a));
+                for (int b = 0; b < s.size(); b++) {
+                    List<Integer> other = path(s, b);
+                    int lca = -1;
+                    for (int p : up) {
+                        if (other.contains(p)) {
+                            lca = p;
+                            break;
+                        }
+                    }
+                    assertEquals(a + " " + b, lca, s.getLowestCommonAncestor(a, b));
+                    assertEquals(lca >= 0 ? up.indexOf(lca) + other.indexOf(lca) : -1, s.getDistance(a, b));
+                    assertEquals(other.contains(a), s.isAncestor(a, b));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void spansSubtrees() throws IOException {
+        for (UDSentenceStructure s : all()) {
+            for (int a = 0; a < s.size(); a++) {
+                int size = 0;
+                int first = a;
+                int last = a;
+                for (int b = 0; b < s.size(); b++) {
+                    if (path(s, b).contains(a)) {
+                        size++;
+                        first = Math.min(first, b);
+                        last = Math.max(last, b);
+                    }
+                }
+                assertEquals(size, s.getSubtreeSize(a));
+                assertEquals(first, s.getSubtreeStart(a));
+                assertEquals(last, s.getSubtreeEnd(a));
+            }
+        }
+    }
+
+    @Test
+    public void findsCrossingArcs() throws IOException {
+        for (UDSentenceStructure s : all()) {
+            boolean projective = true;
+            for (int a = 0; a < s.size(); a++) {
+                int head = s.getHead(a);
+                boolean arc = true;
+                for (int b = Math.min(a, head) + 1; head >= 0 && b < Math.max(a, head); b++) {
+                    arc &= path(s, b).contains(head);
+                }
+                assertEquals(arc, s.isProjective(a));
+                projective &= arc;
+            }
+            assertEquals(projective, s.isProjective());
+        }
+        UDSentenceStructure hearing = structures(NON_PROJECTIVE).get(0);
+        assertFalse(hearing.isProjective());
+        assertFalse(hearing.isProjective(6));
+        assertTrue(hearing.isProjective(7));
+    }
+
+    @Test
+    public void keepsEveryRoot() {
+        UDSentenceStructure s = structures(TWO_ROOTS).get(0);
+        assertEquals(4, s.size());
+        assertEquals("Yes", s.getWord(0).form);
+        assertEquals(-1, s.getHead(0));
+        assertEquals(0, s.getHead(1));
+        assertEquals(3, s.getHead(2));
+        assertEquals(-1, s.getHead(3));
+        assertEquals(2, s.getSubtreeSize(0));
+        assertEquals(2, s.getSubtreeSize(3));
+        assertEquals(-1, s.getLowestCommonAncestor(1, 2));
+        assertTrue(s.isProjective());
+    }
+
+    @Test
+    public void hangsRootlessWordsUnderTheVirtualRoot() {
+        List<UDSentenceStructure> structures = structures(NO_ROOT);
+        UDSentenceStructure flat = structures.get(0);
+        assertEquals(2, flat.size());
+        assertEquals(-1, flat.getHead(0));
+        assertEquals(-1, flat.getHead(1));
+        assertEquals(0, flat.getDepth(1));
+
+        UDSentenceStructure cycle = structures.get(1);
+        assertEquals(4, cycle.size());
+        int roots = 0;
+        for (int i = 0; i < cycle.size(); i++) {
+            if (cycle.getHead(i) < 0) {
+                roots++;
+            }
+        }
+        //one word of the cycle and the word whose head is not in the sentence
+        assertEquals(2, roots);
+        assertEquals(-1, cycle.getHead(3));
+        //the walk from Dogs goes round to loudly, whose head link closes the cycle
+        assertEquals(-1, cycle.getHead(2));
+        assertEquals(3, cycle.getSubtreeSize(2));
+        assertEquals(2, cycle.getDepth(0));
+
+        UDStatistics statistics = new UDStatistics(2);
+        for (UDSentence sentence : new UDCollection(TWO_ROOTS + "\n" + NO_ROOT)) {
+            statistics.add(sentence);
+        }
+        assertEquals(3, statistics.getSentenceCount());
+        assertEquals(10, statistics.getWordCount());
+    }
+}
@@ -0,0 +1,95 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests writing conformance.conllu into a binary snapshot and reading it back
+ */
+public class UDSnapshotTest {
+
+    private UDCollection collection;
+    private Path file;
+
+    @Before
+    public void write() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/conformance.conllu")) {
+            collection = new UDCollection(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        file = Files.createTempFile("conformance", ".snap");
+        collection.writeSnapshot(file);
+    }
+
+    @After
+    public void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private static UDNode word(UDSentence sentence, String id) {
+        for (UDNode node : sentence.find(new HashMap<String, String>(), new HashMap<String, String>(), true, true, false, false)) {
+            if (node.id.equals(id)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void decodesSentencesInAnyOrder() throws IOException {
+        UDSnapshot snapshot = UDSnapshot.open(file);
+        assertEquals(4, snapshot.size());
+        for (int i = snapshot.size() - 1; i >= 0; i--) {
+            assertEquals(collection.get(i).toString(), snapshot.get(i).toString());
+            assertEquals(collection.get(i).comments, snapshot.get(i).comments);
+        }
+        UDSentence bill = snapshot.get(2);
+        assertEquals("2:conj:and", word(bill, "5.1").deps());
+        assertEquals("5.1:obj", word(bill, "6").deps());
+        assertEquals("orphan", word(bill, "6").head.relation);
+        assertEquals("Sing", word(snapshot.get(0), "2").getFeat("Number"));
+    }
+
+    @Test
+    public void sharesDecodedStrings() throws IOException {
+        UDSnapshot snapshot = UDSnapshot.open(file);
+        //dog is a lemma in the first and the last sentence
+        assertSame(word(snapshot.get(0), "2").lemma, word(snapshot.get(3), "2").lemma);
+    }
+
+    @Test
+    public void writesAnEmptySnapshot() throws IOException {
+        UDSnapshot.write(new UDCollection(""), file);
+        assertEquals(0, UDSnapshot.open(file).size());
+    }
+
+    @Test
+    public void refusesOtherFiles() throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        for (byte[] broken : new byte[][]{"1\tdog\tdog".getBytes(StandardCharsets.UTF_8), Arrays.copyOf(bytes, bytes.length - 10), new byte[0]}) {
+            Files.write(file, broken);
+            try {
+                UDSnapshot.open(file);
+                fail();
+            } catch (IOException ex) {
+                //expected
+            }
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void checksTheIndex() throws IOException {
+        UDSnapshot.open(file).get(4);
+    }
+}
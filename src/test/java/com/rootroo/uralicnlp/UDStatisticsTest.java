@@ -0,0 +1,102 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests treebank statistics on conformance.conllu
+ */
+public class UDStatisticsTest {
+
+    private String text;
+    private UDCollection collection;
+
+    @Before
+    public void load() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/conformance.conllu")) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        collection = new UDCollection(text);
+    }
+
+    @Test
+    public void countsWordsAndRelations() {
+        UDStatistics statistics = UDStatistics.compute(collection, 2);
+        assertEquals(4, statistics.getSentenceCount());
+        assertEquals(20, statistics.getWordCount());
+        assertEquals(4, statistics.getDeprelCount("root"));
+        assertEquals(3, statistics.getDeprelCount("nsubj"));
+        assertEquals(1, statistics.getDeprelCount("nmod:poss"));
+        assertEquals(0, statistics.getHeadInitialCount("nsubj"));
+        assertEquals(3, statistics.getHeadFinalCount("nsubj"));
+        assertEquals(0.0, statistics.getHeadInitialRatio("nsubj"), 0.0);
+        long dependencies = 0;
+        for (long count : statistics.getDependencyLengths()) {
+            dependencies += count;
+        }
+        assertEquals(16, dependencies);
+    }
+
+    @Test
+    public void countsNgramsAndFeatures() {
+        UDStatistics statistics = UDStatistics.compute(collection, 2);
+        assertEquals(2, statistics.getPosNgramCount("NOUN", "VERB"));
+        assertEquals(1, statistics.getPosNgramCount("VERB", "PUNCT"));
+        assertEquals(0, statistics.getPosNgramCount("PUNCT", "VERB"));
+        assertEquals(2, statistics.getFeatureCount("Number=Sing"));
+        assertEquals(1, statistics.getFeatureCount("Tense=Pres"));
+        assertEquals(0, statistics.getFeaturePairs().size());
+    }
+
+    @Test
+    public void countsFeaturePairs() {
+        UDStatistics statistics = new UDStatistics(1);
+        statistics.add(new UDCollection("1\tkoirat\tkoira\tNOUN\t_\tNumber=Plur|Case=Nom\t0\troot\t_\t_\n").get(0));
+        assertEquals(1, statistics.getFeaturePairCount("Case=Nom", "Number=Plur"));
+        assertEquals(1, statistics.getFeaturePairCount("Number=Plur", "Case=Nom"));
+        assertEquals(1, statistics.getPosNgramCount("NOUN"));
+    }
+
+    @Test
+    public void mergesToTheSequentialCounts() throws IOException {
+        UDStatistics sequential = new UDStatistics(3);
+        for (UDSentence sentence : collection) {
+            sequential.add(sentence);
+        }
+        assertSameCounts(sequential, UDStatistics.compute(collection, 3));
+        Path file = Files.createTempFile("conformance", ".conllu");
+        try {
+            Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+            assertSameCounts(sequential, UDStatistics.compute(file, 3));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void assertSameCounts(UDStatistics expected, UDStatistics actual) {
+        assertEquals(expected.getSentenceCount(), actual.getSentenceCount());
+        assertEquals(expected.getWordCount(), actual.getWordCount());
+        assertEquals(expected.getDeprels(), actual.getDeprels());
+        assertEquals(expected.getPosNgrams(), actual.getPosNgrams());
+        assertEquals(expected.getFeatures(), actual.getFeatures());
+        assertEquals(expected.getFeaturePairs(), actual.getFeaturePairs());
+        assertArrayEquals(trim(expected.getDependencyLengths()), trim(actual.getDependencyLengths()));
+    }
+
+    private static long[] trim(long[] lengths) {
+        int n = lengths.length;
+        while (n > 0 && lengths[n - 1] == 0) {
+            n--;
+        }
+        return Arrays.copyOf(lengths, n);
+    }
+}
@@ -0,0 +1,132 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests CoNLL-U parsing against conformance.conllu, which has multiword tokens, empty nodes,
+ * enhanced dependencies and CRLF line ends
+ */
+public class UDToolsTest {
+
+    private String text;
+    private UDCollection collection;
+
+    @Before
+    public void load() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/conformance.conllu")) {
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        collection = new UDCollection(text);
+    }
+
+    private static UDNode word(UDSentence sentence, String id) {
+        for (UDNode node : sentence.find(new HashMap<String, String>(), new HashMap<String, String>(), true, true, false, false)) {
+            if (node.id.equals(id)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    private static List<String> relations(List<UDRelation> relations) {
+        List<String> result = new ArrayList<String>();
+        for (UDRelation r : relations) {
+            result.add(r.toString());
+        }
+        return result;
+    }
+
+    @Test
+    public void readsEverySentence() {
+        assertEquals(4, collection.size());
+        assertEquals("# sent_id = 3\n# text = Sue likes coffee and Bill tea\n", collection.get(2).comments);
+    }
+
+    @Test
+    public void parsesRelationsWithColons() {
+        UDNode vinken = word(collection.get(0), "1");
+        assertEquals("nmod:poss", vinken.head.relation);
+        assertEquals("2", vinken.head.headId());
+        assertEquals("2:nmod:poss", vinken.deps());
+        assertTrue(vinken.heads.isEmpty());
+    }
+
+    @Test
+    public void parsesSeveralEnhancedHeads() {
+        UDSentence sentence = collection.get(3);
+        UDNode dog = word(sentence, "2");
+        assertEquals("3", dog.head.headId());
+        assertEquals(1, dog.heads.size());
+        assertEquals("5:nsubj", dog.heads.get(0).toString());
+        assertEquals(1, relations(word(sentence, "5").secondaryChildren).size());
+    }
+
+    @Test
+    public void parsesEmptyNodes() {
+        UDSentence sentence = collection.get(2);
+        UDNode copy = word(sentence, "5.1");
+        assertEquals("like", copy.lemma);
+        assertEquals("5", copy.head.head.id);
+        assertEquals("2:conj:and", copy.deps());
+        assertEquals("5.1:nsubj", word(sentence, "5").deps());
+        assertEquals(3, copy.secondaryChildren.size());
+        assertEquals("orphan", word(sentence, "6").head.relation);
+        assertEquals("5.1:obj", word(sentence, "6").deps());
+    }
+
+    @Test
+    public void keepsMultiwordTokens() {
+        UDSentence sentence = collection.get(1);
+        List<UDNode> words = sentence.find(new HashMap<String, String>(), new HashMap<String, String>(), true, false, false, false);
+        assertEquals(7, words.size());
+        assertEquals(5, sentence.find().size());
+        assertEquals("al", word(sentence, "3-4").form);
+        assertEquals("_", word(sentence, "3-4").deps());
+    }
+
+    @Test
+    public void printsTheInput() {
+        String expected = text.replace("\r", "");
+        StringBuilder printed = new StringBuilder();
+        for (UDSentence sentence : collection) {
+            printed.append(sentence.toString()).append('\n');
+        }
+        assertEquals(expected, printed.toString());
+    }
+
+    @Test
+    public void snapshotKeepsEverything() throws IOException {
+        Path snapshot = Files.createTempFile("conformance", ".snap");
+        try {
+            collection.writeSnapshot(snapshot);
+            UDCollection loaded = new UDCollection(UDSnapshot.open(snapshot));
+            assertEquals(collection.size(), loaded.size());
+            for (int i = 0; i < collection.size(); i++) {
+                assertEquals(collection.get(i).toString(), loaded.get(i).toString());
+            }
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    public void comparesIdsInSentenceOrder() {
+        assertTrue(UDTools.compareIds("1-2", "1") < 0);
+        assertTrue(UDTools.compareIds("1", "1.1") < 0);
+        assertTrue(UDTools.compareIds("1.1", "2") < 0);
+        assertTrue(UDTools.compareIds("8.2", "10") < 0);
+        assertTrue(UDTools.compareIds("", "1") < 0);
+    }
+}
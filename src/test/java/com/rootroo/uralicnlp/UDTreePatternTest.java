@@ -0,0 +1,69 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Tests tree pattern matching on conformance.conllu and on feature values with several items
+ */
+public class UDTreePatternTest {
+
+    private static HashMap<String, String> query(String key, String value) {
+        HashMap<String, String> query = new HashMap<String, String>();
+        query.put(key, value);
+        return query;
+    }
+
+    private static List<String> strings(List<UDTreePattern.Match> matches) {
+        List<String> result = new ArrayList<String>();
+        for (UDTreePattern.Match match : matches) {
+            result.add(match.toString());
+        }
+        return result;
+    }
+
+    private static UDCollection conformance() throws IOException {
+        try (InputStream in = UDTreePatternTest.class.getResourceAsStream("/conformance.conllu")) {
+            return new UDCollection(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void skipsEmptyNodesAndRanges() throws IOException {
+        UDCollection collection = conformance();
+        UDTreePattern pattern = new UDTreePattern(false);
+        int bill = pattern.addNode(query("form", "Bill"));
+        pattern.addChild(bill, null, new HashMap<String, String>());
+        assertEquals(List.of("[5:Bill, 4:and]", "[5:Bill, 6:tea]"), strings(pattern.match(collection)));
+
+        UDTreePattern mar = new UDTreePattern(false);
+        int noun = mar.addNode(query("form", "mar"));
+        mar.addChild(noun, null, new HashMap<String, String>());
+        assertEquals(List.of("[5:mar, 3:a]", "[5:mar, 4:el]"), strings(mar.match(collection)));
+    }
+
+    @Test
+    public void indexFindsEachFeatureValue() {
+        UDCollection collection = new UDCollection("1\twho\twho\tPRON\t_\tPronType=Int,Rel\t2\tnsubj\t_\t_\n"
+                + "2\tsleeps\tsleep\tVERB\t_\t_\t0\troot\t_\t_\n\n"
+                + "1\tthat\tthat\tPRON\t_\tPronType=Rel\t2\tnsubj\t_\t_\n"
+                + "2\truns\trun\tVERB\t_\t_\t0\troot\t_\t_\n\n"
+                + "1\tit\tit\tPRON\t_\tPronType=Prs\t2\tnsubj\t_\t_\n"
+                + "2\twalks\twalk\tVERB\t_\t_\t0\troot\t_\t_\n");
+        UDAttributeIndex index = new UDAttributeIndex(collection, "feats.PronType", "deprel");
+        for (String value : new String[]{"Rel", "Int", "Int,Rel", "Prs", "Dem"}) {
+            UDTreePattern pattern = new UDTreePattern(false);
+            int verb = pattern.addNode(new HashMap<String, String>());
+            pattern.addChild(verb, "nsubj", query("feats.PronType", value));
+            assertEquals(value, strings(pattern.match(collection)), strings(pattern.match(collection, index)));
+        }
+        assertEquals(2, index.getSentences("feats.PronType", "Rel").length);
+    }
+}
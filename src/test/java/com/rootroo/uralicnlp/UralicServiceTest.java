@@ -0,0 +1,180 @@
+package com.rootroo.uralicnlp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the per-language limits of UralicService with requests that block on latches inside their slot
+ */
+public class UralicServiceTest {
+
+    private Path models;
+    private UralicService service;
+
+    @Before
+    public void load() throws IOException {
+        models = TestModels.copy();
+        service = new UralicService(models.toString());
+    }
+
+    @After
+    public void delete() throws IOException {
+        service.close();
+        TestModels.delete(models);
+    }
+
+    /**
+     * A request that holds its slot until released, run on its own thread
+     */
+    private class Blocked extends Thread {
+
+        final String language;
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile UralicApi api;
+        volatile Exception failure;
+
+        Blocked(String language) {
+            this.language = language;
+            start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                service.run(language, c -> {
+                    api = c.api;
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ex) {
+                        throw new InterruptedIOException();
+                    }
+                    return null;
+                });
+            } catch (Exception ex) {
+                failure = ex;
+            }
+        }
+
+        Blocked await() throws InterruptedException {
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            return this;
+        }
+
+        void finish() throws InterruptedException {
+            release.countDown();
+            join(10000);
+            assertNull(failure);
+        }
+    }
+
+    @Test
+    public void aFullLanguageDoesNotBlockAnother() throws Exception {
+        service.setConcurrency("xx", 1, 1);
+        service.setConcurrency("yy", 1, 1);
+        Blocked blocked = new Blocked("xx").await();
+        assertEquals(1, service.getActiveRequests("xx"));
+        assertTrue(service.generate("talo+N+Sg+Gen", "yy").containsKey("talon"));
+        assertEquals(0, service.getActiveRequests("yy"));
+        blocked.finish();
+        assertEquals(0, service.getActiveRequests("xx"));
+    }
+
+    @Test
+    public void rejectsAfterTheTimeout() throws Exception {
+        service.setConcurrency("xx", 1, 1);
+        service.setTimeout(50, TimeUnit.MILLISECONDS);
+        Blocked blocked = new Blocked("xx").await();
+        try {
+            service.run("xx", c -> "koira");
+            fail();
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().startsWith("No free slot for xx"));
+        }
+        blocked.finish();
+        assertEquals("koira", service.run("xx", c -> "koira"));
+    }
+
+    @Test
+    public void reloadsWhileRequestsRun() throws Exception {
+        Blocked blocked = new Blocked("xx").await();
+        UralicApi old = blocked.api;
+        Thread reload = new Thread(() -> {
+            try {
+                service.reload("xx");
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        reload.start();
+        //new requests go to the new models while the old request still runs
+        while (service.getApi("xx") == old) {
+            Thread.yield();
+        }
+        assertNotSame(old, service.run("xx", c -> c.api));
+        assertTrue(service.analyze("koira", "xx").containsKey("koira+N"));
+        assertTrue(reload.isAlive());
+        blocked.finish();
+        reload.join(10000);
+        assertFalse(reload.isAlive());
+        assertEquals(0, old.getTransducerCache().size());
+    }
+
+    @Test
+    public void keepsTheOldModelsIfReloadFails() throws Exception {
+        service.load("xx");
+        UralicApi old = service.getApi("xx");
+        try {
+            service.reload("xx", "analyser", "generator");
+            fail();
+        } catch (IOException ex) {
+            //expected, xx has no generator
+        }
+        assertSame(old, service.getApi("xx"));
+        assertTrue(service.analyze("koira", "xx").containsKey("koira+N"));
+    }
+
+    @Test
+    public void changesLimitsWhileRequestsRun() throws Exception {
+        service.setConcurrency("xx", 1, 1);
+        Blocked first = new Blocked("xx").await();
+        Thread change = new Thread(() -> {
+            try {
+                service.setConcurrency("xx", 2, 1);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+        change.start();
+        //the new context starts with no running requests
+        while (service.getActiveRequests("xx") != 0) {
+            Thread.yield();
+        }
+        Blocked second = new Blocked("xx").await();
+        Blocked third = new Blocked("xx").await();
+        assertEquals(2, service.getActiveRequests("xx"));
+        assertSame(first.api, second.api);
+        assertTrue(change.isAlive());
+        first.finish();
+        change.join(10000);
+        assertFalse(change.isAlive());
+        second.finish();
+        third.finish();
+        assertEquals(0, service.getActiveRequests("xx"));
+    }
+}